@@ -17,10 +17,15 @@ package org.n52.wacodis.javaps.algorithms;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FilenameUtils;
@@ -29,6 +34,7 @@ import org.esa.snap.core.datamodel.Product;
 import org.n52.javaps.io.GenericFileData;
 import org.n52.wacodis.javaps.exceptions.WacodisProcessingException;
 import org.n52.wacodis.javaps.algorithms.execution.EoToolExecutor;
+import org.n52.wacodis.javaps.algorithms.execution.GdalWarpBatch;
 import org.n52.wacodis.javaps.command.AbstractCommandValue;
 import org.n52.wacodis.javaps.command.MultipleCommandValue;
 import org.n52.wacodis.javaps.command.ProcessResult;
@@ -36,6 +42,7 @@ import org.n52.wacodis.javaps.command.SingleCommandValue;
 import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
 import org.n52.wacodis.javaps.configuration.tools.ToolConfig;
 import org.n52.wacodis.javaps.configuration.tools.ToolConfigParser;
+import org.n52.wacodis.javaps.io.http.SentinelFileDownloader;
 import org.n52.wacodis.javaps.io.metadata.ProductMetadata;
 import org.n52.wacodis.javaps.io.metadata.ProductMetadataCreator;
 import org.n52.wacodis.javaps.io.metadata.SentinelProductMetadataCreator;
@@ -53,6 +60,8 @@ public abstract class AbstractAlgorithm {
     private static final String TIFF_EXTENSION = ".tif";
     private static final String GDAL_CONFIG = "gdal-warp.yml";
     private static final String GDAL_RESULT_POSTFIX = "_warped";
+    private static final String GDAL_BATCH_CONFIG = "gdal-warp-batch.yml";
+    private static final String GDAL_BATCH_PREFIX = "gdal_warp_batch_";
 
     @Autowired
     private WacodisBackendConfig config;
@@ -63,38 +72,132 @@ public abstract class AbstractAlgorithm {
     @Autowired
     private EoToolExecutor eoToolExecutor;
 
+    @Autowired(required = false)
+    private SentinelFileDownloader sentinelFileDownloader;
+
     private String namingSuffix = "_" + System.currentTimeMillis();;
 
     private String productName;
 
     public void executeProcess() throws WacodisProcessingException {
+        this.readSentinelProducts(this.getSentinelProducts(), () -> {
+            ToolConfig toolConfig = this.getToolConfig(this.getToolConfigPath(this.getToolConfigName()));
+            Map<String, AbstractCommandValue> inputArgumentValues = this.createInputArgumentValues(toolConfig.getDocker().getWorkDir());
 
-        ToolConfig toolConfig = this.getToolConfig(this.getToolConfigPath(this.getToolConfigName()));
-        Map<String, AbstractCommandValue> inputArgumentValues = this.createInputArgumentValues(toolConfig.getDocker().getWorkDir());
+            this.executeDockerTool(inputArgumentValues, toolConfig);
+            return null;
+        });
+    }
 
-        this.executeDockerTool(inputArgumentValues, toolConfig);
+    /**
+     * @return the URLs of the Sentinel products that are read by the process.
+     * They are pinned in the product cache while the process is executed.
+     */
+    protected List<String> getSentinelProducts() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reads Sentinel products as described by
+     * {@link SentinelFileDownloader#readPinnedSentinelProducts(java.util.List, org.n52.wacodis.javaps.io.http.SentinelFileDownloader.PinnedProductReader)}
+     *
+     * @param <T>    type of the result
+     * @param <E>    type of the exception thrown by the reader
+     * @param urls   URLs of the Sentinel products
+     * @param reader reads the products
+     * @return the result of the reader
+     * @throws E if the reader fails
+     */
+    protected <T, E extends Exception> T readSentinelProducts(List<String> urls, SentinelFileDownloader.PinnedProductReader<T, E> reader) throws E {
+        if (this.sentinelFileDownloader == null) {
+            return reader.read();
+        }
+        return this.sentinelFileDownloader.readPinnedSentinelProducts(urls, reader);
     }
 
     protected void executeDockerTool(Map<String, AbstractCommandValue> inputArgumentValues, ToolConfig toolConfig) throws WacodisProcessingException {
-        ProcessResult result;
+        this.awaitDockerTool(this.executeDockerToolAsync(inputArgumentValues, toolConfig));
+    }
+
+    /**
+     * Executes an EO tool asynchronously. The returned future completes
+     * exceptionally with a {@link WacodisProcessingException} if the tool
+     * could not be executed or exited with a non-zero result code, so that
+     * the executions of several tools can be composed.
+     *
+     * @param inputArgumentValues input tool argument values
+     * @param toolConfig          tool configuration
+     * @return future that completes with the {@link ProcessResult} of the tool
+     */
+    protected CompletableFuture<ProcessResult> executeDockerToolAsync(Map<String, AbstractCommandValue> inputArgumentValues, ToolConfig toolConfig) {
+        CompletableFuture<ProcessResult> execution;
         try {
-            result = eoToolExecutor.executeTool(inputArgumentValues, toolConfig);
+            execution = eoToolExecutor.executeToolAsync(inputArgumentValues, toolConfig);
         } catch (Exception ex) {
-            String message = "Error while executing docker process";
-            LOGGER.debug(message, ex);
-            throw new WacodisProcessingException(message, ex);
+            execution = new CompletableFuture<>();
+            execution.completeExceptionally(ex);
         }
-        if (result.getResultCode() != 0) { //tool returns Result Code 0 if finished successfully
-            throw new WacodisProcessingException(String.format("EO tool (container: %s) exited with non-zero result code (%s)." +
-                            " Cause: %s. Consult tool specific documentation for details",
-                    toolConfig.getDocker().getContainer(),
-                    result.getResultCode(),
-                    result.getOutputMessage()));
-        }
-        LOGGER.info("EO tool docker process finished "
-                + "executing with result code: {}", result.getResultCode());
-        LOGGER.debug(result.getOutputMessage());
+        return propagateCancellation(execution, execution.handle((result, ex) -> {
+            if (ex != null) {
+                String message = "Error while executing docker process";
+                LOGGER.debug(message, ex);
+                throw new CompletionException(new WacodisProcessingException(message,
+                        ex instanceof CompletionException ? ex.getCause() : ex));
+            }
+            if (result.getResultCode() != 0) { //tool returns Result Code 0 if finished successfully
+                throw new CompletionException(new WacodisProcessingException(String.format("EO tool (container: %s) exited with non-zero result code (%s)." +
+                                " Cause: %s. Consult tool specific documentation for details",
+                        toolConfig.getDocker().getContainer(),
+                        result.getResultCode(),
+                        result.getOutputMessage())));
+            }
+            LOGGER.info("EO tool docker process finished "
+                    + "executing with result code: {}, output: {} bytes, log file: {}",
+                    result.getResultCode(), result.getOutputSize(), result.getLogFile());
+            LOGGER.debug(result.getOutputMessage());
+            return result;
+        }));
+    }
+
+    /**
+     * Cancels a source future, e.g. a tool execution, if a future that
+     * depends on it is cancelled, so that the container of the tool execution
+     * is stopped and removed
+     *
+     * @param source    the future the dependent future has been derived from
+     * @param dependent the future derived from the source future
+     * @return the dependent future
+     */
+    protected static <T, U> CompletableFuture<U> propagateCancellation(CompletableFuture<T> source, CompletableFuture<U> dependent) {
+        dependent.whenComplete((r, ex) -> {
+            if (dependent.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return dependent;
+    }
 
+    /**
+     * Waits for an asynchronously executed EO tool. If the waiting thread is
+     * interrupted, the execution is cancelled.
+     *
+     * @param execution future of the tool execution
+     * @return the {@link ProcessResult} of the tool
+     * @throws WacodisProcessingException if the tool execution failed
+     */
+    protected <T> T awaitDockerTool(CompletableFuture<T> execution) throws WacodisProcessingException {
+        try {
+            return execution.get();
+        } catch (InterruptedException ex) {
+            execution.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new WacodisProcessingException("Interrupted while waiting for docker process", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof WacodisProcessingException) {
+                throw (WacodisProcessingException) ex.getCause();
+            }
+            throw new WacodisProcessingException("Error while executing docker process", ex.getCause());
+        }
     }
 
     protected ToolConfig getToolConfig(String toolConfigPath) throws WacodisProcessingException {
@@ -111,18 +214,116 @@ public abstract class AbstractAlgorithm {
     }
 
     protected File executeGdalWarp(File file, String epsg) throws WacodisProcessingException {
+        return this.awaitDockerTool(this.executeGdalWarpAsync(file, epsg));
+    }
+
+    /**
+     * Reprojects a file with GDAL warp asynchronously
+     *
+     * @param file file to reproject
+     * @param epsg target EPSG code
+     * @return future that completes with the reprojected file
+     * @throws WacodisProcessingException if the tool configuration could not
+     *                                    be read
+     */
+    protected CompletableFuture<File> executeGdalWarpAsync(File file, String epsg) throws WacodisProcessingException {
         ToolConfig toolConfig = this.getToolConfig(this.getToolConfigPath(GDAL_CONFIG));
-        String resultName = FilenameUtils.concat(this.getBackendConfig().getWorkingDirectory(),
-                FilenameUtils.getBaseName(file.getName())
-                        + GDAL_RESULT_POSTFIX
-                        + "."
-                        + FilenameUtils.getExtension(file.getName()));
-        File outFile = new File(resultName);
+        File outFile = this.getGdalResultFile(file);
         Map<String, AbstractCommandValue> inputArgumentValues = this.createGdalInputArgumentValues(file, toolConfig.getDocker().getWorkDir(), outFile, epsg);
 
-        this.executeDockerTool(inputArgumentValues, toolConfig);
+        CompletableFuture<ProcessResult> execution = this.executeDockerToolAsync(inputArgumentValues, toolConfig);
+        return propagateCancellation(execution, execution.thenApply(result -> outFile));
+    }
+
+    /**
+     * Reprojects several files with GDAL warp within a single container. The
+     * gdalwarp processes are executed by a generated script, so that only one
+     * container has to be started for all files. Each file has its own
+     * future, that completes exceptionally if the reprojection of that file
+     * failed, so that failures can still be handled per file.
+     *
+     * @param files files to reproject
+     * @param epsg  target EPSG code
+     * @return futures that complete with the reprojected file by file to
+     * reproject, in the order of the files
+     * @throws WacodisProcessingException if the tool configuration could not
+     *                                    be read or the script could not be
+     *                                    written
+     */
+    protected Map<File, CompletableFuture<File>> executeGdalWarpBatch(List<File> files, String epsg) throws WacodisProcessingException {
+        Map<File, CompletableFuture<File>> warps = new LinkedHashMap<>();
+        if (files.isEmpty()) {
+            return warps;
+        }
+        ToolConfig toolConfig = this.getToolConfig(this.getToolConfigPath(GDAL_BATCH_CONFIG));
+        String workDir = toolConfig.getDocker().getWorkDir();
+        GdalWarpBatch batch = new GdalWarpBatch(epsg, this.getBackendConfig().getGdalParallelism());
+        files.forEach(f -> batch.add(f, this.getGdalResultFile(f)));
+        File script = GdalWarpBatch.createScriptFile(this.getBackendConfig().getWorkingDirectory(),
+                GDAL_BATCH_PREFIX + UUID.randomUUID().toString() + this.getNamingSuffix());
+        try {
+            batch.writeScript(script, workDir);
+        } catch (IOException ex) {
+            throw new WacodisProcessingException("Error while writing GDAL warp batch script", ex);
+        }
+        Map<String, AbstractCommandValue> inputArgumentValues = new HashMap();
+        inputArgumentValues.put("SCRIPT", this.createInputValue(workDir, script, true));
+
+        CompletableFuture<ProcessResult> execution = this.executeDockerToolAsync(inputArgumentValues, toolConfig);
+        CompletableFuture<Map<File, WacodisProcessingException>> failures = execution.handle((result, ex) -> {
+            try {
+                return this.getGdalWarpBatchFailures(batch, script, workDir, ex);
+            } finally {
+                batch.cleanUp(script);
+            }
+        });
+        batch.getFiles().forEach((inFile, outFile) -> warps.put(inFile, propagateCancellation(execution, failures.thenApply(f -> {
+            if (f.containsKey(inFile)) {
+                throw new CompletionException(f.get(inFile));
+            }
+            return outFile;
+        }))));
+        return warps;
+    }
+
+    private Map<File, WacodisProcessingException> getGdalWarpBatchFailures(GdalWarpBatch batch, File script, String workDir, Throwable executionError) {
+        Map<File, WacodisProcessingException> failures = new HashMap<>();
+        if (executionError != null) {
+            Throwable cause = executionError instanceof CompletionException ? executionError.getCause() : executionError;
+            WacodisProcessingException failure = cause instanceof WacodisProcessingException
+                    ? (WacodisProcessingException) cause
+                    : new WacodisProcessingException("Error while executing docker process", cause);
+            batch.getFiles().keySet().forEach(f -> failures.put(f, failure));
+            return failures;
+        }
+        Map<File, Integer> exitCodes;
+        try {
+            exitCodes = batch.readExitCodes(script, workDir);
+        } catch (IOException ex) {
+            WacodisProcessingException failure = new WacodisProcessingException("Error while reading GDAL warp batch status", ex);
+            batch.getFiles().keySet().forEach(f -> failures.put(f, failure));
+            return failures;
+        }
+        for (File file : batch.getFiles().keySet()) {
+            Integer exitCode = exitCodes.get(file);
+            if (exitCode == null) {
+                failures.put(file, new WacodisProcessingException(String.format(
+                        "GDAL warp for file %s did not finish", file.getName())));
+            } else if (exitCode != 0) {
+                failures.put(file, new WacodisProcessingException(String.format(
+                        "GDAL warp for file %s exited with non-zero result code (%s). Cause: %s",
+                        file.getName(), exitCode, batch.readOutput(file))));
+            }
+        }
+        return failures;
+    }
 
-        return outFile;
+    private File getGdalResultFile(File file) {
+        return new File(FilenameUtils.concat(this.getBackendConfig().getWorkingDirectory(),
+                FilenameUtils.getBaseName(file.getName())
+                        + GDAL_RESULT_POSTFIX
+                        + "."
+                        + FilenameUtils.getExtension(file.getName())));
     }
 
     protected Map<String, AbstractCommandValue> createGdalInputArgumentValues(File inFile, String basePath, File outFile, String epsg) {
@@ -19,6 +19,7 @@ import org.apache.commons.io.FileUtils;
 import org.n52.javaps.io.GenericFileData;
 import org.n52.wacodis.javaps.exceptions.WacodisProcessingException;
 import org.n52.wacodis.javaps.command.AbstractCommandValue;
+import org.n52.wacodis.javaps.command.ProcessResult;
 import org.n52.wacodis.javaps.configuration.tools.ToolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +27,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Abstract dummy algorithm that can be extended for testing purposes.
@@ -40,8 +42,9 @@ public abstract class AbstractDummyAlgorithm extends AbstractAlgorithm {
     private final Logger LOGGER = LoggerFactory.getLogger(getClass());
 
     @Override
-    protected void executeDockerTool(Map<String, AbstractCommandValue> inputArgumentValues, ToolConfig toolConfig) throws WacodisProcessingException {
+    protected CompletableFuture<ProcessResult> executeDockerToolAsync(Map<String, AbstractCommandValue> inputArgumentValues, ToolConfig toolConfig) {
         LOGGER.info("Execute dummy docker process...");
+        return CompletableFuture.completedFuture(new ProcessResult(0, ""));
     }
 
     @Override
@@ -168,6 +168,11 @@ public class DetailedLandCoverClassificationAlgorithm extends AbstractAlgorithm
         this.productMetadata = this.createProductMetadata(this.sentinelProductList);
     }
 
+    @Override
+    protected List<String> getSentinelProducts() {
+        return this.opticalImagesSources != null ? this.opticalImagesSources : Collections.emptyList();
+    }
+
     @Override
     public String getProcessId() {
         return PROCESS_ID;
@@ -212,7 +217,7 @@ public class DetailedLandCoverClassificationAlgorithm extends AbstractAlgorithm
         InputDataPreprocessor imagePreprocessor = new GptPreprocessor(FilenameUtils.concat(this.getBackendConfig().getGpfDir(), GPF_FILE), parameters, TIFF_EXTENSION, this.getNamingSuffix());
 
         this.sentinelProductList = new ArrayList();
-        List<File> preprocessedImages = new ArrayList();
+        List<File> preprocessedFiles = new ArrayList();
         this.opticalImagesSources.forEach(ois -> {
             try {
                 // Download satellite data
@@ -222,16 +227,7 @@ public class DetailedLandCoverClassificationAlgorithm extends AbstractAlgorithm
                         false);
                 Product sentinelProduct = ProductIO.readProduct(sentinelFile.getPath());
                 this.sentinelProductList.add(sentinelProduct);
-                List<File> preprocessedFiles = imagePreprocessor.preprocess(sentinelProduct, this.getBackendConfig().getWorkingDirectory());
-                preprocessedFiles.forEach(pF -> {
-                    try {
-                        preprocessedImages.add(executeGdalWarp(pF, this.getBackendConfig().getEpsg()));
-                    } catch (WacodisProcessingException ex) {
-                        String message = String.format("Error while executing GDAL warp for file: %s", pF.getName());
-                        LOGGER.error(message);
-                        LOGGER.debug(message, ex);
-                    }
-                });
+                preprocessedFiles.addAll(imagePreprocessor.preprocess(sentinelProduct, this.getBackendConfig().getWorkingDirectory()));
             } catch (IOException ex) {
                 LOGGER.error("Error while retrieving Sentinel file: {}. Cause: {}", ois, ex.getMessage());
                 LOGGER.debug("Error while retrieving Sentinel file: {}.", ois, ex);
@@ -240,6 +236,17 @@ public class DetailedLandCoverClassificationAlgorithm extends AbstractAlgorithm
                 LOGGER.debug("Error while preprocessing Sentinel file: {}.", ois, ex);
             }
         });
+        // reproject the files of all products within a single container
+        List<File> preprocessedImages = new ArrayList();
+        this.executeGdalWarpBatch(preprocessedFiles, this.getBackendConfig().getEpsg()).forEach((pF, warp) -> {
+            try {
+                preprocessedImages.add(this.awaitDockerTool(warp));
+            } catch (WacodisProcessingException ex) {
+                String message = String.format("Error while executing GDAL warp for file: %s", pF.getName());
+                LOGGER.error(message);
+                LOGGER.debug(message, ex);
+            }
+        });
         if (preprocessedImages.isEmpty()) {
             throw new WacodisProcessingException("No preprocessed Sentinel files available.");
         }
@@ -120,6 +120,11 @@ public class ForestVitalityChangeAlgorithm extends AbstractAlgorithm {
         this.productMetadata = this.createProductMetadata(Arrays.asList(this.sentinelProduct1, this.sentinelProduct2));
     }
 
+    @Override
+    protected List<String> getSentinelProducts() {
+        return Arrays.asList(this.opticalImagesSource1, this.opticalImagesSource2);
+    }
+
     @Override
     public String getProcessId(){
         return PROCESS_ID;
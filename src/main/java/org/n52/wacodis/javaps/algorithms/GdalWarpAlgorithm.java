@@ -27,6 +27,7 @@ import org.n52.wacodis.javaps.exceptions.WacodisProcessingException;
 import org.n52.wacodis.javaps.command.AbstractCommandValue;
 import org.n52.wacodis.javaps.io.data.binding.complex.GeotiffFileDataBinding;
 import org.n52.wacodis.javaps.io.data.binding.complex.ProductMetadataBinding;
+import org.n52.wacodis.javaps.io.http.ExtractionFilter;
 import org.n52.wacodis.javaps.io.http.SentinelFileDownloader;
 import org.n52.wacodis.javaps.io.metadata.ProductMetadata;
 import org.n52.wacodis.javaps.io.metadata.ProductMetadataCreator;
@@ -61,6 +62,8 @@ public class GdalWarpAlgorithm extends AbstractAlgorithm {
 
     private static final String PROCESS_ID = "de.hsbo.wacodis.gdal_warp";
     private static final String GPF_FILE = "S2_GeoTIFF_Composition.xml";
+    // bands used by the GPF graph
+    private static final ExtractionFilter GPF_BANDS = ExtractionFilter.forBands("B2", "B3", "B8");
     private static final String RESULTNAMEPREFIX = "gdal_reprojection_result";
     private static final String TIFF_EXTENSION = ".tif";
 
@@ -115,9 +118,11 @@ public class GdalWarpAlgorithm extends AbstractAlgorithm {
 
     @Execute
     public void execute() throws WacodisProcessingException {
-        File sentinelFile = downloadSentinelImage();
-        File preprocessedSentinelFile = preprocessSentinelImage();
-        resultFile = this.executeGdalWarp(preprocessedSentinelFile, epsg);
+        resultFile = this.readSentinelProducts(Collections.singletonList(this.opticalImagesSource), () -> {
+            File sentinelFile = downloadSentinelImage();
+            File preprocessedSentinelFile = preprocessSentinelImage();
+            return this.executeGdalWarp(preprocessedSentinelFile, epsg);
+        });
 
         ProductMetadataCreator<Product> metadataCreator = new SentinelProductMetadataCreator();
         try {
@@ -146,9 +151,10 @@ public class GdalWarpAlgorithm extends AbstractAlgorithm {
 
     private File downloadSentinelImage() throws WacodisProcessingException {
         try {
-            File sentinelFile = sentinelDownloader.downloadSentinelFile(
+            File sentinelFile = sentinelDownloader.downloadSentinelProduct(
                     this.opticalImagesSource,
-                    this.getBackendConfig().getWorkingDirectory());
+                    this.getBackendConfig().getWorkingDirectory(),
+                    GPF_BANDS);
             this.sentinelProduct = ProductIO.readProduct(sentinelFile.getPath());
             return sentinelFile;
         } catch (IOException ex) {
@@ -111,6 +111,11 @@ public class SealingFactorAlgorithm extends AbstractAlgorithm {
         this.productMetadata = this.createProductMetadata(Collections.singletonList(this.sentinelProduct));
     }
 
+    @Override
+    protected List<String> getSentinelProducts() {
+        return Collections.singletonList(this.opticalImagesSource);
+    }
+
     @Override
     public String getProcessId(){
         return PROCESS_ID;
@@ -83,29 +83,32 @@ public class Sentinel2ImageToGeoTiffAlgorithm {
 
     @Execute
     public void execute() {
-        try {
-            File sentinelFile = fileDownloader.downloadSentinelFile(imageUrl);
-            Product sentinelProduct = ProductIO.readProduct(sentinelFile.getPath());
-
-            LOGGER.info("Converting Sentinel product to GeoTIFF");
-            File output = createProductOutput(sentinelProduct);
-
+        fileDownloader.readPinnedSentinelProducts(Collections.singletonList(imageUrl), () -> {
             try {
-                this.product = new GenericFileData(output, "image/geotiff");
+                File sentinelFile = fileDownloader.downloadSentinelProduct(imageUrl);
+                Product sentinelProduct = ProductIO.readProduct(sentinelFile.getPath());
+
+                LOGGER.info("Converting Sentinel product to GeoTIFF");
+                File output = createProductOutput(sentinelProduct);
+
+                try {
+                    this.product = new GenericFileData(output, "image/geotiff");
+                } catch (IOException ex) {
+                    throw new WacodisProcessingException("Error while creating generic file data.", ex);
+                }
+
+                ProductMetadataCreator metadataCreator = new SentinelProductMetadataCreator();
+                LOGGER.info("Creating metadata for Sentinel product");
+                this.metadata = metadataCreator.createProductMetadata(PROCESS_ID, ProductIO.readProduct(output.getPath()), Collections.singletonList(sentinelProduct));
+            } catch (WacodisProcessingException ex) {
+                LOGGER.error(ex.getMessage());
+                LOGGER.debug("Error while creating output", ex);
             } catch (IOException ex) {
-                throw new WacodisProcessingException("Error while creating generic file data.", ex);
+                LOGGER.error(ex.getMessage());
+                LOGGER.debug("Error while reading sentinel data", ex);
             }
-
-            ProductMetadataCreator metadataCreator = new SentinelProductMetadataCreator();
-            LOGGER.info("Creating metadata for Sentinel product");
-            this.metadata = metadataCreator.createProductMetadata(PROCESS_ID, ProductIO.readProduct(output.getPath()), Collections.singletonList(sentinelProduct));
-        } catch (WacodisProcessingException ex) {
-            LOGGER.error(ex.getMessage());
-            LOGGER.debug("Error while creating output", ex);
-        } catch (IOException ex) {
-            LOGGER.error(ex.getMessage());
-            LOGGER.debug("Error while reading sentinel data", ex);
-        }
+            return null;
+        });
     }
 
     @ComplexOutput(
@@ -15,72 +15,73 @@
  */
 package org.n52.wacodis.javaps.algorithms;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.Arrays;
+import java.util.List;
 import org.n52.javaps.algorithm.annotation.Algorithm;
 import org.n52.javaps.algorithm.annotation.Execute;
 import org.n52.javaps.algorithm.annotation.LiteralInput;
 import org.n52.javaps.algorithm.annotation.LiteralOutput;
+import org.n52.wacodis.javaps.io.http.ExtractionFilter;
+import org.n52.wacodis.javaps.io.http.PrefetchJob;
+import org.n52.wacodis.javaps.io.http.SentinelFileDownloader;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.ClientHttpRequest;
-import org.springframework.http.client.ClientHttpResponse;
-import org.springframework.web.client.RequestCallback;
-import org.springframework.web.client.ResponseExtractor;
-import org.springframework.web.client.RestTemplate;
 
 /**
+ * WPS process that prefetches Sentinel products into the product cache. The
+ * products are downloaded in the background, so that the process returns at
+ * once with the ID of the prefetch job as handle. The status of the job can be
+ * queried with the {@link SentinelPrefetchStatusAlgorithm}. Subsequent
+ * processes that request the prefetched products will be served from the
+ * cache.
  *
  * @author <a href="mailto:s.drost@52north.org">Sebastian Drost</a>
  */
 @Algorithm(
         identifier = "de.hsbo.wacodis.sentinel_download_process",
         title = "Sentinel Download Process",
-        abstrakt = "Perform a Sentinel file download.",
-        version = "1.0.0",
+        abstrakt = "Prefetch Sentinel products into the product cache.",
+        version = "1.1.0",
         storeSupported = true,
         statusSupported = true)
 public class SentinelImageDownloadAlgorithm {
 
     private static final String PROCESS_ID = "de.hsbo.wacodis.sentinel_download_process";
 
-    private String referenceData;
+    private List<String> referenceData;
+    private List<String> bands;
     private String product;
 
     @Autowired
-    private RestTemplate openAccessHubService;
+    private SentinelFileDownloader sentinelDownloader;
 
     @LiteralInput(
             identifier = "SENTINEL_DATA",
             title = "Sentinel data",
-            abstrakt = "Sentinel data from Open Access Hub",
+            abstrakt = "URLs of Sentinel products from Open Access Hub that shall be prefetched",
             minOccurs = 1,
-            maxOccurs = 1
+            maxOccurs = 100
     )
-    public void setReferenceData(String value) {
+    public void setReferenceData(List<String> value) {
         this.referenceData = value;
     }
 
+    @LiteralInput(
+            identifier = "BANDS",
+            title = "Bands",
+            abstrakt = "Bands that shall be unzipped, e.g. B4. All bands are unzipped if no band is specified.",
+            minOccurs = 0,
+            maxOccurs = 13
+    )
+    public void setBands(List<String> value) {
+        this.bands = value;
+    }
+
     @Execute
     public void execute() {
-        //TODO Resolve ID for optical images and fetch images as GeoTIFF
-
-        // Optional Accept header
-        RequestCallback callback = (ClientHttpRequest request) -> {
-            request.getHeaders()
-                    .setAccept(Arrays.asList(MediaType.APPLICATION_OCTET_STREAM));
-        };
-
-        ResponseExtractor<String> responseExtractor = (ClientHttpResponse response) -> {
-//            File file = Files.response.
-            return response.getStatusText();
-        };
-
-        String code = openAccessHubService.execute(referenceData, HttpMethod.GET, callback, responseExtractor);
-        this.product = code;
+        ExtractionFilter filter = this.bands == null || this.bands.isEmpty()
+                ? ExtractionFilter.ALL
+                : ExtractionFilter.forBands(this.bands.toArray(new String[this.bands.size()]));
+        PrefetchJob job = this.sentinelDownloader.prefetchSentinelProducts(this.referenceData, filter);
+        this.product = job.getId();
     }
 
     @LiteralOutput(identifier = "PRODUCT")
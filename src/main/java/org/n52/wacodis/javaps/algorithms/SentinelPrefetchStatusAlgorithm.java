@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.n52.javaps.algorithm.annotation.Algorithm;
+import org.n52.javaps.algorithm.annotation.Execute;
+import org.n52.javaps.algorithm.annotation.LiteralInput;
+import org.n52.javaps.algorithm.annotation.LiteralOutput;
+import org.n52.wacodis.javaps.exceptions.WacodisProcessingException;
+import org.n52.wacodis.javaps.io.http.PrefetchJob;
+import org.n52.wacodis.javaps.io.http.SentinelFileDownloader;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * WPS process that reports the status of a prefetch job that has been started
+ * by the {@link SentinelImageDownloadAlgorithm}. The status is returned as
+ * JSON document that contains the status of each product, i.e. RUNNING,
+ * CACHED or FAILED.
+ */
+@Algorithm(
+        identifier = "de.hsbo.wacodis.sentinel_prefetch_status_process",
+        title = "Sentinel Prefetch Status Process",
+        abstrakt = "Report the status of a prefetch job for Sentinel products.",
+        version = "1.0.0",
+        storeSupported = true,
+        statusSupported = true)
+public class SentinelPrefetchStatusAlgorithm {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private String jobId;
+    private String status;
+
+    @Autowired
+    private SentinelFileDownloader sentinelDownloader;
+
+    @LiteralInput(
+            identifier = "JOB_ID",
+            title = "Prefetch job ID",
+            abstrakt = "ID of the prefetch job as returned by the Sentinel Download Process",
+            minOccurs = 1,
+            maxOccurs = 1
+    )
+    public void setJobId(String value) {
+        this.jobId = value;
+    }
+
+    @Execute
+    public void execute() throws WacodisProcessingException {
+        PrefetchJob job = this.sentinelDownloader.getPrefetchJob(this.jobId);
+        if (job == null) {
+            throw new WacodisProcessingException(String.format("Unknown or expired prefetch job: %s", this.jobId));
+        }
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        node.put("id", job.getId());
+        node.put("done", job.isDone());
+        ObjectNode products = node.putObject("products");
+        job.getStatus().forEach((url, s) -> products.put(url, s.name()));
+        try {
+            this.status = OBJECT_MAPPER.writeValueAsString(node);
+        } catch (JsonProcessingException ex) {
+            throw new WacodisProcessingException("Error while writing prefetch job status", ex);
+        }
+    }
+
+    @LiteralOutput(identifier = "STATUS")
+    public String getOutput() {
+        return this.status;
+    }
+
+}
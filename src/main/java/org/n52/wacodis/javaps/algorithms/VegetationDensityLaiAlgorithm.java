@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.esa.snap.core.dataio.ProductIO;
@@ -95,6 +96,11 @@ public class VegetationDensityLaiAlgorithm extends AbstractDummyAlgorithm {
         this.productMetadata = this.createProductMetadata(Collections.singletonList(this.sentinelProduct));
     }
 
+    @Override
+    protected List<String> getSentinelProducts() {
+        return Collections.singletonList(this.opticalImagesSource);
+    }
+
     @Override
     public String getProcessId(){
         return PROCESS_ID;
@@ -116,6 +116,11 @@ public class WaterMaskAlgorithm extends AbstractAlgorithm {
         return RESULTNAMEPREFIX;
     }
 
+    @Override
+    protected List<String> getSentinelProducts() {
+        return Collections.singletonList(this.opticalImagesSource);
+    }
+
     @Override
     public String getProcessId() {
         return PROCESS_ID;
@@ -143,7 +148,7 @@ public class WaterMaskAlgorithm extends AbstractAlgorithm {
                 this.getNamingSuffix());
 
         try {
-            File sentinelFile = sentinelDownloader.downloadSentinelFile(
+            File sentinelFile = sentinelDownloader.downloadSentinelProduct(
                     this.opticalImagesSource,
                     this.getBackendConfig().getWorkingDirectory());
             this.sentinelProduct = ProductIO.readProduct(sentinelFile.getPath());
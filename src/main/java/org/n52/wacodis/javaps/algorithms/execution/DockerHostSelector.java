@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.n52.wacodis.javaps.configuration.tools.DockerHostConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places tool executions on the least loaded of several Docker hosts. The
+ * load of a host is the number of running executions relative to the weight
+ * of the host. Hosts whose executions failed repeatedly are excluded by a
+ * circuit breaker until the open time has elapsed. Afterwards a single trial
+ * execution decides whether the host is used again.
+ */
+public class DockerHostSelector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DockerHostSelector.class);
+
+    /**
+     * State of the circuit breaker of a host
+     */
+    public enum CircuitState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long openTime;
+
+    private final Map<String, HostState> hosts = new HashMap<>();
+
+    /**
+     * @param failureThreshold number of consecutive failures after which the
+     *                         circuit of a host is opened
+     * @param openTime         time in milliseconds a host is excluded after
+     *                         its circuit has been opened
+     */
+    public DockerHostSelector(int failureThreshold, long openTime) {
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.openTime = openTime;
+    }
+
+    /**
+     * Selects the least loaded available host and accounts an execution for
+     * it. Each call has to be followed by
+     * {@link #release(org.n52.wacodis.javaps.configuration.tools.DockerHostConfig, boolean)}.
+     *
+     * @param candidates hosts the execution can be placed on
+     * @return the selected host
+     * @throws IllegalStateException if the circuits of all hosts are open
+     */
+    public synchronized DockerHostConfig acquire(List<DockerHostConfig> candidates) {
+        long now = System.currentTimeMillis();
+        DockerHostConfig selected = null;
+        double selectedLoad = Double.MAX_VALUE;
+        for (DockerHostConfig candidate : candidates) {
+            HostState state = this.getState(candidate.getUrl());
+            if (!state.isAvailable(now)) {
+                continue;
+            }
+            double load = (double) state.running / Math.max(candidate.getWeight(), 1);
+            if (load < selectedLoad) {
+                selected = candidate;
+                selectedLoad = load;
+            }
+        }
+        if (selected == null) {
+            throw new IllegalStateException("No healthy docker host available, circuits of all hosts are open: " + candidates);
+        }
+        HostState state = this.getState(selected.getUrl());
+        if (state.circuit == CircuitState.OPEN) {
+            LOGGER.info("trial execution on docker host " + selected.getUrl() + " after open circuit");
+            state.circuit = CircuitState.HALF_OPEN;
+        }
+        state.running++;
+        return selected;
+    }
+
+    /**
+     * Releases an execution on a host
+     *
+     * @param host   the host that has been selected for the execution
+     * @param failed true, if the execution failed because of the host
+     */
+    public synchronized void release(DockerHostConfig host, boolean failed) {
+        HostState state = this.getState(host.getUrl());
+        state.running = Math.max(state.running - 1, 0);
+        if (!failed) {
+            if (state.circuit != CircuitState.CLOSED) {
+                LOGGER.info("closing circuit of docker host " + host.getUrl());
+            }
+            state.failures = 0;
+            state.circuit = CircuitState.CLOSED;
+            return;
+        }
+        state.failures++;
+        if (state.circuit == CircuitState.HALF_OPEN || state.failures >= this.failureThreshold) {
+            LOGGER.warn("opening circuit of docker host " + host.getUrl() + " after " + state.failures + " failed executions");
+            state.circuit = CircuitState.OPEN;
+            state.openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @param url Docker host URL
+     * @return number of running executions on the host
+     */
+    public synchronized int getRunningCount(String url) {
+        return this.getState(url).running;
+    }
+
+    /**
+     * @param url Docker host URL
+     * @return state of the circuit breaker of the host
+     */
+    public synchronized CircuitState getCircuitState(String url) {
+        return this.getState(url).circuit;
+    }
+
+    private HostState getState(String url) {
+        return this.hosts.computeIfAbsent(url, u -> new HostState());
+    }
+
+    private class HostState {
+
+        private int running;
+
+        private int failures;
+
+        private CircuitState circuit = CircuitState.CLOSED;
+
+        private long openedAt;
+
+        private boolean isAvailable(long now) {
+            switch (this.circuit) {
+                case OPEN:
+                    return now - this.openedAt >= openTime;
+                case HALF_OPEN:
+                    return false; //wait for the result of the trial execution
+                default:
+                    return true;
+            }
+        }
+
+    }
+
+}
@@ -15,9 +15,24 @@
  */
 package org.n52.wacodis.javaps.algorithms.execution;
 
-import com.github.dockerjava.core.DefaultDockerClientConfig;
-
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.StringUtils;
 import org.n52.wacodis.javaps.exceptions.WacodisConfigurationException;
@@ -25,17 +40,28 @@ import org.n52.wacodis.javaps.command.AbstractCommandValue;
 import org.n52.wacodis.javaps.command.CommandParameter;
 import org.n52.wacodis.javaps.command.MultipleCommandValue;
 import org.n52.wacodis.javaps.command.ProcessResult;
+import org.n52.wacodis.javaps.command.ToolExecutionProcess;
 import org.n52.wacodis.javaps.command.SingleCommandValue;
+import org.n52.wacodis.javaps.command.docker.ContainerLogCapture;
+import org.n52.wacodis.javaps.command.docker.ContainerReaper;
 import org.n52.wacodis.javaps.command.docker.DockerContainer;
+import org.n52.wacodis.javaps.command.docker.DockerContainerPool;
 import org.n52.wacodis.javaps.command.docker.DockerController;
+import org.n52.wacodis.javaps.command.docker.DockerControllerRegistry;
+import org.n52.wacodis.javaps.command.docker.DockerExecProcess;
 import org.n52.wacodis.javaps.command.docker.DockerProcess;
 import org.n52.wacodis.javaps.command.docker.DockerRunCommandConfiguration;
 import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
 import org.n52.wacodis.javaps.configuration.tools.ArgumentConfig;
 import org.n52.wacodis.javaps.configuration.tools.CommandConfig;
 import org.n52.wacodis.javaps.configuration.tools.DockerConfig;
+import org.n52.wacodis.javaps.configuration.tools.DockerHostConfig;
+import org.n52.wacodis.javaps.configuration.tools.PoolConfig;
+import org.n52.wacodis.javaps.configuration.tools.ResourcesConfig;
+import org.n52.wacodis.javaps.configuration.tools.SchedulingConfig;
 import org.n52.wacodis.javaps.configuration.tools.ToolConfig;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -45,13 +71,39 @@ import org.springframework.stereotype.Component;
  * @author <a href="mailto:s.drost@52north.org">Sebastian Drost</a>
  */
 @Component
-public class EoToolExecutor {
+public class EoToolExecutor implements DisposableBean {
 
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(EoToolExecutor.class);
 
+    private static final String[] THREAD_ENVIRONMENT_VARIABLES = {"OMP_NUM_THREADS", "GDAL_NUM_THREADS"};
+
+    private static final int DEFAULT_CIRCUIT_FAILURES = 3;
+
+    private static final long DEFAULT_CIRCUIT_OPEN_TIME = 60000;
+
     @Autowired
     private WacodisBackendConfig config;
 
+    @Autowired
+    private DockerControllerRegistry dockerControllerRegistry;
+
+    @Autowired(required = false)
+    private ToolExecutionScheduler scheduler;
+
+    @Autowired(required = false)
+    private DockerHostSelector hostSelector = new DockerHostSelector(DEFAULT_CIRCUIT_FAILURES, DEFAULT_CIRCUIT_OPEN_TIME);
+
+    @Autowired(required = false)
+    private ToolUsageStatistics usageStatistics = new ToolUsageStatistics(ToolUsageStatistics.DEFAULT_WINDOW_SIZE);
+
+    private final ConcurrentMap<String, DockerContainerPool> containerPools = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService deadlineTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "eo-tool-deadline-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Excecute tool as docker container synchronously
      *
@@ -62,30 +114,149 @@ public class EoToolExecutor {
      * @throws org.n52.wacodis.javaps.exceptions.WacodisConfigurationException
      */
     public ProcessResult executeTool(Map<String, AbstractCommandValue> input, ToolConfig config) throws InterruptedException, WacodisConfigurationException {
+        CompletableFuture<ProcessResult> execution = this.executeToolAsync(input, config);
+        try {
+            return execution.get();
+        } catch (InterruptedException ex) {
+            execution.cancel(true); //stops and removes the container
+            throw ex;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("execution of tool " + config.getId() + " failed", ex.getCause());
+        }
+    }
+
+    /**
+     * Excecute tool as docker container asynchronously. No thread is blocked
+     * while the container is running. If admission control is enabled, the
+     * container is not started before the scheduler admits the execution. If
+     * several Docker hosts are configured, the execution is placed on the
+     * least loaded healthy host when it starts. The execution is aborted if
+     * it exceeds the timeout of the tool. Cancelling the returned future
+     * aborts the execution as well, i.e. the container is stopped and removed
+     * and the execution leaves the scheduler.
+     *
+     * @param input  {@link Map<K,V>] that holds input tool argument values as {@link AbstractCommandValue}
+     * @param config defines docker image and run command parameters
+     * @return future that completes with the {@link ProcessResult} when the container finished
+     * @throws org.n52.wacodis.javaps.exceptions.WacodisConfigurationException
+     */
+    public CompletableFuture<ProcessResult> executeToolAsync(Map<String, AbstractCommandValue> input, ToolConfig config) throws WacodisConfigurationException {
         LOGGER.debug("Configure execution of EO tool: " + config.getId()
                 + "\nDocker config: " + config.getDocker()
                 + "\nCommand config: " + config.getCommand()
                 + "\nInput parameter values: " + input
         );
         DockerConfig dockerConfig = config.getDocker();
-        CommandConfig cmdConfig = config.getCommand();
+        DockerRunCommandConfiguration dockerRunConfig = this.initRunConfiguration(config.getCommand(), input);
+        if (!isPooled(dockerConfig) && dockerConfig.getResources() != null) {
+            this.applyResources(dockerRunConfig, dockerConfig.getResources());
+        }
+        Supplier<CompletableFuture<ProcessResult>> execution = () -> this.executeOnHost(config, dockerRunConfig);
+        if (this.scheduler == null) {
+            return execution.get();
+        }
+        SchedulingConfig scheduling = config.getScheduling() != null ? config.getScheduling() : new SchedulingConfig();
+        double cpus = scheduling.getCpus();
+        long memory = scheduling.getMemoryBytes();
+        // without explicit reservations the observed usage or the container limits are reserved
+        cpus = cpus > 0 ? cpus : this.usageStatistics.getCpuReservation(config.getId());
+        memory = memory > 0 ? memory : this.usageStatistics.getMemoryReservation(config.getId());
+        ResourcesConfig resources = dockerConfig.getResources();
+        if (resources != null) {
+            cpus = cpus > 0 ? cpus : resources.getCpus();
+            memory = memory > 0 ? memory : resources.getMemoryBytes();
+        }
+        return this.scheduler.submit(dockerConfig.getImage(), scheduling.getPriority(),
+                cpus, memory, execution);
+    }
+
+    private CompletableFuture<ProcessResult> executeOnHost(ToolConfig config, DockerRunCommandConfiguration dockerRunConfig) {
+        DockerConfig dockerConfig = config.getDocker();
+        if (dockerConfig.getHosts() == null || dockerConfig.getHosts().isEmpty()) {
+            return this.executeOnHost(config, dockerRunConfig, dockerConfig.getHost(), this.config.getWorkingDirectory());
+        }
+        DockerHostConfig host;
+        try {
+            host = this.hostSelector.acquire(dockerConfig.getHosts());
+        } catch (IllegalStateException ex) {
+            CompletableFuture<ProcessResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+        String workingDirectory = host.getWorkingDirectory() != null ? host.getWorkingDirectory() : this.config.getWorkingDirectory();
+        CompletableFuture<ProcessResult> execution = this.executeOnHost(config, dockerRunConfig, host.getUrl(), workingDirectory);
+        execution.whenComplete((result, ex) -> this.hostSelector.release(host, isHostFailure(ex)));
+        return execution;
+    }
+
+    private CompletableFuture<ProcessResult> executeOnHost(ToolConfig config, DockerRunCommandConfiguration dockerRunConfig, String host, String workingDirectory) {
+        long timeout = config.getScheduling() != null ? config.getScheduling().getTimeout() : 0;
+        dockerRunConfig.addLabel(ContainerReaper.TOOL_LABEL, String.valueOf(config.getId()));
+        if (timeout > 0) {
+            dockerRunConfig.addLabel(ContainerReaper.DEADLINE_LABEL,
+                    String.valueOf(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout)));
+        }
+        CompletableFuture<ProcessResult> execution;
+        try {
+            execution = this.initToolProcess(config, dockerRunConfig, host, workingDirectory).executeAsync();
+        } catch (WacodisConfigurationException | RuntimeException ex) {
+            execution = new CompletableFuture<>();
+            execution.completeExceptionally(ex);
+        }
+        execution.thenAccept(result -> this.usageStatistics.record(config.getId(), result));
+        if (timeout > 0 && !execution.isDone()) {
+            CompletableFuture<ProcessResult> running = execution;
+            ScheduledFuture<?> deadline = this.deadlineTimer.schedule(() -> {
+                if (running.completeExceptionally(new TimeoutException("execution of tool " + config.getId()
+                        + " exceeded its timeout of " + timeout + " s"))) {
+                    LOGGER.warn("execution of tool " + config.getId() + " exceeded its timeout of " + timeout + " s, aborting execution");
+                }
+            }, timeout, TimeUnit.SECONDS);
+            execution.whenComplete((result, ex) -> deadline.cancel(false));
+        }
+        return execution;
+    }
 
-        DockerController dockerController = initDockerController(dockerConfig);
-        DockerRunCommandConfiguration dockerRunConfig = this.initRunConfiguration(cmdConfig, input);
-        dockerRunConfig.addVolumeBinding(concatVolumeBinding(this.config.getWorkingDirectory(), dockerConfig.getWorkDir()));
+    /**
+     * Aborted executions do not count as failures of the Docker host
+     */
+    private static boolean isHostFailure(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+        return cause != null && !(cause instanceof CancellationException) && !(cause instanceof TimeoutException);
+    }
+
+    private ToolExecutionProcess initToolProcess(ToolConfig config, DockerRunCommandConfiguration dockerRunConfig, String host, String workingDirectory) throws WacodisConfigurationException {
+        DockerConfig dockerConfig = config.getDocker();
+        // the controller is shared by all tool executions on the same host and must not be closed
+        DockerController dockerController = this.dockerControllerRegistry.getController(host);
+        if (isPooled(dockerConfig)) {
+            DockerContainerPool pool = this.getContainerPool(config, dockerController, host, workingDirectory);
+            LOGGER.info("executing tool inside pooled docker container of tool " + config.getId()
+                    + ", host: " + host
+                    + ", image: " + dockerConfig.getImage()
+                    + ", run cmd: " + runCmdAsString(dockerRunConfig));
+            DockerExecProcess process = new DockerExecProcess(pool, dockerRunConfig);
+            process.setLogCaptureFactory(this.initLogCaptureFactory(config.getId()));
+            return process;
+        }
+        dockerRunConfig.addVolumeBinding(concatVolumeBinding(workingDirectory, dockerConfig.getWorkDir()));
 
         DockerContainer dockerContainer = new DockerContainer(dockerConfig.getContainer(), dockerConfig.getImage());
 
         LOGGER.info("executing tool inside docker container "
                 + dockerContainer.getContainerName()
+                + ", host: " + host
                 + ", image: " + dockerContainer.getImageName()
                 + ", volume bindings: " + dockerRunConfig.getVolumeBindings()
                 + ", run cmd: " + runCmdAsString(dockerRunConfig));
 
-        DockerProcess toolProcess = new DockerProcess(dockerController, dockerContainer, dockerRunConfig);
-        ProcessResult processResult = toolProcess.execute();
-
-        return processResult;
+        DockerProcess process = new DockerProcess(dockerController, dockerContainer, dockerRunConfig);
+        process.setLogCaptureFactory(this.initLogCaptureFactory(dockerContainer.getContainerName()));
+        process.setStatsSampling(this.config.isDockerStatsSampling());
+        return process;
     }
 
     /**
@@ -138,11 +309,99 @@ public class EoToolExecutor {
         return runConfig;
     }
 
-    private DockerController initDockerController(DockerConfig dockerConfig) {
-        DefaultDockerClientConfig hostConfig = DefaultDockerClientConfig.createDefaultConfigBuilder()
-                .withDockerHost(dockerConfig.getHost()).build();
+    /**
+     * Applies the resources of a {@link ResourcesConfig} to a
+     * {@link DockerRunCommandConfiguration}
+     *
+     * @param runConfig {@link DockerRunCommandConfiguration} of the container
+     * @param resources {@link ResourcesConfig} of the tool
+     * @throws WacodisConfigurationException if a size is not valid
+     */
+    public void applyResources(DockerRunCommandConfiguration runConfig, ResourcesConfig resources) throws WacodisConfigurationException {
+        try {
+            runConfig.setCpus(resources.getCpus());
+            runConfig.setCpusetCpus(StringUtils.trimToNull(resources.getCpuset()));
+            long memory = resources.getMemoryBytes();
+            runConfig.setMemory(memory > 0 ? memory : null);
+            long shmSize = resources.getShmSizeBytes();
+            runConfig.setShmSize(shmSize > 0 ? shmSize : null);
+        } catch (IllegalArgumentException ex) {
+            throw new WacodisConfigurationException("Invalid resources config: " + ex.getMessage(), ex);
+        }
+        if (resources.getTmpfs() != null) {
+            resources.getTmpfs().forEach((path, options) -> runConfig.addTmpfsMount(path, options));
+        }
+        if (resources.getThreads() > 0) {
+            for (String variable : THREAD_ENVIRONMENT_VARIABLES) {
+                runConfig.addEnvironmentVariable(variable, String.valueOf(resources.getThreads()));
+            }
+        }
+        if (resources.getEnvironment() != null) {
+            resources.getEnvironment().forEach((name, value) -> runConfig.addEnvironmentVariable(name, value));
+        }
+    }
+
+    /**
+     * Closes the container pools of all tools and stops the deadline timer
+     */
+    @Override
+    public void destroy() {
+        this.deadlineTimer.shutdownNow();
+        List<DockerContainerPool> pools = new ArrayList<>(this.containerPools.values());
+        this.containerPools.clear();
+        pools.forEach(DockerContainerPool::close);
+    }
 
-        return new DockerController(hostConfig);
+    private static boolean isPooled(DockerConfig dockerConfig) {
+        return dockerConfig.getPool() != null && dockerConfig.getPool().getSize() > 0;
+    }
+
+    private DockerContainerPool getContainerPool(ToolConfig config, DockerController dockerController, String host, String workingDirectory) throws WacodisConfigurationException {
+        DockerConfig dockerConfig = config.getDocker();
+        String key = config.getId() + "@" + host;
+        DockerContainerPool pool = this.containerPools.get(key);
+        if (pool != null && pool.getDockerController() == dockerController) {
+            return pool;
+        }
+        // the controller of the docker host has been replaced or the pool does not exist yet
+        DockerRunCommandConfiguration containerConfig = new DockerRunCommandConfiguration();
+        PoolConfig poolConfig = dockerConfig.getPool();
+        if (poolConfig.getIdleCommand() != null) {
+            poolConfig.getIdleCommand().forEach(c -> containerConfig.addCommandParameter(new CommandParameter("", c)));
+        }
+        containerConfig.addVolumeBinding(concatVolumeBinding(workingDirectory, dockerConfig.getWorkDir()));
+        containerConfig.addLabel(ContainerReaper.TOOL_LABEL, String.valueOf(config.getId()));
+        containerConfig.addLabel(ContainerReaper.POOL_LABEL, String.valueOf(config.getId()));
+        containerConfig.addLabel(ContainerReaper.INSTANCE_LABEL, this.config.getDockerInstance());
+        containerConfig.addLabel(ContainerReaper.PROCESS_LABEL, ContainerReaper.PROCESS_ID);
+        if (dockerConfig.getResources() != null) {
+            this.applyResources(containerConfig, dockerConfig.getResources());
+        }
+        DockerContainerPool newPool = new DockerContainerPool(dockerController,
+                new DockerContainer(config.getId(), dockerConfig.getImage()), containerConfig,
+                poolConfig.getSize(), poolConfig.getMaxRuns());
+        DockerContainerPool current = this.containerPools.compute(key, (k, p) -> p != null && p.getDockerController() == dockerController ? p : newPool);
+        if (current == newPool && pool != null) {
+            pool.close();
+        }
+        return current;
+    }
+
+    /**
+     * Captures the container log of a single tool execution. The complete log
+     * is written to a rotating file inside the log directory, if configured,
+     * while only the log tail is kept in memory.
+     */
+    private Function<String, ContainerLogCapture> initLogCaptureFactory(String name) {
+        long tailSize = this.config.getDockerLogTailSize();
+        int tail = tailSize > 0 ? (int) Math.min(tailSize, Integer.MAX_VALUE) : ContainerLogCapture.DEFAULT_TAIL_SIZE;
+        if (StringUtils.isBlank(this.config.getDockerLogDirectory())) {
+            return id -> new ContainerLogCapture(id, tail);
+        }
+        File logFile = new File(this.config.getDockerLogDirectory(),
+                name + "-" + UUID.randomUUID().toString().substring(0, 8) + ".log");
+        return id -> new ContainerLogCapture(id, logFile, this.config.getDockerLogMaxFileSize(),
+                this.config.getDockerLogMaxFiles(), tail);
     }
 
     private String concatVolumeBinding(String hostFolder, String containerFolder) {
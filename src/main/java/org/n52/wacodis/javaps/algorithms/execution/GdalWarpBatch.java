@@ -0,0 +1,219 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Batch of GDAL warp reprojections that will be executed within a single
+ * container. The batch is written as shell script into the working directory
+ * that runs a bounded number of gdalwarp processes in parallel. For each file
+ * the script stores the output of gdalwarp in a log file next to the output
+ * file and appends the exit code to a status file, so that the result of each
+ * file can be reported separately.
+ */
+public class GdalWarpBatch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GdalWarpBatch.class);
+
+    private static final String SCRIPT_EXTENSION = ".sh";
+
+    private static final String STATUS_EXTENSION = ".status";
+
+    private static final String LOG_EXTENSION = ".log";
+
+    private final String epsg;
+
+    private final int parallelism;
+
+    private final Map<File, File> files = new LinkedHashMap<>();
+
+    /**
+     * @param epsg        target EPSG code, e.g. 'EPSG:32632'
+     * @param parallelism maximum number of gdalwarp processes that run in
+     *                    parallel
+     */
+    public GdalWarpBatch(String epsg, int parallelism) {
+        this.epsg = epsg;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Adds a reprojection to the batch. Input and output file must be located
+     * in the working directory.
+     *
+     * @param input  file to reproject
+     * @param output reprojected file
+     */
+    public void add(File input, File output) {
+        this.files.put(input, output);
+    }
+
+    /**
+     * @return the output files by input file in the order they were added
+     */
+    public Map<File, File> getFiles() {
+        return new LinkedHashMap<>(files);
+    }
+
+    public boolean isEmpty() {
+        return this.files.isEmpty();
+    }
+
+    /**
+     * Writes the script of the batch
+     *
+     * @param script  script file inside the working directory
+     * @param workDir path of the working directory inside the container
+     * @throws IOException if the script could not be written
+     */
+    public void writeScript(File script, String workDir) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("#!/bin/sh").append("\n");
+        builder.append("warp() {").append("\n");
+        builder.append("    gdalwarp -t_srs \"$1\" \"$2\" \"$3\" > \"$4\" 2>&1").append("\n");
+        builder.append("    echo \"$? $2\" >> ").append(quote(containerPath(workDir, getStatusFile(script)))).append("\n");
+        builder.append("}").append("\n");
+        int running = 0;
+        for (Map.Entry<File, File> file : this.files.entrySet()) {
+            builder.append("warp ")
+                    .append(quote(this.epsg)).append(" ")
+                    .append(quote(containerPath(workDir, file.getKey()))).append(" ")
+                    .append(quote(containerPath(workDir, file.getValue()))).append(" ")
+                    .append(quote(containerPath(workDir, getLogFile(file.getValue()))))
+                    .append(" &").append("\n");
+            if (++running == this.parallelism) {
+                builder.append("wait").append("\n");
+                running = 0;
+            }
+        }
+        if (running > 0) {
+            builder.append("wait").append("\n");
+        }
+        Files.write(script.toPath(), builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the exit codes of gdalwarp that have been recorded by the script.
+     * Files without an exit code, e.g. because the script has been aborted,
+     * are not contained.
+     *
+     * @param script  script file inside the working directory
+     * @param workDir path of the working directory inside the container
+     * @return the exit code by input file
+     * @throws IOException if the status file could not be read
+     */
+    public Map<File, Integer> readExitCodes(File script, String workDir) throws IOException {
+        Map<String, File> inputs = new HashMap<>();
+        this.files.keySet().forEach(f -> inputs.put(containerPath(workDir, f), f));
+
+        Map<File, Integer> exitCodes = new HashMap<>();
+        File statusFile = getStatusFile(script);
+        if (!statusFile.exists()) {
+            return exitCodes;
+        }
+        for (String line : Files.readAllLines(statusFile.toPath(), StandardCharsets.UTF_8)) {
+            String[] status = line.trim().split(" ", 2);
+            File input = status.length == 2 ? inputs.get(status[1]) : null;
+            if (input == null) {
+                LOGGER.warn("unknown gdal warp batch status: " + line);
+                continue;
+            }
+            try {
+                exitCodes.put(input, Integer.parseInt(status[0]));
+            } catch (NumberFormatException ex) {
+                LOGGER.warn("invalid gdal warp batch status: " + line);
+            }
+        }
+        return exitCodes;
+    }
+
+    /**
+     * Reads the gdalwarp output of a single file
+     *
+     * @param input the input file
+     * @return the output of gdalwarp or an empty string, if no output is
+     * available
+     */
+    public String readOutput(File input) {
+        File output = this.files.get(input);
+        if (output == null || !getLogFile(output).exists()) {
+            return "";
+        }
+        try {
+            return new String(Files.readAllBytes(getLogFile(output).toPath()), StandardCharsets.UTF_8).trim();
+        } catch (IOException ex) {
+            LOGGER.warn("could not read gdal warp output for file " + input.getName() + ": " + ex.getMessage());
+            return "";
+        }
+    }
+
+    /**
+     * Deletes the script, the status file and the gdalwarp log files
+     *
+     * @param script script file inside the working directory
+     */
+    public void cleanUp(File script) {
+        List<File> files = new ArrayList<>();
+        files.add(script);
+        files.add(getStatusFile(script));
+        this.files.values().forEach(f -> files.add(getLogFile(f)));
+        for (File file : files) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException ex) {
+                LOGGER.warn("could not delete gdal warp batch file " + file + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param directory directory to create the script in
+     * @param name      base name of the script
+     * @return script file
+     */
+    public static File createScriptFile(String directory, String name) {
+        return new File(directory, name + SCRIPT_EXTENSION);
+    }
+
+    private static File getStatusFile(File script) {
+        return new File(script.getPath() + STATUS_EXTENSION);
+    }
+
+    private static File getLogFile(File output) {
+        return new File(output.getPath() + LOG_EXTENSION);
+    }
+
+    private static String containerPath(String workDir, File file) {
+        return FilenameUtils.separatorsToUnix(FilenameUtils.concat(workDir, file.getName()));
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control for EO tool executions. A tool execution is only started
+ * if the global and the per image concurrency limits permit it and if the CPU
+ * and memory reservations of the tool fit into the capacity of the Docker
+ * host. Otherwise it waits in a queue that is either processed in submission
+ * order or by tool priority. A limit or capacity &lt;= 0 means unlimited.
+ * Executions are admitted before a Docker host is selected, so for tools with
+ * several Docker hosts the capacity is a single pool that covers the sum of
+ * all hosts.
+ * Admitted executions are started on a separate executor, so that the thread
+ * that completes an execution, e.g. the callback of a Docker event, does not
+ * start the next one.
+ */
+public class ToolExecutionScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ToolExecutionScheduler.class);
+
+    /**
+     * Order in which waiting tool executions are started
+     */
+    public enum Policy {
+        FIFO, PRIORITY
+    }
+
+    private final int maxConcurrent;
+
+    private final int maxPerImage;
+
+    private final double totalCpus;
+
+    private final long totalMemory;
+
+    private final PriorityQueue<Execution<?>> queue;
+
+    private final Executor starter;
+
+    private final ExecutorService ownedStarter;
+
+    private final Map<String, Integer> runningPerImage = new HashMap<>();
+
+    private long sequence;
+
+    private int running;
+
+    private double reservedCpus;
+
+    private long reservedMemory;
+
+    /**
+     * @param maxConcurrent Maximum number of concurrent tool executions
+     * @param maxPerImage   Maximum number of concurrent tool executions per
+     *                      Docker image
+     * @param totalCpus     Number of CPUs that can be reserved by tool
+     *                      executions
+     * @param totalMemory   Memory in bytes that can be reserved by tool
+     *                      executions
+     * @param policy        Order in which waiting tool executions are started
+     */
+    public ToolExecutionScheduler(int maxConcurrent, int maxPerImage, double totalCpus, long totalMemory, Policy policy) {
+        this(maxConcurrent, maxPerImage, totalCpus, totalMemory, policy, null);
+    }
+
+    /**
+     * @param maxConcurrent Maximum number of concurrent tool executions
+     * @param maxPerImage   Maximum number of concurrent tool executions per
+     *                      Docker image
+     * @param totalCpus     Number of CPUs that can be reserved by tool
+     *                      executions
+     * @param totalMemory   Memory in bytes that can be reserved by tool
+     *                      executions
+     * @param policy        Order in which waiting tool executions are started
+     * @param starter       {@link Executor} that starts admitted executions
+     *                      or null to start them on an own thread pool
+     */
+    public ToolExecutionScheduler(int maxConcurrent, int maxPerImage, double totalCpus, long totalMemory, Policy policy,
+            Executor starter) {
+        this.ownedStarter = starter != null ? null : Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "tool-execution-starter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.starter = starter != null ? starter : this.ownedStarter;
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerImage = maxPerImage;
+        this.totalCpus = totalCpus;
+        this.totalMemory = totalMemory;
+        Comparator<Execution<?>> order = Comparator.comparingLong(e -> e.sequence);
+        if (policy == Policy.PRIORITY) {
+            order = Comparator.<Execution<?>>comparingInt(e -> -e.priority).thenComparingLong(e -> e.sequence);
+        }
+        this.queue = new PriorityQueue<>(order);
+    }
+
+    /**
+     * Submits a tool execution. The task is started as soon as the limits
+     * permit it. Cancelling the returned future removes a waiting execution
+     * from the queue or cancels the future of a running task, which frees its
+     * reservations.
+     *
+     * @param <T>      Result type of the task
+     * @param image    Docker image of the tool
+     * @param priority Priority of the tool, higher values are started first if
+     *                 the priority policy is used
+     * @param cpus     Number of CPUs reserved by the tool
+     * @param memory   Memory in bytes reserved by the tool
+     * @param task     starts the tool execution
+     * @return future that completes with the result of the task
+     */
+    public <T> CompletableFuture<T> submit(String image, int priority, double cpus, long memory, Supplier<CompletableFuture<T>> task) {
+        Execution<T> execution = new Execution<>(image, priority,
+                this.totalCpus > 0 ? Math.min(Math.max(cpus, 0), this.totalCpus) : 0,
+                this.totalMemory > 0 ? Math.min(Math.max(memory, 0), this.totalMemory) : 0,
+                task);
+        synchronized (this) {
+            execution.sequence = this.sequence++;
+            this.queue.add(execution);
+        }
+        // a waiting execution that is cancelled may have blocked the executions behind it
+        execution.result.whenComplete((r, ex) -> {
+            if (this.dequeue(execution)) {
+                this.start(this.admit());
+            }
+        });
+        List<Execution<?>> admitted = this.admit();
+        if (!admitted.contains(execution)) {
+            LOGGER.info("queued execution of image " + image + ", queue depth: " + this.getQueueDepth()
+                    + ", running: " + this.getRunningCount());
+        }
+        this.start(admitted);
+        return execution.result;
+    }
+
+    /**
+     * @return number of tool executions waiting in the queue
+     */
+    public synchronized int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * @param image Docker image
+     * @return number of tool executions for the image waiting in the queue
+     */
+    public synchronized int getQueueDepth(String image) {
+        return (int) this.queue.stream().filter(e -> e.image.equals(image)).count();
+    }
+
+    /**
+     * @return number of running tool executions
+     */
+    public synchronized int getRunningCount() {
+        return this.running;
+    }
+
+    /**
+     * @return number of CPUs reserved by running tool executions
+     */
+    public synchronized double getReservedCpus() {
+        return this.reservedCpus;
+    }
+
+    /**
+     * @return memory in bytes reserved by running tool executions
+     */
+    public synchronized long getReservedMemory() {
+        return this.reservedMemory;
+    }
+
+    /**
+     * Removes all executions from the queue that may be started now and
+     * reserves their resources. Executions that are blocked by the per image
+     * limit are skipped, while the first execution that is blocked by the
+     * global limits stops the admission to preserve the queue order.
+     */
+    private synchronized List<Execution<?>> admit() {
+        List<Execution<?>> admitted = new ArrayList<>();
+        List<Execution<?>> skipped = new ArrayList<>();
+        while (!this.queue.isEmpty()) {
+            Execution<?> next = this.queue.peek();
+            if (next.result.isDone()) {
+                // cancelled while waiting
+                this.queue.poll();
+                continue;
+            }
+            if (this.maxConcurrent > 0 && this.running >= this.maxConcurrent) {
+                break;
+            }
+            if (this.maxPerImage > 0 && this.runningPerImage.getOrDefault(next.image, 0) >= this.maxPerImage) {
+                skipped.add(this.queue.poll());
+                continue;
+            }
+            if (this.totalCpus > 0 && this.reservedCpus + next.cpus > this.totalCpus
+                    || this.totalMemory > 0 && this.reservedMemory + next.memory > this.totalMemory) {
+                break;
+            }
+            this.queue.poll();
+            this.running++;
+            this.runningPerImage.merge(next.image, 1, Integer::sum);
+            this.reservedCpus += next.cpus;
+            this.reservedMemory += next.memory;
+            admitted.add(next);
+        }
+        this.queue.addAll(skipped);
+        return admitted;
+    }
+
+    private synchronized boolean dequeue(Execution<?> execution) {
+        return this.queue.remove(execution);
+    }
+
+    /**
+     * Hands admitted executions over to the starter. Executions that are
+     * rejected, e.g. because the starter has been shut down, fail and free
+     * their reservations.
+     */
+    private void start(List<Execution<?>> admitted) {
+        for (Execution<?> execution : admitted) {
+            try {
+                this.starter.execute(execution::start);
+            } catch (RejectedExecutionException ex) {
+                this.releaseReservation(execution);
+                execution.result.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void release(Execution<?> execution) {
+        this.releaseReservation(execution);
+        this.start(this.admit());
+    }
+
+    private synchronized void releaseReservation(Execution<?> execution) {
+        this.running--;
+        this.runningPerImage.computeIfPresent(execution.image, (k, v) -> v > 1 ? v - 1 : null);
+        this.reservedCpus = Math.max(this.reservedCpus - execution.cpus, 0);
+        this.reservedMemory -= execution.memory;
+    }
+
+    /**
+     * Shuts down the own thread pool that starts admitted executions
+     */
+    public void close() {
+        if (this.ownedStarter != null) {
+            this.ownedStarter.shutdownNow();
+        }
+    }
+
+    private class Execution<T> {
+
+        private final String image;
+
+        private final int priority;
+
+        private final double cpus;
+
+        private final long memory;
+
+        private final Supplier<CompletableFuture<T>> task;
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private long sequence;
+
+        private Execution(String image, int priority, double cpus, long memory, Supplier<CompletableFuture<T>> task) {
+            this.image = image;
+            this.priority = priority;
+            this.cpus = cpus;
+            this.memory = memory;
+            this.task = task;
+        }
+
+        private void start() {
+            LOGGER.debug("starting execution of image " + this.image + ", reserved cpus: " + this.cpus
+                    + ", reserved memory: " + this.memory);
+            CompletableFuture<T> execution;
+            try {
+                execution = this.task.get();
+            } catch (RuntimeException ex) {
+                execution = new CompletableFuture<>();
+                execution.completeExceptionally(ex);
+            }
+            CompletableFuture<T> started = execution;
+            this.result.whenComplete((r, ex) -> started.cancel(true));
+            execution.whenComplete((r, ex) -> {
+                release(this);
+                if (ex != null) {
+                    this.result.completeExceptionally(ex);
+                } else {
+                    this.result.complete(r);
+                }
+            });
+        }
+
+    }
+
+}
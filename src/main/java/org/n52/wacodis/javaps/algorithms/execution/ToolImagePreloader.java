@@ -0,0 +1,276 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import com.github.dockerjava.api.model.PullResponseItem;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import org.n52.wacodis.javaps.command.CommandParameter;
+import org.n52.wacodis.javaps.command.docker.DockerContainer;
+import org.n52.wacodis.javaps.command.docker.DockerController;
+import org.n52.wacodis.javaps.command.docker.DockerControllerRegistry;
+import org.n52.wacodis.javaps.command.docker.DockerRunCommandConfiguration;
+import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
+import org.n52.wacodis.javaps.configuration.tools.DockerConfig;
+import org.n52.wacodis.javaps.configuration.tools.ToolConfig;
+import org.n52.wacodis.javaps.configuration.tools.ToolConfigParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pulls the Docker images of all EO tools that are configured inside the tool
+ * config directory at startup, so that the first tool executions do not stall
+ * while the images are pulled. Images of tools with several
+ * {@link DockerConfig#getHosts()} are pulled on each of the hosts. Optionally, a no-op container is run per image
+ * to warm up the image layers. The startup blocks until all images have been
+ * preloaded, so that no tool execution starts before, failures are logged but
+ * do not prevent the startup. A warm-up container that does not exit within
+ * the configured timeout is removed.
+ */
+@Component
+public class ToolImagePreloader implements InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ToolImagePreloader.class);
+
+    private static final long PROGRESS_LOG_INTERVAL = 10000;
+
+    private WacodisBackendConfig config;
+
+    private ToolConfigParser toolConfigParser;
+
+    private DockerControllerRegistry dockerControllerRegistry;
+
+    @Autowired
+    public void setConfig(WacodisBackendConfig config) {
+        this.config = config;
+    }
+
+    @Autowired
+    public void setToolConfigParser(ToolConfigParser toolConfigParser) {
+        this.toolConfigParser = toolConfigParser;
+    }
+
+    @Autowired
+    public void setDockerControllerRegistry(DockerControllerRegistry dockerControllerRegistry) {
+        this.dockerControllerRegistry = dockerControllerRegistry;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (this.config.isDockerPrepull()) {
+            this.preload();
+        }
+    }
+
+    /**
+     * Pulls the images of all EO tools in parallel and blocks until all pulls
+     * finished
+     */
+    public void preload() {
+        Map<String, ImagePreload> imagePreloads = new LinkedHashMap<>();
+        for (ToolConfig toolConfig : this.scanToolConfigs(new File(this.config.getToolConfigDirectory()))) {
+            DockerConfig docker = toolConfig.getDocker();
+            if (docker != null && docker.getImage() != null) {
+                for (String host : getHosts(docker)) {
+                    imagePreloads.putIfAbsent(host + "|" + docker.getImage(), new ImagePreload(toolConfig, host));
+                }
+            }
+        }
+        LOGGER.info("preloading " + imagePreloads.size() + " docker images of EO tools");
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(this.config.getDockerPrepullThreads(), 1));
+        try {
+            List<CompletableFuture<Void>> preloads = new ArrayList<>();
+            imagePreloads.values().forEach(p -> preloads.add(CompletableFuture.runAsync(() -> this.preloadImage(p.toolConfig, p.host), executor)));
+            CompletableFuture.allOf(preloads.toArray(new CompletableFuture<?>[preloads.size()])).join();
+        } finally {
+            executor.shutdown();
+        }
+        LOGGER.info("preloaded docker images of EO tools, ready for tool executions");
+    }
+
+    private static List<String> getHosts(DockerConfig docker) {
+        List<String> hosts = new ArrayList<>();
+        if (docker.getHosts() == null || docker.getHosts().isEmpty()) {
+            hosts.add(docker.getHost());
+        } else {
+            docker.getHosts().forEach(h -> hosts.add(h.getUrl()));
+        }
+        return hosts;
+    }
+
+    private List<ToolConfig> scanToolConfigs(File toolConfigDirectory) {
+        List<ToolConfig> toolConfigs = new ArrayList<>();
+        File[] files = toolConfigDirectory.listFiles((dir, name) -> name.endsWith(".yml") || name.endsWith(".yaml"));
+        if (files == null) {
+            LOGGER.warn("tool config directory " + toolConfigDirectory + " can not be read");
+            return toolConfigs;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            try (InputStream in = new FileInputStream(file)) {
+                toolConfigs.add(this.toolConfigParser.parse(in));
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.warn("could not parse tool config " + file + ": " + ex.getMessage());
+            }
+        }
+        return toolConfigs;
+    }
+
+    private void preloadImage(ToolConfig toolConfig, String host) {
+        DockerController dockerController;
+        try {
+            dockerController = this.dockerControllerRegistry.getController(host);
+        } catch (RuntimeException ex) {
+            LOGGER.warn("could not connect to docker host " + host + " of tool " + toolConfig.getId() + ": " + ex.getMessage());
+            return;
+        }
+        dockerController.retain();
+        try {
+            this.preloadImage(dockerController, toolConfig);
+        } finally {
+            dockerController.release();
+        }
+    }
+
+    private void preloadImage(DockerController dockerController, ToolConfig toolConfig) {
+        String image = toolConfig.getDocker().getImage();
+        try {
+            long start = System.currentTimeMillis();
+            dockerController.pullDockerImage(image, new PullProgress(image));
+            LOGGER.info("pulled docker image " + image + " in " + (System.currentTimeMillis() - start) / 1000 + " s");
+        } catch (RuntimeException ex) {
+            if (!this.existsLocally(dockerController, image)) {
+                LOGGER.error("could not pull docker image " + image + " of tool " + toolConfig.getId() + ": " + ex.getMessage());
+                return;
+            }
+            LOGGER.warn("could not pull docker image " + image + ", using local image: " + ex.getMessage());
+        }
+        if (this.config.isDockerWarmUp()) {
+            this.warmUp(dockerController, toolConfig);
+        }
+    }
+
+    private boolean existsLocally(DockerController dockerController, String image) {
+        try {
+            return dockerController.existsDockerImage(image);
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+
+    private void warmUp(DockerController dockerController, ToolConfig toolConfig) {
+        DockerContainer container = new DockerContainer(toolConfig.getId() + "-warmup-"
+                + UUID.randomUUID().toString().substring(0, 8), toolConfig.getDocker().getImage());
+        DockerRunCommandConfiguration runConfig = new DockerRunCommandConfiguration();
+        for (String param : this.config.getDockerWarmUpCommand().trim().split("\\s+")) {
+            runConfig.addCommandParameter(new CommandParameter("", param));
+        }
+        long timeout = this.config.getDockerWarmUpTimeout();
+        String containerID = null;
+        try {
+            containerID = dockerController.createDockerContainer(container, runConfig).getId();
+            int exitCode = dockerController.runDockerContainer_Async(containerID).get(timeout, TimeUnit.SECONDS);
+            LOGGER.info("warmed up docker image " + container.getImageName() + ", exit code: " + exitCode);
+        } catch (TimeoutException ex) {
+            LOGGER.warn("warm-up of docker image " + container.getImageName() + " exceeded its timeout of " + timeout + " s, removing container");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("warm-up of docker image " + container.getImageName() + " has been interrupted");
+        } catch (ExecutionException ex) {
+            LOGGER.warn("could not warm up docker image " + container.getImageName() + ": " + ex.getCause().getMessage());
+        } catch (RuntimeException ex) {
+            LOGGER.warn("could not warm up docker image " + container.getImageName() + ": " + ex.getMessage());
+        } finally {
+            if (containerID != null) {
+                try {
+                    dockerController.removeDockerContainer(containerID, true);
+                } catch (RuntimeException ex) {
+                    LOGGER.warn("could not remove container " + containerID + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Image of a tool to preload on a Docker host
+     */
+    private static class ImagePreload {
+
+        private final ToolConfig toolConfig;
+
+        private final String host;
+
+        private ImagePreload(ToolConfig toolConfig, String host) {
+            this.toolConfig = toolConfig;
+            this.host = host;
+        }
+
+    }
+
+    /**
+     * Logs the aggregated download progress of the layers of an image
+     */
+    private static class PullProgress implements Consumer<PullResponseItem> {
+
+        private final String image;
+
+        private final Map<String, long[]> layers = new HashMap<>();
+
+        private long lastLog = System.currentTimeMillis();
+
+        private PullProgress(String image) {
+            this.image = image;
+        }
+
+        @Override
+        public synchronized void accept(PullResponseItem item) {
+            if (item.getId() != null && item.getProgressDetail() != null
+                    && item.getProgressDetail().getCurrent() != null && item.getProgressDetail().getTotal() != null
+                    && "Downloading".equals(item.getStatus())) {
+                this.layers.put(item.getId(), new long[]{item.getProgressDetail().getCurrent(), item.getProgressDetail().getTotal()});
+            }
+            long now = System.currentTimeMillis();
+            if (now - this.lastLog >= PROGRESS_LOG_INTERVAL && !this.layers.isEmpty()) {
+                long current = this.layers.values().stream().mapToLong(l -> l[0]).sum();
+                long total = this.layers.values().stream().mapToLong(l -> l[1]).sum();
+                LOGGER.info("pulling docker image " + this.image + ": " + current / (1024 * 1024) + " of "
+                        + total / (1024 * 1024) + " MB downloaded (" + this.layers.size() + " layers)");
+                this.lastLog = now;
+            }
+        }
+
+    }
+
+}
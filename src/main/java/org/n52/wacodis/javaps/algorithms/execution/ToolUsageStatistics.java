@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.n52.wacodis.javaps.command.ProcessResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the resource usage of the tool executions as per tool histograms.
+ * Once a tool has been executed a few times with sampled container stats, the
+ * observed peak memory and CPU cores can be used as reservations for the
+ * {@link ToolExecutionScheduler} instead of guessed values.
+ */
+public class ToolUsageStatistics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ToolUsageStatistics.class);
+
+    /**
+     * Default number of most recent executions per tool the histograms are
+     * computed from
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+
+    /**
+     * Number of sampled executions of a tool before its observed usage is
+     * reserved
+     */
+    public static final int MIN_RESERVATION_SAMPLES = 3;
+
+    private static final double RESERVATION_PERCENTILE = 0.95;
+
+    private final int windowSize;
+
+    private final ConcurrentMap<String, ToolUsage> usages = new ConcurrentHashMap<>();
+
+    /**
+     * @param windowSize number of most recent executions per tool the
+     *                   histograms are computed from
+     */
+    public ToolUsageStatistics(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Records the resource usage of a finished tool execution. The sampled
+     * usage is only recorded, if the container stats have been sampled.
+     *
+     * @param tool   id of the tool
+     * @param result result of the tool execution
+     */
+    public void record(String tool, ProcessResult result) {
+        ToolUsage usage = this.usages.computeIfAbsent(tool, t -> new ToolUsage(this.windowSize));
+        usage.duration.record(result.getDuration());
+        if (result.getPeakMemory() > 0) {
+            usage.peakMemory.record(result.getPeakMemory());
+            usage.cpuSeconds.record(result.getCpuSeconds());
+            usage.cpus.record(result.getDuration() > 0 ? result.getCpuSeconds() * 1000 / result.getDuration() : 0);
+            usage.blockRead.record(result.getBlockRead());
+            usage.blockWrite.record(result.getBlockWrite());
+        }
+        LOGGER.info("resource usage of tool " + tool + ": duration " + result.getDuration() + " ms, peak memory "
+                + result.getPeakMemory() + " bytes, cpu " + result.getCpuSeconds() + " s, block read "
+                + result.getBlockRead() + " bytes, block write " + result.getBlockWrite() + " bytes");
+    }
+
+    /**
+     * @return ids of the tools with recorded executions
+     */
+    public Set<String> getTools() {
+        return new TreeSet<>(this.usages.keySet());
+    }
+
+    /**
+     * @param tool id of the tool
+     * @return wall clock time of the executions in milliseconds
+     */
+    public UsageHistogram getDuration(String tool) {
+        return this.getUsage(tool).duration;
+    }
+
+    /**
+     * @param tool id of the tool
+     * @return peak resident memory of the executions in bytes
+     */
+    public UsageHistogram getPeakMemory(String tool) {
+        return this.getUsage(tool).peakMemory;
+    }
+
+    /**
+     * @param tool id of the tool
+     * @return CPU time of the executions in seconds
+     */
+    public UsageHistogram getCpuSeconds(String tool) {
+        return this.getUsage(tool).cpuSeconds;
+    }
+
+    /**
+     * @param tool id of the tool
+     * @return average number of busy CPU cores of the executions
+     */
+    public UsageHistogram getCpus(String tool) {
+        return this.getUsage(tool).cpus;
+    }
+
+    /**
+     * @param tool id of the tool
+     * @return bytes read from block devices by the executions
+     */
+    public UsageHistogram getBlockRead(String tool) {
+        return this.getUsage(tool).blockRead;
+    }
+
+    /**
+     * @param tool id of the tool
+     * @return bytes written to block devices by the executions
+     */
+    public UsageHistogram getBlockWrite(String tool) {
+        return this.getUsage(tool).blockWrite;
+    }
+
+    /**
+     * @param tool id of the tool
+     * @return memory in bytes that should be reserved for an execution of the
+     * tool, 0 if not enough executions have been sampled
+     */
+    public long getMemoryReservation(String tool) {
+        UsageHistogram peakMemory = this.getPeakMemory(tool);
+        return peakMemory.getSize() >= MIN_RESERVATION_SAMPLES ? (long) peakMemory.getPercentile(RESERVATION_PERCENTILE) : 0;
+    }
+
+    /**
+     * @param tool id of the tool
+     * @return number of CPUs that should be reserved for an execution of the
+     * tool, 0 if not enough executions have been sampled
+     */
+    public double getCpuReservation(String tool) {
+        UsageHistogram cpus = this.getCpus(tool);
+        return cpus.getSize() >= MIN_RESERVATION_SAMPLES ? cpus.getPercentile(RESERVATION_PERCENTILE) : 0;
+    }
+
+    private ToolUsage getUsage(String tool) {
+        ToolUsage usage = this.usages.get(tool);
+        return usage != null ? usage : new ToolUsage(0);
+    }
+
+    private static class ToolUsage {
+
+        private final UsageHistogram duration;
+
+        private final UsageHistogram peakMemory;
+
+        private final UsageHistogram cpuSeconds;
+
+        private final UsageHistogram cpus;
+
+        private final UsageHistogram blockRead;
+
+        private final UsageHistogram blockWrite;
+
+        private ToolUsage(int windowSize) {
+            this.duration = new UsageHistogram(windowSize);
+            this.peakMemory = new UsageHistogram(windowSize);
+            this.cpuSeconds = new UsageHistogram(windowSize);
+            this.cpus = new UsageHistogram(windowSize);
+            this.blockRead = new UsageHistogram(windowSize);
+            this.blockWrite = new UsageHistogram(windowSize);
+        }
+
+    }
+
+}
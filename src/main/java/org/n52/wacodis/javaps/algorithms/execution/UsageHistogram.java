@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of a resource usage over the most recent tool executions. The
+ * values are kept in a sliding window, so that the percentiles follow changes
+ * of a tool or its typical inputs.
+ */
+public class UsageHistogram {
+
+    private final double[] window;
+
+    private long count;
+
+    /**
+     * @param windowSize number of most recent values the distribution is
+     *                   computed from
+     */
+    public UsageHistogram(int windowSize) {
+        this.window = new double[Math.max(windowSize, 1)];
+    }
+
+    public synchronized void record(double value) {
+        this.window[(int) (this.count % this.window.length)] = value;
+        this.count++;
+    }
+
+    /**
+     * @return number of values that have been recorded in total
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of values inside the window
+     */
+    public synchronized int getSize() {
+        return (int) Math.min(this.count, this.window.length);
+    }
+
+    /**
+     * @param percentile percentile between 0 and 1, e.g. 0.95
+     * @return the value below or equal to which the percentile of the values
+     * inside the window falls, 0 if no values have been recorded
+     */
+    public synchronized double getPercentile(double percentile) {
+        int size = this.getSize();
+        if (size == 0) {
+            return 0;
+        }
+        double[] sorted = Arrays.copyOf(this.window, size);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(Math.min(Math.max(percentile, 0), 1) * size);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    public synchronized double getMean() {
+        int size = this.getSize();
+        return size == 0 ? 0 : Arrays.stream(this.window, 0, size).sum() / size;
+    }
+
+    public double getMax() {
+        return this.getPercentile(1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "UsageHistogram{" + "count=" + count + ", mean=" + getMean() + ", p50=" + getPercentile(0.5)
+                + ", p95=" + getPercentile(0.95) + ", max=" + getMax() + '}';
+    }
+
+}
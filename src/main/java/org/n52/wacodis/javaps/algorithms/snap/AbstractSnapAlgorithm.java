@@ -28,6 +28,7 @@ import org.n52.javaps.io.GenericFileData;
 import org.n52.wacodis.javaps.utils.LoggerProgressMonitor;
 import org.n52.wacodis.javaps.exceptions.WacodisProcessingException;
 import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
+import org.n52.wacodis.javaps.io.http.ExtractionFilter;
 import org.n52.wacodis.javaps.io.http.SentinelFileDownloader;
 import org.n52.wacodis.javaps.io.metadata.ProductMetadata;
 import org.n52.wacodis.javaps.io.metadata.ProductMetadataCreator;
@@ -62,19 +63,21 @@ public abstract class AbstractSnapAlgorithm {
        
 
     public void execute() throws WacodisProcessingException {
+        this.sentinelDownloader.readPinnedSentinelProducts(Collections.singletonList(this.sentinel2ImageSource), () -> {
+            Product sentinelProduct = this.fetchInput(this.sentinel2ImageSource);
+            LOGGER.info("Succesfully downloaded Sentinel-2 scene: {}", sentinelProduct.getName());
 
-        Product sentinelProduct = this.fetchInput(this.sentinel2ImageSource);
-        LOGGER.info("Succesfully downloaded Sentinel-2 scene: {}", sentinelProduct.getName());
-        
-        Map<String, Object> parameters = this.prepareOperationParameters();
-        Product result = GPF.createProduct(this.getOperatorName(), parameters, sentinelProduct);
-        LOGGER.info("Succesfully finished operation: ", this.getOperatorName());
+            Map<String, Object> parameters = this.prepareOperationParameters();
+            Product result = GPF.createProduct(this.getOperatorName(), parameters, sentinelProduct);
+            LOGGER.info("Succesfully finished operation: ", this.getOperatorName());
 
-        this.resultPath = this.writeResultProduct(result);
-        LOGGER.info("Succesfully wrote result product as GeoTIFF file: {}.", this.resultPath);
+            this.resultPath = this.writeResultProduct(result);
+            LOGGER.info("Succesfully wrote result product as GeoTIFF file: {}.", this.resultPath);
 
-        ProductMetadataCreator metadataCreator = new SentinelProductMetadataCreator();
-        this.productMetadata = metadataCreator.createProductMetadata(getProcessId(), result, Collections.singletonList(sentinelProduct));
+            ProductMetadataCreator metadataCreator = new SentinelProductMetadataCreator();
+            this.productMetadata = metadataCreator.createProductMetadata(getProcessId(), result, Collections.singletonList(sentinelProduct));
+            return null;
+        });
     }
 
     /**
@@ -88,9 +91,10 @@ public abstract class AbstractSnapAlgorithm {
     protected Product fetchInput(String imageUrl) throws WacodisProcessingException {
         Product sentinelProduct;
         try {
-            File sentinelFile = sentinelDownloader.downloadSentinelFile(
+            File sentinelFile = sentinelDownloader.downloadSentinelProduct(
                     this.sentinel2ImageSource,
-                    this.config.getWorkingDirectory());
+                    this.config.getWorkingDirectory(),
+                    this.getExtractionFilter());
 
             sentinelProduct = ProductIO.readProduct(sentinelFile.getPath());
         } catch (IOException ex) {
@@ -186,6 +190,17 @@ public abstract class AbstractSnapAlgorithm {
         this.config = config;
     }
 
+    /**
+     * Specifies the entries of the Sentinel-2 scene that have to be unzipped
+     * for the operation. Subclasses that only require certain bands should
+     * override this method.
+     *
+     * @return the {@link ExtractionFilter} for the Sentinel-2 scene
+     */
+    public ExtractionFilter getExtractionFilter() {
+        return ExtractionFilter.ALL;
+    }
+
     public abstract String getProcessId();
 
     public abstract String getResultNamePrefix();
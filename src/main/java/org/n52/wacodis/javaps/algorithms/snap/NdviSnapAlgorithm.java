@@ -25,6 +25,7 @@ import org.n52.javaps.io.GenericFileData;
 import org.n52.wacodis.javaps.exceptions.WacodisProcessingException;
 import org.n52.wacodis.javaps.io.data.binding.complex.GeotiffFileDataBinding;
 import org.n52.wacodis.javaps.io.data.binding.complex.ProductMetadataBinding;
+import org.n52.wacodis.javaps.io.http.ExtractionFilter;
 import org.n52.wacodis.javaps.io.metadata.ProductMetadata;
 
 /**
@@ -43,6 +44,8 @@ public class NdviSnapAlgorithm extends AbstractSnapAlgorithm {
     private static final String PROCESS_ID = "de.hsbo.wacodis.snap.ndvi";
     private static final String NDVI_OPERATOR_NAME = "NdviOp";
     private static final String RESULT_NAME_PREFIX = "snap_ndvi_result";
+    private static final String RED_SOURCE_BAND = "B4";
+    private static final String NIR_SOURCE_BAND = "B8";
 
     @LiteralInput(
             identifier = "SENTINEL_2_IMAGE_SOURCE",
@@ -91,9 +94,14 @@ public class NdviSnapAlgorithm extends AbstractSnapAlgorithm {
         Map<String, Object> parameters = new HashMap();
         parameters.put("redFactor", 1.0f);
         parameters.put("nirFactor", 1.0f);
-        parameters.put("redSourceBand", "B4");
-        parameters.put("nirSourceBand", "B8");
+        parameters.put("redSourceBand", RED_SOURCE_BAND);
+        parameters.put("nirSourceBand", NIR_SOURCE_BAND);
         return parameters;
     }
 
+    @Override
+    public ExtractionFilter getExtractionFilter() {
+        return ExtractionFilter.forBands(RED_SOURCE_BAND, NIR_SOURCE_BAND);
+    }
+
 }
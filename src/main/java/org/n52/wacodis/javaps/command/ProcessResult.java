@@ -15,6 +15,8 @@
  */
 package org.n52.wacodis.javaps.command;
 
+import java.io.File;
+
 /**
  *
  * @author <a href="mailto:s.drost@52north.org">Sebastian Drost</a>
@@ -25,6 +27,20 @@ public class ProcessResult {
 
     private String outputMessage;
 
+    private long outputSize;
+
+    private File logFile;
+
+    private long duration;
+
+    private long peakMemory;
+
+    private double cpuSeconds;
+
+    private long blockRead;
+
+    private long blockWrite;
+
     public ProcessResult(int code, String message) {
         this.resultCode = code;
         this.outputMessage = message;
@@ -46,4 +62,83 @@ public class ProcessResult {
         this.outputMessage = outputMessage;
     }
 
+    /**
+     * @return total size of the output in bytes, the output message might
+     * only contain its tail
+     */
+    public long getOutputSize() {
+        return outputSize;
+    }
+
+    public void setOutputSize(long outputSize) {
+        this.outputSize = outputSize;
+    }
+
+    /**
+     * @return file that contains the complete output or null
+     */
+    public File getLogFile() {
+        return logFile;
+    }
+
+    public void setLogFile(File logFile) {
+        this.logFile = logFile;
+    }
+
+    /**
+     * @return wall clock time of the execution in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return highest resident memory of the container in bytes or 0 if the
+     * resource usage has not been sampled
+     */
+    public long getPeakMemory() {
+        return peakMemory;
+    }
+
+    public void setPeakMemory(long peakMemory) {
+        this.peakMemory = peakMemory;
+    }
+
+    /**
+     * @return CPU time consumed by the container in seconds
+     */
+    public double getCpuSeconds() {
+        return cpuSeconds;
+    }
+
+    public void setCpuSeconds(double cpuSeconds) {
+        this.cpuSeconds = cpuSeconds;
+    }
+
+    /**
+     * @return bytes read from block devices by the container
+     */
+    public long getBlockRead() {
+        return blockRead;
+    }
+
+    public void setBlockRead(long blockRead) {
+        this.blockRead = blockRead;
+    }
+
+    /**
+     * @return bytes written to block devices by the container
+     */
+    public long getBlockWrite() {
+        return blockWrite;
+    }
+
+    public void setBlockWrite(long blockWrite) {
+        this.blockWrite = blockWrite;
+    }
+
 }
@@ -15,6 +15,8 @@
  */
 package org.n52.wacodis.javaps.command;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  *
  * @author <a href="mailto:arne.vogt@hs-bochum.de">Arne Vogt</a>
@@ -22,5 +24,25 @@ package org.n52.wacodis.javaps.command;
 public interface ToolExecutionProcess {
     
     ProcessResult execute() throws InterruptedException;
+
+    /**
+     * execute the process asynchronously, implementations that are able to
+     * wait for the process without blocking a thread should override this
+     * method, the default implementation executes the process synchronously
+     *
+     * @return future that completes with the ProcessResult
+     */
+    default CompletableFuture<ProcessResult> executeAsync() {
+        CompletableFuture<ProcessResult> result = new CompletableFuture<>();
+        try {
+            result.complete(execute());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(ex);
+        } catch (RuntimeException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
     
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.EventsCmd;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.core.command.EventsResultCallback;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens to the 'die' events of all containers of a docker host with a single
+ * event stream and dispatches the exit codes to per container futures. If the
+ * stream breaks off, it will be reconnected and a reconciliation pass inspects
+ * all awaited containers, so that containers which died while the stream was
+ * down are not missed.
+ */
+public class ContainerEventMonitor implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContainerEventMonitor.class);
+
+    private static final String DIE_EVENT = "die";
+
+    private static final String EXIT_CODE_ATTRIBUTE = "exitCode";
+
+    private final DockerClient dockerClient;
+
+    private final long reconnectDelay;
+
+    private final ScheduledExecutorService reconnectScheduler;
+
+    private final ConcurrentMap<String, CompletableFuture<Integer>> awaitedContainers = new ConcurrentHashMap<>();
+
+    private DieEventCallback eventStream;
+
+    private volatile long lastEventTime;
+
+    private boolean closed;
+
+    /**
+     * @param dockerClient   client for the docker host
+     * @param reconnectDelay delay in milliseconds before reconnecting a broken
+     *                       event stream
+     */
+    public ContainerEventMonitor(DockerClient dockerClient, long reconnectDelay) {
+        this.dockerClient = dockerClient;
+        this.reconnectDelay = reconnectDelay;
+        this.reconnectScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "docker-event-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers a container whose death shall be awaited. Call this before
+     * starting the container, so that no event will be missed.
+     *
+     * @param containerID
+     * @return future that completes with the exit code of the container
+     */
+    public CompletableFuture<Integer> awaitDeath(String containerID) {
+        CompletableFuture<Integer> death = this.awaitedContainers.computeIfAbsent(containerID, id -> new CompletableFuture<>());
+        death.whenComplete((exitCode, ex) -> this.awaitedContainers.remove(containerID, death));
+        this.ensureConnected();
+        return death;
+    }
+
+    /**
+     * @return number of containers whose death is currently awaited
+     */
+    public int getAwaitedContainerCount() {
+        return this.awaitedContainers.size();
+    }
+
+    @Override
+    public void close() {
+        DieEventCallback stream;
+        synchronized (this) {
+            this.closed = true;
+            stream = this.eventStream;
+            this.eventStream = null;
+        }
+        this.reconnectScheduler.shutdownNow();
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                LOGGER.warn("could not close docker event stream: " + ex.getMessage());
+            }
+        }
+        new ArrayList<>(this.awaitedContainers.values()).forEach(f -> f.completeExceptionally(
+                new IllegalStateException("docker event monitor has been closed")));
+    }
+
+    private void ensureConnected() {
+        boolean connected;
+        synchronized (this) {
+            if (this.closed || this.eventStream != null) {
+                return;
+            }
+            connected = this.connect();
+        }
+        if (connected) {
+            this.reconcile();
+        } else {
+            this.scheduleReconnect();
+        }
+    }
+
+    private boolean connect() {
+        try {
+            DieEventCallback stream = new DieEventCallback();
+            EventsCmd eventsCmd = this.dockerClient.eventsCmd().withEventFilter(DIE_EVENT);
+            if (this.lastEventTime > 0) {
+                // replay the events that have been missed since the last received event
+                eventsCmd = eventsCmd.withSince(String.valueOf(this.lastEventTime));
+            }
+            eventsCmd.exec(stream);
+            this.eventStream = stream;
+            LOGGER.debug("subscribed to docker die events");
+            return true;
+        } catch (RuntimeException ex) {
+            LOGGER.warn("could not subscribe to docker events: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private void scheduleReconnect() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+        }
+        LOGGER.info("reconnecting docker event stream in " + this.reconnectDelay + " ms");
+        this.reconnectScheduler.schedule(this::ensureConnected, this.reconnectDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Inspects all awaited containers and completes the futures of those
+     * containers that are not running anymore.
+     */
+    private void reconcile() {
+        for (Map.Entry<String, CompletableFuture<Integer>> awaited : new ArrayList<>(this.awaitedContainers.entrySet())) {
+            String containerID = awaited.getKey();
+            try {
+                InspectContainerResponse.ContainerState state = this.dockerClient.inspectContainerCmd(containerID).exec().getState();
+                if (state != null && ("exited".equals(state.getStatus()) || "dead".equals(state.getStatus()))) {
+                    LOGGER.info("container " + containerID + " died while the event stream was down");
+                    awaited.getValue().complete(state.getExitCode() != null ? state.getExitCode() : 0);
+                }
+            } catch (NotFoundException ex) {
+                awaited.getValue().completeExceptionally(ex);
+            } catch (RuntimeException ex) {
+                LOGGER.warn("could not inspect container " + containerID + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private void onStreamClosed(DieEventCallback stream) {
+        synchronized (this) {
+            if (this.eventStream != stream) {
+                return;
+            }
+            this.eventStream = null;
+        }
+        this.scheduleReconnect();
+    }
+
+    private class DieEventCallback extends EventsResultCallback {
+
+        @Override
+        public void onNext(Event event) {
+            if (event.getTime() != null) {
+                lastEventTime = Math.max(lastEventTime, event.getTime());
+            }
+            String containerID = event.getId();
+            CompletableFuture<Integer> death = awaitedContainers.get(containerID);
+            if (death == null) {
+                return;
+            }
+            LOGGER.info("received die event for container " + containerID + System.lineSeparator() + event.toString());
+            int exitCode = 0;
+            if (event.getActor() != null && event.getActor().getAttributes() != null
+                    && event.getActor().getAttributes().containsKey(EXIT_CODE_ATTRIBUTE)) {
+                exitCode = Integer.parseInt(event.getActor().getAttributes().get(EXIT_CODE_ATTRIBUTE));
+            } else {
+                LOGGER.warn("exit code for container " + containerID + " unknown, using default value " + exitCode);
+            }
+            death.complete(exitCode);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            LOGGER.warn("docker event stream failed: " + throwable.getMessage());
+            super.onError(throwable);
+            onStreamClosed(this);
+        }
+
+        @Override
+        public void onComplete() {
+            super.onComplete();
+            onStreamClosed(this);
+        }
+
+    }
+
+}
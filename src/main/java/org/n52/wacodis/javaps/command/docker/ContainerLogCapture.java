@@ -0,0 +1,253 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Frame;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Captures the log stream of a container without holding the whole log in
+ * memory. The frames are written to an optional log file that is rotated when
+ * it exceeds a maximum size, while only a bounded tail of the log is kept in
+ * memory.
+ */
+public class ContainerLogCapture implements ResultCallback<Frame> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContainerLogCapture.class);
+
+    /**
+     * Default number of bytes of the log tail that are kept in memory
+     */
+    public static final int DEFAULT_TAIL_SIZE = 64 * 1024;
+
+    private final String containerID;
+
+    private final File logFile;
+
+    private final long maxFileSize;
+
+    private final int maxFiles;
+
+    private final byte[] tail;
+
+    private final CompletableFuture<String> completion = new CompletableFuture<>();
+
+    private int tailPosition;
+
+    private long capturedBytes;
+
+    private long fileSize;
+
+    private OutputStream fileOut;
+
+    private boolean fileFailed;
+
+    private Closeable stream;
+
+    private volatile Throwable error;
+
+    /**
+     * Captures only the tail of the log in memory
+     *
+     * @param containerID container whose log is captured
+     * @param tailSize    number of bytes of the log tail kept in memory
+     */
+    public ContainerLogCapture(String containerID, int tailSize) {
+        this(containerID, null, 0, 0, tailSize);
+    }
+
+    /**
+     * @param containerID container whose log is captured
+     * @param logFile     file the complete log is written to, may be null
+     * @param maxFileSize size in bytes after which the log file is rotated,
+     *                    values &lt;= 0 disable rotation
+     * @param maxFiles    number of rotated log files that are kept
+     * @param tailSize    number of bytes of the log tail kept in memory
+     */
+    public ContainerLogCapture(String containerID, File logFile, long maxFileSize, int maxFiles, int tailSize) {
+        this.containerID = containerID;
+        this.logFile = logFile;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        this.tail = new byte[Math.max(tailSize, 1)];
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * @return number of log bytes that have been captured so far
+     */
+    public synchronized long getCapturedBytes() {
+        return capturedBytes;
+    }
+
+    /**
+     * @return the error that broke off the log stream or null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return future that completes with the log tail when the log stream
+     * has been closed
+     */
+    public CompletableFuture<String> getCompletion() {
+        return completion;
+    }
+
+    @Override
+    public void onStart(Closeable closeable) {
+        this.stream = closeable;
+        LOGGER.debug("capturing log for container " + containerID);
+    }
+
+    @Override
+    public synchronized void onNext(Frame frame) {
+        byte[] payload = frame.getPayload();
+        if (payload == null) {
+            return;
+        }
+        this.capturedBytes += payload.length;
+        this.appendToTail(payload);
+        this.appendToFile(payload);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        LOGGER.error("error occured while capturing log for container: " + containerID, throwable);
+        this.error = throwable;
+        this.finish(); //returned log might be incomplete
+    }
+
+    @Override
+    public void onComplete() {
+        LOGGER.debug("captured " + this.getCapturedBytes() + " log bytes for container " + containerID);
+        this.finish();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.stream != null) {
+            this.stream.close();
+        }
+        this.finish();
+    }
+
+    /**
+     * @return the log tail that has been captured so far, prefixed with a
+     * note on the omitted bytes if the log exceeded the tail size
+     */
+    public synchronized String getTail() {
+        int length = (int) Math.min(this.capturedBytes, this.tail.length);
+        byte[] ordered = new byte[length];
+        int start = (this.tailPosition - length + this.tail.length) % this.tail.length;
+        int firstPart = Math.min(length, this.tail.length - start);
+        System.arraycopy(this.tail, start, ordered, 0, firstPart);
+        System.arraycopy(this.tail, 0, ordered, firstPart, length - firstPart);
+        if (this.capturedBytes <= this.tail.length) {
+            return new String(ordered, StandardCharsets.UTF_8);
+        }
+        // skip a partial UTF-8 character at the beginning of the tail
+        int offset = 0;
+        while (offset < ordered.length && (ordered[offset] & 0xC0) == 0x80) {
+            offset++;
+        }
+        return "[... " + (this.capturedBytes - length + offset) + " bytes omitted ...]" + System.lineSeparator()
+                + new String(ordered, offset, ordered.length - offset, StandardCharsets.UTF_8);
+    }
+
+    private void finish() {
+        synchronized (this) {
+            this.closeFile();
+        }
+        this.completion.complete(this.getTail());
+    }
+
+    private void appendToTail(byte[] payload) {
+        int offset = Math.max(payload.length - this.tail.length, 0);
+        int length = payload.length - offset;
+        int firstPart = Math.min(length, this.tail.length - this.tailPosition);
+        System.arraycopy(payload, offset, this.tail, this.tailPosition, firstPart);
+        System.arraycopy(payload, offset + firstPart, this.tail, 0, length - firstPart);
+        this.tailPosition = (this.tailPosition + length) % this.tail.length;
+    }
+
+    private void appendToFile(byte[] payload) {
+        if (this.logFile == null || this.fileFailed || this.completion.isDone()) {
+            return;
+        }
+        try {
+            if (this.fileOut != null && this.maxFileSize > 0 && this.fileSize + payload.length > this.maxFileSize) {
+                this.rotate();
+            }
+            if (this.fileOut == null) {
+                this.logFile.getParentFile().mkdirs();
+                this.fileOut = new FileOutputStream(this.logFile, this.fileSize > 0);
+            }
+            this.fileOut.write(payload);
+            this.fileSize += payload.length;
+        } catch (IOException ex) {
+            LOGGER.warn("could not write log of container " + containerID + " to " + this.logFile + ": " + ex.getMessage());
+            this.closeFile();
+            this.fileFailed = true;
+        }
+    }
+
+    private void rotate() throws IOException {
+        this.closeFile();
+        if (this.maxFiles > 0) {
+            Files.deleteIfExists(rotatedFile(this.maxFiles).toPath());
+            for (int i = this.maxFiles - 1; i > 0; i--) {
+                File rotated = rotatedFile(i);
+                if (rotated.exists()) {
+                    Files.move(rotated.toPath(), rotatedFile(i + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(this.logFile.toPath(), rotatedFile(1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.fileSize = 0;
+    }
+
+    private File rotatedFile(int index) {
+        return new File(this.logFile.getPath() + "." + index);
+    }
+
+    private void closeFile() {
+        if (this.fileOut != null) {
+            try {
+                this.fileOut.close();
+            } catch (IOException ex) {
+                LOGGER.warn("could not close log file " + this.logFile + ": " + ex.getMessage());
+            }
+            this.fileOut = null;
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Container;
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically removes tool containers that outlived their execution, e.g.
+ * because the service has been restarted while the container was running or
+ * because removing the container failed. The containers are identified by
+ * labels that are set when the container is created. A container is reaped if
+ * its deadline has passed by more than the reaping interval or, if it has no
+ * deadline, if it is older than the maximum age. Pooled containers of this
+ * process are never reaped, since they are managed by their pool, but pooled
+ * containers of a previous process of the same service instance, e.g. before
+ * a restart, are reaped regardless of their age. Pooled containers of other
+ * service instances that share a Docker host are never reaped, since they may
+ * still be in use. Only the Docker hosts with a shared controller in the
+ * {@link DockerControllerRegistry} are inspected.
+ */
+public class ContainerReaper implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContainerReaper.class);
+
+    /**
+     * Label with the id of the tool, that marks the containers created by
+     * this service
+     */
+    public static final String TOOL_LABEL = "org.n52.wacodis.javaps.tool";
+
+    /**
+     * Label with the deadline of the execution in milliseconds since epoch
+     */
+    public static final String DEADLINE_LABEL = "org.n52.wacodis.javaps.deadline";
+
+    /**
+     * Label that marks the containers of a {@link DockerContainerPool}
+     */
+    public static final String POOL_LABEL = "org.n52.wacodis.javaps.pool";
+
+    /**
+     * Label with the name of the service instance that created a pooled
+     * container, which is kept across restarts of the service
+     */
+    public static final String INSTANCE_LABEL = "org.n52.wacodis.javaps.instance";
+
+    /**
+     * Label with the {@link #PROCESS_ID} of the process that created a pooled
+     * container
+     */
+    public static final String PROCESS_LABEL = "org.n52.wacodis.javaps.process";
+
+    /**
+     * Random id of this process, that distinguishes its pooled containers from
+     * those left over by previous processes of the same service instance
+     */
+    public static final String PROCESS_ID = UUID.randomUUID().toString();
+
+    private final DockerControllerRegistry dockerControllerRegistry;
+
+    private final String instance;
+
+    private final long interval;
+
+    private final long maxAge;
+
+    private final ScheduledExecutorService reaperScheduler;
+
+    /**
+     * @param dockerControllerRegistry provides the controllers of the Docker
+     *                                 hosts
+     * @param instance                 name of this service instance, whose
+     *                                 pooled containers of previous processes
+     *                                 are reaped
+     * @param interval                 interval in milliseconds between two
+     *                                 reaping passes, values &lt;= 0 disable
+     *                                 the periodic reaping
+     * @param maxAge                   age in milliseconds after which a
+     *                                 container without deadline is reaped,
+     *                                 values &lt;= 0 mean unlimited
+     */
+    public ContainerReaper(DockerControllerRegistry dockerControllerRegistry, String instance, long interval, long maxAge) {
+        this.dockerControllerRegistry = dockerControllerRegistry;
+        this.instance = instance;
+        this.interval = interval;
+        this.maxAge = maxAge;
+        this.reaperScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "docker-container-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts the periodic reaping passes
+     */
+    public void start() {
+        if (this.interval <= 0) {
+            return;
+        }
+        LOGGER.info("reaping orphaned tool containers every " + this.interval + " ms");
+        this.reaperScheduler.scheduleWithFixedDelay(this::reap, this.interval, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a single reaping pass over all Docker hosts
+     *
+     * @return number of removed containers
+     */
+    public int reap() {
+        int removed = 0;
+        for (String host : this.dockerControllerRegistry.getHosts()) {
+            try {
+                removed += this.reap(this.dockerControllerRegistry.getController(host), System.currentTimeMillis());
+            } catch (RuntimeException ex) {
+                LOGGER.warn("could not reap containers of docker host " + host + ": " + ex.getMessage());
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Runs a single reaping pass over a Docker host
+     *
+     * @param dockerController controller of the Docker host
+     * @param now              current time in milliseconds since epoch
+     * @return number of removed containers
+     */
+    public int reap(DockerController dockerController, long now) {
+        int removed = 0;
+        for (Container container : dockerController.listDockerContainers(TOOL_LABEL)) {
+            String reason = this.getReapingReason(container, now);
+            if (reason == null) {
+                continue;
+            }
+            LOGGER.warn("removing orphaned container " + Arrays.toString(container.getNames())
+                    + " of tool " + container.getLabels().get(TOOL_LABEL) + ": " + reason);
+            try {
+                dockerController.removeDockerContainer(container.getId(), true);
+                removed++;
+            } catch (NotFoundException ex) {
+                // removed by its execution in the meantime
+            } catch (RuntimeException ex) {
+                LOGGER.warn("could not remove orphaned container " + container.getId() + ": " + ex.getMessage());
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void close() {
+        this.reaperScheduler.shutdownNow();
+    }
+
+    private String getReapingReason(Container container, long now) {
+        Map<String, String> labels = container.getLabels();
+        if (labels == null) {
+            return null;
+        }
+        if (labels.containsKey(POOL_LABEL)) {
+            if (!this.instance.equals(labels.get(INSTANCE_LABEL))) {
+                // the pool of another service instance on the same host may still be in use
+                return null;
+            }
+            return PROCESS_ID.equals(labels.get(PROCESS_LABEL)) ? null : "pooled container of a previous process";
+        }
+        String deadline = labels.get(DEADLINE_LABEL);
+        if (deadline != null) {
+            try {
+                long overdue = now - Long.parseLong(deadline);
+                // the execution itself aborts the container at its deadline
+                return overdue > this.interval ? "deadline passed " + overdue + " ms ago" : null;
+            } catch (NumberFormatException ex) {
+                LOGGER.warn("invalid deadline label of container " + container.getId() + ": " + deadline);
+            }
+        }
+        if (this.maxAge > 0 && container.getCreated() != null) {
+            long age = now - TimeUnit.SECONDS.toMillis(container.getCreated());
+            return age > this.maxAge ? "created " + age + " ms ago" : null;
+        }
+        return null;
+    }
+
+}
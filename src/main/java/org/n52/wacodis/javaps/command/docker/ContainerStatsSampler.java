@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.BlkioStatEntry;
+import com.github.dockerjava.api.model.BlkioStatsConfig;
+import com.github.dockerjava.api.model.MemoryStatsConfig;
+import com.github.dockerjava.api.model.Statistics;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import org.n52.wacodis.javaps.command.ProcessResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples the stats stream of a running container, which is pushed by the
+ * Docker daemon about once per second, and keeps the peak resident memory as
+ * well as the cumulative CPU time and block I/O of the container. Since the
+ * CPU time and block I/O are cumulative, the last sample is the total usage
+ * up to that point.
+ */
+public class ContainerStatsSampler implements ResultCallback<Statistics> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContainerStatsSampler.class);
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final String containerID;
+
+    private Closeable stream;
+
+    private int samples;
+
+    private long peakMemory;
+
+    private long cpuNanos;
+
+    private long blockRead;
+
+    private long blockWrite;
+
+    /**
+     * @param containerID container whose stats are sampled
+     */
+    public ContainerStatsSampler(String containerID) {
+        this.containerID = containerID;
+    }
+
+    @Override
+    public void onStart(Closeable closeable) {
+        this.stream = closeable;
+        LOGGER.debug("sampling stats for container " + containerID);
+    }
+
+    @Override
+    public synchronized void onNext(Statistics statistics) {
+        this.samples++;
+        this.peakMemory = Math.max(this.peakMemory, getResidentMemory(statistics.getMemoryStats()));
+        if (statistics.getCpuStats() != null && statistics.getCpuStats().getCpuUsage() != null
+                && statistics.getCpuStats().getCpuUsage().getTotalUsage() != null) {
+            this.cpuNanos = Math.max(this.cpuNanos, statistics.getCpuStats().getCpuUsage().getTotalUsage());
+        }
+        BlkioStatsConfig blkioStats = statistics.getBlkioStats();
+        if (blkioStats != null && blkioStats.getIoServiceBytesRecursive() != null) {
+            this.blockRead = Math.max(this.blockRead, sumBlockIo(blkioStats.getIoServiceBytesRecursive(), "read"));
+            this.blockWrite = Math.max(this.blockWrite, sumBlockIo(blkioStats.getIoServiceBytesRecursive(), "write"));
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        // the sampled usage is incomplete, but the execution itself is not affected
+        LOGGER.warn("error occured while sampling stats for container " + containerID + ": " + throwable.getMessage());
+    }
+
+    @Override
+    public void onComplete() {
+        LOGGER.debug("sampled " + this.getSamples() + " stats for container " + containerID);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.stream != null) {
+            this.stream.close();
+        }
+    }
+
+    /**
+     * @return number of received samples
+     */
+    public synchronized int getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return highest resident memory in bytes
+     */
+    public synchronized long getPeakMemory() {
+        return peakMemory;
+    }
+
+    /**
+     * @return consumed CPU time in seconds
+     */
+    public synchronized double getCpuSeconds() {
+        return this.cpuNanos / NANOS_PER_SECOND;
+    }
+
+    public synchronized long getBlockRead() {
+        return blockRead;
+    }
+
+    public synchronized long getBlockWrite() {
+        return blockWrite;
+    }
+
+    /**
+     * Attaches the sampled usage to a {@link ProcessResult}
+     *
+     * @param result result of the container execution
+     */
+    public synchronized void applyTo(ProcessResult result) {
+        result.setPeakMemory(this.peakMemory);
+        result.setCpuSeconds(this.getCpuSeconds());
+        result.setBlockRead(this.blockRead);
+        result.setBlockWrite(this.blockWrite);
+    }
+
+    /**
+     * The usage reported by Docker includes the page cache, which is not
+     * memory the tool needs, so the RSS is preferred if it is available
+     */
+    private static long getResidentMemory(MemoryStatsConfig memoryStats) {
+        if (memoryStats == null) {
+            return 0;
+        }
+        if (memoryStats.getStats() != null) {
+            Long rss = memoryStats.getStats().getTotalRss() != null ? memoryStats.getStats().getTotalRss() : memoryStats.getStats().getRss();
+            if (rss != null) {
+                return rss;
+            }
+        }
+        return memoryStats.getUsage() != null ? memoryStats.getUsage() : 0;
+    }
+
+    private static long sumBlockIo(List<BlkioStatEntry> entries, String op) {
+        return entries.stream()
+                .filter(e -> op.equalsIgnoreCase(e.getOp()) && e.getValue() != null)
+                .mapToLong(BlkioStatEntry::getValue)
+                .sum();
+    }
+
+}
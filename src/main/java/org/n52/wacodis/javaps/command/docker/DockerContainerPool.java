@@ -0,0 +1,327 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import org.n52.wacodis.javaps.command.ProcessResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of long-lived containers of a tool that execute the tool commands by
+ * 'docker exec' instead of starting a new container for each execution. The
+ * containers are created lazily up to the pool size and are kept alive by an
+ * idle command. A container is recycled after a maximum number of runs, if a
+ * command could not be executed or if it is not running anymore. The pool
+ * retains its controller until it has been closed and all of its containers
+ * have been removed.
+ */
+public class DockerContainerPool implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DockerContainerPool.class);
+
+    private final DockerController dockerController;
+
+    private final DockerContainer template;
+
+    private final DockerRunCommandConfiguration containerConfig;
+
+    private final int size;
+
+    private final int maxRuns;
+
+    private final Deque<PooledContainer> idleContainers = new ArrayDeque<>();
+
+    private final Queue<CompletableFuture<PooledContainer>> waiting = new ArrayDeque<>();
+
+    private int containerCount;
+
+    private boolean closed;
+
+    private boolean controllerReleased;
+
+    /**
+     * @param dockerController controls the docker host of the pool
+     * @param template         container name prefix and image of the pooled
+     *                         containers
+     * @param containerConfig  volume bindings, resources and idle command of
+     *                         the pooled containers
+     * @param size             maximum number of pooled containers
+     * @param maxRuns          number of runs after which a container is
+     *                         recycled, values &lt;= 0 mean unlimited
+     */
+    public DockerContainerPool(DockerController dockerController, DockerContainer template,
+            DockerRunCommandConfiguration containerConfig, int size, int maxRuns) {
+        this.dockerController = dockerController;
+        this.template = template;
+        this.containerConfig = containerConfig;
+        this.size = Math.max(size, 1);
+        this.maxRuns = maxRuns;
+        dockerController.retain();
+    }
+
+    public DockerController getDockerController() {
+        return dockerController;
+    }
+
+    /**
+     * Executes a command in a pooled container as soon as one is available
+     *
+     * @param runConfig provides the command parameters to execute
+     * @return future that completes with the ProcessResult of the command
+     */
+    public CompletableFuture<ProcessResult> execute(DockerRunCommandConfiguration runConfig) {
+        return this.execute(runConfig, id -> new ContainerLogCapture(id, ContainerLogCapture.DEFAULT_TAIL_SIZE));
+    }
+
+    /**
+     * Executes a command in a pooled container as soon as one is available.
+     * Cancelling the returned future gives up a waiting execution or recycles
+     * the container of a running command, so that the command is killed.
+     *
+     * @param runConfig         provides the command parameters to execute
+     * @param logCaptureFactory creates the capture for the output of the
+     *                          command by the container id
+     * @return future that completes with the ProcessResult of the command
+     */
+    public CompletableFuture<ProcessResult> execute(DockerRunCommandConfiguration runConfig, Function<String, ContainerLogCapture> logCaptureFactory) {
+        CompletableFuture<ProcessResult> result = new CompletableFuture<>();
+        CompletableFuture<PooledContainer> acquired = this.acquire();
+        result.whenComplete((r, ex) -> acquired.cancel(false));
+        acquired.whenComplete((container, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else if (result.isDone()) {
+                this.release(container);
+            } else {
+                this.execute(container, runConfig, logCaptureFactory, result);
+            }
+        });
+        return result;
+    }
+
+    private void execute(PooledContainer container, DockerRunCommandConfiguration runConfig,
+            Function<String, ContainerLogCapture> logCaptureFactory, CompletableFuture<ProcessResult> result) {
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<ProcessResult> exec = this.dockerController
+                .execDockerContainer_Async(container.containerID, runConfig, logCaptureFactory.apply(container.containerID));
+        exec.whenComplete((r, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                // the stats of a pooled container cover all of its runs, so only the duration is recorded
+                r.setDuration(System.currentTimeMillis() - startTime);
+                result.complete(r);
+            }
+        });
+        result.whenComplete((r, ex) -> {
+            container.runs++;
+            if (!exec.isDone()) {
+                LOGGER.info("exec in pooled container " + container.containerID + " has been aborted, recycling container");
+                this.discard(container);
+            } else if (ex != null) {
+                LOGGER.warn("exec in pooled container " + container.containerID + " failed, recycling container");
+                this.discard(container);
+            } else if (this.maxRuns > 0 && container.runs >= this.maxRuns) {
+                LOGGER.info("pooled container " + container.containerID + " reached " + container.runs + " runs, recycling container");
+                this.discard(container);
+            } else {
+                this.release(container);
+            }
+        });
+    }
+
+    /**
+     * @return number of pooled containers, either idle or busy
+     */
+    public synchronized int getContainerCount() {
+        return this.containerCount;
+    }
+
+    /**
+     * @return number of idle pooled containers
+     */
+    public synchronized int getIdleCount() {
+        return this.idleContainers.size();
+    }
+
+    /**
+     * Removes all idle containers. Busy containers are removed as soon as
+     * their command finished.
+     */
+    @Override
+    public void close() {
+        List<PooledContainer> idle;
+        List<CompletableFuture<PooledContainer>> waiters;
+        synchronized (this) {
+            this.closed = true;
+            idle = new ArrayList<>(this.idleContainers);
+            this.idleContainers.clear();
+            waiters = new ArrayList<>(this.waiting);
+            this.waiting.clear();
+        }
+        waiters.forEach(w -> w.completeExceptionally(new IllegalStateException("container pool has been closed")));
+        idle.forEach(this::discard);
+        this.releaseController();
+    }
+
+    private CompletableFuture<PooledContainer> acquire() {
+        CompletableFuture<PooledContainer> acquired = new CompletableFuture<>();
+        PooledContainer container = null;
+        boolean create = false;
+        synchronized (this) {
+            if (this.closed) {
+                acquired.completeExceptionally(new IllegalStateException("container pool has been closed"));
+                return acquired;
+            }
+            if (!this.idleContainers.isEmpty()) {
+                container = this.idleContainers.pop();
+            } else if (this.containerCount < this.size) {
+                this.containerCount++;
+                create = true;
+            } else {
+                this.waiting.add(acquired);
+            }
+        }
+        if (container != null) {
+            if (this.isHealthy(container)) {
+                acquired.complete(container);
+            } else {
+                LOGGER.warn("pooled container " + container.containerID + " is unhealthy, recycling container");
+                this.discard(container);
+                return this.acquire();
+            }
+        } else if (create) {
+            this.createContainer(acquired);
+        }
+        return acquired;
+    }
+
+    private void release(PooledContainer container) {
+        CompletableFuture<PooledContainer> waiter;
+        synchronized (this) {
+            if (this.closed) {
+                waiter = null;
+            } else {
+                waiter = this.waiting.poll();
+                if (waiter == null) {
+                    this.idleContainers.push(container);
+                    return;
+                }
+            }
+        }
+        if (waiter == null) {
+            this.discard(container);
+        } else if (!waiter.complete(container)) {
+            this.release(container); //waiter has been cancelled
+        }
+    }
+
+    private void discard(PooledContainer container) {
+        try {
+            this.dockerController.removeDockerContainer(container.containerID, true);
+        } catch (RuntimeException ex) {
+            LOGGER.warn("could not remove pooled container " + container.containerID + ": " + ex.getMessage());
+        }
+        CompletableFuture<PooledContainer> waiter;
+        synchronized (this) {
+            this.containerCount--;
+            waiter = this.closed ? null : this.waiting.poll();
+            while (waiter != null && waiter.isDone()) {
+                waiter = this.waiting.poll(); //waiter has been cancelled
+            }
+            if (waiter != null) {
+                this.containerCount++;
+            }
+        }
+        if (waiter != null) {
+            this.createContainer(waiter);
+        } else {
+            this.releaseController();
+        }
+    }
+
+    private void createContainer(CompletableFuture<PooledContainer> acquired) {
+        DockerContainer container = new DockerContainer(this.template.getContainerName() + "-pool-"
+                + UUID.randomUUID().toString().substring(0, 8), this.template.getImageName());
+        try {
+            String containerID = this.dockerController.createDockerContainer(container, this.containerConfig).getId();
+            try {
+                this.dockerController.runDockerContainer(containerID);
+            } catch (RuntimeException ex) {
+                this.dockerController.removeDockerContainer(containerID, true);
+                throw ex;
+            }
+            LOGGER.info("started pooled container " + container.getContainerName() + " with container id " + containerID);
+            PooledContainer pooledContainer = new PooledContainer(containerID);
+            if (!acquired.complete(pooledContainer)) {
+                this.release(pooledContainer); //waiter has been cancelled
+            }
+        } catch (RuntimeException ex) {
+            synchronized (this) {
+                this.containerCount--;
+            }
+            acquired.completeExceptionally(ex);
+            this.releaseController();
+        }
+    }
+
+    /**
+     * Releases the controller after the pool has been closed and all of its
+     * containers have been removed
+     */
+    private void releaseController() {
+        synchronized (this) {
+            if (!this.closed || this.containerCount > 0 || this.controllerReleased) {
+                return;
+            }
+            this.controllerReleased = true;
+        }
+        this.dockerController.release();
+    }
+
+    private boolean isHealthy(PooledContainer container) {
+        try {
+            InspectContainerResponse.ContainerState state = this.dockerController.inspectDockerContainer(container.containerID).getState();
+            return state != null && Boolean.TRUE.equals(state.getRunning());
+        } catch (RuntimeException ex) {
+            LOGGER.warn("could not inspect pooled container " + container.containerID + ": " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private static class PooledContainer {
+
+        private final String containerID;
+
+        private int runs;
+
+        private PooledContainer(String containerID) {
+            this.containerID = containerID;
+        }
+
+    }
+
+}
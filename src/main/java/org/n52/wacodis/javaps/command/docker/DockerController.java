@@ -19,27 +19,36 @@ import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.async.ResultCallback;
 import com.github.dockerjava.api.command.CreateContainerResponse;
 import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.command.PullImageCmd;
+import com.github.dockerjava.api.exception.DockerClientException;
+import com.github.dockerjava.api.exception.NotFoundException;
 import com.github.dockerjava.api.model.Bind;
-import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.Container;
 import com.github.dockerjava.api.model.Frame;
 import com.github.dockerjava.api.model.HostConfig;
 import com.github.dockerjava.api.model.PortBinding;
+import com.github.dockerjava.api.model.PullResponseItem;
 import com.github.dockerjava.api.model.Volume;
 import com.github.dockerjava.core.DefaultDockerClientConfig;
 import com.github.dockerjava.core.DockerClientBuilder;
 import com.github.dockerjava.core.DockerClientConfig;
 import com.github.dockerjava.core.command.EventsResultCallback;
+import com.github.dockerjava.core.command.PullImageResultCallback;
+import com.github.dockerjava.jaxrs.JerseyDockerCmdExecFactory;
 import com.github.dockerjava.netty.NettyDockerCmdExecFactory;
-import java.io.Closeable;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.stream.Collectors;
 import org.apache.commons.lang.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import org.n52.wacodis.javaps.command.ProcessResult;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.n52.wacodis.javaps.command.CommandParameter;
 
@@ -54,17 +63,84 @@ public class DockerController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DockerController.class);
 
+    private static final long EVENT_STREAM_RECONNECT_DELAY = 5000;
+
+    /**
+     * seconds to wait for a container to stop before it is killed
+     */
+    public static final int STOP_TIMEOUT = 10;
+
+    /**
+     * milliseconds to wait for a pooled connection before a command fails
+     */
+    public static final int CONNECTION_REQUEST_TIMEOUT = 60000;
+
     private final DockerClient dockerClient;
 
+    /**
+     * client for long-lived streams (events, followed logs, stats, exec output
+     * and image pulls), which would otherwise hold a pooled connection for
+     * the lifetime of a container and starve the other commands
+     */
+    private final DockerClient streamClient;
+
+    private ContainerEventMonitor eventMonitor;
+
+    private final AtomicLong capturedLogBytes = new AtomicLong();
+
+    private int users;
+
+    private boolean retired;
+
+    private boolean closed;
+
     /**
      * connection to default docker host
      */
     public DockerController() {
         this.dockerClient = getDefaultConnection();
+        this.streamClient = this.dockerClient;
     }
 
     public DockerController(DockerClientConfig clientConfig) {
         this.dockerClient = DockerClientBuilder.getInstance(clientConfig).build();
+        this.streamClient = this.dockerClient;
+    }
+
+    /**
+     * connection to default docker host with a pool of reusable connections
+     *
+     * @param maxConnections maximum number of pooled connections, values
+     * &lt;= 0 keep the default of the underlying HTTP client
+     */
+    public DockerController(int maxConnections) {
+        this(getDefaultConfig(), maxConnections);
+    }
+
+    /**
+     * connection to docker host with a pool of reusable connections, long-lived
+     * streams are served by a separate client whose connections are not
+     * limited by the pool, commands fail if no pooled connection becomes
+     * available within {@link #CONNECTION_REQUEST_TIMEOUT}
+     *
+     * @param clientConfig
+     * @param maxConnections maximum number of pooled connections, values
+     * &lt;= 0 keep the default of the underlying HTTP client
+     */
+    public DockerController(DockerClientConfig clientConfig, int maxConnections) {
+        JerseyDockerCmdExecFactory cmdExecFactory = new JerseyDockerCmdExecFactory()
+                .withConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT);
+        if (maxConnections > 0) {
+            cmdExecFactory.withMaxTotalConnections(maxConnections)
+                    .withMaxPerRouteConnections(maxConnections);
+        }
+        this.dockerClient = DockerClientBuilder.getInstance(clientConfig)
+                .withDockerCmdExecFactory(cmdExecFactory).build();
+        JerseyDockerCmdExecFactory streamExecFactory = new JerseyDockerCmdExecFactory()
+                .withMaxTotalConnections(Integer.MAX_VALUE)
+                .withMaxPerRouteConnections(Integer.MAX_VALUE);
+        this.streamClient = DockerClientBuilder.getInstance(clientConfig)
+                .withDockerCmdExecFactory(streamExecFactory).build();
     }
 
     /**
@@ -76,11 +152,13 @@ public class DockerController {
      */
     public CreateContainerResponse createDockerContainer(DockerContainer container, DockerRunCommandConfiguration runConfig) {
         List<String> cmdParams = getCommandParamsAsStringList(runConfig.getCommandParameters());
-        HostConfig hostConfig = buildHostConfig(runConfig.getVolumeBindings(), runConfig.getPortBindings());
+        HostConfig hostConfig = buildHostConfig(runConfig);
 
         CreateContainerResponse createdContainer = this.dockerClient.createContainerCmd(container.getImageName())
                 .withName(container.getContainerName())
                 .withHostConfig(hostConfig)
+                .withEnv(runConfig.getEnvironment())
+                .withLabels(runConfig.getLabels())
                 .withCmd(cmdParams)
                 .exec();
 
@@ -117,10 +195,29 @@ public class DockerController {
      * @param eventFilter
      */
     public void runDockerContainer(String containerID, EventsResultCallback containerEventHandler, String... eventFilter) {
-        this.dockerClient.eventsCmd().withContainerFilter(containerID).withEventFilter(eventFilter).exec(containerEventHandler);
+        this.streamClient.eventsCmd().withContainerFilter(containerID).withEventFilter(eventFilter).exec(containerEventHandler);
         runDockerContainer(containerID);
     }
 
+    /**
+     * execute run container command asynchronously, the returned future
+     * completes with the exit code when the container dies (stopped,
+     * finished). The death of the container is signaled by an event stream
+     * that is shared by all containers of the docker host.
+     *
+     * @param containerID
+     * @return future that completes with the container exit code
+     */
+    public CompletableFuture<Integer> runDockerContainer_Async(String containerID) {
+        CompletableFuture<Integer> death = this.getEventMonitor().awaitDeath(containerID); //register before start
+        try {
+            runDockerContainer(containerID); //start container
+        } catch (RuntimeException ex) {
+            death.completeExceptionally(ex);
+        }
+        return death;
+    }
+
     /**
      * execute run container command synchronously threads blocks until
      * container dies (stopped, finished)
@@ -133,16 +230,19 @@ public class DockerController {
         String log;
         int exitCode;
         ProcessResult containerResult;
-        CountDownLatch runLatch = new CountDownLatch(1);
-        RunContainerSyncCallback dieActionHandler = new RunContainerSyncCallback(runLatch);
-
-        runDockerContainer(containerID, dieActionHandler); //start container
+        CompletableFuture<Integer> death = runDockerContainer_Async(containerID);
         try {
-            runLatch.await(); //wait until container dies (stopped, finished)
-            exitCode = dieActionHandler.getExitCode();
+            exitCode = death.get(); //wait until container dies (stopped, finished)
         } catch (InterruptedException e) {
-            LOGGER.error("waiting for container " + containerID + " interrupted, container might still be running", e);
+            LOGGER.error("waiting for container " + containerID + " interrupted, stopping container", e);
+            try {
+                stopDockerContainer(containerID, STOP_TIMEOUT); //do not leave the container running without anyone waiting for it
+            } catch (RuntimeException ex) {
+                LOGGER.warn("could not stop container " + containerID + ": " + ex.getMessage());
+            }
             throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("waiting for container " + containerID + " failed", e.getCause());
         }
         log = retrieveDockerContainerLog_Sync(containerID);
 
@@ -151,14 +251,76 @@ public class DockerController {
         return containerResult;
     }
 
+    /**
+     * execute a command inside a running container asynchronously, the
+     * returned future completes when the command finished
+     *
+     * @param containerID
+     * @param runConfig provides the command parameters to execute
+     * @return future that completes with the ProcessResult containing exit
+     * code and output of the command
+     */
+    public CompletableFuture<ProcessResult> execDockerContainer_Async(String containerID, DockerRunCommandConfiguration runConfig) {
+        return execDockerContainer_Async(containerID, runConfig, new ContainerLogCapture(containerID, ContainerLogCapture.DEFAULT_TAIL_SIZE));
+    }
+
+    /**
+     * execute a command inside a running container asynchronously, the
+     * returned future completes when the command finished
+     *
+     * @param containerID
+     * @param runConfig provides the command parameters to execute
+     * @param logCapture captures the output of the command
+     * @return future that completes with the ProcessResult containing exit
+     * code and output tail of the command
+     */
+    public CompletableFuture<ProcessResult> execDockerContainer_Async(String containerID, DockerRunCommandConfiguration runConfig, ContainerLogCapture logCapture) {
+        this.countCapturedLogBytes(logCapture);
+        List<String> cmdParams = getCommandParamsAsStringList(runConfig.getCommandParameters());
+        CompletableFuture<ProcessResult> result = new CompletableFuture<>();
+        try {
+            String execID = this.dockerClient.execCreateCmd(containerID)
+                    .withAttachStdout(true)
+                    .withAttachStderr(true)
+                    .withCmd(cmdParams.toArray(new String[cmdParams.size()]))
+                    .exec().getId();
+            LOGGER.info("exec command in docker container with container id " + containerID + ", exec id " + execID);
+            this.streamClient.execStartCmd(execID).exec(logCapture).getCompletion().whenComplete((tail, e) -> {
+                if (logCapture.getError() != null) {
+                    result.completeExceptionally(logCapture.getError());
+                    return;
+                }
+                try {
+                    Integer exitCode = dockerClient.inspectExecCmd(execID).exec().getExitCode();
+                    result.complete(createProcessResult(exitCode != null ? exitCode : 0, logCapture));
+                } catch (RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
     /**
      * run remove container command
      *
      * @param containerID
      */
     public void removeDockerContainer(String containerID) {
+        this.removeDockerContainer(containerID, false);
+    }
+
+    /**
+     * run remove container command
+     *
+     * @param containerID
+     * @param force kill the container if it is still running
+     */
+    public void removeDockerContainer(String containerID, boolean force) {
         LOGGER.info("remove docker container with container id " + containerID);
-        this.dockerClient.removeContainerCmd(containerID).exec();
+        this.dockerClient.removeContainerCmd(containerID).withForce(force).exec();
     }
 
     /**
@@ -171,6 +333,32 @@ public class DockerController {
         this.dockerClient.stopContainerCmd(containerID).exec();
     }
 
+    /**
+     * run stop container command, the container is killed if it did not stop
+     * within the timeout
+     *
+     * @param containerID
+     * @param timeout seconds to wait for the container to stop
+     */
+    public void stopDockerContainer(String containerID, int timeout) {
+        LOGGER.info("stop docker container with container id " + containerID);
+        this.dockerClient.stopContainerCmd(containerID).withTimeout(timeout).exec();
+    }
+
+    /**
+     * run list containers command for all containers, either running or not,
+     * that carry a label
+     *
+     * @param label name of the label
+     * @return containers that carry the label
+     */
+    public List<Container> listDockerContainers(String label) {
+        return this.dockerClient.listContainersCmd()
+                .withShowAll(true)
+                .withLabelFilter(Collections.singletonList(label))
+                .exec();
+    }
+
     /**
      * run inspect container command
      *
@@ -197,40 +385,268 @@ public class DockerController {
                 .exec(logHandler);
     }
 
+    /**
+     * run log container command asynchronously, the returned future completes
+     * with the log when it was retrieved, log represents the current state
+     * (snapshot) of the log file, only the tail of the log is kept in memory
+     *
+     * @param containerID
+     * @return future that completes with the tail of the container log
+     */
+    public CompletableFuture<String> retrieveDockerContainerLog_Async(String containerID) {
+        ContainerLogCapture logCapture = new ContainerLogCapture(containerID, ContainerLogCapture.DEFAULT_TAIL_SIZE);
+        this.countCapturedLogBytes(logCapture);
+        retrieveDockerContainerLog(containerID, logCapture);
+        return logCapture.getCompletion(); //returned log might be incomplete on error
+    }
+
     /**
      * run log container command synchronously, thread blocks until log was
-     * retrieved, log represents the current state (snapshot) of the log file
+     * retrieved, log represents the current state (snapshot) of the log file,
+     * only the tail of the log is kept in memory
      *
      * @param containerID
-     * @return current content of container log (snapshot)
+     * @return tail of the current container log (snapshot)
      * @throws InterruptedException
      */
     public String retrieveDockerContainerLog_Sync(String containerID) throws InterruptedException {
-        CountDownLatch logLatch = new CountDownLatch(1); //wait until command returns
-        StringBuilder logBuilder = new StringBuilder();
-        RetrieveContainerLogCallback logHandler = new RetrieveContainerLogCallback(containerID, logBuilder, logLatch);
-
-        retrieveDockerContainerLog(containerID, logHandler); //retrieve log
-
         try {
-            logLatch.await(); //waiting until onComplete/on Error of logHandler
+            return retrieveDockerContainerLog_Async(containerID).get(); //waiting until onComplete/on Error of log capture
         } catch (InterruptedException e) {
             LOGGER.error("retrieving log for container " + containerID + " interrupted, returned log might be incomplete", e);
             throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("retrieving log for container " + containerID + " failed", e.getCause());
         }
+    }
+
+    /**
+     * stream the log of a container while it is running into a
+     * {@link ContainerLogCapture}, the capture completes when the container
+     * stopped
+     *
+     * @param containerID
+     * @param logCapture
+     * @return the log capture
+     */
+    public ContainerLogCapture followDockerContainerLog(String containerID, ContainerLogCapture logCapture) {
+        LOGGER.info("follow log of container with container id " + containerID);
+        this.countCapturedLogBytes(logCapture);
+        this.streamClient.logContainerCmd(containerID)
+                .withStdOut(true)
+                .withStdErr(true)
+                .withTimestamps(true)
+                .withFollowStream(true)
+                .exec(logCapture);
+        return logCapture;
+    }
 
-        return logBuilder.toString();
+    /**
+     * stream the stats of a container while it is running into a
+     * {@link ContainerStatsSampler}, the stream ends when the container
+     * stopped or the sampler is closed. Like followed logs, the stream does
+     * not hold a pooled connection.
+     *
+     * @param containerID
+     * @param statsSampler
+     * @return the stats sampler
+     */
+    public ContainerStatsSampler sampleDockerContainerStats(String containerID, ContainerStatsSampler statsSampler) {
+        LOGGER.debug("sample stats of container with container id " + containerID);
+        this.streamClient.statsCmd(containerID).exec(statsSampler);
+        return statsSampler;
+    }
+
+    /**
+     * @return number of container log bytes that have been captured from the
+     * docker host
+     */
+    public long getCapturedLogBytes() {
+        return this.capturedLogBytes.get();
+    }
+
+    /**
+     * create a ProcessResult from a completed log capture
+     *
+     * @param exitCode
+     * @param logCapture
+     * @return ProcessResult with the log tail as output message
+     */
+    public static ProcessResult createProcessResult(int exitCode, ContainerLogCapture logCapture) {
+        ProcessResult result = new ProcessResult(exitCode, logCapture.getTail());
+        result.setOutputSize(logCapture.getCapturedBytes());
+        result.setLogFile(logCapture.getLogFile());
+        return result;
+    }
+
+    /**
+     * run pull image command synchronously, thread blocks until the image was
+     * pulled, fails if the last status of the pull does not indicate success
+     *
+     * @param image name of the image, e.g. 'osgeo/gdal:ubuntu-full-latest'
+     * @param progressListener receives the progress of the pulled layers
+     */
+    public void pullDockerImage(String image, Consumer<PullResponseItem> progressListener) {
+        String repository = image;
+        String tag = null;
+        int tagSeparator = image.lastIndexOf(':');
+        if (!image.contains("@")) { //digest references are pulled as is
+            if (tagSeparator > image.lastIndexOf('/')) {
+                repository = image.substring(0, tagSeparator);
+                tag = image.substring(tagSeparator + 1);
+            } else {
+                tag = "latest";
+            }
+        }
+        LOGGER.info("pull docker image " + image);
+        PullImageCmd pullCmd = this.streamClient.pullImageCmd(repository);
+        if (tag != null) {
+            pullCmd.withTag(tag);
+        }
+        AtomicReference<PullResponseItem> lastItem = new AtomicReference<>();
+        PullImageResultCallback callback = pullCmd.exec(new PullImageResultCallback() {
+            @Override
+            public void onNext(PullResponseItem item) {
+                progressListener.accept(item);
+                lastItem.set(item);
+                super.onNext(item);
+            }
+        });
+        try {
+            callback.awaitCompletion();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            try {
+                callback.close();
+            } catch (IOException e) {
+                LOGGER.warn("could not close pull stream of docker image " + image);
+            }
+            throw new DockerClientException("pull of docker image " + image + " has been interrupted", ex);
+        }
+        PullResponseItem item = lastItem.get();
+        if (item == null) {
+            throw new DockerClientException("could not pull docker image " + image + ": no response from docker host");
+        }
+        if (item.isErrorIndicated()) {
+            String error = item.getErrorDetail() != null ? item.getErrorDetail().getMessage() : item.getError();
+            throw new DockerClientException("could not pull docker image " + image + ": " + error);
+        }
+        if (!item.isPullSuccessIndicated()) {
+            throw new DockerClientException("could not pull docker image " + image + ", last status: " + item.getStatus());
+        }
+    }
+
+    /**
+     * run inspect image command to check if an image is available on the
+     * docker host
+     *
+     * @param image name of the image
+     * @return true, if the image exists on the docker host
+     */
+    public boolean existsDockerImage(String image) {
+        try {
+            this.dockerClient.inspectImageCmd(image).exec();
+            return true;
+        } catch (NotFoundException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * run ping command to check if the docker host is reachable
+     *
+     * @return true, if the docker host responded
+     */
+    public boolean ping() {
+        try {
+            this.dockerClient.pingCmd().exec();
+            return true;
+        } catch (RuntimeException ex) {
+            LOGGER.warn("ping of docker host failed: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * register a user of the controller, e.g. a running execution, that has
+     * to be released when it does not use the controller anymore
+     */
+    public synchronized void retain() {
+        this.users++;
+    }
+
+    /**
+     * release a user of the controller, a retired controller is closed when
+     * its last user has been released
+     */
+    public void release() {
+        boolean unused;
+        synchronized (this) {
+            this.users--;
+            unused = this.retired && this.users <= 0;
+        }
+        if (unused) {
+            LOGGER.info("closing retired docker controller after its last execution has ended");
+            this.close();
+        }
+    }
+
+    /**
+     * close the controller as soon as it is not used anymore, the event
+     * monitor keeps waiting for the containers of running executions until
+     * then
+     */
+    public void retire() {
+        boolean unused;
+        synchronized (this) {
+            this.retired = true;
+            unused = this.users <= 0;
+            if (!unused) {
+                LOGGER.info("docker controller has been retired, closing it after " + this.users + " running executions");
+            }
+        }
+        if (unused) {
+            this.close();
+        }
     }
 
     public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            if (this.eventMonitor != null) {
+                this.eventMonitor.close();
+            }
+        }
         try {
             this.dockerClient.close();
+            if (this.streamClient != this.dockerClient) {
+                this.streamClient.close();
+            }
         } catch (IOException ex) {
             LOGGER.warn("could not close docker client");
         }
     }
 
+    private void countCapturedLogBytes(ContainerLogCapture logCapture) {
+        logCapture.getCompletion().whenComplete((tail, ex) -> this.capturedLogBytes.addAndGet(logCapture.getCapturedBytes()));
+    }
+
+    private synchronized ContainerEventMonitor getEventMonitor() {
+        if (this.eventMonitor == null) {
+            this.eventMonitor = new ContainerEventMonitor(this.streamClient, EVENT_STREAM_RECONNECT_DELAY);
+        }
+        return this.eventMonitor;
+    }
+
     private DockerClient getDefaultConnection() {
+        return DockerClientBuilder.getInstance(getDefaultConfig())
+                .withDockerCmdExecFactory(new NettyDockerCmdExecFactory()).build();
+    }
+
+    private static DockerClientConfig getDefaultConfig() {
         DockerClientConfig config = null;
 
         if (SystemUtils.IS_OS_WINDOWS) { //windows
@@ -244,8 +660,7 @@ public class DockerController {
                     .build();
         }
 
-        return DockerClientBuilder.getInstance(config)
-                .withDockerCmdExecFactory(new NettyDockerCmdExecFactory()).build();
+        return config;
     }
 
     /**
@@ -281,90 +696,30 @@ public class DockerController {
         return stringParams;
     }
 
-    private HostConfig buildHostConfig(List<String> volumeBindungs, List<String> portBindings) {
+    private HostConfig buildHostConfig(DockerRunCommandConfiguration runConfig) {
         HostConfig hostConfig = HostConfig.newHostConfig()
-                .withBinds(volumeBindungs.stream().map(vb -> createBinding(vb)).collect(Collectors.toList()))
-                .withPortBindings(portBindings.stream().map(pb -> PortBinding.parse(pb)).collect(Collectors.toList()));
-
-        return hostConfig;
-    }
+                .withBinds(runConfig.getVolumeBindings().stream().map(vb -> createBinding(vb)).collect(Collectors.toList()))
+                .withPortBindings(runConfig.getPortBindings().stream().map(pb -> PortBinding.parse(pb)).collect(Collectors.toList()));
 
-    
-    
-    
-    /**
-     * only use for EventType 'CONTAINER' and Action 'die' add filters for
-     * container id, EventType and Action when registering callback does not
-     * apply further checks
-     */
-    private class RunContainerSyncCallback extends EventsResultCallback {
-
-        private final CountDownLatch runLatch;
-        private int exitCode;
-
-        public RunContainerSyncCallback(CountDownLatch runLatch) {
-            this.runLatch = runLatch;
-        }
-
-        public int getExitCode() {
-            return exitCode;
-        }
-
-        @Override
-        public void onNext(Event event) {
-            try {
-                String containerID = event.getId();
-
-                LOGGER.info("received die event for container " + containerID + System.lineSeparator() + event.toString());
-
-                if (event.getActor().getAttributes() != null && event.getActor().getAttributes().containsKey("exitCode")) {
-                    this.exitCode = Integer.parseInt(event.getActor().getAttributes().get("exitCode"));
-                } else {
-                    LOGGER.warn("exit code for container " + containerID + "unknown, using default value " + exitCode);
-                }
-            } finally {
-                this.runLatch.countDown();
-            }
-        }
-    }
-
-    private class RetrieveContainerLogCallback implements ResultCallback<Frame> {
-
-        private final String containerID;
-        private final CountDownLatch logLatch;
-        private final StringBuilder logBuilder;
-
-        public RetrieveContainerLogCallback(String containerID, StringBuilder logBuilder, CountDownLatch logLatch) {
-            this.containerID = containerID;
-            this.logBuilder = logBuilder;
-            this.logLatch = logLatch;
+        //resource limits, unset values keep the docker defaults
+        if (runConfig.getCpuQuota() != null) {
+            hostConfig.withCpuPeriod(DockerRunCommandConfiguration.CPU_PERIOD)
+                    .withCpuQuota(runConfig.getCpuQuota());
         }
-
-        @Override
-        public void onStart(Closeable closeable) {
-            LOGGER.debug("retrieving log for container " + containerID);
+        if (runConfig.getCpusetCpus() != null) {
+            hostConfig.withCpusetCpus(runConfig.getCpusetCpus());
         }
-
-        @Override
-        public void onNext(Frame frame) {
-            this.logBuilder.append(new String(frame.getPayload(), StandardCharsets.UTF_8));
+        if (runConfig.getMemory() != null) {
+            hostConfig.withMemory(runConfig.getMemory());
         }
-
-        @Override
-        public void onError(Throwable throwable) {
-            LOGGER.error("error occured while retrieving log for container: " + containerID, throwable);
-            this.logLatch.countDown();
+        if (runConfig.getShmSize() != null) {
+            hostConfig.withShmSize(runConfig.getShmSize());
         }
-
-        @Override
-        public void onComplete() {
-            LOGGER.debug("successfully retrieved log for container " + containerID);
-            this.logLatch.countDown();
+        if (!runConfig.getTmpfsMounts().isEmpty()) {
+            hostConfig.withTmpFs(runConfig.getTmpfsMounts());
         }
 
-        @Override
-        public void close() throws IOException {
-        }
+        return hostConfig;
     }
 
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry that shares a single {@link DockerController} per Docker host, so
+ * that the underlying client with its connection pool is reused by all tool
+ * executions on the same host. The health of a controller is checked by a
+ * ping when it is requested and the last successful check is older than the
+ * configured interval. A controller is unhealthy after a configured number of
+ * consecutive failed pings. Unhealthy controllers are replaced and retired, so
+ * that they are closed after their running executions have ended.
+ */
+public class DockerControllerRegistry implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DockerControllerRegistry.class);
+
+    private static final String DEFAULT_HOST = "default";
+
+    private final Function<String, DockerController> controllerFactory;
+
+    private final long healthCheckInterval;
+
+    private final int maxFailedPings;
+
+    private final Map<String, Entry> controllers = new HashMap<>();
+
+    private boolean closed;
+
+    /**
+     * @param maxConnections      Maximum number of pooled connections per
+     *                            Docker host
+     * @param healthCheckInterval Interval in milliseconds after which the
+     *                            health of a controller will be checked again
+     * @param maxFailedPings      Number of consecutive failed pings after
+     *                            which a controller is replaced
+     */
+    public DockerControllerRegistry(int maxConnections, long healthCheckInterval, int maxFailedPings) {
+        this(host -> createController(host, maxConnections), healthCheckInterval, maxFailedPings);
+    }
+
+    /**
+     * @param controllerFactory   Creates a controller for a Docker host
+     * @param healthCheckInterval Interval in milliseconds after which the
+     *                            health of a controller will be checked again
+     * @param maxFailedPings      Number of consecutive failed pings after
+     *                            which a controller is replaced
+     */
+    public DockerControllerRegistry(Function<String, DockerController> controllerFactory, long healthCheckInterval,
+            int maxFailedPings) {
+        this.controllerFactory = controllerFactory;
+        this.healthCheckInterval = healthCheckInterval;
+        this.maxFailedPings = Math.max(maxFailedPings, 1);
+    }
+
+    /**
+     * Provides the shared controller for a Docker host. The controller must
+     * not be closed by the caller.
+     *
+     * @param host the Docker host, e.g. 'unix:///var/run/docker.sock'. If
+     *             null, the default connection will be used.
+     * @return the {@link DockerController} for the host
+     */
+    public DockerController getController(String host) {
+        String key = host == null || host.trim().isEmpty() ? DEFAULT_HOST : host.trim();
+        Entry entry;
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("Docker controller registry has been closed.");
+            }
+            entry = this.controllers.get(key);
+            if (entry == null) {
+                LOGGER.info("create docker controller for host " + key);
+                entry = new Entry(this.controllerFactory.apply(DEFAULT_HOST.equals(key) ? null : key));
+                this.controllers.put(key, entry);
+                return entry.controller;
+            }
+        }
+        if (this.isHealthy(entry)) {
+            return entry.controller;
+        }
+        synchronized (this) {
+            if (this.controllers.get(key) == entry) {
+                LOGGER.warn("docker controller for host " + key + " is unhealthy, reconnecting");
+                this.controllers.remove(key);
+                // executions that are still running keep the replaced controller open
+                entry.controller.retire();
+            }
+        }
+        return this.getController(host);
+    }
+
+    /**
+     * @return number of container log bytes that have been captured from all
+     * Docker hosts with a shared controller
+     */
+    public synchronized long getCapturedLogBytes() {
+        return this.controllers.values().stream().mapToLong(e -> e.controller.getCapturedLogBytes()).sum();
+    }
+
+    /**
+     * @return the Docker hosts with a shared controller, that can be passed to
+     * {@link #getController(java.lang.String)}
+     */
+    public synchronized List<String> getHosts() {
+        return new ArrayList<>(this.controllers.keySet());
+    }
+
+    /**
+     * @return the number of Docker hosts with a shared controller
+     */
+    public synchronized int size() {
+        return this.controllers.size();
+    }
+
+    /**
+     * Closes the controllers of all Docker hosts
+     */
+    @Override
+    public void close() {
+        List<Entry> entries;
+        synchronized (this) {
+            this.closed = true;
+            entries = new ArrayList<>(this.controllers.values());
+            this.controllers.clear();
+        }
+        entries.forEach(e -> e.controller.close());
+        LOGGER.info("closed " + entries.size() + " docker controllers");
+    }
+
+    private boolean isHealthy(Entry entry) {
+        long now = System.currentTimeMillis();
+        if (now - entry.lastHealthCheck < this.healthCheckInterval) {
+            return true;
+        }
+        if (entry.controller.ping()) {
+            entry.failedPings.set(0);
+            entry.lastHealthCheck = now;
+            return true;
+        }
+        int failedPings = entry.failedPings.incrementAndGet();
+        if (failedPings < this.maxFailedPings) {
+            LOGGER.warn("ping of docker host failed " + failedPings + " of " + this.maxFailedPings + " times in a row");
+            return true;
+        }
+        return false;
+    }
+
+    private static DockerController createController(String host, int maxConnections) {
+        if (host == null) {
+            return new DockerController(maxConnections);
+        }
+        return new DockerController(DefaultDockerClientConfig.createDefaultConfigBuilder()
+                .withDockerHost(host).build(), maxConnections);
+    }
+
+    private static class Entry {
+
+        private final DockerController controller;
+
+        private volatile long lastHealthCheck = System.currentTimeMillis();
+
+        private final AtomicInteger failedPings = new AtomicInteger();
+
+        private Entry(DockerController controller) {
+            this.controller = controller;
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import org.n52.wacodis.javaps.command.ProcessResult;
+import org.n52.wacodis.javaps.command.ToolExecutionProcess;
+
+/**
+ * runs a command inside a pooled docker container
+ */
+public class DockerExecProcess implements ToolExecutionProcess {
+
+    private final DockerContainerPool containerPool;
+    private final DockerRunCommandConfiguration runConfig;
+    private Function<String, ContainerLogCapture> logCaptureFactory = id -> new ContainerLogCapture(id, ContainerLogCapture.DEFAULT_TAIL_SIZE);
+
+    public DockerExecProcess(DockerContainerPool containerPool, DockerRunCommandConfiguration runConfig) {
+        this.containerPool = containerPool;
+        this.runConfig = runConfig;
+    }
+
+    public DockerContainerPool getContainerPool() {
+        return containerPool;
+    }
+
+    public DockerRunCommandConfiguration getRunConfig() {
+        return runConfig;
+    }
+
+    public Function<String, ContainerLogCapture> getLogCaptureFactory() {
+        return logCaptureFactory;
+    }
+
+    /**
+     * @param logCaptureFactory creates the capture for the output of the
+     * command by the id of the pooled container
+     */
+    public void setLogCaptureFactory(Function<String, ContainerLogCapture> logCaptureFactory) {
+        this.logCaptureFactory = logCaptureFactory;
+    }
+
+    /**
+     * execute command synchronously, thread blocks until the command finished
+     *
+     * @return ProcessResult containing exit code and output of the command
+     * @throws InterruptedException
+     */
+    @Override
+    public ProcessResult execute() throws InterruptedException {
+        try {
+            return this.executeAsync().get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("execution in pooled container failed", ex.getCause());
+        }
+    }
+
+    /**
+     * execute command asynchronously as soon as a pooled container is
+     * available
+     *
+     * @return future that completes with the ProcessResult containing exit
+     * code and output of the command
+     */
+    @Override
+    public CompletableFuture<ProcessResult> executeAsync() {
+        return this.containerPool.execute(this.runConfig, this.logCaptureFactory);
+    }
+
+}
@@ -16,6 +16,11 @@
 package org.n52.wacodis.javaps.command.docker;
 
 import com.github.dockerjava.api.command.CreateContainerResponse;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import org.n52.wacodis.javaps.command.ProcessResult;
 import org.n52.wacodis.javaps.command.ToolExecutionProcess;
 import org.slf4j.Logger;
@@ -32,6 +37,8 @@ public class DockerProcess implements ToolExecutionProcess {
     private DockerController dockerController;
     private DockerContainer container;
     private DockerRunCommandConfiguration containerRunConfig;
+    private Function<String, ContainerLogCapture> logCaptureFactory = id -> new ContainerLogCapture(id, ContainerLogCapture.DEFAULT_TAIL_SIZE);
+    private boolean statsSampling;
 
     public DockerProcess(DockerController dockerController, DockerContainer container, DockerRunCommandConfiguration containerRunConfig) {
         this.dockerController = dockerController;
@@ -63,6 +70,31 @@ public class DockerProcess implements ToolExecutionProcess {
         this.dockerController = dockerController;
     }
 
+    public Function<String, ContainerLogCapture> getLogCaptureFactory() {
+        return logCaptureFactory;
+    }
+
+    /**
+     * @param logCaptureFactory creates the capture for the log of a container
+     * by its container id
+     */
+    public void setLogCaptureFactory(Function<String, ContainerLogCapture> logCaptureFactory) {
+        this.logCaptureFactory = logCaptureFactory;
+    }
+
+    public boolean isStatsSampling() {
+        return statsSampling;
+    }
+
+    /**
+     * @param statsSampling if true, the stats of the container are sampled
+     * while it is running and the resource usage is attached to the
+     * ProcessResult
+     */
+    public void setStatsSampling(boolean statsSampling) {
+        this.statsSampling = statsSampling;
+    }
+
     /**
      * execute docker run command synchronously,
      * thread blocks until executed container dies (stopped, finished),
@@ -72,16 +104,114 @@ public class DockerProcess implements ToolExecutionProcess {
      */
     @Override
     public ProcessResult execute() throws InterruptedException {
+        try {
+            return this.executeAsync().get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("execution of container " + this.container.getContainerName() + " failed", ex.getCause());
+        }
+    }
+
+    /**
+     * execute docker run command asynchronously,
+     * no thread is blocked while the container is running,
+     * the container log is streamed while the container is running,
+     * container is removed after execution. If the returned future is
+     * cancelled or completed exceptionally while the container is still
+     * running, e.g. because of a deadline, the container is stopped and removed.
+     * The controller is retained until the container has been removed.
+     * @return future that completes with the ProcessResult containing container exit code and container log tail
+     */
+    @Override
+    public CompletableFuture<ProcessResult> executeAsync() {
         //create container
-        CreateContainerResponse createdContainer = this.dockerController.createDockerContainer(this.container, this.containerRunConfig);
-        String containerID = createdContainer.getId();
-        
-        //run container synchronously, remove container after execution
-        try{        
-            ProcessResult results = this.dockerController.runDockerContainer_Sync(containerID);
-            return results;
-        }finally{
-            this.dockerController.removeDockerContainer(containerID); //make sure container is removed in any case
+        this.dockerController.retain();
+        String containerID;
+        try {
+            CreateContainerResponse createdContainer = this.dockerController.createDockerContainer(this.container, this.containerRunConfig);
+            containerID = createdContainer.getId();
+        } catch (RuntimeException ex) {
+            this.dockerController.release();
+            throw ex;
+        }
+
+        //run container asynchronously and stream its log, remove container after execution
+        ContainerLogCapture logCapture = this.logCaptureFactory.apply(containerID);
+        ContainerStatsSampler statsSampler = this.statsSampling ? new ContainerStatsSampler(containerID) : null;
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<Integer> death = this.dockerController.runDockerContainer_Async(containerID);
+        try {
+            this.dockerController.followDockerContainerLog(containerID, logCapture);
+        } catch (RuntimeException ex) {
+            logCapture.onError(ex);
+        }
+        if (statsSampler != null) {
+            try {
+                this.dockerController.sampleDockerContainerStats(containerID, statsSampler);
+            } catch (RuntimeException ex) {
+                statsSampler.onError(ex);
+            }
+        }
+        CompletableFuture<ProcessResult> result = new CompletableFuture<>();
+        death.thenCompose(exitCode -> {
+            long duration = System.currentTimeMillis() - startTime;
+            return logCapture.getCompletion().thenApply(tail -> {
+                ProcessResult processResult = DockerController.createProcessResult(exitCode, logCapture);
+                processResult.setDuration(duration);
+                if (statsSampler != null) {
+                    statsSampler.applyTo(processResult);
+                }
+                return processResult;
+            });
+        }).whenComplete((r, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+            } else {
+                result.complete(r);
+            }
+        });
+        result.whenComplete((r, ex) -> { //make sure container is removed in any case
+            this.closeStatsSampler(statsSampler);
+            if (death.isDone()) {
+                this.removeContainer(containerID, false);
+                this.dockerController.release();
+            } else {
+                //stopping may take a while, do not block the thread that aborted the execution
+                CompletableFuture.runAsync(() -> {
+                    this.removeContainer(containerID, true);
+                    this.dockerController.release();
+                });
+            }
+        });
+        return result;
+    }
+
+    private void closeStatsSampler(ContainerStatsSampler statsSampler) {
+        if (statsSampler == null) {
+            return;
+        }
+        try {
+            statsSampler.close();
+        } catch (IOException e) {
+            LOGGER.warn("could not close stats stream: " + e.getMessage());
+        }
+    }
+
+    private void removeContainer(String containerID, boolean running) {
+        if (running) {
+            LOGGER.info("execution of container " + containerID + " has been aborted, stopping container");
+            try {
+                this.dockerController.stopDockerContainer(containerID, DockerController.STOP_TIMEOUT);
+            } catch (RuntimeException e) {
+                LOGGER.warn("could not stop container " + containerID + ": " + e.getMessage());
+            }
+        }
+        try {
+            this.dockerController.removeDockerContainer(containerID, running);
+        } catch (RuntimeException e) {
+            LOGGER.warn("could not remove container " + containerID + ": " + e.getMessage());
         }
     }
 }
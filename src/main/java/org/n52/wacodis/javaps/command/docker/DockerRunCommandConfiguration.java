@@ -17,7 +17,9 @@ package org.n52.wacodis.javaps.command.docker;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.n52.wacodis.javaps.command.CommandParameter;
 
 /**
@@ -26,14 +28,29 @@ import org.n52.wacodis.javaps.command.CommandParameter;
  */
 public class DockerRunCommandConfiguration {
 
+    /**
+     * CPU period in microseconds the CPU quota refers to
+     */
+    public static final long CPU_PERIOD = 100000;
+
     private final List<String> portBindings;
     private final List<String> volumeBindings;
     private final List<CommandParameter> commandParameters;
+    private final List<String> environment;
+    private final Map<String, String> tmpfsMounts;
+    private final Map<String, String> labels;
+    private Long cpuQuota;
+    private String cpusetCpus;
+    private Long memory;
+    private Long shmSize;
 
     public DockerRunCommandConfiguration() {
         this.portBindings = new ArrayList<>();
         this.volumeBindings = new ArrayList<>();
         this.commandParameters = new ArrayList();
+        this.environment = new ArrayList<>();
+        this.tmpfsMounts = new LinkedHashMap<>();
+        this.labels = new LinkedHashMap<>();
     }
 
     public boolean addVolumeBinding(String volumeBinding) {
@@ -80,4 +97,80 @@ public class DockerRunCommandConfiguration {
         return Collections.unmodifiableList(this.volumeBindings);
     }
 
+    public boolean addEnvironmentVariable(String name, String value) {
+        return this.environment.add(name + "=" + value);
+    }
+
+    /**
+     * @return environment variables as 'NAME=value'
+     */
+    public List<String> getEnvironment() {
+        return Collections.unmodifiableList(this.environment);
+    }
+
+    /**
+     * @param containerPath path of the in-memory mount inside the container
+     * @param options mount options, e.g. 'size=1g'
+     */
+    public void addTmpfsMount(String containerPath, String options) {
+        this.tmpfsMounts.put(containerPath, options != null ? options : "");
+    }
+
+    public Map<String, String> getTmpfsMounts() {
+        return Collections.unmodifiableMap(this.tmpfsMounts);
+    }
+
+    public void addLabel(String name, String value) {
+        this.labels.put(name, value);
+    }
+
+    public Map<String, String> getLabels() {
+        return Collections.unmodifiableMap(this.labels);
+    }
+
+    /**
+     * @return CPU quota in microseconds per CPU period of
+     * {@link #CPU_PERIOD}, null if unlimited
+     */
+    public Long getCpuQuota() {
+        return cpuQuota;
+    }
+
+    /**
+     * @param cpus number of CPUs the container may use
+     */
+    public void setCpus(double cpus) {
+        this.cpuQuota = cpus > 0 ? Math.round(cpus * CPU_PERIOD) : null;
+    }
+
+    public String getCpusetCpus() {
+        return cpusetCpus;
+    }
+
+    public void setCpusetCpus(String cpusetCpus) {
+        this.cpusetCpus = cpusetCpus;
+    }
+
+    /**
+     * @return memory limit in bytes, null if unlimited
+     */
+    public Long getMemory() {
+        return memory;
+    }
+
+    public void setMemory(Long memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * @return size of /dev/shm in bytes, null for the Docker default
+     */
+    public Long getShmSize() {
+        return shmSize;
+    }
+
+    public void setShmSize(Long shmSize) {
+        this.shmSize = shmSize;
+    }
+
 }
@@ -15,20 +15,30 @@
  */
 package org.n52.wacodis.javaps.configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.n52.wacodis.javaps.io.http.HubCredentialsPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
@@ -42,12 +52,82 @@ public class OpenAccessHubConfig {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenAccessHubConfig.class);
 
+    private static final String PRODUCT_VALUE_SUFFIX = "/$value";
+
+    private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private static final String ACCOUNT_USERNAME = "openaccesshub.accounts[%d].username";
+
+    private static final String ACCOUNT_PASSWORD = "openaccesshub.accounts[%d].password";
+
+    @Autowired
+    private Environment environment;
+
     @Value("${openaccesshub.username}")
     private String user;
 
     @Value("${openaccesshub.password}")
     private String password;
 
+    @Value("${openaccesshub.pool.maxtotal:20}")
+    private int maxConnections;
+
+    @Value("${openaccesshub.pool.maxperroute:10}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${openaccesshub.pool.idletimeout:60}")
+    private int idleTimeout;
+
+    @Value("${openaccesshub.timeout.connect:60000}")
+    private int connectTimeout;
+
+    @Value("${openaccesshub.timeout.read:120000}")
+    private int readTimeout;
+
+    @Value("${openaccesshub.compression.metadata:true}")
+    private boolean metadataCompression;
+
+    @Value("${openaccesshub.account.maxconcurrent:0}")
+    private int maxConcurrentPerAccount;
+
+    @Value("${openaccesshub.account.cooldown:60}")
+    private int accountCoolDown;
+
+    @Bean(name = "openAccessHubCredentials")
+    public HubCredentialsPool prepareCredentialsPool() {
+        List<HubCredentialsPool.Account> accounts = new ArrayList<>();
+        accounts.add(new HubCredentialsPool.Account(user, password, maxConcurrentPerAccount));
+        // indexed properties, since passwords may contain any separator
+        for (int i = 0; environment.containsProperty(String.format(ACCOUNT_USERNAME, i)); i++) {
+            String accountPassword = environment.getProperty(String.format(ACCOUNT_PASSWORD, i));
+            if (accountPassword == null) {
+                throw new IllegalArgumentException(String.format(
+                        "Missing password of Open Access Hub account %d. Specify '%s'.", i, String.format(ACCOUNT_PASSWORD, i)));
+            }
+            accounts.add(new HubCredentialsPool.Account(environment.getProperty(String.format(ACCOUNT_USERNAME, i)).trim(),
+                    accountPassword, maxConcurrentPerAccount));
+        }
+
+        LOGGER.info("Set credentials pool for Sentinel Open Access Hub. Accounts={}, MaxConcurrentPerAccount={}, CoolDown={}s",
+                accounts.stream().map(HubCredentialsPool.Account::getUsername).collect(Collectors.joining(",")),
+                maxConcurrentPerAccount, accountCoolDown);
+
+        return new HubCredentialsPool(accounts, TimeUnit.SECONDS.toMillis(accountCoolDown));
+    }
+
+    @Bean(name = "openAccessHubConnectionManager", destroyMethod = "shutdown")
+    public PoolingHttpClientConnectionManager prepareConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+        LOGGER.info("Set connection pool for Sentinel Open Access Hub. MaxTotal={}, MaxPerRoute={}, IdleTimeout={}s",
+                maxConnections, maxConnectionsPerRoute, idleTimeout);
+
+        return connectionManager;
+    }
+
     @Bean(name = "openAccessHubService")
     public RestTemplate prepareRestTemplateForProductService() {
 
@@ -59,11 +139,28 @@ public class OpenAccessHubConfig {
             .collect(Collectors.joining("")));
 
         RequestConfig.Builder requestBuilder = RequestConfig.custom();
-        requestBuilder = requestBuilder.setConnectTimeout(60000);
+        requestBuilder = requestBuilder.setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(connectTimeout);
 
         HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
         httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
         httpClientBuilder.setDefaultRequestConfig(requestBuilder.build());
+        httpClientBuilder.setConnectionManager(prepareConnectionManager());
+        httpClientBuilder.setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE);
+        httpClientBuilder.evictExpiredConnections();
+        httpClientBuilder.evictIdleConnections(idleTimeout, TimeUnit.SECONDS);
+        if (metadataCompression) {
+            // products are already compressed and must be requested by byte ranges of the original
+            // representation, so gzip is only negotiated for metadata requests
+            httpClientBuilder.addInterceptorLast((HttpRequestInterceptor) (request, context) -> {
+                if (request.getRequestLine().getUri().endsWith(PRODUCT_VALUE_SUFFIX)) {
+                    request.removeHeaders(HttpHeaders.ACCEPT_ENCODING);
+                }
+            });
+        } else {
+            httpClientBuilder.disableContentCompression();
+        }
         CloseableHttpClient httpClient = httpClientBuilder.build();
 
         HttpComponentsClientHttpRequestFactory rf = new HttpComponentsClientHttpRequestFactory(httpClient);
@@ -15,14 +15,24 @@
  */
 package org.n52.wacodis.javaps.configuration;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
 import javax.imageio.ImageIO;
 
 import org.esa.snap.runtime.Engine;
+import org.n52.wacodis.javaps.algorithms.execution.DockerHostSelector;
+import org.n52.wacodis.javaps.algorithms.execution.ToolExecutionScheduler;
+import org.n52.wacodis.javaps.algorithms.execution.ToolUsageStatistics;
+import org.n52.wacodis.javaps.command.docker.ContainerReaper;
+import org.n52.wacodis.javaps.command.docker.DockerControllerRegistry;
+import org.n52.wacodis.javaps.configuration.tools.ByteSize;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 
@@ -49,9 +59,137 @@ public class WacodisBackendConfig implements InitializingBean, DisposableBean {
     @Value("${wacodis.javaps.epsg}")
     private String epsg;
 
+    @Value("${wacodis.javaps.gdal.parallelism:2}")
+    private int gdalParallelism;
+
     @Value("${wacodis.javaps.sentineltestfile:}")
     private String sentinelTestFile;
 
+    @Value("${wacodis.javaps.cache.maxsize:0}")
+    private long productCacheMaxSize;
+
+    @Value("${wacodis.javaps.cache.eviction:LRU}")
+    private String productCacheEvictionPolicy;
+
+    @Value("${wacodis.javaps.cache.pinduration:360}")
+    private long productCachePinDuration;
+
+    @Value("${wacodis.javaps.download.connections:1}")
+    private int downloadConnections;
+
+    @Value("${wacodis.javaps.download.minsegmentsize:16777216}")
+    private long downloadMinSegmentSize;
+
+    @Value("${wacodis.javaps.download.resume:false}")
+    private boolean downloadResumable;
+
+    @Value("${wacodis.javaps.download.retries:3}")
+    private int downloadRetries;
+
+    @Value("${wacodis.javaps.download.streamingunzip:false}")
+    private boolean streamingUnzip;
+
+    @Value("${wacodis.javaps.unzip.threads:1}")
+    private int unzipThreads;
+
+    @Value("${wacodis.javaps.download.zipaccess:false}")
+    private boolean zipAccess;
+
+    @Value("${wacodis.javaps.download.verifychecksum:false}")
+    private boolean checksumVerification;
+
+    @Value("${wacodis.javaps.download.backgroundthreads:2}")
+    private int downloadBackgroundThreads;
+
+    @Value("${wacodis.javaps.prefetch.retention:60}")
+    private long prefetchRetention;
+
+    @Value("${wacodis.javaps.lta.enabled:false}")
+    private boolean ltaRetrieval;
+
+    @Value("${wacodis.javaps.lta.pollinterval:60}")
+    private long ltaPollInterval;
+
+    @Value("${wacodis.javaps.lta.maxpollinterval:900}")
+    private long ltaMaxPollInterval;
+
+    @Value("${wacodis.javaps.lta.timeout:1440}")
+    private long ltaTimeout;
+
+    @Value("${wacodis.javaps.docker.maxconnections:20}")
+    private int dockerMaxConnections;
+
+    @Value("${wacodis.javaps.docker.healthcheckinterval:30}")
+    private long dockerHealthCheckInterval;
+
+    @Value("${wacodis.javaps.docker.healthcheckfailures:3}")
+    private int dockerHealthCheckFailures;
+
+    @Value("${wacodis.javaps.docker.circuitbreaker.failures:3}")
+    private int dockerCircuitBreakerFailures;
+
+    @Value("${wacodis.javaps.docker.circuitbreaker.opentime:60}")
+    private long dockerCircuitBreakerOpenTime;
+
+    @Value("${wacodis.javaps.docker.stats:false}")
+    private boolean dockerStatsSampling;
+
+    @Value("${wacodis.javaps.docker.statswindow:100}")
+    private int dockerStatsWindow;
+
+    @Value("${wacodis.javaps.docker.reaper.interval:0}")
+    private long dockerReaperInterval;
+
+    @Value("${wacodis.javaps.docker.reaper.maxage:0}")
+    private long dockerReaperMaxAge;
+
+    @Value("${wacodis.javaps.docker.instance:}")
+    private String dockerInstance;
+
+    @Value("${wacodis.javaps.docker.prepull:false}")
+    private boolean dockerPrepull;
+
+    @Value("${wacodis.javaps.docker.prepullthreads:4}")
+    private int dockerPrepullThreads;
+
+    @Value("${wacodis.javaps.docker.warmup:false}")
+    private boolean dockerWarmUp;
+
+    @Value("${wacodis.javaps.docker.warmupcommand:true}")
+    private String dockerWarmUpCommand;
+
+    @Value("${wacodis.javaps.docker.warmuptimeout:60}")
+    private long dockerWarmUpTimeout;
+
+    @Value("${wacodis.javaps.docker.logdir:}")
+    private String dockerLogDirectory;
+
+    @Value("${wacodis.javaps.docker.logmaxfilesize:10m}")
+    private String dockerLogMaxFileSize;
+
+    @Value("${wacodis.javaps.docker.logmaxfiles:3}")
+    private int dockerLogMaxFiles;
+
+    @Value("${wacodis.javaps.docker.logtailsize:64k}")
+    private String dockerLogTailSize;
+
+    @Value("${wacodis.javaps.scheduler.maxconcurrent:0}")
+    private int schedulerMaxConcurrent;
+
+    @Value("${wacodis.javaps.scheduler.maxperimage:0}")
+    private int schedulerMaxPerImage;
+
+    @Value("${wacodis.javaps.scheduler.cpus:0}")
+    private double schedulerCpus;
+
+    @Value("${wacodis.javaps.scheduler.memory:}")
+    private String schedulerMemory;
+
+    @Value("${wacodis.javaps.scheduler.policy:FIFO}")
+    private String schedulerPolicy;
+
+    private DockerControllerRegistry dockerControllerRegistry;
+
     public String getWorkingDirectory() {
         return workingDirectory;
     }
@@ -68,16 +206,282 @@ public class WacodisBackendConfig implements InitializingBean, DisposableBean {
         return epsg;
     }
 
+    public int getGdalParallelism() {
+        return gdalParallelism;
+    }
+
     public String getSentinelTestFile() {
         return sentinelTestFile;
     }
 
+    public long getProductCacheMaxSize() {
+        return productCacheMaxSize;
+    }
+
+    public String getProductCacheEvictionPolicy() {
+        return productCacheEvictionPolicy;
+    }
+
+    public long getProductCachePinDuration() {
+        return productCachePinDuration;
+    }
+
+    public int getDownloadConnections() {
+        return downloadConnections;
+    }
+
+    public long getDownloadMinSegmentSize() {
+        return downloadMinSegmentSize;
+    }
+
+    public boolean isDownloadResumable() {
+        return downloadResumable;
+    }
+
+    public int getDownloadRetries() {
+        return downloadRetries;
+    }
+
+    public boolean isStreamingUnzip() {
+        return streamingUnzip;
+    }
+
+    public int getUnzipThreads() {
+        return unzipThreads;
+    }
+
+    public boolean isZipAccess() {
+        return zipAccess;
+    }
+
+    public boolean isChecksumVerification() {
+        return checksumVerification;
+    }
+
+    public int getDownloadBackgroundThreads() {
+        return downloadBackgroundThreads;
+    }
+
+    public long getPrefetchRetention() {
+        return prefetchRetention;
+    }
+
+    public boolean isLtaRetrieval() {
+        return ltaRetrieval;
+    }
+
+    public long getLtaPollInterval() {
+        return ltaPollInterval;
+    }
+
+    public long getLtaMaxPollInterval() {
+        return ltaMaxPollInterval;
+    }
+
+    public long getLtaTimeout() {
+        return ltaTimeout;
+    }
+
+    public int getDockerMaxConnections() {
+        return dockerMaxConnections;
+    }
+
+    public long getDockerHealthCheckInterval() {
+        return dockerHealthCheckInterval;
+    }
+
+    public int getDockerHealthCheckFailures() {
+        return dockerHealthCheckFailures;
+    }
+
+    public int getDockerCircuitBreakerFailures() {
+        return dockerCircuitBreakerFailures;
+    }
+
+    public long getDockerCircuitBreakerOpenTime() {
+        return dockerCircuitBreakerOpenTime;
+    }
+
+    public boolean isDockerStatsSampling() {
+        return dockerStatsSampling;
+    }
+
+    public int getDockerStatsWindow() {
+        return dockerStatsWindow;
+    }
+
+    public long getDockerReaperInterval() {
+        return dockerReaperInterval;
+    }
+
+    public long getDockerReaperMaxAge() {
+        return dockerReaperMaxAge;
+    }
+
+    /**
+     * @return the configured name of this service instance or, if not
+     * configured, the name of the local host
+     */
+    public String getDockerInstance() {
+        if (dockerInstance != null && !dockerInstance.trim().isEmpty()) {
+            return dockerInstance.trim();
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            return "localhost";
+        }
+    }
+
+    public boolean isDockerPrepull() {
+        return dockerPrepull;
+    }
+
+    public int getDockerPrepullThreads() {
+        return dockerPrepullThreads;
+    }
+
+    public boolean isDockerWarmUp() {
+        return dockerWarmUp;
+    }
+
+    public String getDockerWarmUpCommand() {
+        return dockerWarmUpCommand;
+    }
+
+    public long getDockerWarmUpTimeout() {
+        return dockerWarmUpTimeout;
+    }
+
+    public String getDockerLogDirectory() {
+        return dockerLogDirectory;
+    }
+
+    /**
+     * @return size in bytes after which a container log file is rotated
+     */
+    public long getDockerLogMaxFileSize() {
+        return ByteSize.parse(dockerLogMaxFileSize);
+    }
+
+    public int getDockerLogMaxFiles() {
+        return dockerLogMaxFiles;
+    }
+
+    /**
+     * @return number of bytes of a container log tail kept in memory
+     */
+    public long getDockerLogTailSize() {
+        return ByteSize.parse(dockerLogTailSize);
+    }
+
+    public int getSchedulerMaxConcurrent() {
+        return schedulerMaxConcurrent;
+    }
+
+    public int getSchedulerMaxPerImage() {
+        return schedulerMaxPerImage;
+    }
+
+    public double getSchedulerCpus() {
+        return schedulerCpus;
+    }
+
+    public String getSchedulerMemory() {
+        return schedulerMemory;
+    }
+
+    public String getSchedulerPolicy() {
+        return schedulerPolicy;
+    }
+
+    /**
+     * Registry that shares the Docker clients per Docker host. The registry
+     * is closed on {@link #destroy()}.
+     *
+     * @return the {@link DockerControllerRegistry}
+     */
+    @Bean(destroyMethod = "")
+    public DockerControllerRegistry dockerControllerRegistry() {
+        this.dockerControllerRegistry = new DockerControllerRegistry(dockerMaxConnections,
+                TimeUnit.SECONDS.toMillis(dockerHealthCheckInterval), dockerHealthCheckFailures);
+        return this.dockerControllerRegistry;
+    }
+
+    /**
+     * Places EO tool executions on one of several Docker hosts
+     *
+     * @return the {@link DockerHostSelector}
+     */
+    @Bean
+    public DockerHostSelector dockerHostSelector() {
+        return new DockerHostSelector(dockerCircuitBreakerFailures,
+                TimeUnit.SECONDS.toMillis(dockerCircuitBreakerOpenTime));
+    }
+
+    /**
+     * Per tool histograms of the resource usage of the EO tool executions
+     *
+     * @return the {@link ToolUsageStatistics}
+     */
+    @Bean
+    public ToolUsageStatistics toolUsageStatistics() {
+        return new ToolUsageStatistics(dockerStatsWindow);
+    }
+
+    /**
+     * Removes tool containers that outlived their execution
+     *
+     * @return the {@link ContainerReaper}
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public ContainerReaper containerReaper() {
+        return new ContainerReaper(dockerControllerRegistry(), getDockerInstance(),
+                TimeUnit.SECONDS.toMillis(dockerReaperInterval), TimeUnit.SECONDS.toMillis(dockerReaperMaxAge));
+    }
+
+    /**
+     * Admission control for the EO tool executions on the Docker host
+     *
+     * @return the {@link ToolExecutionScheduler}
+     */
+    @Bean(destroyMethod = "close")
+    public ToolExecutionScheduler toolExecutionScheduler() {
+        return new ToolExecutionScheduler(schedulerMaxConcurrent, schedulerMaxPerImage, schedulerCpus,
+                ByteSize.parse(schedulerMemory), ToolExecutionScheduler.Policy.valueOf(schedulerPolicy.trim().toUpperCase()));
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         LOG.info("Working directory: {}", workingDirectory);
         LOG.info("Tool config directory: {}", toolConfigDirectory);
         LOG.info("GPF directory: {}", gpfDir);
         LOG.info("Reference CRS: {}", epsg);
+        LOG.info("Parallel gdalwarp processes per batch: {}", gdalParallelism);
+        LOG.info("Product cache: maxSize={} bytes, eviction={}, pinDuration={} min",
+                productCacheMaxSize, productCacheEvictionPolicy, productCachePinDuration);
+        LOG.info("Download connections per product: {}, resumable: {}, retries: {}",
+                downloadConnections, downloadResumable, downloadRetries);
+        LOG.info("Streaming unzip of downloaded products: {}, unzip threads: {}, zip access: {}",
+                streamingUnzip, unzipThreads, zipAccess);
+        LOG.info("Checksum verification of downloaded products: {}", checksumVerification);
+        LOG.info("Retention of finished prefetch jobs: {}min", prefetchRetention);
+        LOG.info("Retrieval of offline products from Long Term Archive: {}, poll interval: {}-{}s, timeout: {}min",
+                ltaRetrieval, ltaPollInterval, ltaMaxPollInterval, ltaTimeout);
+        LOG.info("Docker connections per host: {}, health check interval: {}s, failed pings until reconnect: {}",
+                dockerMaxConnections, dockerHealthCheckInterval, dockerHealthCheckFailures);
+        LOG.info("Docker host circuit breaker: failures={}, open time={}s",
+                dockerCircuitBreakerFailures, dockerCircuitBreakerOpenTime);
+        LOG.info("Sampling of container stats: {}, usage window: {} executions",
+                dockerStatsSampling, dockerStatsWindow);
+        LOG.info("Reaping of orphaned tool containers: interval={}s, maxAge={}s, instance={}",
+                dockerReaperInterval, dockerReaperMaxAge, getDockerInstance());
+        LOG.info("Preloading of EO tool images: {}, threads: {}, warm-up: {}, warm-up command: {}, warm-up timeout: {}s",
+                dockerPrepull, dockerPrepullThreads, dockerWarmUp, dockerWarmUpCommand, dockerWarmUpTimeout);
+        LOG.info("Container log directory: {}, max file size: {}, max files: {}, tail size: {}",
+                dockerLogDirectory, dockerLogMaxFileSize, dockerLogMaxFiles, dockerLogTailSize);
+        LOG.info("Tool execution scheduler: maxConcurrent={}, maxPerImage={}, cpus={}, memory={}, policy={}",
+                schedulerMaxConcurrent, schedulerMaxPerImage, schedulerCpus, schedulerMemory, schedulerPolicy);
 
         // Starts the runtime engine and installs third-party libraries and driver  
         this.engine = Engine.start();
@@ -87,6 +491,9 @@ public class WacodisBackendConfig implements InitializingBean, DisposableBean {
 
     @Override
     public void destroy() throws Exception {
+        if (dockerControllerRegistry != null) {
+            dockerControllerRegistry.close();
+        }
         engine.stop();
     }
 
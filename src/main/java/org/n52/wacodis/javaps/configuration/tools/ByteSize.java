@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.configuration.tools;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses sizes in the notation of the Docker CLI, e.g. '512m' or '8g'
+ */
+public final class ByteSize {
+
+    private static final Pattern SIZE_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*([kmgt]?)b?");
+
+    private ByteSize() {
+    }
+
+    /**
+     * @param size size with optional unit suffix (k, m, g, t), e.g. '8g'
+     * @return the size in bytes or 0 if no size is specified
+     * @throws IllegalArgumentException if the size can not be parsed
+     */
+    public static long parse(String size) {
+        if (size == null || size.trim().isEmpty()) {
+            return 0;
+        }
+        Matcher matcher = SIZE_PATTERN.matcher(size.trim().toLowerCase(Locale.ROOT));
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+        double value = Double.parseDouble(matcher.group(1));
+        switch (matcher.group(2)) {
+            case "k":
+                value *= 1024L;
+                break;
+            case "m":
+                value *= 1024L * 1024;
+                break;
+            case "g":
+                value *= 1024L * 1024 * 1024;
+                break;
+            case "t":
+                value *= 1024L * 1024 * 1024 * 1024;
+                break;
+            default:
+                break;
+        }
+        return (long) value;
+    }
+
+}
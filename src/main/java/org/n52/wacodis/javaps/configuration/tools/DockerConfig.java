@@ -15,6 +15,9 @@
  */
 package org.n52.wacodis.javaps.configuration.tools;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *
  * @author <a href="mailto:s.drost@52north.org">Sebastian Drost</a>
@@ -22,9 +25,12 @@ package org.n52.wacodis.javaps.configuration.tools;
 public class DockerConfig {
 
     private String host;
+    private List<DockerHostConfig> hosts = new ArrayList<>();
     private String image;
     private String container;
     private String workDir;
+    private ResourcesConfig resources;
+    private PoolConfig pool;
 
     public String getHost() {
         return host;
@@ -34,6 +40,18 @@ public class DockerConfig {
         this.host = host;
     }
 
+    /**
+     * @return several Docker hosts the tool can be executed on, if empty the
+     * tool is executed on {@link #getHost()}
+     */
+    public List<DockerHostConfig> getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(List<DockerHostConfig> hosts) {
+        this.hosts = hosts;
+    }
+
     public String getImage() {
         return image;
     }
@@ -58,10 +76,26 @@ public class DockerConfig {
         this.workDir = workDir;
     }
 
+    public ResourcesConfig getResources() {
+        return resources;
+    }
+
+    public void setResources(ResourcesConfig resources) {
+        this.resources = resources;
+    }
+
+    public PoolConfig getPool() {
+        return pool;
+    }
+
+    public void setPool(PoolConfig pool) {
+        this.pool = pool;
+    }
+
     @Override
     public String toString() {
-        return "DockerConfig{" + "host=" + host + ", image=" + image
-                + ", container=" + container + ", workDir=" + workDir + '}';
+        return "DockerConfig{" + "host=" + host + ", hosts=" + hosts + ", image=" + image
+                + ", container=" + container + ", workDir=" + workDir + ", resources=" + resources + ", pool=" + pool + '}';
     }
 
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.configuration.tools;
+
+/**
+ * Docker host a tool can be executed on
+ */
+public class DockerHostConfig {
+
+    private String url;
+    private int weight = 1;
+    private String workingDirectory;
+
+    /**
+     * @return Docker host URL, e.g. tcp://worker1:2376
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * @return capacity of the host relative to the other hosts
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * @return path of the shared working directory on the host, if it
+     * differs from the working directory of the javaPS
+     */
+    public String getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    public void setWorkingDirectory(String workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+    @Override
+    public String toString() {
+        return "DockerHostConfig{" + "url=" + url + ", weight=" + weight
+                + ", workingDirectory=" + workingDirectory + '}';
+    }
+
+}
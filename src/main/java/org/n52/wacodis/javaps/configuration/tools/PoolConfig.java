@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.configuration.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Warm pool of long-lived containers that execute the tool by 'docker exec'
+ */
+public class PoolConfig {
+
+    private int size;
+    private int maxRuns;
+    private List<String> idleCommand = new ArrayList<>(Arrays.asList("tail", "-f", "/dev/null"));
+
+    /**
+     * @return maximum number of pooled containers, pooling is disabled if 0
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * @return number of runs after which a container is recycled, 0 if
+     * unlimited
+     */
+    public int getMaxRuns() {
+        return maxRuns;
+    }
+
+    public void setMaxRuns(int maxRuns) {
+        this.maxRuns = maxRuns;
+    }
+
+    /**
+     * @return command that keeps a pooled container alive between runs
+     */
+    public List<String> getIdleCommand() {
+        return idleCommand;
+    }
+
+    public void setIdleCommand(List<String> idleCommand) {
+        this.idleCommand = idleCommand;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolConfig{" + "size=" + size + ", maxRuns=" + maxRuns + ", idleCommand=" + idleCommand + '}';
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.configuration.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resources of the Docker container that runs an EO tool
+ */
+public class ResourcesConfig {
+
+    private double cpus;
+    private String cpuset;
+    private String memory;
+    private String shmSize;
+    private Map<String, String> tmpfs = new LinkedHashMap<>();
+    private int threads;
+    private Map<String, String> environment = new LinkedHashMap<>();
+
+    /**
+     * @return number of CPUs the container may use, 0 if unlimited
+     */
+    public double getCpus() {
+        return cpus;
+    }
+
+    public void setCpus(double cpus) {
+        this.cpus = cpus;
+    }
+
+    /**
+     * @return CPUs the container is pinned to, e.g. '0-3'
+     */
+    public String getCpuset() {
+        return cpuset;
+    }
+
+    public void setCpuset(String cpuset) {
+        this.cpuset = cpuset;
+    }
+
+    /**
+     * @return memory limit of the container, e.g. '8g'
+     */
+    public String getMemory() {
+        return memory;
+    }
+
+    public void setMemory(String memory) {
+        this.memory = memory;
+    }
+
+    public long getMemoryBytes() {
+        return ByteSize.parse(memory);
+    }
+
+    /**
+     * @return size of /dev/shm, e.g. '1g'
+     */
+    public String getShmSize() {
+        return shmSize;
+    }
+
+    public void setShmSize(String shmSize) {
+        this.shmSize = shmSize;
+    }
+
+    public long getShmSizeBytes() {
+        return ByteSize.parse(shmSize);
+    }
+
+    /**
+     * @return in-memory scratch mounts by container path with their mount
+     * options, e.g. '/tmp: size=2g'
+     */
+    public Map<String, String> getTmpfs() {
+        return tmpfs;
+    }
+
+    public void setTmpfs(Map<String, String> tmpfs) {
+        this.tmpfs = tmpfs;
+    }
+
+    /**
+     * @return number of threads the tool libraries shall use, 0 if not set
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return additional environment variables of the container
+     */
+    public Map<String, String> getEnvironment() {
+        return environment;
+    }
+
+    public void setEnvironment(Map<String, String> environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourcesConfig{" + "cpus=" + cpus + ", cpuset=" + cpuset + ", memory=" + memory
+                + ", shmSize=" + shmSize + ", tmpfs=" + tmpfs + ", threads=" + threads
+                + ", environment=" + environment + '}';
+    }
+
+}
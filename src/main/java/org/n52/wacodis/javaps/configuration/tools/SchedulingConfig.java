@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.configuration.tools;
+
+/**
+ * Scheduling settings of an EO tool. The declared CPUs and memory are
+ * reserved on the Docker host while the tool is running. A tool execution
+ * that exceeds its timeout is aborted and its container is removed.
+ */
+public class SchedulingConfig {
+
+    private int priority;
+    private double cpus;
+    private String memory;
+    private long timeout;
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public double getCpus() {
+        return cpus;
+    }
+
+    public void setCpus(double cpus) {
+        this.cpus = cpus;
+    }
+
+    public String getMemory() {
+        return memory;
+    }
+
+    public void setMemory(String memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * @return maximum execution time in seconds, values &lt;= 0 mean unlimited
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return the reserved memory in bytes or 0 if no memory is reserved
+     */
+    public long getMemoryBytes() {
+        return ByteSize.parse(memory);
+    }
+
+    @Override
+    public String toString() {
+        return "SchedulingConfig{" + "priority=" + priority + ", cpus=" + cpus
+                + ", memory=" + memory + ", timeout=" + timeout + '}';
+    }
+
+}
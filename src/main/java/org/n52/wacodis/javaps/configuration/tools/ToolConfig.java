@@ -25,6 +25,7 @@ public class ToolConfig {
     private DockerConfig docker;
     private CommandConfig command;
     private ParameterConfig parameter;
+    private SchedulingConfig scheduling;
 
     public String getId() {
         return id;
@@ -58,10 +59,18 @@ public class ToolConfig {
         this.parameter = parameter;
     }
 
+    public SchedulingConfig getScheduling() {
+        return scheduling;
+    }
+
+    public void setScheduling(SchedulingConfig scheduling) {
+        this.scheduling = scheduling;
+    }
+
     @Override
     public String toString() {
         return "ToolConfig{" + "id=" + id + ", docker=" + docker + ", command="
-                + command + ", parameter=" + parameter + '}';
+                + command + ", parameter=" + parameter + ", scheduling=" + scheduling + '}';
     }
 
 }
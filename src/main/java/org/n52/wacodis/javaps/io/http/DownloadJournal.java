@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal of a partially downloaded file that records the byte ranges which
+ * have already been downloaded completely. In addition, the journal holds the
+ * validators (ETag and Last-Modified) of the remote file, so that a partial
+ * download can be discarded if the remote file has changed.
+ */
+public class DownloadJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DownloadJournal.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private String url;
+
+    private long contentLength;
+
+    private String eTag;
+
+    private long lastModified;
+
+    private List<long[]> completedRanges = new ArrayList<>();
+
+    public DownloadJournal() {
+    }
+
+    public DownloadJournal(SegmentedFileDownloader.RemoteFile remoteFile) {
+        this.url = remoteFile.getUrl();
+        this.contentLength = remoteFile.getContentLength();
+        this.eTag = remoteFile.getETag();
+        this.lastModified = remoteFile.getLastModified();
+    }
+
+    /**
+     * Loads a journal from a file
+     *
+     * @param journalFile the journal file
+     * @return the loaded journal or null if the journal file does not exist or
+     * is not readable
+     */
+    public static DownloadJournal load(File journalFile) {
+        if (!journalFile.exists()) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readValue(journalFile, DownloadJournal.class);
+        } catch (IOException ex) {
+            LOG.warn("Could not read download journal {}. Cause: {}", journalFile, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the journal into a file
+     *
+     * @param journalFile the journal file
+     * @throws IOException if the journal could not be written
+     */
+    public synchronized void store(File journalFile) throws IOException {
+        File tmpFile = new File(journalFile.getPath() + ".tmp");
+        OBJECT_MAPPER.writeValue(tmpFile, this);
+        Files.move(tmpFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Checks whether the journal refers to the current state of the remote
+     * file by comparing the size and validators of the remote file.
+     *
+     * @param remoteFile the remote file
+     * @return true, if the partially downloaded data is still valid
+     */
+    public boolean isValidFor(SegmentedFileDownloader.RemoteFile remoteFile) {
+        return Objects.equals(this.url, remoteFile.getUrl())
+                && this.contentLength == remoteFile.getContentLength()
+                && Objects.equals(this.eTag, remoteFile.getETag())
+                && this.lastModified == remoteFile.getLastModified();
+    }
+
+    /**
+     * Records a completely downloaded byte range
+     *
+     * @param start start of the range (inclusive)
+     * @param end   end of the range (exclusive)
+     */
+    public synchronized void markCompleted(long start, long end) {
+        if (end <= start) {
+            return;
+        }
+        List<long[]> ranges = new ArrayList<>(this.completedRanges);
+        ranges.add(new long[]{start, end});
+        ranges.sort(Comparator.comparingLong(r -> r[0]));
+
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1]) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(new long[]{range[0], range[1]});
+            }
+        }
+        this.completedRanges = merged;
+    }
+
+    /**
+     * @return the byte ranges that have not been downloaded yet
+     */
+    @JsonIgnore
+    public synchronized List<SegmentedFileDownloader.ByteRange> getMissingRanges() {
+        List<SegmentedFileDownloader.ByteRange> missing = new ArrayList<>();
+        long position = 0;
+        for (long[] range : this.completedRanges) {
+            if (range[0] > position) {
+                missing.add(new SegmentedFileDownloader.ByteRange(position, range[0]));
+            }
+            position = Math.max(position, range[1]);
+        }
+        if (position < this.contentLength) {
+            missing.add(new SegmentedFileDownloader.ByteRange(position, this.contentLength));
+        }
+        return missing;
+    }
+
+    /**
+     * @return the number of bytes that have been downloaded completely
+     */
+    @JsonIgnore
+    public synchronized long getCompletedLength() {
+        return this.completedRanges.stream().mapToLong(r -> r[1] - r[0]).sum();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public synchronized List<long[]> getCompletedRanges() {
+        return new ArrayList<>(completedRanges);
+    }
+
+    public synchronized void setCompletedRanges(List<long[]> completedRanges) {
+        this.completedRanges = new ArrayList<>(completedRanges);
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Filter that decides which entries of a zipped Sentinel product will be
+ * extracted. Only image data (e.g. JP2 band files) is subject to filtering,
+ * while manifest, metadata and any other non-image files are always extracted,
+ * so that readers like SNAP are still able to open the product.
+ */
+public class ExtractionFilter {
+
+    /**
+     * Filter that extracts all entries
+     */
+    public static final ExtractionFilter ALL = new ExtractionFilter(null, Collections.emptyList());
+
+    private static final List<String> IMAGE_EXTENSIONS = Arrays.asList(".jp2", ".tif", ".tiff");
+
+    private static final String BAND_PATTERN = ".*_B0?%s(_\\d+m)?\\.[^/]+$";
+
+    private final String key;
+
+    private final List<Pattern> patterns;
+
+    private ExtractionFilter(String key, List<Pattern> patterns) {
+        this.key = key;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Creates a filter that extracts the image data of the specified
+     * Sentinel-2 bands only.
+     *
+     * @param bands Names of the bands as used by SNAP (e.g. B2, B8, B8A)
+     * @return the {@link ExtractionFilter}
+     */
+    public static ExtractionFilter forBands(String... bands) {
+        List<String> bandNumbers = Arrays.stream(bands)
+                .map(b -> b.toUpperCase(Locale.ROOT).replaceFirst("^B0?", ""))
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+        List<Pattern> patterns = bandNumbers.stream()
+                .map(b -> Pattern.compile(String.format(BAND_PATTERN, Pattern.quote(b))))
+                .collect(Collectors.toList());
+        return new ExtractionFilter("B" + String.join("_B", bandNumbers), patterns);
+    }
+
+    /**
+     * Creates a filter that extracts the image data whose entry names match
+     * any of the specified regular expressions.
+     *
+     * @param regexes Regular expressions for the entry names
+     * @return the {@link ExtractionFilter}
+     */
+    public static ExtractionFilter forPatterns(String... regexes) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String regex : regexes) {
+            patterns.add(Pattern.compile(regex));
+        }
+        return new ExtractionFilter("P" + Integer.toHexString(Arrays.asList(regexes).hashCode()), patterns);
+    }
+
+    /**
+     * @param entryName Name of the zip entry
+     * @return true, if the entry shall be extracted
+     */
+    public boolean accept(String entryName) {
+        if (this.isAll() || !isImageData(entryName)) {
+            return true;
+        }
+        return this.patterns.stream().anyMatch(p -> p.matcher(entryName).matches());
+    }
+
+    /**
+     * @return true, if the filter extracts all entries
+     */
+    public boolean isAll() {
+        return this.key == null;
+    }
+
+    /**
+     * @return a key that identifies the filter, e.g. for naming the directory
+     * the filtered entries will be extracted to, or null if the filter
+     * extracts all entries
+     */
+    public String getKey() {
+        return key;
+    }
+
+    private static boolean isImageData(String entryName) {
+        String name = entryName.toLowerCase(Locale.ROOT);
+        return IMAGE_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    @Override
+    public String toString() {
+        return this.isAll() ? "all entries" : this.key;
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Pool of Open Access Hub accounts that raises the number of concurrent
+ * downloads beyond the limit the hub enforces per account. Each account
+ * provides a fixed number of concurrency slots. A transfer leases a slot of
+ * the least loaded account and releases it afterwards. Accounts that have
+ * been throttled by the hub are cooled down for a configurable duration, unless
+ * the pool has no other account to switch to.
+ */
+public class HubCredentialsPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HubCredentialsPool.class);
+
+    private final List<Account> accounts;
+
+    private final long coolDownDuration;
+
+    /**
+     * @param accounts         Accounts of the pool
+     * @param coolDownDuration Duration in milliseconds a throttled account will
+     *                         not be leased
+     */
+    public HubCredentialsPool(List<Account> accounts, long coolDownDuration) {
+        if (accounts.isEmpty()) {
+            throw new IllegalArgumentException("At least one Open Access Hub account is required.");
+        }
+        this.accounts = Collections.unmodifiableList(new ArrayList<>(accounts));
+        this.coolDownDuration = coolDownDuration;
+    }
+
+    /**
+     * Leases a concurrency slot of the least loaded account that is not cooled
+     * down. Blocks until a slot is available.
+     *
+     * @return the {@link Lease} that has to be closed after the transfer
+     * @throws InterruptedIOException if interrupted while waiting for a slot
+     */
+    public synchronized Lease lease() throws InterruptedIOException {
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                Lease lease = this.tryLease();
+                if (lease != null) {
+                    return lease;
+                }
+                long nextCoolDownEnd = this.accounts.stream()
+                        .mapToLong(a -> a.coolDownUntil)
+                        .filter(t -> t > now)
+                        .min()
+                        .orElse(0);
+                LOG.debug("All Open Access Hub accounts are busy, waiting for a free slot.");
+                this.wait(nextCoolDownEnd > 0 ? nextCoolDownEnd - now : 0);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an Open Access Hub account");
+        }
+    }
+
+    /**
+     * Leases a concurrency slot of the least loaded account that is not cooled
+     * down, without waiting for a free slot.
+     *
+     * @return the {@link Lease} that has to be closed after the request or
+     * null, if all accounts are busy
+     */
+    public synchronized Lease tryLease() {
+        long now = System.currentTimeMillis();
+        Account account = this.accounts.stream()
+                .filter(a -> a.coolDownUntil <= now && a.leased < a.maxConcurrent)
+                .min(Comparator.comparingDouble(Account::getLoad).thenComparingInt(a -> a.leased))
+                .orElse(null);
+        if (account == null) {
+            return null;
+        }
+        account.leased++;
+        return new Lease(account);
+    }
+
+    /**
+     * Cools down an account, so that it will not be leased for the configured
+     * cool-down duration. A single account is never cooled down, since all
+     * downloads would wait for it.
+     *
+     * @param account the throttled {@link Account}
+     */
+    public synchronized void coolDown(Account account) {
+        if (!this.isSwitchable()) {
+            LOG.warn("Open Access Hub account {} has been throttled, but there is no other account to switch to.",
+                    account.getUsername());
+            return;
+        }
+        account.coolDownUntil = System.currentTimeMillis() + this.coolDownDuration;
+        LOG.warn("Open Access Hub account {} has been throttled, cooling down for {} ms.",
+                account.getUsername(), this.coolDownDuration);
+    }
+
+    /**
+     * @return the number of accounts in the pool
+     */
+    public int size() {
+        return this.accounts.size();
+    }
+
+    /**
+     * @return true, if throttled requests can be retried with another account
+     */
+    public boolean isSwitchable() {
+        return this.accounts.size() > 1;
+    }
+
+    /**
+     * @return the total number of currently leased slots
+     */
+    public synchronized int getLeasedCount() {
+        return this.accounts.stream().mapToInt(a -> a.leased).sum();
+    }
+
+    private synchronized void release(Account account) {
+        account.leased--;
+        this.notifyAll();
+    }
+
+    /**
+     * Open Access Hub account
+     */
+    public static class Account {
+
+        private final String username;
+        private final String password;
+        private final int maxConcurrent;
+        private int leased;
+        private long coolDownUntil;
+
+        /**
+         * @param username      Username of the account
+         * @param password      Password of the account
+         * @param maxConcurrent Number of concurrent transfers the account is
+         *                      allowed to perform. Values &lt;= 0 disable the
+         *                      limitation.
+         */
+        public Account(String username, String password, int maxConcurrent) {
+            this.username = username;
+            this.password = password;
+            this.maxConcurrent = maxConcurrent > 0 ? maxConcurrent : Integer.MAX_VALUE;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        private double getLoad() {
+            return (double) this.leased / this.maxConcurrent;
+        }
+
+    }
+
+    /**
+     * Lease of a concurrency slot of an account
+     */
+    public class Lease implements AutoCloseable {
+
+        private final Account account;
+
+        private boolean released;
+
+        private Lease(Account account) {
+            this.account = account;
+        }
+
+        public Account getAccount() {
+            return account;
+        }
+
+        /**
+         * Adds the credentials of the leased account to request headers
+         *
+         * @param headers the request headers
+         */
+        public void authorize(HttpHeaders headers) {
+            headers.setBasicAuth(this.account.username, this.account.password);
+        }
+
+        /**
+         * Cools down the leased account, since it has been throttled
+         */
+        public void coolDown() {
+            HubCredentialsPool.this.coolDown(this.account);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!this.released) {
+                this.released = true;
+                HubCredentialsPool.this.release(this.account);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Retrieves products that have been moved to the Long Term Archive (LTA) of
+ * the Open Access Hub. Requesting an offline product triggers its restore,
+ * afterwards the availability of the product will be polled on a shared
+ * scheduler with an exponential backoff. Thus, no thread is blocked while
+ * waiting for the restore, which may take several hours. If a pool of hub
+ * accounts is configured, each request is sent with a leased account. Polls
+ * are postponed while all accounts are busy.
+ */
+public class OfflineProductRetriever {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OfflineProductRetriever.class);
+
+    private static final String VALUE_SUFFIX = "/$value";
+
+    private static final String ONLINE_SUFFIX = "/Online/$value";
+
+    private final RestTemplate restTemplate;
+
+    private final HubCredentialsPool credentialsPool;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long initialPollInterval;
+
+    private final long maxPollInterval;
+
+    private final long timeout;
+
+    private final ConcurrentMap<String, CompletableFuture<String>> retrievals = new ConcurrentHashMap<>();
+
+    /**
+     * @param restTemplate        {@link RestTemplate} for requesting the hub
+     * @param credentialsPool     {@link HubCredentialsPool} to lease accounts
+     *                            for the requests from or null, if the
+     *                            credentials of the {@link RestTemplate} are
+     *                            used
+     * @param scheduler           {@link ScheduledExecutorService} that polls
+     *                            the availability of offline products
+     * @param initialPollInterval Initial interval between two polls in
+     *                            milliseconds, which is doubled for each poll
+     * @param maxPollInterval     Maximum interval between two polls in
+     *                            milliseconds
+     * @param timeout             Maximum duration in milliseconds to wait for
+     *                            an offline product
+     */
+    public OfflineProductRetriever(RestTemplate restTemplate, HubCredentialsPool credentialsPool,
+            ScheduledExecutorService scheduler, long initialPollInterval, long maxPollInterval, long timeout) {
+        this.restTemplate = restTemplate;
+        this.credentialsPool = credentialsPool;
+        this.scheduler = scheduler;
+        this.initialPollInterval = initialPollInterval;
+        this.maxPollInterval = maxPollInterval;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Checks whether a product is online. Products whose URL does not refer to
+     * the value of an OData product entity are considered to be online. If a
+     * pool of hub accounts is configured, this method blocks until an account
+     * can be leased.
+     *
+     * @param url URL of the product value
+     * @return true, if the product is online
+     * @throws IOException if the availability could not be requested
+     */
+    public boolean isOnline(String url) throws IOException {
+        if (this.credentialsPool == null) {
+            return this.isOnline(url, HttpHeaders.EMPTY);
+        }
+        try (HubCredentialsPool.Lease lease = this.credentialsPool.lease()) {
+            return this.isOnline(url, authorize(lease));
+        }
+    }
+
+    /**
+     * Makes sure that a product is online. The availability is requested on
+     * the scheduler, so that this method returns at once. If the product is
+     * offline, its restore will be triggered and the returned future completes
+     * as soon as the product is online. Concurrent calls for the same product
+     * share a single retrieval.
+     *
+     * @param url URL of the product value
+     * @return a future that completes with the URL once the product is online
+     */
+    public CompletableFuture<String> retrieve(String url) {
+        CompletableFuture<String> retrieval = new CompletableFuture<>();
+        CompletableFuture<String> runningRetrieval = this.retrievals.putIfAbsent(url, retrieval);
+        if (runningRetrieval != null) {
+            return runningRetrieval;
+        }
+        retrieval.whenComplete((u, ex) -> this.retrievals.remove(url, retrieval));
+        long deadline = System.currentTimeMillis() + this.timeout;
+        this.schedulePoll(url, retrieval, 0, false, deadline);
+        return retrieval;
+    }
+
+    /**
+     * @return the number of products that are currently being retrieved
+     */
+    public int getPendingRetrievals() {
+        return this.retrievals.size();
+    }
+
+    private boolean isOnline(String url, HttpHeaders requestHeaders) throws IOException {
+        if (!url.endsWith(VALUE_SUFFIX)) {
+            return true;
+        }
+        String onlineUrl = url.substring(0, url.length() - VALUE_SUFFIX.length()) + ONLINE_SUFFIX;
+        RequestCallback callback = (ClientHttpRequest request) -> request.getHeaders().putAll(requestHeaders);
+        try {
+            String online = this.restTemplate.execute(onlineUrl, HttpMethod.GET, callback,
+                    (ClientHttpResponse response) -> IOUtils.toString(response.getBody(), StandardCharsets.UTF_8));
+            return online != null && Boolean.parseBoolean(online.trim());
+        } catch (RestClientException ex) {
+            throw new IOException(String.format("Could not request availability of product '%s': %s",
+                    url, ex.getMessage()), ex);
+        }
+    }
+
+    private void triggerRestore(String url, HttpHeaders requestHeaders) throws IOException {
+        // request a single byte only, in case the product has been restored in the meantime
+        RequestCallback callback = (ClientHttpRequest request) -> {
+            request.getHeaders().putAll(requestHeaders);
+            request.getHeaders().setRange(Collections.singletonList(HttpRange.createByteRange(0, 0)));
+        };
+        try {
+            HttpStatus status = this.restTemplate.execute(url, HttpMethod.GET, callback,
+                    ClientHttpResponse::getStatusCode);
+            if (status != HttpStatus.ACCEPTED && status != HttpStatus.OK && status != HttpStatus.PARTIAL_CONTENT) {
+                throw new IOException(String.format("Restore of offline product '%s' failed with status %s", url, status));
+            }
+        } catch (RestClientException ex) {
+            throw new IOException(String.format("Restore of offline product '%s' failed: %s", url, ex.getMessage()), ex);
+        }
+    }
+
+    private void schedulePoll(String url, CompletableFuture<String> retrieval, long delay, boolean restoreTriggered,
+            long deadline) {
+        this.scheduler.schedule(() -> this.poll(url, retrieval, delay, restoreTriggered, deadline),
+                delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Requests the availability of a product and triggers its restore, if it
+     * is offline and its restore has not been triggered yet. Failures before
+     * the restore has been triggered fail the retrieval, later failures are
+     * treated like an offline product.
+     */
+    private void poll(String url, CompletableFuture<String> retrieval, long delay, boolean restoreTriggered,
+            long deadline) {
+        boolean triggered = restoreTriggered;
+        // the scheduler is shared by all retrievals, so it must not wait for an account
+        try (HubCredentialsPool.Lease lease = this.credentialsPool != null ? this.credentialsPool.tryLease() : null) {
+            if (this.credentialsPool != null && lease == null) {
+                LOG.debug("All Open Access Hub accounts are busy, postponing availability request for product {}.", url);
+            } else {
+                HttpHeaders requestHeaders = lease != null ? authorize(lease) : HttpHeaders.EMPTY;
+                if (this.isOnline(url, requestHeaders)) {
+                    if (triggered) {
+                        LOG.info("Product {} has been restored from Long Term Archive.", url);
+                    }
+                    retrieval.complete(url);
+                    return;
+                }
+                if (!triggered) {
+                    this.triggerRestore(url, requestHeaders);
+                    triggered = true;
+                    LOG.info("Product {} is offline, restore from Long Term Archive has been triggered.", url);
+                }
+            }
+        } catch (IOException ex) {
+            if (!triggered) {
+                retrieval.completeExceptionally(ex);
+                return;
+            }
+            LOG.warn("Polling availability of product {} failed: {}", url, ex.getMessage());
+        } catch (RuntimeException ex) {
+            retrieval.completeExceptionally(ex);
+            return;
+        }
+        long nextDelay = delay > 0 ? Math.min(delay * 2, this.maxPollInterval) : this.initialPollInterval;
+        if (System.currentTimeMillis() + nextDelay > deadline) {
+            retrieval.completeExceptionally(new IOException(String.format(
+                    "Product '%s' has not been restored within %d ms", url, this.timeout)));
+        } else {
+            LOG.debug("Product {} is still offline, polling again in {} ms.", url, nextDelay);
+            this.schedulePoll(url, retrieval, nextDelay, triggered, deadline);
+        }
+    }
+
+    private static HttpHeaders authorize(HubCredentialsPool.Lease lease) {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        lease.authorize(requestHeaders);
+        return requestHeaders;
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts the entries of a zip file concurrently. The entries are fanned out
+ * over a bounded {@link ExecutorService}, with the largest entries being
+ * submitted first. All directories are created upfront and the copy buffers
+ * are taken from a pool, so that no buffer has to be allocated per entry.
+ */
+public class ParallelZipExtractor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelZipExtractor.class);
+
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final ExecutorService executor;
+
+    private final int bufferSize;
+
+    private final BlockingQueue<byte[]> bufferPool;
+
+    /**
+     * @param executor {@link ExecutorService} that extracts the entries
+     * @param threads  Number of threads of the executor, which determines the
+     *                 number of pooled buffers
+     */
+    public ParallelZipExtractor(ExecutorService executor, int threads) {
+        this(executor, threads, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param executor   {@link ExecutorService} that extracts the entries
+     * @param threads    Number of threads of the executor, which determines
+     *                   the number of pooled buffers
+     * @param bufferSize Size of the copy buffers in bytes
+     */
+    public ParallelZipExtractor(ExecutorService executor, int threads, int bufferSize) {
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.bufferPool = new ArrayBlockingQueue<>(Math.max(threads, 1));
+    }
+
+    /**
+     * Extracts those entries of a zip file that are accepted by the specified
+     * filter.
+     *
+     * @param file    the zip file
+     * @param outDir  the directory to extract the entries to
+     * @param filter  {@link ExtractionFilter} that specifies the entries to
+     *                extract
+     * @return the extracted file for the first accepted entry of the zip file
+     * @throws IOException if the extraction of any entry fails
+     */
+    public File extract(File file, File outDir, ExtractionFilter filter) throws IOException {
+        try (ZipFile zipFile = new ZipFile(file)) {
+            File firstFile = null;
+            List<ZipEntry> fileEntries = new ArrayList<>();
+            Set<File> directories = new TreeSet<>();
+
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!filter.accept(entry.getName())) {
+                    continue;
+                }
+                File entryDestination = new File(outDir, entry.getName());
+                if (firstFile == null) {
+                    firstFile = entryDestination;
+                }
+                if (entry.isDirectory()) {
+                    directories.add(entryDestination);
+                } else {
+                    directories.add(entryDestination.getParentFile());
+                    fileEntries.add(entry);
+                }
+            }
+            directories.forEach(File::mkdirs);
+
+            fileEntries.sort(Comparator.comparingLong(ZipEntry::getSize).reversed());
+            List<Future<Void>> results = new ArrayList<>(fileEntries.size());
+            AtomicBoolean aborted = new AtomicBoolean();
+            try {
+                for (ZipEntry entry : fileEntries) {
+                    results.add(this.executor.submit(() -> {
+                        this.extractEntry(zipFile, entry, new File(outDir, entry.getName()), aborted);
+                        return null;
+                    }));
+                }
+            } catch (RejectedExecutionException ex) {
+                aborted.set(true);
+                this.awaitEntries(file, results, aborted);
+                throw new IOException(String.format("Extraction of '%s' has been rejected", file), ex);
+            }
+            this.awaitEntries(file, results, aborted);
+
+            LOG.debug("Extracted {} files from {}", fileEntries.size(), file);
+            return firstFile;
+        }
+    }
+
+    private void extractEntry(ZipFile zipFile, ZipEntry entry, File destination, AtomicBoolean aborted) throws IOException {
+        if (aborted.get()) {
+            return;
+        }
+        byte[] buffer = this.bufferPool.poll();
+        if (buffer == null) {
+            buffer = new byte[this.bufferSize];
+        }
+        try (InputStream in = zipFile.getInputStream(entry);
+             OutputStream out = new FileOutputStream(destination)) {
+            int read;
+            while (!aborted.get() && (read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            this.bufferPool.offer(buffer);
+        }
+    }
+
+    /**
+     * Waits for all submitted entries, even if the extraction of an entry has
+     * failed or the current thread has been interrupted, since the zip file
+     * must not be closed while entries are still read from it. Entries that
+     * have not been extracted yet are skipped after a failure.
+     */
+    private void awaitEntries(File file, List<Future<Void>> results, AtomicBoolean aborted) throws IOException {
+        IOException failure = null;
+        boolean interrupted = false;
+        for (Future<Void> result : results) {
+            for (;;) {
+                try {
+                    result.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    aborted.set(true);
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    aborted.set(true);
+                    if (failure == null) {
+                        failure = new IOException(String.format("Extraction of '%s' failed: %s",
+                                file, ex.getCause().getMessage()), ex.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting " + file);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
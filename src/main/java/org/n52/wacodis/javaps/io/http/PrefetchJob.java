@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle for a set of Sentinel products that are downloaded into the product
+ * cache in the background. The status of each download can be queried by the
+ * ID of the job, also for a while after the job has finished.
+ */
+public class PrefetchJob {
+
+    private final String id = UUID.randomUUID().toString();
+
+    private final Map<String, CompletableFuture<File>> downloads;
+
+    private final CompletableFuture<Void> completion;
+
+    private volatile long finishedAt;
+
+    /**
+     * Status of the download of a single product
+     */
+    public enum Status {
+        RUNNING,
+        CACHED,
+        FAILED
+    }
+
+    /**
+     * @param downloads Running downloads by product URL
+     */
+    public PrefetchJob(Map<String, CompletableFuture<File>> downloads) {
+        this.downloads = Collections.unmodifiableMap(new LinkedHashMap<>(downloads));
+        // failed downloads must not fail the whole job
+        this.completion = CompletableFuture.allOf(this.downloads.values().stream()
+                .map(d -> d.handle((f, ex) -> f))
+                .toArray(CompletableFuture[]::new));
+        this.completion.thenRun(() -> this.finishedAt = System.currentTimeMillis());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the running downloads by product URL
+     */
+    public Map<String, CompletableFuture<File>> getDownloads() {
+        return downloads;
+    }
+
+    /**
+     * @return a future that completes when all downloads are done, regardless
+     * of whether they succeeded
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    public boolean isDone() {
+        return this.completion.isDone();
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch when the job has
+     * finished or 0, if the job is still running
+     */
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * @return the status of the downloads by product URL
+     */
+    public Map<String, Status> getStatus() {
+        Map<String, Status> status = new LinkedHashMap<>();
+        this.downloads.forEach((url, download) -> status.put(url, !download.isDone() ? Status.RUNNING
+                : download.isCompletedExceptionally() ? Status.FAILED : Status.CACHED));
+        return status;
+    }
+
+    public long getCompletedCount() {
+        return this.downloads.values().stream()
+                .filter(d -> d.isDone() && !d.isCompletedExceptionally())
+                .count();
+    }
+
+    public long getFailedCount() {
+        return this.downloads.values().stream()
+                .filter(CompletableFuture::isCompletedExceptionally)
+                .count();
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Checksum of a product as advertised by the Open Access Hub. The digest of a
+ * product is meant to be computed while the product is received by wrapping
+ * the response stream with {@link #digest(java.io.InputStream)}.
+ */
+public class ProductChecksum {
+
+    private final String algorithm;
+
+    private final String value;
+
+    /**
+     * @param algorithm Name of the digest algorithm, e.g. 'MD5'
+     * @param value     Hex encoded checksum
+     */
+    public ProductChecksum(String algorithm, String value) {
+        this.algorithm = algorithm;
+        this.value = value;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Wraps a stream, so that the digest is computed while reading the stream
+     *
+     * @param in the stream to compute the digest for
+     * @return a {@link DigestInputStream} that has to be passed to
+     * {@link #verify(java.security.DigestInputStream, java.lang.String)} after
+     * the stream has been read completely
+     * @throws IOException if the algorithm is not supported
+     */
+    public DigestInputStream digest(InputStream in) throws IOException {
+        return new DigestInputStream(in, this.createDigest());
+    }
+
+    /**
+     * Verifies the digest of a completely read stream
+     *
+     * @param in     the stream that has been created by
+     *               {@link #digest(java.io.InputStream)}
+     * @param source Description of the source for error messages
+     * @throws IOException if the digest does not match the checksum
+     */
+    public void verify(DigestInputStream in, String source) throws IOException {
+        this.verify(in.getMessageDigest().digest(), source);
+    }
+
+    /**
+     * Verifies the digest of a file that has not been received as a single
+     * stream, e.g. because it has been downloaded in segments
+     *
+     * @param file   the file to verify
+     * @param source Description of the source for error messages
+     * @throws IOException if the digest does not match the checksum or reading
+     *                     the file fails
+     */
+    public void verify(File file, String source) throws IOException {
+        MessageDigest digest = this.createDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        this.verify(digest.digest(), source);
+    }
+
+    private void verify(byte[] digest, String source) throws IOException {
+        StringBuilder actual = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            actual.append(String.format("%02x", b));
+        }
+        if (!actual.toString().equalsIgnoreCase(this.value)) {
+            throw new IOException(String.format("%s checksum of '%s' does not match: expected %s, but was %s",
+                    this.algorithm, source, this.value, actual));
+        }
+    }
+
+    private MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(this.algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            // the hub may name SHA algorithms without hyphen, e.g. 'SHA256'
+            String name = this.algorithm.toUpperCase().replaceFirst("^SHA(\\d)", "SHA-$1");
+            try {
+                return MessageDigest.getInstance(name);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("Unsupported checksum algorithm: " + this.algorithm, ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Downloads files by fetching several byte ranges concurrently over separate
+ * HTTP connections. Each range is written directly to its position within a
+ * preallocated partial file, which will be renamed to the target file after
+ * all ranges have been downloaded. If enabled, the completed byte ranges are
+ * recorded by a {@link DownloadJournal}, so that an interrupted download can
+ * be resumed by requesting the missing byte ranges only.
+ */
+public class SegmentedFileDownloader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentedFileDownloader.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String BYTES_RANGE_UNIT = "bytes";
+
+    private static final String PART_SUFFIX = ".part";
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private static final long JOURNAL_INTERVAL = 8 * 1024 * 1024;
+
+    private final RestTemplate restTemplate;
+
+    private final ExecutorService executor;
+
+    private final int connections;
+
+    private final long minSegmentSize;
+
+    private final boolean resumable;
+
+    /**
+     * @param restTemplate   {@link RestTemplate} for requesting the file
+     * @param executor       {@link ExecutorService} that fetches the segments
+     * @param connections    Number of segments a file will be split into
+     * @param minSegmentSize Minimum size of a single segment in bytes
+     * @param resumable      Specify whether to journal the download progress
+     *                       for resuming interrupted downloads
+     */
+    public SegmentedFileDownloader(RestTemplate restTemplate, ExecutorService executor, int connections,
+            long minSegmentSize, boolean resumable) {
+        this.restTemplate = restTemplate;
+        this.executor = executor;
+        this.connections = Math.max(connections, 1);
+        this.minSegmentSize = minSegmentSize;
+        this.resumable = resumable;
+    }
+
+    /**
+     * Requests the headers of a remote file in order to determine its size
+     * and whether it supports byte range requests
+     *
+     * @param url URL of the remote file
+     * @return {@link RemoteFile} that describes the remote file
+     * @throws IOException if the headers could not be requested
+     */
+    public RemoteFile probe(String url) throws IOException {
+        return this.probe(url, HttpHeaders.EMPTY);
+    }
+
+    /**
+     * Requests the headers of a remote file in order to determine its size
+     * and whether it supports byte range requests
+     *
+     * @param url            URL of the remote file
+     * @param requestHeaders Additional headers for the request, e.g. for
+     *                       authorization
+     * @return {@link RemoteFile} that describes the remote file
+     * @throws IOException if the headers could not be requested
+     */
+    public RemoteFile probe(String url, HttpHeaders requestHeaders) throws IOException {
+        try {
+            RequestCallback callback = (ClientHttpRequest request) -> request.getHeaders().putAll(requestHeaders);
+            HttpHeaders headers = this.restTemplate.execute(url, HttpMethod.HEAD, callback, ClientHttpResponse::getHeaders);
+            return new RemoteFile(url, headers);
+        } catch (RestClientException ex) {
+            throw new IOException(String.format("Probing of remote file '%s' failed: %s", url, ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * @param remoteFile the {@link RemoteFile} to check
+     * @return true, if the remote file supports byte range requests
+     */
+    public boolean supportsRangeRequests(RemoteFile remoteFile) {
+        return remoteFile.isAcceptingRanges()
+                && remoteFile.getFileName() != null
+                && remoteFile.getContentLength() > 0;
+    }
+
+    /**
+     * Downloads the remote file into the target file. If a journal for a
+     * previous, interrupted download of the remote file exists, only the
+     * missing byte ranges will be requested.
+     *
+     * @param remoteFile the {@link RemoteFile} to download
+     * @param targetFile the {@link File} to write the remote file to
+     * @throws IOException if the download fails
+     */
+    public void download(RemoteFile remoteFile, File targetFile) throws IOException {
+        this.download(remoteFile, targetFile, HttpHeaders.EMPTY);
+    }
+
+    /**
+     * Downloads the remote file into the target file. If a journal for a
+     * previous, interrupted download of the remote file exists, only the
+     * missing byte ranges will be requested.
+     *
+     * @param remoteFile     the {@link RemoteFile} to download
+     * @param targetFile     the {@link File} to write the remote file to
+     * @param requestHeaders Additional headers for all requests, e.g. for
+     *                       authorization
+     * @throws IOException if the download fails
+     */
+    public void download(RemoteFile remoteFile, File targetFile, HttpHeaders requestHeaders) throws IOException {
+        File partFile = getPartFile(targetFile);
+        File journalFile = new File(partFile.getPath() + JOURNAL_SUFFIX);
+        DownloadJournal journal = this.resumable ? DownloadJournal.load(journalFile) : null;
+
+        if (journal != null && journal.isValidFor(remoteFile) && partFile.length() == remoteFile.getContentLength()) {
+            LOG.info("Resuming download of {}: {} of {} bytes already downloaded", remoteFile.getUrl(),
+                    journal.getCompletedLength(), remoteFile.getContentLength());
+        } else {
+            if (journal != null) {
+                LOG.info("Discarding stale partial download of {}", remoteFile.getUrl());
+            }
+            FileUtils.deleteQuietly(partFile);
+            FileUtils.deleteQuietly(journalFile);
+            journal = new DownloadJournal(remoteFile);
+        }
+
+        List<ByteRange> segments = split(journal.getMissingRanges());
+
+        LOG.info("Downloading {} bytes from {} in {} segments", remoteFile.getContentLength() - journal.getCompletedLength(),
+                remoteFile.getUrl(), segments.size());
+
+        partFile.getParentFile().mkdirs();
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+            raf.setLength(remoteFile.getContentLength());
+            FileChannel channel = raf.getChannel();
+            SegmentListener listener = this.createSegmentListener(journal, journalFile, channel);
+
+            List<Future<Void>> results = new ArrayList<>();
+            AtomicBoolean aborted = new AtomicBoolean();
+            try {
+                for (ByteRange segment : segments) {
+                    results.add(this.executor.submit(() -> {
+                        try {
+                            this.fetchSegment(remoteFile.getUrl(), requestHeaders, segment, channel, listener, aborted);
+                        } catch (IOException | RuntimeException ex) {
+                            aborted.set(true);
+                            throw ex;
+                        }
+                        return null;
+                    }));
+                }
+            } catch (RejectedExecutionException ex) {
+                aborted.set(true);
+                this.awaitSegments(remoteFile.getUrl(), results, aborted);
+                throw new IOException(String.format("Segmented download of '%s' has been rejected", remoteFile.getUrl()), ex);
+            }
+            this.awaitSegments(remoteFile.getUrl(), results, aborted);
+        }
+        Files.move(partFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        FileUtils.deleteQuietly(journalFile);
+    }
+
+    /**
+     * @param targetFile the target file of a download
+     * @return the file that holds the partially downloaded data for the
+     * target file
+     */
+    public static File getPartFile(File targetFile) {
+        return new File(targetFile.getPath() + PART_SUFFIX);
+    }
+
+    /**
+     * Splits the given byte ranges into segments considering the configured
+     * number of connections and the minimum segment size
+     *
+     * @param ranges the byte ranges to split
+     * @return the resulting segments
+     */
+    protected List<ByteRange> split(List<ByteRange> ranges) {
+        long totalLength = ranges.stream().mapToLong(ByteRange::getLength).sum();
+        long segmentSize = Math.max(this.minSegmentSize, (totalLength + this.connections - 1) / this.connections);
+        segmentSize = Math.max(segmentSize, 1);
+
+        List<ByteRange> segments = new ArrayList<>();
+        for (ByteRange range : ranges) {
+            for (long start = range.getStart(); start < range.getEnd(); start += segmentSize) {
+                segments.add(new ByteRange(start, Math.min(start + segmentSize, range.getEnd())));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Waits for all submitted segments, even if a segment has failed or the
+     * current thread has been interrupted, since the partial file must not be
+     * closed and must not be reused by a retry while segments are still
+     * written to it or recorded by the journal. Segments that have not been
+     * fetched completely are skipped after a failure.
+     */
+    private void awaitSegments(String url, List<Future<Void>> results, AtomicBoolean aborted) throws IOException {
+        IOException failure = null;
+        boolean interrupted = false;
+        for (Future<Void> result : results) {
+            for (;;) {
+                try {
+                    result.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    aborted.set(true);
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    aborted.set(true);
+                    if (failure == null) {
+                        failure = new IOException(String.format("Segmented download of '%s' failed: %s",
+                                url, ex.getCause().getMessage()), ex.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading segments of " + url);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private SegmentListener createSegmentListener(DownloadJournal journal, File journalFile, FileChannel channel) {
+        if (!this.resumable) {
+            return (start, end) -> {
+            };
+        }
+        return (start, end) -> {
+            // make sure the data is on disk before it is recorded as completed
+            channel.force(false);
+            journal.markCompleted(start, end);
+            journal.store(journalFile);
+        };
+    }
+
+    private void fetchSegment(String url, HttpHeaders requestHeaders, ByteRange segment, FileChannel channel,
+            SegmentListener listener, AtomicBoolean aborted) throws IOException {
+        if (aborted.get()) {
+            return;
+        }
+        RequestCallback callback = (ClientHttpRequest request) -> {
+            request.getHeaders().putAll(requestHeaders);
+            request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_OCTET_STREAM));
+            request.getHeaders().setRange(Collections.singletonList(
+                    HttpRange.createByteRange(segment.getStart(), segment.getEnd() - 1)));
+        };
+
+        ResponseExtractor<Long> responseExtractor = (ClientHttpResponse response) -> {
+            if (response.getStatusCode() != HttpStatus.PARTIAL_CONTENT) {
+                throw new IOException(String.format("Server did not respond with partial content for range %s, but with status %s",
+                        segment, response.getStatusCode()));
+            }
+            return this.writeSegment(response.getBody(), segment, channel, listener, aborted);
+        };
+
+        Long written = this.restTemplate.execute(url, HttpMethod.GET, callback, responseExtractor);
+        if (aborted.get()) {
+            return;
+        }
+        if (written == null || written != segment.getLength()) {
+            throw new IOException(String.format("Incomplete segment %s: received %s of %s bytes",
+                    segment, written, segment.getLength()));
+        }
+        LOG.debug("Finished segment {} of {}", segment, url);
+    }
+
+    private long writeSegment(InputStream in, ByteRange segment, FileChannel channel, SegmentListener listener,
+            AtomicBoolean aborted) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = segment.getStart();
+        long journaledPosition = position;
+        int read;
+        while (!aborted.get() && position < segment.getEnd() && (read = in.read(buffer, 0, (int) Math.min(buffer.length, segment.getEnd() - position))) != -1) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+            while (byteBuffer.hasRemaining()) {
+                position += channel.write(byteBuffer, position);
+            }
+            if (position - journaledPosition >= JOURNAL_INTERVAL || position == segment.getEnd()) {
+                listener.onCompleted(journaledPosition, position);
+                journaledPosition = position;
+            }
+        }
+        return position - segment.getStart();
+    }
+
+    /**
+     * Listener that will be notified about completely written byte ranges
+     */
+    @FunctionalInterface
+    private interface SegmentListener {
+
+        void onCompleted(long start, long end) throws IOException;
+
+    }
+
+    /**
+     * Range of bytes from start (inclusive) to end (exclusive)
+     */
+    public static class ByteRange {
+
+        private final long start;
+        private final long end;
+
+        public ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getLength() {
+            return end - start;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + "-" + end + ")";
+        }
+
+    }
+
+    /**
+     * Properties of a remote file as provided by the response headers
+     */
+    public static class RemoteFile {
+
+        private final String url;
+        private final long contentLength;
+        private final boolean acceptingRanges;
+        private final String fileName;
+        private final String eTag;
+        private final long lastModified;
+
+        public RemoteFile(String url, HttpHeaders headers) {
+            this.url = url;
+            this.contentLength = headers.getContentLength();
+            this.acceptingRanges = BYTES_RANGE_UNIT.equalsIgnoreCase(headers.getFirst(HttpHeaders.ACCEPT_RANGES));
+            this.fileName = headers.getContentDisposition().getFilename();
+            this.eTag = headers.getETag();
+            this.lastModified = headers.getLastModified();
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        public boolean isAcceptingRanges() {
+            return acceptingRanges;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+    }
+
+}
@@ -19,22 +19,51 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpResponse;
@@ -51,7 +80,7 @@ import org.springframework.web.client.RestTemplate;
  * @author <a href="mailto:s.drost@52north.org">Sebastian Drost</a>
  */
 @Component
-public class SentinelFileDownloader {
+public class SentinelFileDownloader implements DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(SentinelFileDownloader.class);
 
@@ -59,20 +88,75 @@ public class SentinelFileDownloader {
 
     private static final String SAFE_EXTENSION = "SAFE";
 
-    private final Map<String, File> productToFileCache = new HashMap<>();
+    private static final String CACHE_INDEX_FILE = ".wacodis-product-cache.json";
+
+    private static final String EXTRACTION_DIR_PREFIX = "extracted_";
+
+    private static final String UNZIPPED_KEY_SUFFIX = "unzipped";
+
+    private static final String VALUE_SUFFIX = "/$value";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SentinelProductCache productCache;
+
+    private final ConcurrentMap<String, CompletableFuture<File>> runningDownloads = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> productReferences = new HashMap<>();
+
+    private final Set<String> transientProducts = new HashSet<>();
+
+    private final ConcurrentMap<String, PrefetchJob> prefetchJobs = new ConcurrentHashMap<>();
+
+    private SegmentedFileDownloader segmentedDownloader;
+
+    private ExecutorService segmentExecutor;
+
+    private ParallelZipExtractor zipExtractor;
+
+    private ExecutorService unzipExecutor;
+
+    private OfflineProductRetriever offlineProductRetriever;
+
+    private ScheduledExecutorService retrievalScheduler;
+
+    private ExecutorService backgroundExecutor;
 
     private WacodisBackendConfig config;
 
     private RestTemplate openAccessHubService;
 
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    private HubCredentialsPool credentialsPool;
+
     @Autowired
     public void setConfig(WacodisBackendConfig config) {
         this.config = config;
     }
 
     @Autowired
-    public void setOpenAccessHubService(RestTemplate openAccessHubService) {
+    public synchronized void setOpenAccessHubService(RestTemplate openAccessHubService) {
         this.openAccessHubService = openAccessHubService;
+        this.segmentedDownloader = null;
+    }
+
+    @Autowired(required = false)
+    public void setConnectionManager(PoolingHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    @Autowired(required = false)
+    public void setCredentialsPool(HubCredentialsPool credentialsPool) {
+        this.credentialsPool = credentialsPool;
+    }
+
+    /**
+     * @return the statistics of the connection pool used for requesting the
+     * Open Access Hub or null, if no pooled connection manager is available
+     */
+    public PoolStats getConnectionPoolStats() {
+        return this.connectionManager != null ? this.connectionManager.getTotalStats() : null;
     }
 
     /**
@@ -111,68 +195,789 @@ public class SentinelFileDownloader {
      * @throws IOException if internal file handling fails for some reason
      */
     public File downloadSentinelFile(String url, String outPath, boolean unzip) throws IOException {
+        return this.downloadProduct(url, outPath, unzip, ExtractionFilter.ALL);
+    }
+
+    /**
+     * Downloads a Sentinel-2 image file from the specified URL, writes it to
+     * the specified location and unzips only those entries that are accepted
+     * by the specified filter. Filtered products are extracted into a
+     * subdirectory of the specified location that is named after the filter.
+     *
+     * @param url     URL for the Sentinel-2 image.
+     * @param outPath Path to the directory to save the image file in
+     * @param filter  {@link ExtractionFilter} that specifies the entries to
+     *                unzip
+     * @return the file that contains the image
+     * @throws IOException if internal file handling fails for some reason
+     */
+    public File downloadSentinelFile(String url, String outPath, ExtractionFilter filter) throws IOException {
+        return this.downloadProduct(url, outPath, true, filter);
+    }
+
+    /**
+     * Downloads a Sentinel-2 image file from the specified URL to the default
+     * working directory and provides it in a form that can be read by SNAP.
+     *
+     * @param url URL for the Sentinel-2 image.
+     * @return the file that contains the image
+     * @throws IOException if internal file handling fails for some reason
+     * @see #downloadSentinelProduct(java.lang.String, java.lang.String)
+     */
+    public File downloadSentinelProduct(String url) throws IOException {
+        return this.downloadSentinelProduct(url, config.getWorkingDirectory());
+    }
+
+    /**
+     * Downloads a Sentinel-2 image file from the specified URL and provides it
+     * in a form that can be read by SNAP. If zip access is enabled, the zipped
+     * product will be returned, so that SNAP reads the bands directly from
+     * the archive. Otherwise, the product will be unzipped.
+     *
+     * @param url     URL for the Sentinel-2 image.
+     * @param outPath Path to the directory to save the image file in
+     * @return the file that contains the image
+     * @throws IOException if internal file handling fails for some reason
+     */
+    public File downloadSentinelProduct(String url, String outPath) throws IOException {
+        return this.downloadSentinelProduct(url, outPath, ExtractionFilter.ALL);
+    }
+
+    /**
+     * Downloads a Sentinel-2 image file from the specified URL and provides it
+     * in a form that can be read by SNAP. If zip access is enabled, the zipped
+     * product will be returned, so that SNAP reads the bands directly from
+     * the archive. Otherwise, only those entries of the product will be
+     * unzipped that are accepted by the specified filter.
+     *
+     * @param url     URL for the Sentinel-2 image.
+     * @param outPath Path to the directory to save the image file in
+     * @param filter  {@link ExtractionFilter} that specifies the entries to
+     *                unzip if zip access is disabled
+     * @return the file that contains the image
+     * @throws IOException if internal file handling fails for some reason
+     */
+    public File downloadSentinelProduct(String url, String outPath, ExtractionFilter filter) throws IOException {
+        if (config.isZipAccess()) {
+            return this.downloadProduct(url, outPath, false, ExtractionFilter.ALL);
+        }
+        return this.downloadProduct(url, outPath, true, filter);
+    }
+
+    /**
+     * Downloads a Sentinel-2 image file asynchronously on a background thread
+     * and unzips those entries that are accepted by the specified filter. If
+     * the product is offline, the download starts as soon as the product has
+     * been restored from the Long Term Archive, without blocking any thread
+     * in the meantime.
+     *
+     * @param url     URL for the Sentinel-2 image.
+     * @param outPath Path to the directory to save the image file in
+     * @param filter  {@link ExtractionFilter} that specifies the entries to
+     *                unzip
+     * @return a future that completes with the file that contains the image
+     */
+    public CompletableFuture<File> downloadSentinelFileAsync(String url, String outPath, ExtractionFilter filter) {
+        return this.downloadProductAsync(url, outPath, true, filter);
+    }
+
+    /**
+     * Prefetches Sentinel-2 products into the product cache. The products are
+     * downloaded by the background pool, so that this method returns at once.
+     * If zip access is enabled, only the zipped products will be cached.
+     * Otherwise, those entries that are accepted by the specified filter will
+     * be unzipped.
+     *
+     * @param urls   URLs for the Sentinel-2 images
+     * @param filter {@link ExtractionFilter} that specifies the entries to
+     *               unzip
+     * @return the {@link PrefetchJob} that serves as handle for the downloads
+     * @see #getPrefetchJob(java.lang.String)
+     */
+    public PrefetchJob prefetchSentinelProducts(List<String> urls, ExtractionFilter filter) {
+        this.removeExpiredPrefetchJobs();
+        Map<String, CompletableFuture<File>> downloads = new LinkedHashMap<>();
+        for (String url : urls) {
+            downloads.computeIfAbsent(url, u -> this.downloadProductAsync(u, config.getWorkingDirectory(),
+                    !config.isZipAccess(), config.isZipAccess() ? ExtractionFilter.ALL : filter));
+        }
+        PrefetchJob job = new PrefetchJob(downloads);
+        this.prefetchJobs.put(job.getId(), job);
+        LOG.info("Prefetching {} Sentinel products with job {}", downloads.size(), job.getId());
+        job.getCompletion().whenComplete((v, ex) -> {
+            LOG.info("Prefetch job {} finished: {} products cached, {} failed",
+                    job.getId(), job.getCompletedCount(), job.getFailedCount());
+        });
+        return job;
+    }
+
+    /**
+     * Finished prefetch jobs are kept for the configured retention period, so
+     * that their outcome can be queried.
+     *
+     * @param id ID of a prefetch job
+     * @return the prefetch job with the specified ID or null if there is no
+     * such job or the job has finished before the retention period
+     */
+    public PrefetchJob getPrefetchJob(String id) {
+        this.removeExpiredPrefetchJobs();
+        return this.prefetchJobs.get(id);
+    }
+
+    private void removeExpiredPrefetchJobs() {
+        long expiry = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(config.getPrefetchRetention());
+        this.prefetchJobs.values().removeIf(j -> j.getFinishedAt() > 0 && j.getFinishedAt() < expiry);
+    }
+
+    private CompletableFuture<File> downloadProductAsync(String url, String outPath, boolean unzip,
+            ExtractionFilter filter) {
+        CompletableFuture<String> online = config.isLtaRetrieval()
+                ? this.getOfflineProductRetriever().retrieve(url)
+                : CompletableFuture.completedFuture(url);
+        return online.thenApplyAsync(u -> {
+            try {
+                return this.downloadProduct(url, outPath, unzip, filter, true);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, this.getBackgroundExecutor());
+    }
+
+    private File downloadProduct(String url, String outPath, boolean unzip, ExtractionFilter filter) throws IOException {
+        return this.downloadProduct(url, outPath, unzip, filter, false);
+    }
+
+    /**
+     * @param online Specify whether the product is known to be online, e.g.
+     *               because it has been retrieved from the Long Term Archive
+     *               before
+     */
+    private File downloadProduct(String url, String outPath, boolean unzip, ExtractionFilter filter,
+            boolean online) throws IOException {
         if (config.getSentinelTestFile() != null && !config.getSentinelTestFile().isEmpty()) {
-            return this.retrieveSentinelTestFile(outPath, unzip);
+            return this.retrieveSentinelTestFile(outPath, unzip, filter);
         }
         LOG.info("Downloading Sentinel product: {}", url);
-        File cached = this.resolveProductFromCache(url);
+        String productKey = this.getProductKey(url, unzip, filter);
+        File cached = this.resolveProductFromCache(url, productKey);
         if (cached != null) {
             LOG.info("Returning cached version of the product: {}", url);
             return cached;
         }
+        if (config.isLtaRetrieval() && !online) {
+            this.requireOnline(url);
+        }
+
+        this.retainProduct(url);
+        try {
+            if (!unzip) {
+                File product = this.transferProduct(url, outPath, false);
+                // the product as delivered by the hub has been requested, so it must outlast any extraction
+                this.keepProduct(url);
+                return product;
+            }
+            return this.singleFlight(url, productKey, () -> this.extractProduct(url, productKey, outPath, filter));
+        } finally {
+            this.releaseProduct(url);
+        }
+    }
+
+    /**
+     * @return the downloads that are currently running, visible for testing
+     */
+    Collection<CompletableFuture<File>> getRunningDownloads() {
+        return Collections.unmodifiableCollection(this.runningDownloads.values());
+    }
+
+    /**
+     * The product as delivered by the hub is cached by its URL, while unzipped
+     * products are cached by the URL and a suffix for the extraction filter.
+     */
+    private String getProductKey(String url, boolean unzip, ExtractionFilter filter) {
+        if (!unzip) {
+            return url;
+        }
+        return url + "#" + (filter.isAll() ? UNZIPPED_KEY_SUFFIX : filter.getKey());
+    }
+
+    /**
+     * Performs an action at most once at a time per key. Callers that request
+     * the same key while the action is running wait for the running action
+     * and share its result or failure.
+     */
+    private File singleFlight(String url, String key, ProductAction action) throws IOException {
+        CompletableFuture<File> download = new CompletableFuture<>();
+        CompletableFuture<File> runningDownload = this.runningDownloads.putIfAbsent(key, download);
+        if (runningDownload != null) {
+            LOG.info("Waiting for running download of the product: {}", url);
+            return this.awaitDownload(url, runningDownload);
+        }
+        try {
+            File file = action.perform();
+            download.complete(file);
+            return file;
+        } catch (IOException | RuntimeException ex) {
+            download.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            this.runningDownloads.remove(key, download);
+        }
+    }
+
+    /**
+     * Extracts a product from the product as delivered by the hub, which is
+     * shared by all extractions of the product regardless of their filters.
+     * If streaming unzip is enabled and the product has not been transferred
+     * before, the entries are extracted while the product is received.
+     */
+    private File extractProduct(String url, String productKey, String outPath, ExtractionFilter filter) throws IOException {
+        for (;;) {
+            // the product may have been extracted by an extraction that finished in the meantime
+            File imageFile = this.getProductCache().contains(productKey) ? this.resolveProductFromCache(url, productKey) : null;
+            if (imageFile != null) {
+                return imageFile;
+            }
+            if (config.isStreamingUnzip() && !this.getProductCache().contains(url)) {
+                imageFile = this.streamProduct(url, productKey, outPath, filter);
+                if (imageFile != null) {
+                    return imageFile;
+                }
+                continue;
+            }
+            File product = this.transferProduct(url, outPath, true);
+            if (!FilenameUtils.getExtension(product.getName()).equals(ZIP_EXTENSION)) {
+                // there is nothing to extract
+                this.keepProduct(url);
+                return product;
+            }
+            LOG.info("Unzipping Sentinel product: {}", url);
+            this.getProductCache().pin(url);
+            try {
+                imageFile = this.unzipFile(product, outPath, true, filter);
+            } finally {
+                this.getProductCache().unpin(url);
+            }
+            this.getProductCache().put(productKey, imageFile);
+            return imageFile;
+        }
+    }
+
+    /**
+     * Transfers a product as delivered by the hub and caches it by its URL.
+     * There is at most one transfer per product at a time, callers that
+     * request a product while it is transferred wait for the running transfer.
+     *
+     * @param transientProduct Specify whether the product is only needed for
+     *                         extractions, so that it will be deleted after
+     *                         the last extraction
+     */
+    private File transferProduct(String url, String outPath, boolean transientProduct) throws IOException {
+        for (;;) {
+            // the product may have been cached by a transfer that finished in the meantime
+            File product = this.getProductCache().contains(url) ? this.getProductCache().get(url) : null;
+            if (product != null) {
+                return product;
+            }
+            CompletableFuture<File> transfer = new CompletableFuture<>();
+            CompletableFuture<File> runningTransfer = this.runningDownloads.putIfAbsent(url, transfer);
+            if (runningTransfer != null) {
+                LOG.info("Waiting for running download of the product: {}", url);
+                // a streaming transfer does not provide the product as delivered by the hub, so check the cache again
+                this.awaitDownload(url, runningTransfer);
+                continue;
+            }
+            try {
+                product = this.fetchSentinelFile(url, outPath, null);
+                synchronized (this.productReferences) {
+                    this.getProductCache().put(url, product);
+                    // with zip access, the zip is kept for reading it directly later on
+                    if (transientProduct && !config.isZipAccess()) {
+                        this.transientProducts.add(url);
+                    }
+                }
+                transfer.complete(product);
+                return product;
+            } catch (IOException | RuntimeException ex) {
+                transfer.completeExceptionally(ex);
+                throw ex;
+            } finally {
+                this.runningDownloads.remove(url, transfer);
+            }
+        }
+    }
+
+    /**
+     * Transfers a product and extracts its entries while they are received.
+     * Since the product as delivered by the hub is not kept, extractions of
+     * the same product with other filters have to wait for the running
+     * transfer and transfer the product once more.
+     *
+     * @return the extracted product or null if a running transfer of the
+     * product has been awaited instead
+     */
+    private File streamProduct(String url, String productKey, String outPath, ExtractionFilter filter) throws IOException {
+        CompletableFuture<File> transfer = new CompletableFuture<>();
+        CompletableFuture<File> runningTransfer = this.runningDownloads.putIfAbsent(url, transfer);
+        if (runningTransfer != null) {
+            LOG.info("Waiting for running download of the product: {}", url);
+            this.awaitDownload(url, runningTransfer);
+            return null;
+        }
+        try {
+            File imageFile = this.fetchSentinelFile(url, outPath, filter);
+            this.getProductCache().put(productKey, imageFile);
+            transfer.complete(imageFile);
+            return imageFile;
+        } catch (IOException | RuntimeException ex) {
+            transfer.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            this.runningDownloads.remove(url, transfer);
+        }
+    }
+
+    /**
+     * Registers a caller that uses the product as delivered by the hub, so
+     * that a transient product will not be deleted while it is used
+     */
+    private void retainProduct(String url) {
+        synchronized (this.productReferences) {
+            this.productReferences.merge(url, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Marks a product as delivered by the hub as not transient, so that it
+     * will be kept in the cache after all extractions
+     */
+    private void keepProduct(String url) {
+        synchronized (this.productReferences) {
+            this.transientProducts.remove(url);
+        }
+    }
+
+    /**
+     * Releases a product that has been retained before and deletes it, if it
+     * is transient and not used by any other caller
+     */
+    private void releaseProduct(String url) {
+        synchronized (this.productReferences) {
+            Integer references = this.productReferences.computeIfPresent(url, (u, count) -> count > 1 ? count - 1 : null);
+            if (references == null && this.transientProducts.remove(url)) {
+                LOG.debug("Deleting transferred Sentinel product after extraction: {}", url);
+                this.getProductCache().remove(url);
+            }
+        }
+    }
+
+    private File awaitDownload(String url, CompletableFuture<File> runningDownload) throws IOException {
+        try {
+            return runningDownload.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for download of Sentinel product: " + url);
+        } catch (ExecutionException ex) {
+            throw new IOException(String.format("Download of Sentinel product '%s' failed: %s",
+                    url, ex.getCause().getMessage()), ex.getCause());
+        }
+    }
+
+    /**
+     * Transfers a product from the hub. If a pool of hub accounts is
+     * configured, an account is leased for the checksum request and the
+     * transfer only, so that it is released before the product is extracted.
+     *
+     * @param streamingFilter filter for extracting the product while it is
+     *                        received or null, if the product shall be stored
+     *                        as delivered by the hub
+     */
+    private File fetchSentinelFile(String url, String outPath, ExtractionFilter streamingFilter) throws IOException {
+        if (this.connectionManager != null) {
+            LOG.info("Open Access Hub connection pool: {}", this.connectionManager.getTotalStats());
+        }
+        if (this.credentialsPool == null) {
+            return this.fetchSentinelFile(url, outPath, streamingFilter, HttpHeaders.EMPTY);
+        }
+        for (int attempt = 1;; attempt++) {
+            try (HubCredentialsPool.Lease lease = this.credentialsPool.lease()) {
+                LOG.debug("Leased Open Access Hub account {} for downloading {}", lease.getAccount().getUsername(), url);
+                HttpHeaders requestHeaders = new HttpHeaders();
+                lease.authorize(requestHeaders);
+                try {
+                    return this.fetchSentinelFile(url, outPath, streamingFilter, requestHeaders);
+                } catch (IOException ex) {
+                    if (!isThrottled(ex)) {
+                        throw ex;
+                    }
+                    lease.coolDown();
+                    if (attempt >= this.credentialsPool.size()) {
+                        throw ex;
+                    }
+                    LOG.warn("Download of Sentinel product {} has been throttled, retrying with another account.", url);
+                }
+            }
+        }
+    }
+
+    private File fetchSentinelFile(String url, String outPath, ExtractionFilter streamingFilter,
+            HttpHeaders requestHeaders) throws IOException {
+        try {
+            ProductChecksum checksum = config.isChecksumVerification() ? this.requestChecksum(url, requestHeaders) : null;
+            File imageFile = null;
+            if (streamingFilter != null) {
+                imageFile = this.downloadAndUnzip(url, outPath, streamingFilter, requestHeaders, checksum);
+            } else {
+                if (config.getDownloadConnections() > 1 || config.isDownloadResumable()) {
+                    imageFile = this.downloadSegmented(url, outPath, requestHeaders, checksum);
+                }
+                if (imageFile == null) {
+                    imageFile = this.downloadSingleStream(url, outPath, requestHeaders, checksum);
+                }
+            }
+
+            LOG.info("Downloading of Sentinel product successful: {}", url);
+
+            return imageFile;
+        } catch (HttpStatusCodeException ex) {
+            LOG.error("GET request for Sentinel file {} returned status code: {}.",
+                    ex.getStatusCode());
+            throw new IOException(ex);
+        } catch (RestClientException ex) {
+            LOG.error("Unexpected client error while requesting Sentinel file ", ex.getMessage());
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Requests the checksum of a product from the OData metadata of the
+     * product entity.
+     *
+     * @return the checksum or null if the hub does not advertise a checksum
+     * for the product
+     */
+    private ProductChecksum requestChecksum(String url, HttpHeaders requestHeaders) {
+        if (!url.endsWith(VALUE_SUFFIX)) {
+            return null;
+        }
+        String metadataUrl = url.substring(0, url.length() - VALUE_SUFFIX.length()) + "?$format=json";
+        RequestCallback callback = (ClientHttpRequest request) -> {
+            request.getHeaders().putAll(requestHeaders);
+            request.getHeaders().setAccept(Arrays.asList(MediaType.APPLICATION_JSON));
+        };
+        try {
+            JsonNode metadata = openAccessHubService.execute(metadataUrl, HttpMethod.GET, callback,
+                    (ClientHttpResponse response) -> this.objectMapper.readTree(response.getBody()));
+            JsonNode checksum = metadata != null ? metadata.path("d").path("Checksum") : null;
+            if (checksum == null || !checksum.hasNonNull("Algorithm") || !checksum.hasNonNull("Value")) {
+                LOG.warn("No checksum available for Sentinel product {}, skipping verification.", url);
+                return null;
+            }
+            return new ProductChecksum(checksum.get("Algorithm").asText(), checksum.get("Value").asText());
+        } catch (RestClientException ex) {
+            if (this.isAccountSwitch(ex)) {
+                throw ex;
+            }
+            LOG.warn("Requesting checksum of Sentinel product {} failed, skipping verification. Cause: {}",
+                    url, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Rejects a corrupt product by deleting the received file and evicting any
+     * cached entries of the product.
+     */
+    private IOException rejectCorruptProduct(String url, File file, IOException cause) {
+        LOG.error("Rejecting corrupt Sentinel product {}: {}", url, cause.getMessage());
+        FileUtils.deleteQuietly(file);
+        this.getProductCache().remove(url);
+        this.getProductCache().remove(url + "#" + UNZIPPED_KEY_SUFFIX);
+        return cause;
+    }
+
+    /**
+     * Makes sure that a product is online before it is downloaded
+     * synchronously. The restore of an offline product is triggered, but not
+     * awaited, since it may take several hours and would block the calling
+     * thread in the meantime. Offline products should be retrieved with
+     * {@link #downloadSentinelFileAsync(String, String, ExtractionFilter)} or
+     * {@link #prefetchSentinelProducts(List, ExtractionFilter)} instead.
+     */
+    private void requireOnline(String url) throws IOException {
+        OfflineProductRetriever retriever = this.getOfflineProductRetriever();
+        if (!retriever.isOnline(url)) {
+            retriever.retrieve(url);
+            throw new IOException(String.format("Sentinel product '%s' is offline, its restore from the "
+                    + "Long Term Archive has been triggered.", url));
+        }
+    }
+
+    private synchronized OfflineProductRetriever getOfflineProductRetriever() {
+        if (this.offlineProductRetriever == null) {
+            this.retrievalScheduler = Executors.newSingleThreadScheduledExecutor();
+            this.offlineProductRetriever = new OfflineProductRetriever(openAccessHubService, this.credentialsPool,
+                    this.retrievalScheduler,
+                    TimeUnit.SECONDS.toMillis(config.getLtaPollInterval()),
+                    TimeUnit.SECONDS.toMillis(config.getLtaMaxPollInterval()),
+                    TimeUnit.MINUTES.toMillis(config.getLtaTimeout()));
+        }
+        return this.offlineProductRetriever;
+    }
+
+    private synchronized ExecutorService getBackgroundExecutor() {
+        if (this.backgroundExecutor == null) {
+            this.backgroundExecutor = Executors.newFixedThreadPool(Math.max(config.getDownloadBackgroundThreads(), 1));
+        }
+        return this.backgroundExecutor;
+    }
+
+    /**
+     * @return true, if the exception has been caused by the Open Access Hub
+     * throttling the requests of an account
+     */
+    private static boolean isThrottled(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpStatusCodeException) {
+                HttpStatus status = ((HttpStatusCodeException) cause).getStatusCode();
+                return status == HttpStatus.TOO_MANY_REQUESTS || status == HttpStatus.SERVICE_UNAVAILABLE;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true, if the exception has been caused by throttling and the
+     * request shall be retried with another account instead of being retried
+     * or falling back with the same account
+     */
+    private boolean isAccountSwitch(Throwable ex) {
+        return isThrottled(ex) && this.credentialsPool != null && this.credentialsPool.isSwitchable();
+    }
 
+    private File downloadSingleStream(String url, String outPath, HttpHeaders requestHeaders,
+            ProductChecksum checksum) {
         // Optional Accept header
         RequestCallback callback = (ClientHttpRequest request) -> {
+            request.getHeaders().putAll(requestHeaders);
             request.getHeaders()
                     .setAccept(Arrays.asList(MediaType.APPLICATION_OCTET_STREAM));
         };
 
         ResponseExtractor<File> responseExtractor = (ClientHttpResponse response) -> {
+            if (response.getStatusCode() == HttpStatus.ACCEPTED) {
+                throw new IOException(String.format("Sentinel file for URL '%s' is offline.", url));
+            }
             if (response.getHeaders().getContentLength() == 0) {
                 throw new IOException(String.format("No Sentinel file available for URL '%s' is not available.", url));
             }
             String fileName = response.getHeaders().getContentDisposition().getFilename();
-            File imageFile = new File(outPath + "/" + fileName);
-            FileUtils.copyInputStreamToFile(response.getBody(), imageFile);
+            if (checksum == null) {
+                return this.writeToFile(response.getBody(), new File(outPath + "/" + fileName));
+            }
+            DigestInputStream digestIn = checksum.digest(response.getBody());
+            File imageFile = this.writeToFile(digestIn, new File(outPath + "/" + fileName));
+            try {
+                checksum.verify(digestIn, url);
+            } catch (IOException ex) {
+                throw this.rejectCorruptProduct(url, imageFile, ex);
+            }
             return imageFile;
         };
 
-        try {
-            File imageFile = openAccessHubService.execute(url, HttpMethod.GET, callback, responseExtractor);
-            if (unzip && FilenameUtils.getExtension(imageFile.getName()).equals(ZIP_EXTENSION)) {
-                imageFile = this.unzipFile(imageFile, outPath, false);
+        return openAccessHubService.execute(url, HttpMethod.GET, callback, responseExtractor);
+    }
+
+    /**
+     * Downloads a Sentinel product and extracts the entries of the zipped
+     * product while they are received, so that the zip file itself will never
+     * be written to disk.
+     */
+    private File downloadAndUnzip(String url, String outPath, ExtractionFilter filter, HttpHeaders requestHeaders,
+            ProductChecksum checksum) {
+        RequestCallback callback = (ClientHttpRequest request) -> {
+            request.getHeaders().putAll(requestHeaders);
+            request.getHeaders()
+                    .setAccept(Arrays.asList(MediaType.APPLICATION_OCTET_STREAM));
+        };
+
+        ResponseExtractor<File> responseExtractor = (ClientHttpResponse response) -> {
+            if (response.getStatusCode() == HttpStatus.ACCEPTED) {
+                throw new IOException(String.format("Sentinel file for URL '%s' is offline.", url));
+            }
+            if (response.getHeaders().getContentLength() == 0) {
+                throw new IOException(String.format("No Sentinel file available for URL '%s' is not available.", url));
+            }
+            String fileName = response.getHeaders().getContentDisposition().getFilename();
+            DigestInputStream digestIn = checksum != null ? checksum.digest(response.getBody()) : null;
+            InputStream in = digestIn != null ? digestIn : response.getBody();
+            if (FilenameUtils.getExtension(fileName).equals(ZIP_EXTENSION)) {
+                // the entries are moved into the extraction path only after the checksum has been verified
+                return this.unzipStream(new CloseShieldInputStream(in), outPath, fileName, filter, () -> {
+                    // the central directory at the end of the zip has to be read for the digest as well
+                    IOUtils.skip(in, Long.MAX_VALUE);
+                    if (digestIn != null) {
+                        try {
+                            checksum.verify(digestIn, url);
+                        } catch (IOException ex) {
+                            throw this.rejectCorruptProduct(url, null, ex);
+                        }
+                    }
+                });
+            }
+            File imageFile = this.writeToFile(in, new File(outPath + "/" + fileName));
+            if (digestIn != null) {
+                try {
+                    checksum.verify(digestIn, url);
+                } catch (IOException ex) {
+                    throw this.rejectCorruptProduct(url, imageFile, ex);
+                }
             }
+            return imageFile;
+        };
 
-            LOG.info("Downloading of Sentinel product successful: {}", url);
+        return openAccessHubService.execute(url, HttpMethod.GET, callback, responseExtractor);
+    }
 
-            synchronized (SentinelFileDownloader.this) {
-                productToFileCache.put(url, imageFile);
+    private File writeToFile(InputStream in, File imageFile) throws IOException {
+        File partFile = SegmentedFileDownloader.getPartFile(imageFile);
+        FileUtils.copyInputStreamToFile(in, partFile);
+        Files.move(partFile.toPath(), imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return imageFile;
+    }
+
+    /**
+     * Downloads a Sentinel product by requesting byte ranges. Failed downloads
+     * will be retried by requesting the byte ranges that are still missing.
+     *
+     * @return the downloaded file or null if the product does not support
+     * byte range requests
+     */
+    private File downloadSegmented(String url, String outPath, HttpHeaders requestHeaders,
+            ProductChecksum checksum) throws IOException {
+        SegmentedFileDownloader downloader = this.getSegmentedDownloader();
+        SegmentedFileDownloader.RemoteFile remoteFile;
+        try {
+            remoteFile = downloader.probe(url, requestHeaders);
+        } catch (IOException ex) {
+            if (this.isAccountSwitch(ex)) {
+                throw ex;
+            }
+            LOG.warn("Falling back to single stream download for Sentinel product {}. Cause: {}", url, ex.getMessage());
+            return null;
+        }
+        if (!downloader.supportsRangeRequests(remoteFile)) {
+            LOG.info("Sentinel product {} does not support byte range requests, falling back to single stream download.", url);
+            return null;
+        }
+        File imageFile = new File(outPath, remoteFile.getFileName());
+        for (int attempt = 1;; attempt++) {
+            try {
+                downloader.download(remoteFile, imageFile, requestHeaders);
+                break;
+            } catch (IOException ex) {
+                if (attempt > config.getDownloadRetries() || this.isAccountSwitch(ex) || ex instanceof InterruptedIOException) {
+                    throw ex;
+                }
+                LOG.warn("Download attempt {} for Sentinel product {} failed, retrying. Cause: {}",
+                        attempt, url, ex.getMessage());
             }
+        }
+        if (checksum != null) {
+            // segments are written out of order, so the digest can only be computed afterwards
+            try {
+                checksum.verify(imageFile, url);
+            } catch (IOException ex) {
+                throw this.rejectCorruptProduct(url, imageFile, ex);
+            }
+        }
+        return imageFile;
+    }
 
-            return imageFile;
-        } catch (HttpStatusCodeException ex) {
-            LOG.error("GET request for Sentinel file {} returned status code: {}.",
-                    ex.getStatusCode());
-            throw new IOException(ex);
-        } catch (RestClientException ex) {
-            LOG.error("Unexpected client error while requesting Sentinel file ", ex.getMessage());
-            throw new IOException(ex);
+    private synchronized SegmentedFileDownloader getSegmentedDownloader() {
+        if (this.segmentExecutor == null) {
+            this.segmentExecutor = Executors.newFixedThreadPool(Math.max(config.getDownloadConnections(), 1));
         }
+        if (this.segmentedDownloader == null) {
+            this.segmentedDownloader = new SegmentedFileDownloader(openAccessHubService, this.segmentExecutor,
+                    config.getDownloadConnections(), config.getDownloadMinSegmentSize(), config.isDownloadResumable());
+        }
+        return this.segmentedDownloader;
     }
 
-    private synchronized File resolveProductFromCache(String url) {
-        if (this.productToFileCache.containsKey(url)) {
-            File candidateFile = this.productToFileCache.get(url);
-            if (candidateFile != null && candidateFile.exists()) {
-                return candidateFile;
-            } else {
-                // file does not exist any longer, remove it
-                this.productToFileCache.remove(url);
+    private File resolveProductFromCache(String url, String productKey) {
+        String unzippedKey = url + "#" + UNZIPPED_KEY_SUFFIX;
+        if (!url.equals(productKey) && !unzippedKey.equals(productKey) && this.getProductCache().contains(unzippedKey)) {
+            // a completely unzipped product also serves any filtered extraction
+            File product = this.getProductCache().get(unzippedKey);
+            if (product != null && product.isDirectory()) {
+                return product;
             }
         }
+        return this.getProductCache().get(productKey);
+    }
+
+    /**
+     * Pins a Sentinel product, so that neither the product nor any of its
+     * unzipped variants will be evicted from the product cache until it will
+     * be released by {@link #releaseSentinelFile(java.lang.String)}. The
+     * product may be pinned before it has been downloaded.
+     *
+     * @param url URL for the Sentinel-2 image.
+     */
+    public void pinSentinelFile(String url) {
+        this.getProductCache().pin(url);
+    }
+
+    /**
+     * Releases a Sentinel product that has been pinned before by
+     * {@link #pinSentinelFile(java.lang.String)}.
+     *
+     * @param url URL for the Sentinel-2 image.
+     */
+    public void releaseSentinelFile(String url) {
+        this.getProductCache().unpin(url);
+    }
+
+    /**
+     * Reads Sentinel products while they are pinned in the product cache. A
+     * process that reads a product must pin it for the whole time, since the
+     * product cache may otherwise evict the product, e.g. for a concurrent
+     * download, and delete the files while they are still being read. Null
+     * URLs are ignored.
+     *
+     * @param <T>    type of the result
+     * @param <E>    type of the exception thrown by the reader
+     * @param urls   URLs of the Sentinel products
+     * @param reader reads the products
+     * @return the result of the reader
+     * @throws E if the reader fails
+     */
+    public <T, E extends Exception> T readPinnedSentinelProducts(List<String> urls, PinnedProductReader<T, E> reader) throws E {
+        List<String> pinned = new ArrayList<>();
+        urls.stream().filter(u -> u != null).forEach(pinned::add);
+        pinned.forEach(this::pinSentinelFile);
+        try {
+            return reader.read();
+        } finally {
+            pinned.forEach(this::releaseSentinelFile);
+        }
+    }
 
-        // no match found
-        return null;
+    /**
+     * @return the cache that holds all downloaded Sentinel products
+     */
+    public synchronized SentinelProductCache getProductCache() {
+        if (this.productCache == null) {
+            SentinelProductCache.EvictionPolicy evictionPolicy = config.getProductCacheEvictionPolicy() != null
+                    ? SentinelProductCache.EvictionPolicy.valueOf(config.getProductCacheEvictionPolicy().toUpperCase())
+                    : SentinelProductCache.EvictionPolicy.LRU;
+            this.productCache = new SentinelProductCache(
+                    new File(config.getWorkingDirectory(), CACHE_INDEX_FILE),
+                    config.getProductCacheMaxSize(),
+                    evictionPolicy,
+                    TimeUnit.MINUTES.toMillis(config.getProductCachePinDuration()));
+        }
+        return this.productCache;
     }
 
     /**
@@ -184,13 +989,42 @@ public class SentinelFileDownloader {
      * @throws IOException
      */
     public File unzipFile(File file, String outPath, boolean keepZip) throws IOException {
+        return this.unzipFile(file, outPath, keepZip, ExtractionFilter.ALL);
+    }
+
+    /**
+     * Unzips those entries of a zipped Sentinel image that are accepted by the
+     * specified filter. If the filter does not accept all entries, the entries
+     * will be unzipped into a subdirectory of the specified location that is
+     * named after the filter.
+     *
+     * @param file    {@link File} to unzip
+     * @param outPath Path at which the file will be unzipped
+     * @param keepZip Specify whether to keep the zipped file
+     * @param filter  {@link ExtractionFilter} that specifies the entries to
+     *                unzip
+     * @return The unzipped SAFE file
+     * @throws IOException
+     */
+    public File unzipFile(File file, String outPath, boolean keepZip, ExtractionFilter filter) throws IOException {
         File unzippedFile = null;
+        String extractionPath = this.getExtractionPath(outPath, filter);
+        if (config.getUnzipThreads() > 1) {
+            unzippedFile = this.getZipExtractor().extract(file, new File(extractionPath), filter);
+            if (!keepZip) {
+                file.delete();
+            }
+            return unzippedFile;
+        }
         try (ZipFile zipFile = new ZipFile(file)) {
             Enumeration<? extends ZipEntry> entries = zipFile.entries();
             boolean firstEntry = true;
             while (entries.hasMoreElements()) {
                 ZipEntry entry = entries.nextElement();
-                File entryDestination = new File(outPath, entry.getName());
+                if (!filter.accept(entry.getName())) {
+                    continue;
+                }
+                File entryDestination = new File(extractionPath, entry.getName());
                 if (firstEntry) {
                     unzippedFile = entryDestination;
                     firstEntry = false;
@@ -212,12 +1046,155 @@ public class SentinelFileDownloader {
         return unzippedFile;
     }
 
-    private File retrieveSentinelTestFile(String outPath, boolean unzip) throws IOException {
+    /**
+     * Unzips a zipped Sentinel image while reading it from a stream. The
+     * entries are extracted into a staging directory first and will be moved
+     * to the specified location after the stream has been read completely.
+     *
+     * @param in       {@link InputStream} that provides the zipped image
+     * @param outPath  Path at which the image will be unzipped
+     * @param fileName Name of the zipped image
+     * @return The unzipped SAFE file
+     * @throws IOException if reading the stream or writing an entry fails
+     */
+    public File unzipStream(InputStream in, String outPath, String fileName) throws IOException {
+        return this.unzipStream(in, outPath, fileName, ExtractionFilter.ALL);
+    }
+
+    /**
+     * Unzips those entries of a zipped Sentinel image that are accepted by the
+     * specified filter while reading the zipped image from a stream.
+     *
+     * @param in       {@link InputStream} that provides the zipped image
+     * @param outPath  Path at which the image will be unzipped
+     * @param fileName Name of the zipped image
+     * @param filter   {@link ExtractionFilter} that specifies the entries to
+     *                 unzip
+     * @return The unzipped SAFE file
+     * @throws IOException if reading the stream or writing an entry fails
+     */
+    public File unzipStream(InputStream in, String outPath, String fileName, ExtractionFilter filter) throws IOException {
+        return this.unzipStream(in, outPath, fileName, filter, () -> {
+        });
+    }
+
+    /**
+     * Unzips the entries into a staging directory and moves them into the
+     * extraction path after the check has passed, so that no entries of a
+     * rejected product are left in the extraction path.
+     */
+    private File unzipStream(InputStream in, String outPath, String fileName, ExtractionFilter filter,
+            ExtractionCheck check) throws IOException {
+        String extractionPath = this.getExtractionPath(outPath, filter);
+        File stagingDir = SegmentedFileDownloader.getPartFile(new File(outPath, fileName));
+        FileUtils.deleteQuietly(stagingDir);
+        String firstEntryName = null;
+        try (ZipInputStream zipIn = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                if (!filter.accept(entry.getName())) {
+                    continue;
+                }
+                if (firstEntryName == null) {
+                    firstEntryName = entry.getName();
+                }
+                File entryDestination = new File(stagingDir, entry.getName());
+                if (entry.isDirectory()) {
+                    entryDestination.mkdirs();
+                } else {
+                    entryDestination.getParentFile().mkdirs();
+                    try (OutputStream out = new FileOutputStream(entryDestination)) {
+                        IOUtils.copy(zipIn, out);
+                    }
+                }
+            }
+            if (firstEntryName == null) {
+                throw new IOException(String.format("Zipped Sentinel file '%s' does not contain any entries.", fileName));
+            }
+            check.perform();
+            File[] extractedFiles = stagingDir.listFiles();
+            new File(extractionPath).mkdirs();
+            for (File extractedFile : extractedFiles) {
+                File destination = new File(extractionPath, extractedFile.getName());
+                FileUtils.deleteQuietly(destination);
+                Files.move(extractedFile.toPath(), destination.toPath());
+            }
+        } finally {
+            FileUtils.deleteQuietly(stagingDir);
+        }
+        return new File(extractionPath, firstEntryName);
+    }
+
+    private synchronized ParallelZipExtractor getZipExtractor() {
+        if (this.zipExtractor == null) {
+            this.unzipExecutor = Executors.newFixedThreadPool(config.getUnzipThreads());
+            this.zipExtractor = new ParallelZipExtractor(this.unzipExecutor, config.getUnzipThreads());
+        }
+        return this.zipExtractor;
+    }
+
+    private String getExtractionPath(String outPath, ExtractionFilter filter) {
+        return filter.isAll() ? outPath : FilenameUtils.concat(outPath, EXTRACTION_DIR_PREFIX + filter.getKey());
+    }
+
+    private File retrieveSentinelTestFile(String outPath, boolean unzip, ExtractionFilter filter) throws IOException {
         File testFile = new File(config.getSentinelTestFile());
         if (unzip && FilenameUtils.getExtension(testFile.getName()).equals(ZIP_EXTENSION)) {
-            testFile = this.unzipFile(testFile, outPath, true);
+            testFile = this.unzipFile(testFile, outPath, true, filter);
         }
         return testFile;
     }
 
+    /**
+     * Reads Sentinel products that are pinned in the product cache
+     *
+     * @param <T> type of the result
+     * @param <E> type of the exception thrown by the reader
+     */
+    @FunctionalInterface
+    public interface PinnedProductReader<T, E extends Exception> {
+
+        T read() throws E;
+
+    }
+
+    /**
+     * Check of a product that has been unzipped into a staging directory
+     */
+    @FunctionalInterface
+    private interface ExtractionCheck {
+
+        void perform() throws IOException;
+
+    }
+
+    /**
+     * Action that provides a product file
+     */
+    @FunctionalInterface
+    private interface ProductAction {
+
+        File perform() throws IOException;
+
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (this.productCache != null) {
+            this.productCache.flush();
+        }
+        if (this.segmentExecutor != null) {
+            this.segmentExecutor.shutdownNow();
+        }
+        if (this.unzipExecutor != null) {
+            this.unzipExecutor.shutdownNow();
+        }
+        if (this.retrievalScheduler != null) {
+            this.retrievalScheduler.shutdownNow();
+        }
+        if (this.backgroundExecutor != null) {
+            this.backgroundExecutor.shutdownNow();
+        }
+    }
+
 }
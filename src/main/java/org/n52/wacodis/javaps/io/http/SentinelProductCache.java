@@ -0,0 +1,399 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-bounded cache for downloaded Sentinel products. The cached products
+ * remain at the location they have been downloaded to, while an index that
+ * describes all cached products is persisted as JSON file. Thus, the cache
+ * survives restarts of the application.
+ *
+ * If the total size of all cached products exceeds the configured budget,
+ * products will be evicted (i.e. deleted from disk) according to the
+ * configured {@link EvictionPolicy}. Products that are pinned, either
+ * explicitly or by a time-limited lease that is renewed on each access, will
+ * never be evicted. Pinning a product also pins all of its variants, i.e. the
+ * entries whose key is the product key followed by '#' and a suffix.
+ *
+ * Modifications of the cache content are written to the index at once, while
+ * the access statistics that are updated on cache hits are written at most
+ * once per flush interval and when the cache is flushed.
+ */
+public class SentinelProductCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SentinelProductCache.class);
+
+    private static final String VARIANT_SEPARATOR = "#";
+
+    private static final long INDEX_FLUSH_INTERVAL = 30000;
+
+    private final File indexFile;
+
+    private final long maxSize;
+
+    private final EvictionPolicy evictionPolicy;
+
+    private final long pinDuration;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, CacheEntry> entries = new LinkedHashMap<>();
+
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    private boolean indexDirty;
+
+    private long lastIndexStore;
+
+    /**
+     * Creates a new cache and loads the cache index, if it exists.
+     *
+     * @param indexFile      JSON file that holds the cache index
+     * @param maxSize        Maximum size of all cached products in bytes.
+     *                       Values &lt;= 0 disable the size limitation.
+     * @param evictionPolicy Policy to choose products for eviction
+     * @param pinDuration    Duration in milliseconds a product is pinned after
+     *                       it was accessed
+     */
+    public SentinelProductCache(File indexFile, long maxSize, EvictionPolicy evictionPolicy, long pinDuration) {
+        this.indexFile = indexFile;
+        this.maxSize = maxSize;
+        this.evictionPolicy = evictionPolicy != null ? evictionPolicy : EvictionPolicy.LRU;
+        this.pinDuration = pinDuration;
+        this.loadIndex();
+    }
+
+    /**
+     * Resolves a cached product file
+     *
+     * @param key Key of the product
+     * @return the cached product file or null if the product is not cached
+     */
+    public synchronized File get(String key) {
+        CacheEntry entry = this.entries.get(key);
+        if (entry != null) {
+            File candidateFile = new File(entry.getPath());
+            if (candidateFile.exists()) {
+                entry.setLastAccess(System.currentTimeMillis());
+                entry.setAccessCount(entry.getAccessCount() + 1);
+                entry.setPinnedUntil(System.currentTimeMillis() + this.pinDuration);
+                this.hitCount++;
+                this.storeIndexLazily();
+                return candidateFile;
+            } else {
+                // file does not exist any longer, remove it
+                this.entries.remove(key);
+                this.storeIndexLazily();
+            }
+        }
+
+        // no match found
+        this.missCount++;
+        return null;
+    }
+
+    /**
+     * Checks whether a product is cached without counting the lookup as cache
+     * hit or miss.
+     *
+     * @param key Key of the product
+     * @return true, if the product is cached
+     */
+    public synchronized boolean contains(String key) {
+        CacheEntry entry = this.entries.get(key);
+        return entry != null && new File(entry.getPath()).exists();
+    }
+
+    /**
+     * Adds a product file to the cache and evicts other products if the cache
+     * exceeds its size limitation.
+     *
+     * @param key  Key of the product
+     * @param file Product file
+     */
+    public synchronized void put(String key, File file) {
+        CacheEntry entry = new CacheEntry();
+        entry.setKey(key);
+        entry.setPath(file.getAbsolutePath());
+        entry.setSize(FileUtils.sizeOf(file));
+        entry.setLastAccess(System.currentTimeMillis());
+        entry.setAccessCount(1);
+        entry.setPinnedUntil(System.currentTimeMillis() + this.pinDuration);
+        this.entries.put(key, entry);
+
+        this.evict(key);
+        this.storeIndex();
+    }
+
+    /**
+     * Removes a product from the cache and deletes the product file.
+     *
+     * @param key Key of the product
+     */
+    public synchronized void remove(String key) {
+        CacheEntry entry = this.entries.remove(key);
+        if (entry != null) {
+            FileUtils.deleteQuietly(new File(entry.getPath()));
+            this.storeIndex();
+        }
+    }
+
+    /**
+     * Pins a product and its variants, so that they will not be evicted until
+     * {@link #unpin(java.lang.String)} has been called for the product as many
+     * times as it has been pinned.
+     *
+     * @param key Key of the product
+     */
+    public synchronized void pin(String key) {
+        this.pins.merge(key, 1, Integer::sum);
+    }
+
+    /**
+     * Releases a pin of a product
+     *
+     * @param key Key of the product
+     */
+    public synchronized void unpin(String key) {
+        this.pins.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Writes the index, if the access statistics have been updated since the
+     * index has been written the last time
+     */
+    public synchronized void flush() {
+        if (this.indexDirty) {
+            this.storeIndex();
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the total size of all cached products in bytes
+     */
+    public synchronized long getTotalSize() {
+        return this.entries.values().stream().mapToLong(CacheEntry::getSize).sum();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    private boolean isPinned(CacheEntry entry) {
+        int variantIndex = entry.getKey().indexOf(VARIANT_SEPARATOR);
+        return this.pins.containsKey(entry.getKey())
+                || (variantIndex > 0 && this.pins.containsKey(entry.getKey().substring(0, variantIndex)))
+                || entry.getPinnedUntil() > System.currentTimeMillis();
+    }
+
+    private void evict(String addedKey) {
+        if (this.maxSize <= 0) {
+            return;
+        }
+        long totalSize = this.getTotalSize();
+        while (totalSize > this.maxSize) {
+            CacheEntry victim = this.entries.values().stream()
+                    .filter(e -> !e.getKey().equals(addedKey) && !this.isPinned(e))
+                    .min(this.evictionPolicy.getComparator())
+                    .orElse(null);
+            if (victim == null) {
+                LOG.warn("Product cache exceeds its size limit ({} of {} bytes), but all products are pinned.",
+                        totalSize, this.maxSize);
+                return;
+            }
+            this.entries.remove(victim.getKey());
+            FileUtils.deleteQuietly(new File(victim.getPath()));
+            totalSize -= victim.getSize();
+            this.evictionCount++;
+            LOG.info("Evicted product from cache: {}. Cache statistics: hits={}, misses={}, evictions={}, size={} bytes",
+                    victim.getKey(), this.hitCount, this.missCount, this.evictionCount, totalSize);
+        }
+    }
+
+    private void loadIndex() {
+        if (this.indexFile == null || !this.indexFile.exists()) {
+            return;
+        }
+        try {
+            List<CacheEntry> storedEntries = this.objectMapper.readValue(this.indexFile,
+                    new TypeReference<List<CacheEntry>>() {
+            });
+            storedEntries.stream()
+                    .filter(e -> new File(e.getPath()).exists())
+                    .forEach(e -> {
+                        // pins do not survive restarts, since the pinning jobs are gone
+                        e.setPinnedUntil(0);
+                        this.entries.put(e.getKey(), e);
+                    });
+            LOG.info("Loaded {} cached products from cache index: {}", this.entries.size(), this.indexFile);
+        } catch (IOException ex) {
+            LOG.warn("Could not read product cache index {}. Starting with empty cache. Cause: {}",
+                    this.indexFile, ex.getMessage());
+        }
+    }
+
+    private void storeIndexLazily() {
+        this.indexDirty = true;
+        if (System.currentTimeMillis() - this.lastIndexStore >= INDEX_FLUSH_INTERVAL) {
+            this.storeIndex();
+        }
+    }
+
+    private void storeIndex() {
+        if (this.indexFile == null) {
+            return;
+        }
+        this.indexDirty = false;
+        this.lastIndexStore = System.currentTimeMillis();
+        try {
+            File tmpFile = new File(this.indexFile.getPath() + ".tmp");
+            this.objectMapper.writeValue(tmpFile, new ArrayList<>(this.entries.values()));
+            Files.move(tmpFile.toPath(), this.indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            LOG.warn("Could not write product cache index {}. Cause: {}", this.indexFile, ex.getMessage());
+        }
+    }
+
+    /**
+     * Policies for choosing cached products to evict
+     */
+    public static enum EvictionPolicy {
+
+        /**
+         * Evicts the least recently used product
+         */
+        LRU(Comparator.comparingLong(CacheEntry::getLastAccess)),
+        /**
+         * Evicts the least frequently used product
+         */
+        LFU(Comparator.comparingLong(CacheEntry::getAccessCount)
+                .thenComparingLong(CacheEntry::getLastAccess));
+
+        private final Comparator<CacheEntry> comparator;
+
+        private EvictionPolicy(Comparator<CacheEntry> comparator) {
+            this.comparator = comparator;
+        }
+
+        public Comparator<CacheEntry> getComparator() {
+            return comparator;
+        }
+
+    }
+
+    /**
+     * Entry of the cache index
+     */
+    public static class CacheEntry {
+
+        private String key;
+        private String path;
+        private long size;
+        private long lastAccess;
+        private long accessCount;
+        private long pinnedUntil;
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        public void setLastAccess(long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+
+        public long getAccessCount() {
+            return accessCount;
+        }
+
+        public void setAccessCount(long accessCount) {
+            this.accessCount = accessCount;
+        }
+
+        public long getPinnedUntil() {
+            return pinnedUntil;
+        }
+
+        public void setPinnedUntil(long pinnedUntil) {
+            this.pinnedUntil = pinnedUntil;
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wacodis.javaps.configuration.tools.DockerHostConfig;
+
+public class DockerHostSelectorTest {
+
+    private static final String BIG_HOST = "tcp://big:2376";
+    private static final String SMALL_HOST = "tcp://small:2376";
+
+    @Test
+    public void testExecutionsArePlacedByWeight() {
+        DockerHostSelector selector = new DockerHostSelector(3, 60000);
+        List<DockerHostConfig> hosts = Arrays.asList(host(SMALL_HOST, 1), host(BIG_HOST, 2));
+
+        for (int i = 0; i < 3; i++) {
+            selector.acquire(hosts);
+        }
+
+        Assert.assertEquals(2, selector.getRunningCount(BIG_HOST));
+        Assert.assertEquals(1, selector.getRunningCount(SMALL_HOST));
+
+        selector.release(hosts.get(1), false);
+        Assert.assertEquals(BIG_HOST, selector.acquire(hosts).getUrl());
+    }
+
+    @Test
+    public void testFailingHostIsCircuitBroken() throws InterruptedException {
+        DockerHostSelector selector = new DockerHostSelector(2, 100);
+        DockerHostConfig failing = host(BIG_HOST, 10);
+        List<DockerHostConfig> hosts = Arrays.asList(failing, host(SMALL_HOST, 1));
+
+        selector.release(selector.acquire(hosts), true);
+        Assert.assertEquals(DockerHostSelector.CircuitState.CLOSED, selector.getCircuitState(BIG_HOST));
+        selector.release(selector.acquire(hosts), true);
+        Assert.assertEquals(DockerHostSelector.CircuitState.OPEN, selector.getCircuitState(BIG_HOST));
+
+        Assert.assertEquals(SMALL_HOST, selector.acquire(hosts).getUrl());
+
+        Thread.sleep(150);
+        // a single trial execution is placed on the host after the open time
+        Assert.assertEquals(BIG_HOST, selector.acquire(hosts).getUrl());
+        Assert.assertEquals(DockerHostSelector.CircuitState.HALF_OPEN, selector.getCircuitState(BIG_HOST));
+        Assert.assertEquals(SMALL_HOST, selector.acquire(hosts).getUrl());
+
+        selector.release(failing, false);
+        Assert.assertEquals(DockerHostSelector.CircuitState.CLOSED, selector.getCircuitState(BIG_HOST));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoHostAvailable() {
+        DockerHostSelector selector = new DockerHostSelector(1, 60000);
+        List<DockerHostConfig> hosts = Arrays.asList(host(BIG_HOST, 1));
+        selector.release(selector.acquire(hosts), true);
+
+        selector.acquire(hosts);
+    }
+
+    private static DockerHostConfig host(String url, int weight) {
+        DockerHostConfig host = new DockerHostConfig();
+        host.setUrl(url);
+        host.setWeight(weight);
+        return host;
+    }
+
+}
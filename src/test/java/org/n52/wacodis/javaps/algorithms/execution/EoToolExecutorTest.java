@@ -20,18 +20,31 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
 import org.n52.wacodis.javaps.exceptions.WacodisConfigurationException;
 import org.n52.wacodis.javaps.command.AbstractCommandValue;
 import org.n52.wacodis.javaps.command.MultipleCommandValue;
 import org.n52.wacodis.javaps.command.SingleCommandValue;
+import org.n52.wacodis.javaps.command.ProcessResult;
+import org.n52.wacodis.javaps.command.docker.ContainerReaper;
+import org.n52.wacodis.javaps.command.docker.DockerControllerRegistry;
 import org.n52.wacodis.javaps.command.docker.DockerRunCommandConfiguration;
+import org.n52.wacodis.javaps.command.docker.DockerStubServer;
+import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
 import org.n52.wacodis.javaps.configuration.tools.ArgumentConfig;
 import org.n52.wacodis.javaps.configuration.tools.CommandConfig;
+import org.n52.wacodis.javaps.configuration.tools.DockerConfig;
+import org.n52.wacodis.javaps.configuration.tools.DockerHostConfig;
+import org.n52.wacodis.javaps.configuration.tools.ResourcesConfig;
+import org.n52.wacodis.javaps.configuration.tools.SchedulingConfig;
+import org.n52.wacodis.javaps.configuration.tools.ToolConfig;
+import org.springframework.test.util.ReflectionTestUtils;
 
 /**
  *
@@ -143,4 +156,124 @@ public class EoToolExecutorTest {
         exception.expect(WacodisConfigurationException.class);
         this.exec.initRunConfiguration(cmdConfig, inputValueMap);
     }
+
+    @Test
+    public void testApplyResources() throws WacodisConfigurationException {
+        ResourcesConfig resources = new ResourcesConfig();
+        resources.setCpus(2.5);
+        resources.setMemory("4g");
+        resources.setShmSize("512m");
+        resources.getTmpfs().put("/scratch", "size=1g");
+        resources.setThreads(2);
+        resources.getEnvironment().put("GDAL_CACHEMAX", "512");
+
+        DockerRunCommandConfiguration runConfig = new DockerRunCommandConfiguration();
+        this.exec.applyResources(runConfig, resources);
+
+        Assert.assertEquals(Long.valueOf(250000), runConfig.getCpuQuota());
+        Assert.assertNull(runConfig.getCpusetCpus());
+        Assert.assertEquals(Long.valueOf(4L * 1024 * 1024 * 1024), runConfig.getMemory());
+        Assert.assertEquals(Long.valueOf(512L * 1024 * 1024), runConfig.getShmSize());
+        Assert.assertEquals("size=1g", runConfig.getTmpfsMounts().get("/scratch"));
+        Assert.assertEquals(Lists.newArrayList("OMP_NUM_THREADS=2", "GDAL_NUM_THREADS=2", "GDAL_CACHEMAX=512"),
+                runConfig.getEnvironment());
+    }
+
+    @Test
+    public void testApplyResourcesForInvalidSize() throws WacodisConfigurationException {
+        ResourcesConfig resources = new ResourcesConfig();
+        resources.setMemory("lots");
+
+        exception.expect(WacodisConfigurationException.class);
+        this.exec.applyResources(new DockerRunCommandConfiguration(), resources);
+    }
+
+    @Test
+    public void testExecuteToolOnLeastLoadedHealthyHost() throws Exception {
+        DockerControllerRegistry registry = this.initDockerBackend();
+
+        try (DockerStubServer failingHost = new DockerStubServer();
+                DockerStubServer healthyHost = new DockerStubServer()) {
+            failingHost.setFailing(true);
+            ToolConfig toolConfig = this.createToolConfig();
+            toolConfig.getDocker().getHosts().add(host(failingHost.getUrl(), "/failing/workdir"));
+            toolConfig.getDocker().getHosts().add(host(healthyHost.getUrl(), "/healthy/workdir"));
+
+            try {
+                this.exec.executeTool(this.inputValueMap, toolConfig);
+                Assert.fail("execution on the failing host should fail");
+            } catch (WacodisConfigurationException | RuntimeException ex) {
+                // the circuit of the failing host is open now
+            }
+            ProcessResult first = this.exec.executeTool(this.inputValueMap, toolConfig);
+            ProcessResult second = this.exec.executeTool(this.inputValueMap, toolConfig);
+
+            Assert.assertEquals(0, first.getResultCode());
+            Assert.assertEquals(0, second.getResultCode());
+            Assert.assertEquals(1, failingHost.getCreateRequests());
+            Assert.assertEquals(2, healthyHost.getCreateRequests());
+        } finally {
+            registry.close();
+        }
+    }
+
+    @Test
+    public void testExecuteToolStopsContainerAfterTimeout() throws Exception {
+        DockerControllerRegistry registry = this.initDockerBackend();
+
+        try (DockerStubServer dockerHost = new DockerStubServer()) {
+            dockerHost.setRunning(true);
+            ToolConfig toolConfig = this.createToolConfig();
+            toolConfig.getDocker().setHost(dockerHost.getUrl());
+            toolConfig.setScheduling(new SchedulingConfig());
+            toolConfig.getScheduling().setTimeout(1);
+
+            try {
+                this.exec.executeTool(this.inputValueMap, toolConfig);
+                Assert.fail("execution should exceed its timeout");
+            } catch (IllegalStateException ex) {
+                Assert.assertTrue(ex.getCause() instanceof TimeoutException);
+            }
+
+            long waitUntil = System.currentTimeMillis() + 5000;
+            while (dockerHost.getRemovedContainers().isEmpty() && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(Lists.newArrayList("stub-container-1"), dockerHost.getStoppedContainers());
+            Assert.assertEquals(Lists.newArrayList("stub-container-1"), dockerHost.getRemovedContainers());
+            Assert.assertTrue(dockerHost.getCreateRequestBodies().get(0).contains(ContainerReaper.DEADLINE_LABEL));
+        } finally {
+            registry.close();
+        }
+    }
+
+    private DockerControllerRegistry initDockerBackend() {
+        WacodisBackendConfig backendConfig = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(backendConfig.getWorkingDirectory()).thenReturn("/global/workdir");
+        DockerControllerRegistry registry = new DockerControllerRegistry(0, 60000, 3);
+        ReflectionTestUtils.setField(this.exec, "config", backendConfig);
+        ReflectionTestUtils.setField(this.exec, "dockerControllerRegistry", registry);
+        ReflectionTestUtils.setField(this.exec, "hostSelector", new DockerHostSelector(1, 60000));
+        return registry;
+    }
+
+    private ToolConfig createToolConfig() {
+        DockerConfig dockerConfig = new DockerConfig();
+        dockerConfig.setImage("eo-tool:latest");
+        dockerConfig.setContainer("eo-tool");
+        dockerConfig.setWorkDir("/public");
+        ToolConfig toolConfig = new ToolConfig();
+        toolConfig.setId("eo-tool");
+        toolConfig.setDocker(dockerConfig);
+        toolConfig.setCommand(this.cmdConfig);
+        return toolConfig;
+    }
+
+    private static DockerHostConfig host(String url, String workingDirectory) {
+        DockerHostConfig host = new DockerHostConfig();
+        host.setUrl(url);
+        host.setWorkingDirectory(workingDirectory);
+        return host;
+    }
+
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GdalWarpBatchTest {
+
+    private static final String WORK_DIR = "/home";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File script;
+
+    private File first;
+
+    private File second;
+
+    private File third;
+
+    private GdalWarpBatch batch;
+
+    @Before
+    public void init() throws IOException {
+        this.script = GdalWarpBatch.createScriptFile(tmp.getRoot().getPath(), "batch");
+        this.first = tmp.newFile("first.tif");
+        this.second = tmp.newFile("second scene.tif");
+        this.third = tmp.newFile("third'scene.tif");
+        this.batch = new GdalWarpBatch("EPSG:32632", 2);
+        this.batch.add(first, new File(tmp.getRoot(), "first_warped.tif"));
+        this.batch.add(second, new File(tmp.getRoot(), "second scene_warped.tif"));
+        this.batch.add(third, new File(tmp.getRoot(), "third'scene_warped.tif"));
+    }
+
+    @Test
+    public void testScriptRunsBoundedNumberOfParallelWarps() throws IOException {
+        this.batch.writeScript(script, WORK_DIR);
+
+        List<String> lines = Files.readAllLines(script.toPath(), StandardCharsets.UTF_8);
+        Assert.assertTrue(lines.contains("warp 'EPSG:32632' '/home/first.tif' '/home/first_warped.tif' '/home/first_warped.tif.log' &"));
+        Assert.assertTrue(lines.contains("warp 'EPSG:32632' '/home/third'\\''scene.tif' '/home/third'\\''scene_warped.tif' '/home/third'\\''scene_warped.tif.log' &"));
+        Assert.assertEquals(2, lines.stream().filter("wait"::equals).count());
+        Assert.assertEquals("wait", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void testExitCodesAreReadPerFile() throws IOException {
+        Files.write(new File(script.getPath() + ".status").toPath(), Arrays.asList(
+                "0 /home/second scene.tif",
+                "1 /home/first.tif",
+                "0 /home/unknown.tif"), StandardCharsets.UTF_8);
+        Files.write(new File(tmp.getRoot(), "first_warped.tif.log").toPath(),
+                Arrays.asList("ERROR 4: first.tif: No such file or directory"), StandardCharsets.UTF_8);
+
+        Map<File, Integer> exitCodes = this.batch.readExitCodes(script, WORK_DIR);
+
+        Assert.assertEquals(2, exitCodes.size());
+        Assert.assertEquals(Integer.valueOf(1), exitCodes.get(first));
+        Assert.assertEquals(Integer.valueOf(0), exitCodes.get(second));
+        Assert.assertFalse(exitCodes.containsKey(third));
+        Assert.assertEquals("ERROR 4: first.tif: No such file or directory", this.batch.readOutput(first));
+        Assert.assertEquals("", this.batch.readOutput(third));
+    }
+
+    @Test
+    public void testCleanUpDeletesBatchFiles() throws IOException {
+        this.batch.writeScript(script, WORK_DIR);
+        File status = new File(script.getPath() + ".status");
+        File log = new File(tmp.getRoot(), "first_warped.tif.log");
+        Assert.assertTrue(status.createNewFile());
+        Assert.assertTrue(log.createNewFile());
+
+        this.batch.cleanUp(script);
+
+        Assert.assertFalse(script.exists());
+        Assert.assertFalse(status.exists());
+        Assert.assertFalse(log.exists());
+        Assert.assertTrue(first.exists());
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ToolExecutionSchedulerTest {
+
+    private static final String IMAGE_A = "image-a";
+    private static final String IMAGE_B = "image-b";
+
+    @Test
+    public void testGlobalAndPerImageLimits() {
+        ToolExecutionScheduler scheduler = new ToolExecutionScheduler(2, 1, 0, 0, ToolExecutionScheduler.Policy.FIFO,
+                Runnable::run);
+        List<CompletableFuture<Integer>> running = new ArrayList<>();
+
+        CompletableFuture<Integer> a1 = scheduler.submit(IMAGE_A, 0, 0, 0, () -> track(running));
+        CompletableFuture<Integer> a2 = scheduler.submit(IMAGE_A, 0, 0, 0, () -> track(running));
+        CompletableFuture<Integer> b1 = scheduler.submit(IMAGE_B, 0, 0, 0, () -> track(running));
+
+        // the second execution of image A is blocked by the per image limit, but image B may pass
+        Assert.assertEquals(2, scheduler.getRunningCount());
+        Assert.assertEquals(1, scheduler.getQueueDepth());
+        Assert.assertEquals(1, scheduler.getQueueDepth(IMAGE_A));
+
+        running.get(0).complete(0);
+        Assert.assertTrue(a1.isDone());
+        Assert.assertEquals(2, scheduler.getRunningCount());
+        Assert.assertEquals(0, scheduler.getQueueDepth());
+
+        running.get(1).complete(0);
+        running.get(2).complete(0);
+        Assert.assertTrue(a2.isDone() && b1.isDone());
+        Assert.assertEquals(0, scheduler.getRunningCount());
+    }
+
+    @Test
+    public void testResourceReservations() {
+        ToolExecutionScheduler scheduler = new ToolExecutionScheduler(0, 0, 8, 16, ToolExecutionScheduler.Policy.FIFO,
+                Runnable::run);
+        List<CompletableFuture<Integer>> running = new ArrayList<>();
+
+        scheduler.submit(IMAGE_A, 0, 6, 4, () -> track(running));
+        scheduler.submit(IMAGE_B, 0, 4, 4, () -> track(running));
+        // declared reservations are capped at the host capacity
+        scheduler.submit(IMAGE_B, 0, 1, 64, () -> track(running));
+
+        Assert.assertEquals(1, scheduler.getRunningCount());
+        Assert.assertEquals(6.0, scheduler.getReservedCpus(), 0.0);
+        Assert.assertEquals(2, scheduler.getQueueDepth());
+
+        running.get(0).complete(0);
+        Assert.assertEquals(1, scheduler.getRunningCount());
+        Assert.assertEquals(4.0, scheduler.getReservedCpus(), 0.0);
+        Assert.assertEquals(4, scheduler.getReservedMemory());
+
+        running.get(1).complete(0);
+        Assert.assertEquals(16, scheduler.getReservedMemory());
+        running.get(2).complete(0);
+        Assert.assertEquals(0, scheduler.getReservedMemory());
+    }
+
+    @Test
+    public void testPriorityPolicy() {
+        ToolExecutionScheduler scheduler = new ToolExecutionScheduler(1, 0, 0, 0, ToolExecutionScheduler.Policy.PRIORITY,
+                Runnable::run);
+        List<String> started = new ArrayList<>();
+        List<CompletableFuture<Integer>> running = new ArrayList<>();
+
+        scheduler.submit(IMAGE_A, 0, 0, 0, () -> start(started, "first", running));
+        scheduler.submit(IMAGE_A, 1, 0, 0, () -> start(started, "low", running));
+        CompletableFuture<Integer> cancelled = scheduler.submit(IMAGE_A, 5, 0, 0, () -> start(started, "cancelled", running));
+        scheduler.submit(IMAGE_B, 3, 0, 0, () -> start(started, "high", running));
+        cancelled.cancel(false);
+
+        running.get(0).complete(0);
+        running.get(1).complete(0);
+        running.get(2).complete(0);
+
+        Assert.assertEquals("[first, high, low]", started.toString());
+        Assert.assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void testFailedExecutionReleasesReservation() {
+        ToolExecutionScheduler scheduler = new ToolExecutionScheduler(1, 0, 0, 0, ToolExecutionScheduler.Policy.FIFO,
+                Runnable::run);
+
+        CompletableFuture<Integer> failed = scheduler.submit(IMAGE_A, 0, 0, 0, () -> {
+            throw new IllegalStateException("docker not available");
+        });
+        CompletableFuture<Integer> next = scheduler.submit(IMAGE_A, 0, 0, 0, () -> CompletableFuture.completedFuture(0));
+
+        Assert.assertTrue(failed.isCompletedExceptionally());
+        Assert.assertEquals(Integer.valueOf(0), next.join());
+        Assert.assertEquals(0, scheduler.getRunningCount());
+    }
+
+    @Test
+    public void testCancelledExecutionReleasesReservation() {
+        ToolExecutionScheduler scheduler = new ToolExecutionScheduler(1, 0, 4, 0, ToolExecutionScheduler.Policy.FIFO,
+                Runnable::run);
+        List<CompletableFuture<Integer>> running = new ArrayList<>();
+
+        CompletableFuture<Integer> cancelled = scheduler.submit(IMAGE_A, 0, 4, 0, () -> track(running));
+        scheduler.submit(IMAGE_B, 0, 2, 0, () -> track(running));
+        cancelled.cancel(true);
+
+        // the running task is cancelled, so that its container is aborted
+        Assert.assertTrue(running.get(0).isCancelled());
+        Assert.assertEquals(1, scheduler.getRunningCount());
+        Assert.assertEquals(2.0, scheduler.getReservedCpus(), 0.0);
+        Assert.assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void testAdmittedExecutionIsNotStartedByCompletingThread() {
+        List<Runnable> pending = new ArrayList<>();
+        ToolExecutionScheduler scheduler = new ToolExecutionScheduler(1, 0, 0, 0, ToolExecutionScheduler.Policy.FIFO,
+                pending::add);
+        List<String> started = new ArrayList<>();
+        List<CompletableFuture<Integer>> running = new ArrayList<>();
+
+        scheduler.submit(IMAGE_A, 0, 0, 0, () -> start(started, "first", running));
+        List<CompletableFuture<Integer>> failing = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            failing.add(scheduler.submit(IMAGE_A, 0, 0, 0, () -> {
+                throw new IllegalStateException("docker not available");
+            }));
+        }
+        runPending(pending);
+        running.get(0).complete(0);
+
+        // the next execution is handed over to the starter instead of being started by the completing thread
+        Assert.assertEquals(1, pending.size());
+        Assert.assertFalse(failing.get(0).isDone());
+
+        // executions that fail synchronously hand over the next one instead of recursing
+        while (!pending.isEmpty()) {
+            Runnable next = pending.remove(0);
+            next.run();
+            Assert.assertTrue(pending.size() <= 1);
+        }
+        Assert.assertTrue(failing.stream().allMatch(CompletableFuture::isCompletedExceptionally));
+        Assert.assertEquals(0, scheduler.getRunningCount());
+    }
+
+    @Test
+    public void testCancelledWaitingExecutionAdmitsNext() {
+        ToolExecutionScheduler scheduler = new ToolExecutionScheduler(0, 0, 4, 0, ToolExecutionScheduler.Policy.FIFO,
+                Runnable::run);
+        List<CompletableFuture<Integer>> running = new ArrayList<>();
+
+        scheduler.submit(IMAGE_A, 0, 2, 0, () -> track(running));
+        CompletableFuture<Integer> blocking = scheduler.submit(IMAGE_B, 0, 4, 0, () -> track(running));
+        scheduler.submit(IMAGE_B, 0, 1, 0, () -> track(running));
+        Assert.assertEquals(1, scheduler.getRunningCount());
+        Assert.assertEquals(2, scheduler.getQueueDepth());
+
+        blocking.cancel(false);
+
+        Assert.assertEquals(2, scheduler.getRunningCount());
+        Assert.assertEquals(3.0, scheduler.getReservedCpus(), 0.0);
+        Assert.assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    private static void runPending(List<Runnable> pending) {
+        while (!pending.isEmpty()) {
+            pending.remove(0).run();
+        }
+    }
+
+    private static CompletableFuture<Integer> track(List<CompletableFuture<Integer>> running) {
+        CompletableFuture<Integer> execution = new CompletableFuture<>();
+        running.add(execution);
+        return execution;
+    }
+
+    private static CompletableFuture<Integer> start(List<String> started, String name, List<CompletableFuture<Integer>> running) {
+        started.add(name);
+        return track(running);
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.n52.wacodis.javaps.command.docker.DockerController;
+import org.n52.wacodis.javaps.command.docker.DockerControllerRegistry;
+import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
+import org.n52.wacodis.javaps.configuration.tools.ToolConfigParser;
+
+public class ToolImagePreloaderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private WacodisBackendConfig config;
+
+    private DockerController controller;
+
+    private ToolImagePreloader preloader;
+
+    @Before
+    public void init() throws IOException {
+        writeToolConfig("gdal-warp.yml", "gdal-warp", "osgeo/gdal:latest");
+        writeToolConfig("gdal-translate.yml", "gdal-translate", "osgeo/gdal:latest");
+        writeToolConfig("water-mask.yml", "water-mask", "wacodis/water-mask:1.0");
+        Files.write(new File(this.tempFolder.getRoot(), "README.txt").toPath(), "no tool".getBytes(StandardCharsets.UTF_8));
+
+        this.config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(this.config.getToolConfigDirectory()).thenReturn(this.tempFolder.getRoot().getPath());
+        Mockito.when(this.config.isDockerPrepull()).thenReturn(true);
+        Mockito.when(this.config.getDockerPrepullThreads()).thenReturn(2);
+        Mockito.when(this.config.getDockerWarmUpCommand()).thenReturn("true");
+
+        this.controller = Mockito.mock(DockerController.class);
+        CreateContainerResponse response = new CreateContainerResponse();
+        response.setId("warmup");
+        Mockito.when(this.controller.createDockerContainer(ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(response);
+        Mockito.when(this.controller.runDockerContainer_Async("warmup")).thenReturn(CompletableFuture.completedFuture(0));
+        DockerControllerRegistry registry = Mockito.mock(DockerControllerRegistry.class);
+        Mockito.when(registry.getController(ArgumentMatchers.any())).thenReturn(this.controller);
+
+        this.preloader = new ToolImagePreloader();
+        this.preloader.setConfig(this.config);
+        this.preloader.setToolConfigParser(new ToolConfigParser());
+        this.preloader.setDockerControllerRegistry(registry);
+    }
+
+    @Test
+    public void testImagesArePulledOnce() {
+        this.preloader.afterPropertiesSet();
+
+        Mockito.verify(this.controller).pullDockerImage(ArgumentMatchers.eq("osgeo/gdal:latest"), ArgumentMatchers.any());
+        Mockito.verify(this.controller).pullDockerImage(ArgumentMatchers.eq("wacodis/water-mask:1.0"), ArgumentMatchers.any());
+        Mockito.verify(this.controller, Mockito.never()).createDockerContainer(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void testImagesAreWarmedUp() {
+        Mockito.when(this.config.isDockerWarmUp()).thenReturn(true);
+        Mockito.doThrow(new IllegalStateException("registry not reachable")).when(this.controller)
+                .pullDockerImage(ArgumentMatchers.eq("wacodis/water-mask:1.0"), ArgumentMatchers.any());
+        Mockito.when(this.controller.existsDockerImage("wacodis/water-mask:1.0")).thenReturn(true);
+
+        this.preloader.afterPropertiesSet();
+
+        Mockito.verify(this.controller, Mockito.times(2)).createDockerContainer(ArgumentMatchers.any(), ArgumentMatchers.any());
+        Mockito.verify(this.controller, Mockito.times(2)).removeDockerContainer("warmup", true);
+    }
+
+    @Test(timeout = 10000)
+    public void testHangingWarmUpContainerIsRemoved() {
+        Mockito.when(this.config.isDockerWarmUp()).thenReturn(true);
+        Mockito.when(this.config.getDockerWarmUpTimeout()).thenReturn(1L);
+        Mockito.when(this.controller.runDockerContainer_Async("warmup")).thenReturn(new CompletableFuture<>());
+
+        this.preloader.afterPropertiesSet();
+
+        Mockito.verify(this.controller, Mockito.times(2)).removeDockerContainer("warmup", true);
+    }
+
+    @Test
+    public void testImagesArePulledOnEachHost() throws IOException {
+        String yaml = "id: heavy-tool\n"
+                + "docker:\n"
+                + "    hosts:\n"
+                + "        - url: tcp://worker1:2376\n"
+                + "        - url: tcp://worker2:2376\n"
+                + "    image: wacodis/heavy-tool:1.0\n"
+                + "    container: heavy-tool\n"
+                + "    workDir: /public\n";
+        Files.write(new File(this.tempFolder.getRoot(), "heavy-tool.yml").toPath(), yaml.getBytes(StandardCharsets.UTF_8));
+        DockerControllerRegistry registry = Mockito.mock(DockerControllerRegistry.class);
+        Mockito.when(registry.getController(ArgumentMatchers.any())).thenReturn(this.controller);
+        DockerController worker1 = Mockito.mock(DockerController.class);
+        DockerController worker2 = Mockito.mock(DockerController.class);
+        Mockito.when(registry.getController("tcp://worker1:2376")).thenReturn(worker1);
+        Mockito.when(registry.getController("tcp://worker2:2376")).thenReturn(worker2);
+        this.preloader.setDockerControllerRegistry(registry);
+
+        this.preloader.afterPropertiesSet();
+
+        Mockito.verify(worker1).pullDockerImage(ArgumentMatchers.eq("wacodis/heavy-tool:1.0"), ArgumentMatchers.any());
+        Mockito.verify(worker2).pullDockerImage(ArgumentMatchers.eq("wacodis/heavy-tool:1.0"), ArgumentMatchers.any());
+        Mockito.verify(this.controller, Mockito.never()).pullDockerImage(ArgumentMatchers.eq("wacodis/heavy-tool:1.0"), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void testNothingIsPulledIfDisabled() {
+        Mockito.when(this.config.isDockerPrepull()).thenReturn(false);
+
+        this.preloader.afterPropertiesSet();
+
+        Mockito.verifyZeroInteractions(this.controller);
+    }
+
+    private void writeToolConfig(String fileName, String id, String image) throws IOException {
+        String yaml = "id: " + id + "\n"
+                + "docker:\n"
+                + "    host: unix:///var/run/docker.sock\n"
+                + "    image: " + image + "\n"
+                + "    container: " + id + "\n"
+                + "    workDir: /public\n";
+        Files.write(new File(this.tempFolder.getRoot(), fileName).toPath(), yaml.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.algorithms.execution;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wacodis.javaps.command.ProcessResult;
+
+public class ToolUsageStatisticsTest {
+
+    private static final String TOOL = "gdal-warp";
+
+    @Test
+    public void testObservedUsageIsReservedAfterEnoughSamples() {
+        ToolUsageStatistics statistics = new ToolUsageStatistics(10);
+
+        statistics.record(TOOL, result(10000, 1000, 5));
+        statistics.record(TOOL, result(20000, 4000, 30));
+        Assert.assertEquals(0, statistics.getMemoryReservation(TOOL));
+        Assert.assertEquals(0.0, statistics.getCpuReservation(TOOL), 0.0);
+
+        statistics.record(TOOL, result(10000, 2000, 10));
+        Assert.assertEquals(4000, statistics.getMemoryReservation(TOOL));
+        Assert.assertEquals(1.5, statistics.getCpuReservation(TOOL), 0.0);
+        Assert.assertEquals(3, statistics.getDuration(TOOL).getCount());
+        Assert.assertEquals(30.0, statistics.getCpuSeconds(TOOL).getMax(), 0.0);
+    }
+
+    @Test
+    public void testUnsampledExecutionsOnlyRecordDuration() {
+        ToolUsageStatistics statistics = new ToolUsageStatistics(10);
+
+        for (int i = 0; i < 5; i++) {
+            statistics.record(TOOL, result(1000, 0, 0));
+        }
+
+        Assert.assertEquals(5, statistics.getDuration(TOOL).getCount());
+        Assert.assertEquals(0, statistics.getPeakMemory(TOOL).getCount());
+        Assert.assertEquals(0, statistics.getMemoryReservation(TOOL));
+        Assert.assertEquals(0, statistics.getPeakMemory("unknown").getCount());
+    }
+
+    @Test
+    public void testHistogramWindow() {
+        UsageHistogram histogram = new UsageHistogram(4);
+        for (int i = 1; i <= 6; i++) {
+            histogram.record(i * 10);
+        }
+
+        Assert.assertEquals(6, histogram.getCount());
+        Assert.assertEquals(4, histogram.getSize());
+        Assert.assertEquals(30.0, histogram.getPercentile(0), 0.0);
+        Assert.assertEquals(40.0, histogram.getPercentile(0.5), 0.0);
+        Assert.assertEquals(60.0, histogram.getPercentile(0.95), 0.0);
+        Assert.assertEquals(45.0, histogram.getMean(), 0.0);
+    }
+
+    private static ProcessResult result(long duration, long peakMemory, double cpuSeconds) {
+        ProcessResult result = new ProcessResult(0, "");
+        result.setDuration(duration);
+        result.setPeakMemory(peakMemory);
+        result.setCpuSeconds(cpuSeconds);
+        return result;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.EventsCmd;
+import com.github.dockerjava.api.command.InspectContainerCmd;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventActor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ContainerEventMonitorTest {
+
+    private DockerClient dockerClient;
+
+    private final List<ResultCallback<Event>> eventStreams = Collections.synchronizedList(new ArrayList<>());
+
+    private ContainerEventMonitor monitor;
+
+    @Before
+    public void init() {
+        this.dockerClient = Mockito.mock(DockerClient.class);
+        EventsCmd eventsCmd = Mockito.mock(EventsCmd.class, Mockito.RETURNS_SELF);
+        Mockito.when(eventsCmd.exec(Mockito.any())).thenAnswer(invocation -> {
+            ResultCallback<Event> stream = invocation.getArgument(0);
+            this.eventStreams.add(stream);
+            return stream;
+        });
+        Mockito.when(this.dockerClient.eventsCmd()).thenReturn(eventsCmd);
+        this.mockContainerState("container-1", "created", null);
+        this.mockContainerState("container-2", "created", null);
+        this.monitor = new ContainerEventMonitor(this.dockerClient, 10);
+    }
+
+    @After
+    public void shutdown() {
+        this.monitor.close();
+    }
+
+    @Test
+    public void testDieEventsAreDispatchedBySingleStream() throws Exception {
+        CompletableFuture<Integer> first = this.monitor.awaitDeath("container-1");
+        CompletableFuture<Integer> second = this.monitor.awaitDeath("container-2");
+
+        this.eventStreams.get(0).onNext(this.createDieEvent("container-2", "3"));
+        this.eventStreams.get(0).onNext(this.createDieEvent("container-1", "0"));
+
+        Assert.assertEquals(1, this.eventStreams.size());
+        Assert.assertEquals(Integer.valueOf(3), second.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(0), first.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(0, this.monitor.getAwaitedContainerCount());
+    }
+
+    @Test
+    public void testContainerThatDiedWhileStreamWasDownIsReconciled() throws Exception {
+        CompletableFuture<Integer> death = this.monitor.awaitDeath("container-1");
+        this.mockContainerState("container-1", "exited", 2);
+
+        this.eventStreams.get(0).onError(new RuntimeException("connection reset"));
+
+        Assert.assertEquals(Integer.valueOf(2), death.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, this.eventStreams.size());
+    }
+
+    private Event createDieEvent(String containerID, String exitCode) {
+        return new Event("die", containerID, "image", System.currentTimeMillis() / 1000)
+                .withEventActor(new EventActor().withId(containerID)
+                        .withAttributes(Collections.singletonMap("exitCode", exitCode)));
+    }
+
+    private void mockContainerState(String containerID, String status, Integer exitCode) {
+        InspectContainerResponse.ContainerState state = Mockito.mock(InspectContainerResponse.ContainerState.class);
+        Mockito.when(state.getStatus()).thenReturn(status);
+        Mockito.when(state.getExitCode()).thenReturn(exitCode);
+        InspectContainerResponse response = Mockito.mock(InspectContainerResponse.class);
+        Mockito.when(response.getState()).thenReturn(state);
+        InspectContainerCmd inspectCmd = Mockito.mock(InspectContainerCmd.class);
+        Mockito.when(inspectCmd.exec()).thenReturn(response);
+        Mockito.when(this.dockerClient.inspectContainerCmd(containerID)).thenReturn(inspectCmd);
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContainerLogCaptureTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testOnlyTailIsKeptInMemory() {
+        ContainerLogCapture capture = new ContainerLogCapture("container", 8);
+        capture.onNext(frame("first line\n"));
+        capture.onNext(frame("second\n"));
+        capture.onComplete();
+
+        Assert.assertEquals(18, capture.getCapturedBytes());
+        String tail = capture.getCompletion().join();
+        Assert.assertTrue(tail.startsWith("[... 10 bytes omitted ...]"));
+        Assert.assertTrue(tail.endsWith("\nsecond\n"));
+    }
+
+    @Test
+    public void testShortLogIsKeptCompletely() {
+        ContainerLogCapture capture = new ContainerLogCapture("container", 64);
+        capture.onNext(frame("done\n"));
+        capture.onComplete();
+
+        Assert.assertEquals("done\n", capture.getCompletion().join());
+    }
+
+    @Test
+    public void testLogFileIsRotated() throws IOException {
+        File logFile = new File(this.tempFolder.getRoot(), "logs/tool.log");
+        ContainerLogCapture capture = new ContainerLogCapture("container", logFile, 10, 1, 4);
+        capture.onNext(frame("aaaaaaaa\n"));
+        capture.onNext(frame("bbbbbbbb\n"));
+        capture.onNext(frame("cccccccc\n"));
+        capture.onComplete();
+
+        Assert.assertEquals("cccccccc\n", read(logFile));
+        Assert.assertEquals("bbbbbbbb\n", read(new File(logFile.getPath() + ".1")));
+        Assert.assertFalse(new File(logFile.getPath() + ".2").exists());
+        Assert.assertEquals(27, capture.getCapturedBytes());
+    }
+
+    private static Frame frame(String payload) {
+        return new Frame(StreamType.STDOUT, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+}
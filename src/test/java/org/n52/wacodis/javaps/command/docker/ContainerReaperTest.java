@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.model.Container;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+public class ContainerReaperTest {
+
+    private static final long NOW = 1600000000000L;
+
+    private static final long INTERVAL = 60000;
+
+    private static final String INSTANCE = "worker-a";
+
+    @Test
+    public void testOrphanedContainersAreRemoved() {
+        List<Container> containers = Arrays.asList(
+                container("overdue", NOW - 2 * INTERVAL, null, NOW - TimeUnit.HOURS.toMillis(3)),
+                container("recently-overdue", NOW - INTERVAL / 2, null, NOW - TimeUnit.HOURS.toMillis(3)),
+                container("running", NOW + INTERVAL, null, NOW - TimeUnit.HOURS.toMillis(3)),
+                container("old", null, null, NOW - TimeUnit.HOURS.toMillis(3)),
+                container("young", null, null, NOW - TimeUnit.MINUTES.toMillis(10)),
+                container("pooled", null, "gdal-warp", NOW - TimeUnit.DAYS.toMillis(3)));
+        DockerController controller = Mockito.mock(DockerController.class);
+        Mockito.when(controller.listDockerContainers(ContainerReaper.TOOL_LABEL)).thenReturn(containers);
+        ContainerReaper reaper = new ContainerReaper(null, INSTANCE, INTERVAL, TimeUnit.HOURS.toMillis(2));
+
+        Assert.assertEquals(2, reaper.reap(controller, NOW));
+
+        Mockito.verify(controller).removeDockerContainer("overdue", true);
+        Mockito.verify(controller).removeDockerContainer("old", true);
+        Mockito.verify(controller, Mockito.times(2)).removeDockerContainer(ArgumentMatchers.anyString(), ArgumentMatchers.anyBoolean());
+    }
+
+    @Test
+    public void testContainersWithoutDeadlineAreKeptWithoutMaxAge() {
+        List<Container> containers = Arrays.asList(container("old", null, null, NOW - TimeUnit.DAYS.toMillis(30)));
+        DockerController controller = Mockito.mock(DockerController.class);
+        Mockito.when(controller.listDockerContainers(ContainerReaper.TOOL_LABEL)).thenReturn(containers);
+        ContainerReaper reaper = new ContainerReaper(null, INSTANCE, INTERVAL, 0);
+
+        Assert.assertEquals(0, reaper.reap(controller, NOW));
+    }
+
+    @Test
+    public void testPooledContainersOfPreviousProcessesAreRemoved() {
+        Container stale = container("stale-pooled", null, "gdal-warp", NOW - TimeUnit.MINUTES.toMillis(10));
+        stale.getLabels().put(ContainerReaper.PROCESS_LABEL, "previous-process");
+        Container unlabeled = container("unlabeled-pooled", null, "gdal-warp", NOW - TimeUnit.MINUTES.toMillis(10));
+        unlabeled.getLabels().remove(ContainerReaper.INSTANCE_LABEL);
+        unlabeled.getLabels().remove(ContainerReaper.PROCESS_LABEL);
+        List<Container> containers = Arrays.asList(stale, unlabeled,
+                container("pooled", null, "gdal-warp", NOW - TimeUnit.DAYS.toMillis(3)));
+        DockerController controller = Mockito.mock(DockerController.class);
+        Mockito.when(controller.listDockerContainers(ContainerReaper.TOOL_LABEL)).thenReturn(containers);
+        ContainerReaper reaper = new ContainerReaper(null, INSTANCE, INTERVAL, 0);
+
+        Assert.assertEquals(1, reaper.reap(controller, NOW));
+
+        Mockito.verify(controller).removeDockerContainer("stale-pooled", true);
+        // the owner of a pooled container without instance label is unknown
+        Mockito.verify(controller, Mockito.never()).removeDockerContainer("unlabeled-pooled", true);
+        Mockito.verify(controller, Mockito.never()).removeDockerContainer("pooled", true);
+    }
+
+    @Test
+    public void testPooledContainersOfOtherInstancesAreKept() {
+        Container own = container("own-pooled", null, "gdal-warp", NOW - TimeUnit.MINUTES.toMillis(10));
+        // both instances are alive and share the docker host, the processes of worker-b are unknown to worker-a
+        Container other = container("other-pooled", null, "gdal-warp", NOW - TimeUnit.DAYS.toMillis(3));
+        other.getLabels().put(ContainerReaper.INSTANCE_LABEL, "worker-b");
+        other.getLabels().put(ContainerReaper.PROCESS_LABEL, "process-of-worker-b");
+        List<Container> containers = Arrays.asList(own, other);
+        DockerController controller = Mockito.mock(DockerController.class);
+        Mockito.when(controller.listDockerContainers(ContainerReaper.TOOL_LABEL)).thenReturn(containers);
+        ContainerReaper reaper = new ContainerReaper(null, INSTANCE, INTERVAL, 0);
+
+        Assert.assertEquals(0, reaper.reap(controller, NOW));
+
+        Mockito.verify(controller, Mockito.never()).removeDockerContainer(ArgumentMatchers.anyString(), ArgumentMatchers.anyBoolean());
+    }
+
+    private static Container container(String id, Long deadline, String pool, long created) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put(ContainerReaper.TOOL_LABEL, "eo-tool");
+        if (deadline != null) {
+            labels.put(ContainerReaper.DEADLINE_LABEL, String.valueOf(deadline));
+        }
+        if (pool != null) {
+            labels.put(ContainerReaper.POOL_LABEL, pool);
+            labels.put(ContainerReaper.INSTANCE_LABEL, INSTANCE);
+            labels.put(ContainerReaper.PROCESS_LABEL, ContainerReaper.PROCESS_ID);
+        }
+        Container container = Mockito.mock(Container.class);
+        Mockito.when(container.getId()).thenReturn(id);
+        Mockito.when(container.getNames()).thenReturn(new String[]{"/" + id});
+        Mockito.when(container.getLabels()).thenReturn(labels);
+        Mockito.when(container.getCreated()).thenReturn(TimeUnit.MILLISECONDS.toSeconds(created));
+        return container;
+    }
+
+}
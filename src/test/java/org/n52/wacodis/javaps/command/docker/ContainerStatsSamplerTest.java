@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.model.Statistics;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wacodis.javaps.command.ProcessResult;
+
+public class ContainerStatsSamplerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testPeakAndCumulativeUsageIsSampled() throws IOException {
+        ContainerStatsSampler sampler = new ContainerStatsSampler("container");
+
+        sampler.onNext(stats(512, 2048, 1500000000L, 100, 10));
+        sampler.onNext(stats(2048, 4096, 3000000000L, 300, 50));
+        sampler.onNext(stats(1024, 8192, 4500000000L, 400, 60));
+        sampler.onError(new IOException("stream closed"));
+
+        ProcessResult result = new ProcessResult(0, "");
+        sampler.applyTo(result);
+        Assert.assertEquals(3, sampler.getSamples());
+        // the RSS is preferred over the usage that includes the page cache
+        Assert.assertEquals(2048, result.getPeakMemory());
+        Assert.assertEquals(4.5, result.getCpuSeconds(), 0.0);
+        Assert.assertEquals(400, result.getBlockRead());
+        Assert.assertEquals(60, result.getBlockWrite());
+    }
+
+    @Test
+    public void testUsageIsUsedWithoutRss() throws IOException {
+        ContainerStatsSampler sampler = new ContainerStatsSampler("container");
+
+        sampler.onNext(MAPPER.readValue("{\"memory_stats\":{\"usage\":4096}}", Statistics.class));
+        sampler.onNext(MAPPER.readValue("{}", Statistics.class));
+
+        Assert.assertEquals(4096, sampler.getPeakMemory());
+        Assert.assertEquals(0.0, sampler.getCpuSeconds(), 0.0);
+    }
+
+    private static Statistics stats(long rss, long usage, long cpuNanos, long read, long write) throws IOException {
+        return MAPPER.readValue("{"
+                + "\"memory_stats\":{\"usage\":" + usage + ",\"stats\":{\"rss\":" + rss + "}},"
+                + "\"cpu_stats\":{\"cpu_usage\":{\"total_usage\":" + cpuNanos + "}},"
+                + "\"blkio_stats\":{\"io_service_bytes_recursive\":["
+                + "{\"major\":8,\"minor\":0,\"op\":\"Read\",\"value\":" + read + "},"
+                + "{\"major\":8,\"minor\":0,\"op\":\"Write\",\"value\":" + write + "},"
+                + "{\"major\":8,\"minor\":0,\"op\":\"Total\",\"value\":" + (read + write) + "}]}"
+                + "}", Statistics.class);
+    }
+
+}
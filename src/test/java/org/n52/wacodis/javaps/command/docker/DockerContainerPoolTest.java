@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.n52.wacodis.javaps.command.ProcessResult;
+
+public class DockerContainerPoolTest {
+
+    private DockerController controller;
+
+    private InspectContainerResponse.ContainerState state;
+
+    private final List<CompletableFuture<ProcessResult>> execs = new ArrayList<>();
+
+    private int createdContainers;
+
+    @Before
+    public void init() {
+        this.controller = Mockito.mock(DockerController.class);
+        Mockito.when(this.controller.createDockerContainer(ArgumentMatchers.any(), ArgumentMatchers.any())).thenAnswer(i -> {
+            CreateContainerResponse response = new CreateContainerResponse();
+            response.setId("container-" + this.createdContainers++);
+            return response;
+        });
+        Mockito.when(this.controller.execDockerContainer_Async(ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.any())).thenAnswer(i -> {
+            CompletableFuture<ProcessResult> exec = new CompletableFuture<>();
+            this.execs.add(exec);
+            return exec;
+        });
+        this.state = Mockito.mock(InspectContainerResponse.ContainerState.class);
+        Mockito.when(this.state.getRunning()).thenReturn(true);
+        InspectContainerResponse inspection = Mockito.mock(InspectContainerResponse.class);
+        Mockito.when(inspection.getState()).thenReturn(this.state);
+        Mockito.when(this.controller.inspectDockerContainer(ArgumentMatchers.anyString())).thenReturn(inspection);
+    }
+
+    @Test
+    public void testContainerIsReusedAndRecycledAfterMaxRuns() {
+        DockerContainerPool pool = this.createPool(1, 2);
+
+        CompletableFuture<ProcessResult> first = pool.execute(new DockerRunCommandConfiguration());
+        CompletableFuture<ProcessResult> second = pool.execute(new DockerRunCommandConfiguration());
+        // the second run waits for the only pooled container
+        Assert.assertEquals(1, this.execs.size());
+
+        this.execs.get(0).complete(new ProcessResult(0, "first"));
+        Assert.assertEquals("first", first.join().getOutputMessage());
+        Assert.assertEquals(2, this.execs.size());
+        Mockito.verify(this.controller, Mockito.times(2)).execDockerContainer_Async(ArgumentMatchers.eq("container-0"), ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        this.execs.get(1).complete(new ProcessResult(1, "second"));
+        Assert.assertEquals(1, second.join().getResultCode());
+        Mockito.verify(this.controller).removeDockerContainer("container-0", true);
+        Assert.assertEquals(0, pool.getContainerCount());
+
+        pool.execute(new DockerRunCommandConfiguration());
+        Assert.assertEquals(2, this.createdContainers);
+    }
+
+    @Test
+    public void testUnhealthyContainerIsRecycled() {
+        DockerContainerPool pool = this.createPool(2, 0);
+        pool.execute(new DockerRunCommandConfiguration());
+        this.execs.get(0).complete(new ProcessResult(0, ""));
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        Mockito.when(this.state.getRunning()).thenReturn(false, true);
+        pool.execute(new DockerRunCommandConfiguration());
+
+        Mockito.verify(this.controller).removeDockerContainer("container-0", true);
+        Mockito.verify(this.controller).execDockerContainer_Async(ArgumentMatchers.eq("container-1"), ArgumentMatchers.any(), ArgumentMatchers.any());
+        Assert.assertEquals(1, pool.getContainerCount());
+    }
+
+    @Test
+    public void testFailedExecRecyclesContainer() {
+        DockerContainerPool pool = this.createPool(1, 0);
+        CompletableFuture<ProcessResult> result = pool.execute(new DockerRunCommandConfiguration());
+        this.execs.get(0).completeExceptionally(new IllegalStateException("container died"));
+
+        Assert.assertTrue(result.isCompletedExceptionally());
+        Mockito.verify(this.controller).removeDockerContainer("container-0", true);
+
+        pool.close();
+        Assert.assertTrue(pool.execute(new DockerRunCommandConfiguration()).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testCancelledExecutionsRecycleOrKeepContainer() {
+        DockerContainerPool pool = this.createPool(1, 0);
+        CompletableFuture<ProcessResult> running = pool.execute(new DockerRunCommandConfiguration());
+        CompletableFuture<ProcessResult> waiting = pool.execute(new DockerRunCommandConfiguration());
+        CompletableFuture<ProcessResult> next = pool.execute(new DockerRunCommandConfiguration());
+
+        // a cancelled waiting execution gives up its place in the queue
+        waiting.cancel(true);
+        this.execs.get(0).complete(new ProcessResult(0, ""));
+        Assert.assertTrue(running.isDone());
+        Assert.assertEquals(2, this.execs.size());
+
+        // the container of a cancelled running execution is killed
+        next.cancel(true);
+        Mockito.verify(this.controller).removeDockerContainer("container-0", true);
+        Assert.assertEquals(0, pool.getContainerCount());
+    }
+
+    @Test
+    public void testClosedPoolReleasesControllerAfterRunningExec() {
+        DockerContainerPool pool = this.createPool(1, 0);
+        Mockito.verify(this.controller).retain();
+        CompletableFuture<ProcessResult> running = pool.execute(new DockerRunCommandConfiguration());
+
+        pool.close();
+        Mockito.verify(this.controller, Mockito.never()).release();
+
+        this.execs.get(0).complete(new ProcessResult(0, ""));
+        Assert.assertTrue(running.isDone());
+        Mockito.verify(this.controller).removeDockerContainer("container-0", true);
+        Mockito.verify(this.controller).release();
+    }
+
+    private DockerContainerPool createPool(int size, int maxRuns) {
+        return new DockerContainerPool(this.controller, new DockerContainer("gdal-warp", "osgeo/gdal"),
+                new DockerRunCommandConfiguration(), size, maxRuns);
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.n52.wacodis.javaps.command.ProcessResult;
+
+public class DockerControllerRegistryTest {
+
+    private static final String HOST = "tcp://localhost:2375";
+
+    private final List<DockerController> createdControllers = new ArrayList<>();
+
+    @Test
+    public void testControllerIsSharedPerHost() {
+        DockerControllerRegistry registry = new DockerControllerRegistry(this::createController, 60000, 3);
+
+        DockerController first = registry.getController(HOST);
+        DockerController second = registry.getController(HOST);
+        DockerController other = registry.getController("tcp://otherhost:2375");
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, other);
+        Assert.assertEquals(2, registry.size());
+        Mockito.verify(first, Mockito.never()).ping();
+    }
+
+    @Test
+    public void testUnhealthyControllerIsReplaced() {
+        DockerControllerRegistry registry = new DockerControllerRegistry(this::createController, 0, 3);
+
+        DockerController first = registry.getController(HOST);
+        Mockito.when(first.ping()).thenReturn(false);
+        Assert.assertSame(first, registry.getController(HOST));
+        Assert.assertSame(first, registry.getController(HOST));
+        DockerController second = registry.getController(HOST);
+
+        Assert.assertNotSame(first, second);
+        Mockito.verify(first).retire();
+        Mockito.verify(first, Mockito.never()).close();
+        Assert.assertSame(second, registry.getController(HOST));
+    }
+
+    @Test
+    public void testSuccessfulPingResetsFailedPings() {
+        DockerControllerRegistry registry = new DockerControllerRegistry(this::createController, 0, 2);
+
+        DockerController first = registry.getController(HOST);
+        Mockito.when(first.ping()).thenReturn(false, true, false);
+
+        Assert.assertSame(first, registry.getController(HOST));
+        Assert.assertSame(first, registry.getController(HOST));
+        Assert.assertSame(first, registry.getController(HOST));
+        Mockito.verify(first, Mockito.never()).retire();
+    }
+
+    @Test
+    public void testRunningExecutionSurvivesReplacedController() throws Exception {
+        try (DockerStubServer dockerHost = new DockerStubServer()) {
+            dockerHost.setRunning(true);
+            DockerControllerRegistry registry = new DockerControllerRegistry(0, 0, 2);
+            try {
+                DockerController first = registry.getController(dockerHost.getUrl());
+                DockerProcess process = new DockerProcess(first, new DockerContainer("eo-tool", "eo-tool:latest"),
+                        new DockerRunCommandConfiguration());
+                CompletableFuture<ProcessResult> execution = process.executeAsync();
+
+                // the host does not answer pings while the execution awaits its container
+                dockerHost.setPingFailing(true);
+                Assert.assertSame(first, registry.getController(dockerHost.getUrl()));
+                DockerController second = registry.getController(dockerHost.getUrl());
+                Assert.assertNotSame(first, second);
+                Assert.assertFalse(execution.isDone());
+
+                dockerHost.exitContainer("stub-container-1");
+                Assert.assertEquals(0, execution.get(10, TimeUnit.SECONDS).getResultCode());
+                long waitUntil = System.currentTimeMillis() + 5000;
+                while (dockerHost.getRemovedContainers().isEmpty() && System.currentTimeMillis() < waitUntil) {
+                    Thread.sleep(10);
+                }
+                Assert.assertEquals(Collections.singletonList("stub-container-1"), dockerHost.getRemovedContainers());
+            } finally {
+                registry.close();
+            }
+        }
+    }
+
+    @Test
+    public void testCloseClosesAllControllers() {
+        DockerControllerRegistry registry = new DockerControllerRegistry(this::createController, 60000, 3);
+        registry.getController(HOST);
+        registry.getController(null);
+
+        registry.close();
+
+        Assert.assertEquals(2, this.createdControllers.size());
+        this.createdControllers.forEach(c -> Mockito.verify(c).close());
+        Assert.assertEquals(0, registry.size());
+    }
+
+    private DockerController createController(String host) {
+        DockerController controller = Mockito.mock(DockerController.class);
+        Mockito.when(controller.ping()).thenReturn(true);
+        this.createdControllers.add(controller);
+        return controller;
+    }
+
+}
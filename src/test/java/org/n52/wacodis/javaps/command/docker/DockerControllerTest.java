@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.github.dockerjava.api.exception.DockerClientException;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DockerControllerTest {
+
+    private static final int MAX_CONNECTIONS = 2;
+
+    private static final int CONTAINERS = 3 * MAX_CONNECTIONS;
+
+    @Test
+    public void testStreamsDoNotStarvePooledConnections() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (DockerStubServer dockerHost = new DockerStubServer()) {
+            dockerHost.setRunning(true);
+            DockerController controller = new DockerController(DefaultDockerClientConfig.createDefaultConfigBuilder()
+                    .withDockerHost(dockerHost.getUrl()).build(), MAX_CONNECTIONS);
+            try {
+                // each running container holds a followed log and a stats stream, the host holds an event stream
+                Future<List<CompletableFuture<Integer>>> started = executor.submit(() -> {
+                    List<CompletableFuture<Integer>> deaths = new ArrayList<>();
+                    for (int i = 0; i < CONTAINERS; i++) {
+                        DockerContainer container = new DockerContainer("eo-tool-" + i, "eo-tool:latest");
+                        String id = controller.createDockerContainer(container, new DockerRunCommandConfiguration()).getId();
+                        deaths.add(controller.runDockerContainer_Async(id));
+                        controller.followDockerContainerLog(id, new ContainerLogCapture(id, ContainerLogCapture.DEFAULT_TAIL_SIZE));
+                        controller.sampleDockerContainerStats(id, new ContainerStatsSampler(id));
+                    }
+                    return deaths;
+                });
+                List<CompletableFuture<Integer>> deaths = started.get(20, TimeUnit.SECONDS);
+                long waitUntil = System.currentTimeMillis() + 5000;
+                while (dockerHost.getOpenStreams() < 2 * CONTAINERS && System.currentTimeMillis() < waitUntil) {
+                    Thread.sleep(10);
+                }
+                Assert.assertEquals(2 * CONTAINERS, dockerHost.getOpenStreams());
+
+                // commands still get a pooled connection while all streams are open
+                Future<?> removed = executor.submit(() -> {
+                    for (int i = 1; i <= CONTAINERS; i++) {
+                        String id = "stub-container-" + i;
+                        Assert.assertTrue(controller.inspectDockerContainer(id).getState().getRunning());
+                        controller.removeDockerContainer(id, true);
+                    }
+                });
+                removed.get(20, TimeUnit.SECONDS);
+                for (CompletableFuture<Integer> death : deaths) {
+                    Assert.assertEquals(Integer.valueOf(137), death.get(5, TimeUnit.SECONDS));
+                }
+                waitUntil = System.currentTimeMillis() + 5000;
+                while (dockerHost.getOpenStreams() > 0 && System.currentTimeMillis() < waitUntil) {
+                    Thread.sleep(10);
+                }
+                Assert.assertEquals(0, dockerHost.getOpenStreams());
+            } finally {
+                controller.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPullIsChecked() throws Exception {
+        try (DockerStubServer dockerHost = new DockerStubServer()) {
+            DockerController controller = new DockerController(DefaultDockerClientConfig.createDefaultConfigBuilder()
+                    .withDockerHost(dockerHost.getUrl()).build(), MAX_CONNECTIONS);
+            try {
+                List<String> statuses = new ArrayList<>();
+                controller.pullDockerImage("eo-tool:latest", item -> statuses.add(item.getStatus()));
+                Assert.assertEquals(1, statuses.size());
+
+                dockerHost.setPullResponse("{\"status\":\"Pulling fs layer\",\"id\":\"layer\"}\n"
+                        + "{\"errorDetail\":{\"message\":\"manifest unknown\"},\"error\":\"manifest unknown\"}\n");
+                this.assertPullFails(controller, "manifest unknown");
+
+                // the stream ends without a status that indicates a successful pull
+                dockerHost.setPullResponse("{\"status\":\"Pulling fs layer\",\"id\":\"layer\"}\n");
+                this.assertPullFails(controller, "Pulling fs layer");
+            } finally {
+                controller.close();
+            }
+        }
+    }
+
+    private void assertPullFails(DockerController controller, String message) {
+        try {
+            controller.pullDockerImage("eo-tool:latest", item -> {
+            });
+            Assert.fail("Expected pull to fail");
+        } catch (DockerClientException ex) {
+            Assert.assertThat(ex.getMessage(), CoreMatchers.containsString(message));
+        }
+    }
+
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.command.docker;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal local stand-in for the Docker Engine API that runs containers which
+ * exit immediately with a configurable exit code and log line.
+ */
+public class DockerStubServer implements AutoCloseable {
+
+    private static final Pattern CONTAINER_PATH = Pattern.compile("/containers/([^/]+)(/.*)?");
+
+    private final HttpServer server;
+
+    private final AtomicInteger createdContainers = new AtomicInteger();
+
+    private final Map<String, String> containerStates = new ConcurrentHashMap<>();
+
+    private final List<String> dieEvents = new CopyOnWriteArrayList<>();
+
+    private final List<OutputStream> eventStreams = new CopyOnWriteArrayList<>();
+
+    private final List<String> createRequestBodies = new CopyOnWriteArrayList<>();
+
+    private final List<String> stoppedContainers = new CopyOnWriteArrayList<>();
+
+    private final List<String> removedContainers = new CopyOnWriteArrayList<>();
+
+    private final Map<String, List<OutputStream>> containerStreams = new ConcurrentHashMap<>();
+
+    private final AtomicInteger openStreams = new AtomicInteger();
+
+    private volatile boolean failing;
+
+    private volatile boolean pingFailing;
+
+    private volatile boolean running;
+
+    private volatile int exitCode;
+
+    private volatile String log = "done\n";
+
+    private volatile String pullResponse = "{\"status\":\"Status: Downloaded newer image for eo-tool:latest\"}\n";
+
+    public DockerStubServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public String getUrl() {
+        return "tcp://localhost:" + this.server.getAddress().getPort();
+    }
+
+    /**
+     * @param failing if true, the creation of containers fails with an
+     *                internal server error
+     */
+    public void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    /**
+     * @param pingFailing if true, pings fail with an internal server error
+     */
+    public void setPingFailing(boolean pingFailing) {
+        this.pingFailing = pingFailing;
+    }
+
+    /**
+     * @param running if true, started containers keep running until they are
+     *                stopped or removed
+     */
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    public void setExitCode(int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    public void setLog(String log) {
+        this.log = log;
+    }
+
+    /**
+     * @param pullResponse JSON progress messages that are streamed when an
+     *                     image is pulled
+     */
+    public void setPullResponse(String pullResponse) {
+        this.pullResponse = pullResponse;
+    }
+
+    /**
+     * Lets a running container exit with the configured exit code
+     *
+     * @param id id of the container
+     */
+    public void exitContainer(String id) {
+        this.die(id, this.exitCode);
+    }
+
+    /**
+     * @return number of container creation requests
+     */
+    public int getCreateRequests() {
+        return this.createdContainers.get();
+    }
+
+    /**
+     * @return JSON bodies of the container creation requests
+     */
+    public List<String> getCreateRequestBodies() {
+        return createRequestBodies;
+    }
+
+    /**
+     * @return ids of the containers that have been stopped
+     */
+    public List<String> getStoppedContainers() {
+        return stoppedContainers;
+    }
+
+    /**
+     * @return ids of the containers that have been removed
+     */
+    public List<String> getRemovedContainers() {
+        return removedContainers;
+    }
+
+    /**
+     * @return number of followed log and stats streams that are held open
+     * for running containers
+     */
+    public int getOpenStreams() {
+        return this.openStreams.get();
+    }
+
+    @Override
+    public void close() {
+        this.containerStreams.keySet().forEach(this::closeContainerStreams);
+        this.eventStreams.forEach(s -> {
+            try {
+                s.close();
+            } catch (IOException ex) {
+                //client has already gone
+            }
+        });
+        this.server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        // unread request bodies break the reuse of pooled client connections
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        String path = exchange.getRequestURI().getPath().replaceFirst("^/v[0-9.]+", "");
+        String method = exchange.getRequestMethod();
+        if (path.equals("/_ping")) {
+            if (this.pingFailing) {
+                this.respond(exchange, 500, "application/json", "{\"message\":\"stub docker host is failing\"}");
+            } else {
+                this.respond(exchange, 200, "text/plain", "OK");
+            }
+        } else if (path.equals("/images/create") && method.equals("POST")) {
+            this.respond(exchange, 200, "application/json", this.pullResponse);
+        } else if (path.equals("/events")) {
+            this.streamEvents(exchange);
+        } else if (path.equals("/containers/create") && method.equals("POST")) {
+            this.createRequestBodies.add(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            this.createContainer(exchange);
+        } else {
+            Matcher matcher = CONTAINER_PATH.matcher(path);
+            if (!matcher.matches() || !this.containerStates.containsKey(matcher.group(1))) {
+                this.respond(exchange, 404, "application/json", "{\"message\":\"No such container\"}");
+                return;
+            }
+            String id = matcher.group(1);
+            String action = matcher.group(2) == null ? "" : matcher.group(2);
+            switch (action) {
+                case "/start":
+                    this.startContainer(exchange, id);
+                    break;
+                case "/stop":
+                    this.stoppedContainers.add(id);
+                    this.respond(exchange, 204, null, null);
+                    this.die(id, 137);
+                    break;
+                case "/json":
+                    String state = this.containerStates.get(id);
+                    this.respond(exchange, 200, "application/json",
+                            "{\"Id\":\"" + id + "\",\"State\":{\"Status\":\"" + state
+                            + "\",\"Running\":" + "running".equals(state) + ",\"ExitCode\":" + this.exitCode + "}}");
+                    break;
+                case "/logs":
+                    this.streamLog(exchange, id);
+                    break;
+                case "/stats":
+                    this.streamStats(exchange, id);
+                    break;
+                case "":
+                    this.removedContainers.add(id);
+                    this.respond(exchange, 204, null, null);
+                    this.die(id, 137);
+                    this.containerStates.remove(id);
+                    break;
+                default:
+                    this.respond(exchange, 404, "application/json", "{\"message\":\"Not supported\"}");
+            }
+        }
+    }
+
+    private void createContainer(HttpExchange exchange) throws IOException {
+        int number = this.createdContainers.incrementAndGet();
+        if (this.failing) {
+            this.respond(exchange, 500, "application/json", "{\"message\":\"stub docker host is failing\"}");
+            return;
+        }
+        String id = "stub-container-" + number;
+        this.containerStates.put(id, "created");
+        this.respond(exchange, 201, "application/json", "{\"Id\":\"" + id + "\",\"Warnings\":[]}");
+    }
+
+    private void startContainer(HttpExchange exchange, String id) throws IOException {
+        this.respond(exchange, 204, null, null);
+        if (this.running) {
+            this.containerStates.put(id, "running");
+        } else {
+            this.die(id, this.exitCode);
+        }
+    }
+
+    private synchronized void die(String id, int code) {
+        if ("exited".equals(this.containerStates.put(id, "exited"))) {
+            return;
+        }
+        String event = "{\"status\":\"die\",\"id\":\"" + id + "\",\"Type\":\"container\",\"Action\":\"die\","
+                + "\"Actor\":{\"ID\":\"" + id + "\",\"Attributes\":{\"exitCode\":\"" + code + "\"}},"
+                + "\"time\":" + System.currentTimeMillis() / 1000 + "}\n";
+        this.dieEvents.add(event);
+        for (OutputStream stream : new ArrayList<>(this.eventStreams)) {
+            this.writeEvent(stream, event);
+        }
+        this.closeContainerStreams(id);
+    }
+
+    private void streamEvents(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream stream = exchange.getResponseBody();
+        // subscribers that connect late receive the past events
+        for (String event : this.dieEvents) {
+            this.writeEvent(stream, event);
+        }
+        this.eventStreams.add(stream);
+    }
+
+    private void writeEvent(OutputStream stream, String event) {
+        synchronized (stream) {
+            try {
+                stream.write(event.getBytes(StandardCharsets.UTF_8));
+                stream.flush();
+            } catch (IOException ex) {
+                this.eventStreams.remove(stream);
+            }
+        }
+    }
+
+    private void streamLog(HttpExchange exchange, String id) throws IOException {
+        byte[] payload = this.log.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.put((byte) 1).put((byte) 0).put((byte) 0).put((byte) 0).putInt(payload.length).put(payload);
+        exchange.getResponseHeaders().set("Content-Type", "application/vnd.docker.raw-stream");
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null && query.matches("(.*&)?follow=(1|true)(&.*)?") && "running".equals(this.containerStates.get(id))) {
+            // followed logs of running containers are streamed until the container dies
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write(frame.array());
+            out.flush();
+            this.holdContainerStream(id, out);
+            return;
+        }
+        exchange.sendResponseHeaders(200, frame.capacity());
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(frame.array());
+        }
+    }
+
+    private void streamStats(HttpExchange exchange, String id) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (!"running".equals(this.containerStates.get(id))) {
+            this.respond(exchange, 200, "application/json", "{}\n");
+            return;
+        }
+        // stats of running containers are streamed until the container dies
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        out.write("{}\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        this.holdContainerStream(id, out);
+    }
+
+    private synchronized void holdContainerStream(String id, OutputStream stream) throws IOException {
+        if (!"running".equals(this.containerStates.get(id))) {
+            // the container died in the meantime
+            stream.close();
+            return;
+        }
+        this.containerStreams.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>()).add(stream);
+        this.openStreams.incrementAndGet();
+    }
+
+    private synchronized void closeContainerStreams(String id) {
+        List<OutputStream> streams = this.containerStreams.remove(id);
+        if (streams == null) {
+            return;
+        }
+        for (OutputStream stream : streams) {
+            this.openStreams.decrementAndGet();
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                //client has already gone
+            }
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wacodis.javaps.io.http.HubCredentialsPool;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class OpenAccessHubConfigTest {
+
+    @Test
+    public void testAdditionalAccountsAreReadFromIndexedProperties() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("openaccesshub.accounts[0].username", "second")
+                .withProperty("openaccesshub.accounts[0].password", "pass,word:2")
+                .withProperty("openaccesshub.accounts[1].username", "third")
+                .withProperty("openaccesshub.accounts[1].password", "password");
+        OpenAccessHubConfig config = new OpenAccessHubConfig();
+        ReflectionTestUtils.setField(config, "environment", environment);
+        ReflectionTestUtils.setField(config, "user", "first");
+        ReflectionTestUtils.setField(config, "password", "password");
+
+        HubCredentialsPool pool = config.prepareCredentialsPool();
+
+        Assert.assertEquals(3, pool.size());
+        Map<String, String> authorizations = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            HubCredentialsPool.Lease lease = pool.tryLease();
+            HttpHeaders headers = new HttpHeaders();
+            lease.authorize(headers);
+            authorizations.put(lease.getAccount().getUsername(), headers.getFirst(HttpHeaders.AUTHORIZATION));
+        }
+        HttpHeaders expected = new HttpHeaders();
+        expected.setBasicAuth("second", "pass,word:2");
+        Assert.assertEquals(expected.getFirst(HttpHeaders.AUTHORIZATION), authorizations.get("second"));
+        Assert.assertTrue(authorizations.containsKey("first"));
+        Assert.assertTrue(authorizations.containsKey("third"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAccountWithoutPasswordIsRejected() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("openaccesshub.accounts[0].username", "second");
+        OpenAccessHubConfig config = new OpenAccessHubConfig();
+        ReflectionTestUtils.setField(config, "environment", environment);
+        ReflectionTestUtils.setField(config, "user", "first");
+        ReflectionTestUtils.setField(config, "password", "password");
+
+        config.prepareCredentialsPool();
+    }
+
+}
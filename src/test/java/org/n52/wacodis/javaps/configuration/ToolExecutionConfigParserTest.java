@@ -38,8 +38,19 @@ public class ToolExecutionConfigParserTest {
         Assert.assertEquals("dlm_docker:wacodis-eo-hackathon", config.getDocker().getImage());
         Assert.assertEquals("wacodis-eo-dlm", config.getDocker().getContainer());
         Assert.assertEquals("/public", config.getDocker().getWorkDir());
+        Assert.assertEquals(4.0, config.getDocker().getResources().getCpus(), 0.0);
+        Assert.assertEquals("0-3", config.getDocker().getResources().getCpuset());
+        Assert.assertEquals(1024L * 1024 * 1024, config.getDocker().getResources().getShmSizeBytes());
+        Assert.assertEquals("size=2g", config.getDocker().getResources().getTmpfs().get("/scratch"));
+        Assert.assertEquals(4, config.getDocker().getResources().getThreads());
+        Assert.assertEquals("512", config.getDocker().getResources().getEnvironment().get("GDAL_CACHEMAX"));
         
         Assert.assertEquals("4326", config.getParameter().getInputEpsg());
+
+        Assert.assertEquals(5, config.getScheduling().getPriority());
+        Assert.assertEquals(4.0, config.getScheduling().getCpus(), 0.0);
+        Assert.assertEquals(8L * 1024 * 1024 * 1024, config.getScheduling().getMemoryBytes());
+        Assert.assertEquals(7200, config.getScheduling().getTimeout());
         
         Assert.assertEquals("/bin/ash", config.getCommand().getFolder());
         Assert.assertEquals("/eo.sh", config.getCommand().getName());
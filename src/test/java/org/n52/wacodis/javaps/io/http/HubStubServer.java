@@ -0,0 +1,326 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Minimal local stand-in for the Open Access Hub that serves a single product
+ * and supports HEAD and byte range requests.
+ */
+public class HubStubServer implements AutoCloseable {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private static final String PRODUCT_PATH = "/odata/v1/Products('product-id')/$value";
+
+    private static final String ENTITY_PATH = "/odata/v1/Products('product-id')";
+
+    private static final String ONLINE_PATH = "/odata/v1/Products('product-id')/Online/$value";
+
+    private final HttpServer server;
+
+    private final byte[] content;
+
+    private final String fileName;
+
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+
+    private final AtomicInteger fullRequests = new AtomicInteger();
+
+    private final AtomicLong servedBytes = new AtomicLong();
+
+    private boolean acceptingRanges = true;
+
+    private String eTag;
+
+    private String throttledAuthorization;
+
+    private final AtomicInteger throttledRequests = new AtomicInteger(-1);
+
+    private final AtomicInteger failingResponseLength = new AtomicInteger(-1);
+
+    private final AtomicInteger offlinePolls = new AtomicInteger(-1);
+
+    private final AtomicInteger restoreRequests = new AtomicInteger();
+
+    private final AtomicInteger onlineRequests = new AtomicInteger();
+
+    private final AtomicInteger anonymousRequests = new AtomicInteger();
+
+    private volatile boolean restoreTriggered;
+
+    private String checksumAlgorithm;
+
+    private String checksumValue;
+
+    private volatile CountDownLatch responseHold;
+
+    public HubStubServer(byte[] content, String fileName) throws IOException {
+        this.content = content;
+        this.fileName = fileName;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public String getProductUrl() {
+        return "http://localhost:" + this.server.getAddress().getPort() + PRODUCT_PATH;
+    }
+
+    public void setAcceptingRanges(boolean acceptingRanges) {
+        this.acceptingRanges = acceptingRanges;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    /**
+     * Lets all requests of the specified user be answered with status 429
+     *
+     * @param username the throttled user
+     */
+    public void setThrottledUser(String username) {
+        this.setThrottledUser(username, -1);
+    }
+
+    /**
+     * Lets a number of requests of the specified user be answered with status
+     * 429
+     *
+     * @param username the throttled user
+     * @param requests number of throttled requests, -1 for all requests
+     */
+    public void setThrottledUser(String username, int requests) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBasicAuth(username, "password");
+        this.throttledRequests.set(requests);
+        this.throttledAuthorization = headers.getFirst(HttpHeaders.AUTHORIZATION);
+    }
+
+    /**
+     * Lets the next response break off after the specified number of bytes
+     *
+     * @param length number of bytes to send before closing the connection
+     */
+    public void failNextResponseAfter(int length) {
+        this.failingResponseLength.set(length);
+    }
+
+    /**
+     * Sets the checksum that is advertised in the product metadata
+     *
+     * @param algorithm the digest algorithm
+     * @param value     the hex encoded checksum
+     */
+    public void setChecksum(String algorithm, String value) {
+        this.checksumAlgorithm = algorithm;
+        this.checksumValue = value;
+    }
+
+    /**
+     * Simulates a product in the Long Term Archive. Requesting the product
+     * triggers its restore, afterwards the product gets online after the
+     * specified number of availability polls.
+     *
+     * @param pollsUntilOnline number of polls answered with 'false' after the
+     *                         restore has been triggered
+     */
+    public void setOffline(int pollsUntilOnline) {
+        this.restoreTriggered = false;
+        this.offlinePolls.set(pollsUntilOnline);
+    }
+
+    /**
+     * Lets product responses wait until {@link #releaseResponses()} has been
+     * called
+     */
+    public void holdResponses() {
+        this.responseHold = new CountDownLatch(1);
+    }
+
+    public void releaseResponses() {
+        CountDownLatch hold = this.responseHold;
+        if (hold != null) {
+            hold.countDown();
+        }
+    }
+
+    public int getRestoreRequests() {
+        return restoreRequests.get();
+    }
+
+    public int getOnlineRequests() {
+        return onlineRequests.get();
+    }
+
+    /**
+     * @return the number of requests that have been sent without credentials
+     */
+    public int getAnonymousRequests() {
+        return anonymousRequests.get();
+    }
+
+    public int getRangeRequests() {
+        return rangeRequests.get();
+    }
+
+    public int getFullRequests() {
+        return fullRequests.get();
+    }
+
+    public long getServedBytes() {
+        return servedBytes.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+                this.anonymousRequests.incrementAndGet();
+            }
+            if (ENTITY_PATH.equals(exchange.getRequestURI().getPath())) {
+                this.handleMetadataRequest(exchange);
+                return;
+            }
+            if (ONLINE_PATH.equals(exchange.getRequestURI().getPath())) {
+                this.handleOnlineRequest(exchange);
+                return;
+            }
+            if (!PRODUCT_PATH.equals(exchange.getRequestURI().getPath())) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (this.throttledAuthorization != null
+                    && this.throttledAuthorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))
+                    && this.throttledRequests.getAndUpdate(r -> r > 0 ? r - 1 : r) != 0) {
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            if (this.offlinePolls.get() >= 0) {
+                this.restoreRequests.incrementAndGet();
+                this.restoreTriggered = true;
+                exchange.sendResponseHeaders(202, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Disposition", "attachment; filename=\"" + this.fileName + "\"");
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            if (this.acceptingRanges) {
+                exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            }
+            if (this.eTag != null) {
+                exchange.getResponseHeaders().add("ETag", this.eTag);
+            }
+
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(this.content.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range != null ? RANGE_PATTERN.matcher(range) : null;
+            if (this.acceptingRanges && matcher != null && matcher.matches()) {
+                this.rangeRequests.incrementAndGet();
+                int start = Integer.parseInt(matcher.group(1));
+                int end = matcher.group(2).isEmpty() ? this.content.length - 1 : Integer.parseInt(matcher.group(2));
+                exchange.getResponseHeaders().add("Content-Range",
+                        "bytes " + start + "-" + end + "/" + this.content.length);
+                this.send(exchange, 206, start, end + 1);
+            } else {
+                this.fullRequests.incrementAndGet();
+                this.awaitRelease();
+                this.send(exchange, 200, 0, this.content.length);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetadataRequest(HttpExchange exchange) throws IOException {
+        if (this.checksumValue == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        byte[] body = String.format("{\"d\":{\"Id\":\"product-id\",\"Checksum\":{\"Algorithm\":\"%s\",\"Value\":\"%s\"}}}",
+                this.checksumAlgorithm, this.checksumValue).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void handleOnlineRequest(HttpExchange exchange) throws IOException {
+        this.onlineRequests.incrementAndGet();
+        boolean online = this.offlinePolls.get() < 0
+                || (this.restoreTriggered && this.offlinePolls.getAndDecrement() <= 0);
+        byte[] body = String.valueOf(online).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void awaitRelease() throws IOException {
+        CountDownLatch hold = this.responseHold;
+        try {
+            if (hold != null && !hold.await(10, TimeUnit.SECONDS)) {
+                throw new IOException("Held response has not been released");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, int start, int end) throws IOException {
+        exchange.sendResponseHeaders(status, end - start);
+        int failAfter = this.failingResponseLength.getAndSet(-1);
+        if (failAfter >= 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(this.content, start, Math.min(failAfter, end - start));
+            this.servedBytes.addAndGet(Math.min(failAfter, end - start));
+            out.flush();
+            // drop the connection without completing the response
+            throw new IOException("Simulated connection failure");
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(this.content, start, end - start);
+        }
+        this.servedBytes.addAndGet(end - start);
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestTemplate;
+
+public class ParallelZipExtractorTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelZipExtractorTest.class);
+
+    private static final String SAFE_NAME = "S2B_MSIL2A_TEST.SAFE";
+
+    private static final String[] BANDS = {"B01", "B02", "B03", "B04", "B05", "B06", "B07",
+        "B08", "B8A", "B09", "B10", "B11", "B12"};
+
+    private Path workDir;
+
+    private ExecutorService executor;
+
+    @Before
+    public void init() throws IOException {
+        this.workDir = Files.createTempDirectory("wacodis-unzip");
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @Test
+    public void testParallelExtractionEqualsSequentialExtraction() throws IOException {
+        File zip = this.createSafeLikeZip(20, 64 * 1024);
+
+        File sequential = this.createDownloader(1).unzipFile(zip, this.workDir.resolve("sequential").toString(), true);
+        File parallel = new ParallelZipExtractor(this.executor, 4, 1024)
+                .extract(zip, this.workDir.resolve("parallel").toFile(), ExtractionFilter.ALL);
+
+        Assert.assertEquals(SAFE_NAME, parallel.getName());
+        Assert.assertEquals(FileUtils.listFiles(sequential, null, true).size(),
+                FileUtils.listFiles(parallel, null, true).size());
+        for (File file : FileUtils.listFiles(sequential, null, true)) {
+            File parallelFile = new File(parallel, sequential.toPath().relativize(file.toPath()).toString());
+            Assert.assertTrue(FileUtils.contentEquals(file, parallelFile));
+        }
+    }
+
+    @Test
+    public void testParallelExtractionAppliesFilter() throws IOException {
+        File zip = this.createSafeLikeZip(2, 1024);
+
+        File parallel = new ParallelZipExtractor(this.executor, 4)
+                .extract(zip, this.workDir.toFile(), ExtractionFilter.forBands("B2"));
+
+        Assert.assertTrue(new File(parallel, "manifest.safe").exists());
+        Assert.assertEquals(2, FileUtils.listFiles(new File(parallel, "GRANULE"), new String[]{"jp2"}, true).size());
+    }
+
+    @Test
+    public void testFailedExtractionWaitsForRunningEntries() throws IOException {
+        File zip = this.createSafeLikeZip(4, 1024 * 1024);
+        File outDir = this.workDir.resolve("failing").toFile();
+        // the first band of the first granule cannot be written, since a directory occupies its path
+        Assert.assertTrue(new File(outDir, SAFE_NAME + "/GRANULE/L2A_T32ULC_0/IMG_DATA/T32ULC_B01.jp2").mkdirs());
+        AtomicInteger running = new AtomicInteger();
+        ExecutorService trackingExecutor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()) {
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+                return super.newTaskFor(() -> {
+                    running.incrementAndGet();
+                    try {
+                        return callable.call();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                });
+            }
+        };
+        try {
+            new ParallelZipExtractor(trackingExecutor, 4, 1024).extract(zip, outDir, ExtractionFilter.ALL);
+            Assert.fail("Expected extraction to fail");
+        } catch (IOException ex) {
+            Assert.assertEquals(0, running.get());
+        } finally {
+            trackingExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Compares the sequential and parallel extraction of a synthetic SAFE-like
+     * product. Run manually, since the result depends on the machine.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkExtraction() throws IOException {
+        File zip = this.createSafeLikeZip(40, 4 * 1024 * 1024);
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService benchmarkExecutor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                this.createDownloader(1).unzipFile(zip, this.workDir.resolve("sequential" + run).toString(), true);
+                long sequentialMillis = (System.nanoTime() - start) / 1000000;
+
+                start = System.nanoTime();
+                new ParallelZipExtractor(benchmarkExecutor, threads)
+                        .extract(zip, this.workDir.resolve("parallel" + run).toFile(), ExtractionFilter.ALL);
+                long parallelMillis = (System.nanoTime() - start) / 1000000;
+
+                LOG.info("Run {}: sequential {} ms, parallel ({} threads) {} ms",
+                        run, sequentialMillis, threads, parallelMillis);
+            }
+        } finally {
+            benchmarkExecutor.shutdownNow();
+        }
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        this.executor.shutdownNow();
+        FileUtils.deleteDirectory(this.workDir.toFile());
+    }
+
+    /**
+     * Creates a zip that resembles the structure of a Sentinel-2 SAFE product
+     * with metadata files and partially compressible band files per granule.
+     */
+    private File createSafeLikeZip(int granules, int bandSize) throws IOException {
+        File zip = this.workDir.resolve(SAFE_NAME.replace(".SAFE", ".zip")).toFile();
+        Random random = new Random(42);
+        byte[] band = new byte[bandSize];
+        try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(zip))) {
+            zipOut.putNextEntry(new ZipEntry(SAFE_NAME + "/"));
+            zipOut.putNextEntry(new ZipEntry(SAFE_NAME + "/manifest.safe"));
+            zipOut.write("<manifest/>".getBytes());
+            for (int g = 0; g < granules; g++) {
+                String granule = SAFE_NAME + "/GRANULE/L2A_T32ULC_" + g + "/";
+                zipOut.putNextEntry(new ZipEntry(granule + "MTD_TL.xml"));
+                zipOut.write("<metadata/>".getBytes());
+                for (String b : BANDS) {
+                    // half random, half constant data to make deflating take some effort
+                    random.nextBytes(band);
+                    Arrays.fill(band, bandSize / 2, bandSize, (byte) g);
+                    zipOut.putNextEntry(new ZipEntry(granule + "IMG_DATA/T32ULC_" + b + ".jp2"));
+                    zipOut.write(band);
+                }
+            }
+        }
+        return zip;
+    }
+
+    private SentinelFileDownloader createDownloader(int unzipThreads) {
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(this.workDir.toString());
+        Mockito.when(config.getUnzipThreads()).thenReturn(unzipThreads);
+
+        SentinelFileDownloader downloader = new SentinelFileDownloader();
+        downloader.setConfig(config);
+        downloader.setOpenAccessHubService(new RestTemplate());
+        return downloader;
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+public class SegmentedFileDownloaderTest {
+
+    private static final String FILE_NAME = "S2B_MSIL2A_TEST.zip";
+
+    private byte[] content;
+
+    private HubStubServer server;
+
+    private Path workDir;
+
+    private SentinelFileDownloader downloader;
+
+    @Before
+    public void init() throws IOException {
+        this.content = new byte[1000003];
+        new Random(42).nextBytes(this.content);
+        this.server = new HubStubServer(this.content, FILE_NAME);
+        this.workDir = Files.createTempDirectory("wacodis-segments");
+
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(this.workDir.toString());
+        Mockito.when(config.getDownloadConnections()).thenReturn(4);
+        Mockito.when(config.getDownloadMinSegmentSize()).thenReturn(1024L);
+        Mockito.when(config.isDownloadResumable()).thenReturn(true);
+        Mockito.when(config.getDownloadRetries()).thenReturn(1);
+
+        this.downloader = new SentinelFileDownloader();
+        this.downloader.setConfig(config);
+        this.downloader.setOpenAccessHubService(new RestTemplate());
+    }
+
+    @Test
+    public void testSegmentedDownload() throws IOException {
+        File file = this.downloader.downloadSentinelFile(this.server.getProductUrl(), this.workDir.toString(), false);
+
+        Assert.assertEquals(FILE_NAME, file.getName());
+        Assert.assertArrayEquals(this.content, FileUtils.readFileToByteArray(file));
+        Assert.assertEquals(4, this.server.getRangeRequests());
+        Assert.assertEquals(0, this.server.getFullRequests());
+    }
+
+    @Test
+    public void testFallbackToSingleStreamIfRangesAreNotSupported() throws IOException {
+        this.server.setAcceptingRanges(false);
+
+        File file = this.downloader.downloadSentinelFile(this.server.getProductUrl(), this.workDir.toString(), false);
+
+        Assert.assertArrayEquals(this.content, FileUtils.readFileToByteArray(file));
+        Assert.assertEquals(0, this.server.getRangeRequests());
+        Assert.assertEquals(1, this.server.getFullRequests());
+    }
+
+    @Test
+    public void testInterruptedDownloadIsResumed() throws IOException {
+        this.server.failNextResponseAfter(1000);
+
+        File file = this.downloader.downloadSentinelFile(this.server.getProductUrl(), this.workDir.toString(), false);
+
+        Assert.assertArrayEquals(this.content, FileUtils.readFileToByteArray(file));
+        // completed segments must not be requested again
+        Assert.assertTrue(this.server.getRangeRequests() > 4);
+        Assert.assertTrue(this.server.getServedBytes() < 2L * this.content.length);
+        Assert.assertFalse(SegmentedFileDownloader.getPartFile(file).exists());
+    }
+
+    @Test
+    public void testStalePartialDownloadIsDiscarded() throws IOException {
+        this.server.setETag("\"v1\"");
+        File targetFile = new File(this.workDir.toFile(), FILE_NAME);
+        File partFile = SegmentedFileDownloader.getPartFile(targetFile);
+        FileUtils.writeByteArrayToFile(partFile, new byte[this.content.length]);
+
+        DownloadJournal journal = new DownloadJournal(
+                new SegmentedFileDownloader(new RestTemplate(), null, 1, 0, true).probe(this.server.getProductUrl()));
+        journal.markCompleted(0, this.content.length);
+        journal.store(new File(partFile.getPath() + ".journal"));
+
+        this.server.setETag("\"v2\"");
+        File file = this.downloader.downloadSentinelFile(this.server.getProductUrl(), this.workDir.toString(), false);
+
+        Assert.assertArrayEquals(this.content, FileUtils.readFileToByteArray(file));
+        Assert.assertEquals(4, this.server.getRangeRequests());
+    }
+
+    @Test
+    public void testFailedSegmentWaitsForRunningSegments() throws IOException, InterruptedException {
+        CountDownLatch transferring = new CountDownLatch(1);
+        CountDownLatch failed = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean();
+        RestTemplate restTemplate = new RestTemplate() {
+            @Override
+            public <T> T execute(String url, HttpMethod method, RequestCallback requestCallback,
+                    ResponseExtractor<T> responseExtractor, Object... uriVariables) {
+                try {
+                    MockClientHttpRequest request = new MockClientHttpRequest();
+                    requestCallback.doWithRequest(request);
+                    if (request.getHeaders().getRange().get(0).getRangeStart(content.length) == 0) {
+                        // the first segment fails while the second one is transferred
+                        transferring.await();
+                        failed.countDown();
+                        throw new ResourceAccessException("connection reset");
+                    }
+                    running.set(true);
+                    try {
+                        return responseExtractor.extractData(new MockClientHttpResponse(
+                                new StallingInputStream(transferring, failed), HttpStatus.PARTIAL_CONTENT));
+                    } finally {
+                        running.set(false);
+                    }
+                } catch (IOException | InterruptedException ex) {
+                    throw new ResourceAccessException(ex.getMessage());
+                }
+            }
+        };
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentLength(this.content.length);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setContentDisposition(ContentDisposition.builder("attachment").filename(FILE_NAME).build());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SegmentedFileDownloader segmentedDownloader = new SegmentedFileDownloader(restTemplate, executor, 2, 0, true);
+            try {
+                segmentedDownloader.download(new SegmentedFileDownloader.RemoteFile(this.server.getProductUrl(), headers),
+                        new File(this.workDir.toFile(), FILE_NAME));
+                Assert.fail("segmented download did not fail");
+            } catch (IOException ex) {
+                Assert.assertTrue(ex.getMessage().contains("connection reset"));
+            }
+            // the partial file must not be closed or reused while the second segment is still written
+            Assert.assertFalse(running.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        this.server.close();
+        this.downloader.destroy();
+        FileUtils.deleteDirectory(this.workDir.toFile());
+    }
+
+    /**
+     * Body of a segment that stalls after the first chunk until another
+     * segment failed. Interrupts do not end the stall, like a blocking socket
+     * read.
+     */
+    private static class StallingInputStream extends InputStream {
+
+        private final CountDownLatch transferring;
+
+        private final CountDownLatch failed;
+
+        private boolean stalled;
+
+        private StallingInputStream(CountDownLatch transferring, CountDownLatch failed) {
+            this.transferring = transferring;
+            this.failed = failed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return this.read(b, 0, 1) == -1 ? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.transferring.getCount() > 0) {
+                this.transferring.countDown();
+            } else if (!this.stalled) {
+                this.stalled = true;
+                boolean interrupted = false;
+                long stallUntil = System.currentTimeMillis() + 300;
+                for (;;) {
+                    try {
+                        if (this.failed.await(10, TimeUnit.SECONDS)) {
+                            long remaining = stallUntil - System.currentTimeMillis();
+                            if (remaining > 0) {
+                                Thread.sleep(remaining);
+                            }
+                        }
+                        break;
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return len;
+        }
+
+    }
+
+}
@@ -16,14 +16,31 @@
 
 package org.n52.wacodis.javaps.io.http;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.n52.wacodis.javaps.configuration.WacodisBackendConfig;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 /**
@@ -97,4 +114,578 @@ public class SentinelFileDownloaderTest {
         Assert.assertThat(f3.getAbsolutePath(), CoreMatchers.not(CoreMatchers.equalTo(f4.getAbsolutePath())));
     }
 
+    @Test
+    public void testConcurrentDownloadsOfSameProductAreCoalesced() throws Exception {
+        File productFile = Files.createTempFile("tmp", "-del").toFile();
+        CountDownLatch downloadStarted = new CountDownLatch(1);
+        CountDownLatch downloadReleased = new CountDownLatch(1);
+        RestTemplate rt = Mockito.mock(RestTemplate.class);
+        Mockito.when(
+                rt.execute(Mockito.any(String.class),
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.any()))
+                .thenAnswer(invocation -> {
+                    downloadStarted.countDown();
+                    downloadReleased.await(10, TimeUnit.SECONDS);
+                    return productFile;
+                });
+
+        SentinelFileDownloader sfd = this.createDownloader(rt);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<File> first = executor.submit(() -> sfd.downloadSentinelFile("https://test.file/test-product-id"));
+            downloadStarted.await(10, TimeUnit.SECONDS);
+            Future<File> second = executor.submit(() -> sfd.downloadSentinelFile("https://test.file/test-product-id"));
+            this.awaitWaitingCaller(sfd);
+            downloadReleased.countDown();
+
+            Assert.assertThat(first.get(10, TimeUnit.SECONDS), CoreMatchers.equalTo(productFile));
+            Assert.assertThat(second.get(10, TimeUnit.SECONDS), CoreMatchers.equalTo(productFile));
+            // the second caller must have been served by the running download instead of the cache
+            Assert.assertEquals(0, sfd.getProductCache().getHitCount());
+        } finally {
+            executor.shutdownNow();
+        }
+        Mockito.verify(rt, Mockito.times(1)).execute(Mockito.any(String.class),
+                Mockito.any(),
+                Mockito.any(),
+                Mockito.any());
+    }
+
+    @Test
+    public void testFailedDownloadIsPropagatedToAllWaiters() throws Exception {
+        CountDownLatch downloadStarted = new CountDownLatch(1);
+        CountDownLatch downloadReleased = new CountDownLatch(1);
+        RestTemplate rt = Mockito.mock(RestTemplate.class);
+        Mockito.when(
+                rt.execute(Mockito.any(String.class),
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.any()))
+                .thenAnswer(invocation -> {
+                    downloadStarted.countDown();
+                    downloadReleased.await(10, TimeUnit.SECONDS);
+                    throw new RestClientException("connection reset");
+                });
+
+        SentinelFileDownloader sfd = this.createDownloader(rt);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<File> first = executor.submit(() -> sfd.downloadSentinelFile("https://test.file/test-product-id"));
+            downloadStarted.await(10, TimeUnit.SECONDS);
+            Future<File> second = executor.submit(() -> sfd.downloadSentinelFile("https://test.file/test-product-id"));
+            this.awaitWaitingCaller(sfd);
+            downloadReleased.countDown();
+
+            this.assertDownloadFailed(first);
+            this.assertDownloadFailed(second);
+        } finally {
+            executor.shutdownNow();
+        }
+        Mockito.verify(rt, Mockito.times(1)).execute(Mockito.any(String.class),
+                Mockito.any(),
+                Mockito.any(),
+                Mockito.any());
+    }
+
+    @Test
+    public void testStreamingUnzip() throws IOException {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.isStreamingUnzip()).thenReturn(true);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        try (HubStubServer server = new HubStubServer(this.createProductZip(), "S2B_MSIL2A_TEST.zip")) {
+            File product = sfd.downloadSentinelFile(server.getProductUrl());
+
+            Assert.assertThat(product, CoreMatchers.equalTo(new File(workDir, "S2B_MSIL2A_TEST.SAFE")));
+            Assert.assertTrue(new File(product, "manifest.safe").exists());
+            Assert.assertFalse(new File(workDir, "S2B_MSIL2A_TEST.zip").exists());
+            Assert.assertFalse(new File(workDir, "S2B_MSIL2A_TEST.zip.part").exists());
+        }
+    }
+
+    @Test
+    public void testZipAccessUnzipsCachedZipOnlyOnDemand() throws IOException {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.isZipAccess()).thenReturn(true);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        try (HubStubServer server = new HubStubServer(this.createProductZip(), "S2B_MSIL2A_TEST.zip")) {
+            File zip = sfd.downloadSentinelProduct(server.getProductUrl());
+
+            Assert.assertThat(zip, CoreMatchers.equalTo(new File(workDir, "S2B_MSIL2A_TEST.zip")));
+            Assert.assertFalse(new File(workDir, "S2B_MSIL2A_TEST.SAFE").exists());
+
+            File product = sfd.downloadSentinelFile(server.getProductUrl());
+
+            Assert.assertThat(product, CoreMatchers.equalTo(new File(workDir, "S2B_MSIL2A_TEST.SAFE")));
+            Assert.assertTrue(new File(product, "manifest.safe").exists());
+            Assert.assertTrue(zip.exists());
+            Assert.assertEquals(1, server.getFullRequests());
+        }
+    }
+
+    @Test
+    public void testExtractionsWithDifferentFiltersShareTransfer() throws Exception {
+        String imgData = "GRANULE/L2A_T32ULC/IMG_DATA/R10m/";
+        ByteArrayOutputStream zipContent = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOut = new ZipOutputStream(zipContent)) {
+            for (String name : new String[]{"",
+                "manifest.safe",
+                imgData + "T32ULC_20200101T103421_B02_10m.jp2",
+                imgData + "T32ULC_20200101T103421_B04_10m.jp2",
+                imgData + "T32ULC_20200101T103421_B08_10m.jp2"}) {
+                zipOut.putNextEntry(new ZipEntry("S2B_MSIL2A_TEST.SAFE/" + name));
+                zipOut.closeEntry();
+            }
+        }
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (HubStubServer server = new HubStubServer(zipContent.toByteArray(), "S2B_MSIL2A_TEST.zip")) {
+            server.holdResponses();
+            String workPath = workDir.getAbsolutePath();
+            Future<File> first = executor.submit(() -> sfd.downloadSentinelFile(server.getProductUrl(),
+                    workPath, ExtractionFilter.forBands("B2", "B8")));
+            Future<File> second = executor.submit(() -> sfd.downloadSentinelFile(server.getProductUrl(),
+                    workPath, ExtractionFilter.forBands("B4", "B8")));
+            this.awaitWaitingCaller(sfd);
+            server.releaseResponses();
+
+            File firstProduct = first.get(10, TimeUnit.SECONDS);
+            File secondProduct = second.get(10, TimeUnit.SECONDS);
+
+            Assert.assertEquals(1, server.getFullRequests());
+            Assert.assertThat(firstProduct, CoreMatchers.equalTo(new File(workDir, "extracted_B2_B8/S2B_MSIL2A_TEST.SAFE")));
+            Assert.assertTrue(new File(firstProduct, imgData + "T32ULC_20200101T103421_B02_10m.jp2").exists());
+            Assert.assertFalse(new File(firstProduct, imgData + "T32ULC_20200101T103421_B04_10m.jp2").exists());
+            Assert.assertThat(secondProduct, CoreMatchers.equalTo(new File(workDir, "extracted_B4_B8/S2B_MSIL2A_TEST.SAFE")));
+            Assert.assertTrue(new File(secondProduct, imgData + "T32ULC_20200101T103421_B04_10m.jp2").exists());
+            Assert.assertFalse(new File(secondProduct, imgData + "T32ULC_20200101T103421_B02_10m.jp2").exists());
+            Assert.assertFalse(new File(workDir, "S2B_MSIL2A_TEST.zip").exists());
+            Assert.assertFalse(new File(workDir, "S2B_MSIL2A_TEST.zip.part").exists());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testThrottledAccountIsCooledDown() throws IOException {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        HubCredentialsPool pool = new HubCredentialsPool(Arrays.asList(
+                new HubCredentialsPool.Account("throttled", "password", 1),
+                new HubCredentialsPool.Account("other", "password", 1)), 60000);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+        sfd.setCredentialsPool(pool);
+
+        try (HubStubServer server = new HubStubServer(new byte[]{1, 2, 3}, "S2B_MSIL2A_TEST.zip")) {
+            server.setThrottledUser("throttled");
+
+            File product = sfd.downloadSentinelFile(server.getProductUrl(), workDir.getAbsolutePath(), false);
+
+            Assert.assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(product.toPath()));
+            Assert.assertEquals(0, pool.getLeasedCount());
+            try (HubCredentialsPool.Lease lease = pool.lease()) {
+                Assert.assertEquals("other", lease.getAccount().getUsername());
+            }
+        }
+    }
+
+    @Test
+    public void testSingleThrottledAccountIsNotCooledDown() throws IOException {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.getDownloadConnections()).thenReturn(2);
+        Mockito.when(config.getDownloadRetries()).thenReturn(1);
+        HubCredentialsPool pool = new HubCredentialsPool(Arrays.asList(
+                new HubCredentialsPool.Account("throttled", "password", 1)), 60000);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+        sfd.setCredentialsPool(pool);
+
+        try (HubStubServer server = new HubStubServer(new byte[]{1, 2, 3}, "S2B_MSIL2A_TEST.zip")) {
+            server.setThrottledUser("throttled", 1);
+
+            File product = sfd.downloadSentinelFile(server.getProductUrl(), workDir.getAbsolutePath(), false);
+
+            Assert.assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(product.toPath()));
+            try (HubCredentialsPool.Lease lease = pool.tryLease()) {
+                Assert.assertNotNull(lease);
+            }
+        } finally {
+            sfd.destroy();
+        }
+    }
+
+    @Test
+    public void testAccountIsReleasedBeforeExtraction() throws IOException {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        HubCredentialsPool pool = new HubCredentialsPool(Arrays.asList(
+                new HubCredentialsPool.Account("user", "password", 1)), 60000);
+        List<Integer> leasedWhileUnzipping = new ArrayList<>();
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader() {
+            @Override
+            public File unzipFile(File file, String outPath, boolean keepZip, ExtractionFilter filter) throws IOException {
+                leasedWhileUnzipping.add(pool.getLeasedCount());
+                return super.unzipFile(file, outPath, keepZip, filter);
+            }
+        };
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+        sfd.setCredentialsPool(pool);
+
+        try (HubStubServer server = new HubStubServer(this.createProductZip(), "S2B_MSIL2A_TEST.zip")) {
+            File product = sfd.downloadSentinelFile(server.getProductUrl());
+
+            Assert.assertTrue(new File(product, "manifest.safe").exists());
+            Assert.assertEquals(Arrays.asList(0), leasedWhileUnzipping);
+        }
+    }
+
+    @Test
+    public void testSelectiveUnzip() throws IOException {
+        String imgData = "S2B_MSIL2A_TEST.SAFE/GRANULE/L2A_T32ULC/IMG_DATA/R10m/";
+        File zip = Files.createTempFile("S2B_MSIL2A_TEST", ".zip").toFile();
+        try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (String name : new String[]{"S2B_MSIL2A_TEST.SAFE/",
+                "S2B_MSIL2A_TEST.SAFE/manifest.safe",
+                "S2B_MSIL2A_TEST.SAFE/GRANULE/L2A_T32ULC/MTD_TL.xml",
+                "S2B_MSIL2A_TEST.SAFE/GRANULE/L2A_T32ULC/QI_DATA/MSK_CLDPRB_20m.jp2",
+                imgData + "T32ULC_20200101T103421_B04_10m.jp2",
+                imgData + "T32ULC_20200101T103421_B08_10m.jp2",
+                imgData + "T32ULC_20200101T103421_B8A_20m.jp2",
+                imgData + "T32ULC_20200101T103421_B11_20m.jp2"}) {
+                zipOut.putNextEntry(new ZipEntry(name));
+                zipOut.closeEntry();
+            }
+        }
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        SentinelFileDownloader sfd = this.createDownloader(Mockito.mock(RestTemplate.class));
+
+        File product = sfd.unzipFile(zip, workDir.getAbsolutePath(), true, ExtractionFilter.forBands("B4", "B8"));
+
+        Assert.assertThat(product, CoreMatchers.equalTo(new File(workDir, "extracted_B4_B8/S2B_MSIL2A_TEST.SAFE")));
+        Assert.assertTrue(new File(product, "manifest.safe").exists());
+        Assert.assertTrue(new File(product, "GRANULE/L2A_T32ULC/MTD_TL.xml").exists());
+        Assert.assertFalse(new File(product, "GRANULE/L2A_T32ULC/QI_DATA/MSK_CLDPRB_20m.jp2").exists());
+        File imgDir = new File(product, "GRANULE/L2A_T32ULC/IMG_DATA/R10m");
+        Assert.assertTrue(new File(imgDir, "T32ULC_20200101T103421_B04_10m.jp2").exists());
+        Assert.assertTrue(new File(imgDir, "T32ULC_20200101T103421_B08_10m.jp2").exists());
+        Assert.assertFalse(new File(imgDir, "T32ULC_20200101T103421_B8A_20m.jp2").exists());
+        Assert.assertFalse(new File(imgDir, "T32ULC_20200101T103421_B11_20m.jp2").exists());
+    }
+
+    @Test
+    public void testOfflineProductIsRetrievedAsynchronously() throws Exception {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.isLtaRetrieval()).thenReturn(true);
+        Mockito.when(config.getLtaTimeout()).thenReturn(1L);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        try (HubStubServer server = new HubStubServer(this.createProductZip(), "S2B_MSIL2A_TEST.zip")) {
+            server.setOffline(2);
+
+            Future<File> download = sfd.downloadSentinelFileAsync(server.getProductUrl(),
+                    workDir.getAbsolutePath(), ExtractionFilter.ALL);
+            File product = download.get(10, TimeUnit.SECONDS);
+
+            Assert.assertThat(product, CoreMatchers.equalTo(new File(workDir, "S2B_MSIL2A_TEST.SAFE")));
+            Assert.assertTrue(new File(product, "manifest.safe").exists());
+            Assert.assertEquals(1, server.getRestoreRequests());
+        } finally {
+            sfd.destroy();
+        }
+    }
+
+    @Test
+    public void testOfflineProductIsRetrievedWithLeasedAccount() throws Exception {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.isLtaRetrieval()).thenReturn(true);
+        Mockito.when(config.getLtaTimeout()).thenReturn(1L);
+        HubCredentialsPool pool = new HubCredentialsPool(Arrays.asList(
+                new HubCredentialsPool.Account("user", "password", 1)), 60000);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+        sfd.setCredentialsPool(pool);
+
+        try (HubStubServer server = new HubStubServer(this.createProductZip(), "S2B_MSIL2A_TEST.zip")) {
+            server.setOffline(2);
+
+            File product = sfd.downloadSentinelFileAsync(server.getProductUrl(),
+                    workDir.getAbsolutePath(), ExtractionFilter.ALL).get(10, TimeUnit.SECONDS);
+
+            Assert.assertTrue(new File(product, "manifest.safe").exists());
+            Assert.assertEquals(1, server.getRestoreRequests());
+            // one request before triggering the restore and three polls, the download does not check again
+            Assert.assertEquals(4, server.getOnlineRequests());
+            Assert.assertEquals(0, server.getAnonymousRequests());
+            Assert.assertEquals(0, pool.getLeasedCount());
+        } finally {
+            sfd.destroy();
+        }
+    }
+
+    @Test
+    public void testSynchronousDownloadOfOfflineProductFailsFast() throws Exception {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.isLtaRetrieval()).thenReturn(true);
+        Mockito.when(config.getLtaPollInterval()).thenReturn(60L);
+        Mockito.when(config.getLtaMaxPollInterval()).thenReturn(60L);
+        Mockito.when(config.getLtaTimeout()).thenReturn(60L);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        try (HubStubServer server = new HubStubServer(this.createProductZip(), "S2B_MSIL2A_TEST.zip")) {
+            server.setOffline(2);
+            try {
+                sfd.downloadSentinelFile(server.getProductUrl());
+                Assert.fail("Expected download of offline product to fail");
+            } catch (IOException ex) {
+                Assert.assertThat(ex.getMessage(), CoreMatchers.containsString("is offline"));
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (server.getRestoreRequests() == 0) {
+                Assert.assertTrue("Restore has not been triggered", System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+            Assert.assertEquals(0, server.getFullRequests());
+        } finally {
+            sfd.destroy();
+        }
+    }
+
+    @Test
+    public void testChecksumIsVerifiedWhileStreaming() throws Exception {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.isStreamingUnzip()).thenReturn(true);
+        Mockito.when(config.isChecksumVerification()).thenReturn(true);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        byte[] content = this.createProductZip();
+        try (HubStubServer server = new HubStubServer(content, "S2B_MSIL2A_TEST.zip")) {
+            server.setChecksum("MD5", this.md5(content).toUpperCase());
+
+            File product = sfd.downloadSentinelFile(server.getProductUrl());
+
+            Assert.assertTrue(new File(product, "manifest.safe").exists());
+            Assert.assertEquals(1, server.getFullRequests());
+        }
+    }
+
+    @Test
+    public void testCorruptProductIsRejected() throws Exception {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.isChecksumVerification()).thenReturn(true);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        try (HubStubServer server = new HubStubServer(new byte[]{1, 2, 3}, "S2B_MSIL2A_TEST.zip")) {
+            server.setChecksum("MD5", this.md5(new byte[]{1, 2, 4}));
+
+            try {
+                sfd.downloadSentinelFile(server.getProductUrl(), workDir.getAbsolutePath(), false);
+                Assert.fail("Expected corrupt product to be rejected");
+            } catch (IOException ex) {
+                Assert.assertThat(ex.getMessage(), CoreMatchers.containsString("checksum"));
+            }
+            Assert.assertFalse(new File(workDir, "S2B_MSIL2A_TEST.zip").exists());
+            Assert.assertFalse(sfd.getProductCache().contains(server.getProductUrl()));
+        }
+    }
+
+    @Test
+    public void testCorruptStreamedProductIsNotExtracted() throws Exception {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.isChecksumVerification()).thenReturn(true);
+        Mockito.when(config.isStreamingUnzip()).thenReturn(true);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        ByteArrayOutputStream zipContent = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOut = new ZipOutputStream(zipContent)) {
+            zipOut.putNextEntry(new ZipEntry("S2B_MSIL2A_TEST.SAFE/manifest.safe"));
+            zipOut.write("<manifest/>".getBytes(StandardCharsets.UTF_8));
+            zipOut.putNextEntry(new ZipEntry("INSPIRE.xml"));
+            zipOut.write("<inspire/>".getBytes(StandardCharsets.UTF_8));
+            zipOut.closeEntry();
+        }
+
+        try (HubStubServer server = new HubStubServer(zipContent.toByteArray(), "S2B_MSIL2A_TEST.zip")) {
+            server.setChecksum("MD5", this.md5(new byte[]{1, 2, 4}));
+
+            try {
+                sfd.downloadSentinelFile(server.getProductUrl());
+                Assert.fail("Expected corrupt product to be rejected");
+            } catch (IOException ex) {
+                Assert.assertThat(ex.getMessage(), CoreMatchers.containsString("checksum"));
+            }
+            Assert.assertFalse(new File(workDir, "S2B_MSIL2A_TEST.SAFE").exists());
+            Assert.assertFalse(new File(workDir, "INSPIRE.xml").exists());
+            Assert.assertFalse(new File(workDir, "S2B_MSIL2A_TEST.zip.part").exists());
+        }
+    }
+
+    @Test
+    public void testPrefetchedProductIsServedFromCache() throws Exception {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        try (HubStubServer server = new HubStubServer(this.createProductZip(), "S2B_MSIL2A_TEST.zip")) {
+            PrefetchJob job = sfd.prefetchSentinelProducts(Arrays.asList(server.getProductUrl()), ExtractionFilter.ALL);
+            job.getCompletion().get(10, TimeUnit.SECONDS);
+
+            Assert.assertEquals(1, job.getCompletedCount());
+
+            File product = sfd.downloadSentinelFile(server.getProductUrl(), workDir.getAbsolutePath());
+
+            Assert.assertThat(product, CoreMatchers.equalTo(new File(workDir, "S2B_MSIL2A_TEST.SAFE")));
+            Assert.assertEquals(1, server.getFullRequests());
+        } finally {
+            sfd.destroy();
+        }
+    }
+
+    @Test
+    public void testFinishedPrefetchJobIsRetained() throws Exception {
+        File workDir = Files.createTempDirectory("wacodis-tmp").toFile();
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(workDir.getAbsolutePath());
+        Mockito.when(config.getPrefetchRetention()).thenReturn(60L);
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(new RestTemplate());
+        sfd.setConfig(config);
+
+        try (HubStubServer server = new HubStubServer(this.createProductZip(), "S2B_MSIL2A_TEST.zip")) {
+            String missingUrl = server.getProductUrl().replace("product-id", "missing-id");
+            PrefetchJob job = sfd.prefetchSentinelProducts(Arrays.asList(server.getProductUrl(), missingUrl),
+                    ExtractionFilter.ALL);
+            job.getCompletion().get(10, TimeUnit.SECONDS);
+
+            PrefetchJob finishedJob = sfd.getPrefetchJob(job.getId());
+
+            Assert.assertSame(job, finishedJob);
+            Assert.assertEquals(PrefetchJob.Status.CACHED, finishedJob.getStatus().get(server.getProductUrl()));
+            Assert.assertEquals(PrefetchJob.Status.FAILED, finishedJob.getStatus().get(missingUrl));
+
+            Mockito.when(config.getPrefetchRetention()).thenReturn(0L);
+            Thread.sleep(10);
+
+            Assert.assertNull(sfd.getPrefetchJob(job.getId()));
+        } finally {
+            sfd.destroy();
+        }
+    }
+
+    private String md5(byte[] content) throws NoSuchAlgorithmException {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private byte[] createProductZip() throws IOException {
+        ByteArrayOutputStream zipContent = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOut = new ZipOutputStream(zipContent)) {
+            zipOut.putNextEntry(new ZipEntry("S2B_MSIL2A_TEST.SAFE/"));
+            zipOut.putNextEntry(new ZipEntry("S2B_MSIL2A_TEST.SAFE/manifest.safe"));
+            zipOut.write("<manifest/>".getBytes(StandardCharsets.UTF_8));
+            zipOut.closeEntry();
+        }
+        return zipContent.toByteArray();
+    }
+
+    private void assertDownloadFailed(Future<File> download) throws Exception {
+        try {
+            download.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected download to fail");
+        } catch (ExecutionException ex) {
+            Assert.assertThat(ex.getCause(), CoreMatchers.instanceOf(IOException.class));
+        }
+    }
+
+    /**
+     * Waits until a caller waits for a running download. Callers that wait
+     * for a download are registered as dependents of its future.
+     */
+    private void awaitWaitingCaller(SentinelFileDownloader sfd) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (sfd.getRunningDownloads().stream().noneMatch(d -> d.getNumberOfDependents() > 0)) {
+            Assert.assertTrue("No caller is waiting for the running download", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private SentinelFileDownloader createDownloader(RestTemplate rt) throws IOException {
+        WacodisBackendConfig config = Mockito.mock(WacodisBackendConfig.class);
+        Mockito.when(config.getWorkingDirectory()).thenReturn(Files.createTempDirectory("wacodis-tmp").toFile().getAbsolutePath());
+
+        SentinelFileDownloader sfd = new SentinelFileDownloader();
+        sfd.setOpenAccessHubService(rt);
+        sfd.setConfig(config);
+        return sfd;
+    }
+
 }
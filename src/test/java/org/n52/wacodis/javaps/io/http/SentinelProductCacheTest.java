@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018-2022 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wacodis.javaps.io.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.io.FileUtils;
+import org.hamcrest.CoreMatchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SentinelProductCacheTest {
+
+    private Path cacheDir;
+
+    private File indexFile;
+
+    @Before
+    public void init() throws IOException {
+        this.cacheDir = Files.createTempDirectory("wacodis-cache");
+        this.indexFile = new File(cacheDir.toFile(), "index.json");
+    }
+
+    @Test
+    public void testLruEviction() throws IOException, InterruptedException {
+        SentinelProductCache cache = new SentinelProductCache(indexFile, 250, SentinelProductCache.EvictionPolicy.LRU, 0);
+
+        File p1 = this.createProduct("p1", 100);
+        File p2 = this.createProduct("p2", 100);
+        cache.put("p1", p1);
+        Thread.sleep(5);
+        cache.put("p2", p2);
+        Thread.sleep(5);
+        cache.get("p1");
+        Thread.sleep(5);
+        cache.put("p3", this.createProduct("p3", 100));
+
+        Assert.assertTrue(p1.exists());
+        Assert.assertFalse(p2.exists());
+        Assert.assertNull(cache.get("p2"));
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(200, cache.getTotalSize());
+    }
+
+    @Test
+    public void testLfuEviction() throws IOException, InterruptedException {
+        SentinelProductCache cache = new SentinelProductCache(indexFile, 250, SentinelProductCache.EvictionPolicy.LFU, 0);
+
+        File p1 = this.createProduct("p1", 100);
+        File p2 = this.createProduct("p2", 100);
+        cache.put("p1", p1);
+        cache.put("p2", p2);
+        cache.get("p1");
+        cache.get("p1");
+        Thread.sleep(5);
+        cache.get("p2");
+        cache.put("p3", this.createProduct("p3", 100));
+
+        Assert.assertTrue(p1.exists());
+        Assert.assertFalse(p2.exists());
+    }
+
+    @Test
+    public void testPinnedProductsAreNotEvicted() throws IOException {
+        SentinelProductCache cache = new SentinelProductCache(indexFile, 150, SentinelProductCache.EvictionPolicy.LRU, 0);
+
+        File p1 = this.createProduct("p1", 100);
+        cache.put("p1", p1);
+        cache.pin("p1");
+        cache.put("p2", this.createProduct("p2", 100));
+
+        Assert.assertTrue(p1.exists());
+        Assert.assertEquals(0, cache.getEvictionCount());
+
+        cache.unpin("p1");
+        cache.put("p3", this.createProduct("p3", 10));
+
+        Assert.assertFalse(p1.exists());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testCacheIndexSurvivesRestart() throws IOException {
+        SentinelProductCache cache = new SentinelProductCache(indexFile, 0, SentinelProductCache.EvictionPolicy.LRU, 0);
+        File p1 = this.createProduct("p1", 100);
+        cache.put("p1", p1);
+        Assert.assertNull(cache.get("p2"));
+
+        SentinelProductCache restartedCache = new SentinelProductCache(indexFile, 0, SentinelProductCache.EvictionPolicy.LRU, 0);
+
+        Assert.assertEquals(p1.getAbsolutePath(), restartedCache.get("p1").getAbsolutePath());
+        Assert.assertEquals(1, restartedCache.getHitCount());
+        Assert.assertEquals(0, restartedCache.getMissCount());
+    }
+
+    @Test
+    public void testPinningProductPinsItsVariants() throws IOException {
+        SentinelProductCache cache = new SentinelProductCache(indexFile, 150, SentinelProductCache.EvictionPolicy.LRU, 0);
+
+        File unzipped = this.createProduct("p1-unzipped", 100);
+        cache.put("p1#unzipped", unzipped);
+        cache.pin("p1");
+        cache.put("p2", this.createProduct("p2", 100));
+
+        Assert.assertTrue(unzipped.exists());
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testCacheHitsAreWrittenToIndexLazily() throws IOException {
+        SentinelProductCache cache = new SentinelProductCache(indexFile, 0, SentinelProductCache.EvictionPolicy.LFU, 0);
+        cache.put("p1", this.createProduct("p1", 100));
+        String index = FileUtils.readFileToString(indexFile, StandardCharsets.UTF_8);
+
+        cache.get("p1");
+        cache.get("p1");
+
+        Assert.assertEquals(index, FileUtils.readFileToString(indexFile, StandardCharsets.UTF_8));
+
+        cache.flush();
+
+        Assert.assertThat(FileUtils.readFileToString(indexFile, StandardCharsets.UTF_8),
+                CoreMatchers.containsString("\"accessCount\":3"));
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        FileUtils.deleteDirectory(this.cacheDir.toFile());
+    }
+
+    private File createProduct(String name, int size) throws IOException {
+        File product = new File(cacheDir.toFile(), name);
+        FileUtils.writeByteArrayToFile(product, new byte[size]);
+        return product;
+    }
+
+}